@@ -13,6 +13,7 @@
 */
 package com.aklimenko.miro;
 
+import com.aklimenko.miro.persistence.wal.FsyncMode;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -21,6 +22,10 @@ import org.springframework.context.annotation.Configuration;
 public class MiroConfig {
 
   private final RateLimit rateLimit = new RateLimit();
+  private final Wal wal = new Wal();
+  private final Pagination pagination = new Pagination();
+  private final Boards boards = new Boards();
+  private final Imports imports = new Imports();
 
   public static class RateLimit {
     private int windowSizeMS = 60000; // 1 minute
@@ -30,6 +35,17 @@ public class MiroConfig {
     private int limitCreateWidget = -1;
     private int limitUpdateWidget = -1;
     private int limitDeleteWidget = -1;
+    private int limitBatchWidgets = -1;
+    private int limitExportWidgets = -1;
+    private int limitImportWidgets = -1;
+    private int burstCapacityPercent = 100;
+    private int maxClients = 100000;
+    private int clientIdleTimeoutMS = 600000; // 10 minutes
+    private int maxKeysPerAddress = 16;
+    private int limitInstance = -1;
+    private int leaseSize = 10;
+    private String storeAddress = "localhost:7070";
+    private int storeTimeoutMS = 50;
 
     public int getWindowSizeMS() {
       return windowSizeMS;
@@ -86,9 +102,215 @@ public class MiroConfig {
     public void setLimitDeleteWidget(int limitDeleteWidget) {
       this.limitDeleteWidget = limitDeleteWidget;
     }
+
+    public int getLimitBatchWidgets() {
+      return limitBatchWidgets;
+    }
+
+    public void setLimitBatchWidgets(int limitBatchWidgets) {
+      this.limitBatchWidgets = limitBatchWidgets;
+    }
+
+    public int getLimitExportWidgets() {
+      return limitExportWidgets;
+    }
+
+    public void setLimitExportWidgets(int limitExportWidgets) {
+      this.limitExportWidgets = limitExportWidgets;
+    }
+
+    public int getLimitImportWidgets() {
+      return limitImportWidgets;
+    }
+
+    public void setLimitImportWidgets(int limitImportWidgets) {
+      this.limitImportWidgets = limitImportWidgets;
+    }
+
+    public int getBurstCapacityPercent() {
+      return burstCapacityPercent;
+    }
+
+    public void setBurstCapacityPercent(int burstCapacityPercent) {
+      this.burstCapacityPercent = burstCapacityPercent;
+    }
+
+    public int getMaxKeysPerAddress() {
+      return maxKeysPerAddress;
+    }
+
+    public void setMaxKeysPerAddress(int maxKeysPerAddress) {
+      this.maxKeysPerAddress = maxKeysPerAddress;
+    }
+
+    public int getLimitInstance() {
+      return limitInstance;
+    }
+
+    public void setLimitInstance(int limitInstance) {
+      this.limitInstance = limitInstance;
+    }
+
+    public int getMaxClients() {
+      return maxClients;
+    }
+
+    public void setMaxClients(int maxClients) {
+      this.maxClients = maxClients;
+    }
+
+    public int getClientIdleTimeoutMS() {
+      return clientIdleTimeoutMS;
+    }
+
+    public void setClientIdleTimeoutMS(int clientIdleTimeoutMS) {
+      this.clientIdleTimeoutMS = clientIdleTimeoutMS;
+    }
+
+    public int getLeaseSize() {
+      return leaseSize;
+    }
+
+    public void setLeaseSize(int leaseSize) {
+      this.leaseSize = leaseSize;
+    }
+
+    public String getStoreAddress() {
+      return storeAddress;
+    }
+
+    public void setStoreAddress(String storeAddress) {
+      this.storeAddress = storeAddress;
+    }
+
+    public int getStoreTimeoutMS() {
+      return storeTimeoutMS;
+    }
+
+    public void setStoreTimeoutMS(int storeTimeoutMS) {
+      this.storeTimeoutMS = storeTimeoutMS;
+    }
+  }
+
+  public static class Wal {
+    private boolean enabled = false;
+    private String path = "data/widgets.wal";
+    private FsyncMode fsyncMode = FsyncMode.BATCH;
+    private int fsyncIntervalMS = 100;
+    private String snapshotPath = "data/widgets.snapshot";
+    private int snapshotIntervalMS = 60000; // 1 minute
+
+    public boolean isEnabled() {
+      return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+      this.enabled = enabled;
+    }
+
+    public String getPath() {
+      return path;
+    }
+
+    public void setPath(String path) {
+      this.path = path;
+    }
+
+    public FsyncMode getFsyncMode() {
+      return fsyncMode;
+    }
+
+    public void setFsyncMode(FsyncMode fsyncMode) {
+      this.fsyncMode = fsyncMode;
+    }
+
+    public int getFsyncIntervalMS() {
+      return fsyncIntervalMS;
+    }
+
+    public void setFsyncIntervalMS(int fsyncIntervalMS) {
+      this.fsyncIntervalMS = fsyncIntervalMS;
+    }
+
+    public String getSnapshotPath() {
+      return snapshotPath;
+    }
+
+    public void setSnapshotPath(String snapshotPath) {
+      this.snapshotPath = snapshotPath;
+    }
+
+    public int getSnapshotIntervalMS() {
+      return snapshotIntervalMS;
+    }
+
+    public void setSnapshotIntervalMS(int snapshotIntervalMS) {
+      this.snapshotIntervalMS = snapshotIntervalMS;
+    }
+  }
+
+  public static class Pagination {
+    private int versionTimeoutMS = 60000; // 1 minute
+    private int maxPinnedVersions = 1000;
+
+    public int getVersionTimeoutMS() {
+      return versionTimeoutMS;
+    }
+
+    public void setVersionTimeoutMS(int versionTimeoutMS) {
+      this.versionTimeoutMS = versionTimeoutMS;
+    }
+
+    public int getMaxPinnedVersions() {
+      return maxPinnedVersions;
+    }
+
+    public void setMaxPinnedVersions(int maxPinnedVersions) {
+      this.maxPinnedVersions = maxPinnedVersions;
+    }
+  }
+
+  public static class Boards {
+    private int maxBoards = 10000;
+
+    public int getMaxBoards() {
+      return maxBoards;
+    }
+
+    public void setMaxBoards(int maxBoards) {
+      this.maxBoards = maxBoards;
+    }
+  }
+
+  public static class Imports {
+    private int maxConcurrentImports = 2;
+
+    public int getMaxConcurrentImports() {
+      return maxConcurrentImports;
+    }
+
+    public void setMaxConcurrentImports(int maxConcurrentImports) {
+      this.maxConcurrentImports = maxConcurrentImports;
+    }
   }
 
   public RateLimit getRateLimit() {
     return rateLimit;
   }
+
+  public Wal getWal() {
+    return wal;
+  }
+
+  public Pagination getPagination() {
+    return pagination;
+  }
+
+  public Boards getBoards() {
+    return boards;
+  }
+
+  public Imports getImports() {
+    return imports;
+  }
 }
@@ -13,25 +13,48 @@
 */
 package com.aklimenko.miro;
 
+import com.aklimenko.miro.api.WidgetExportMessageConverter;
+import com.aklimenko.miro.api.WidgetImportMessageConverter;
+import com.aklimenko.miro.api.incerceptor.ImportConcurrencyInterceptor;
 import com.aklimenko.miro.api.incerceptor.LoggingInterceptor;
 import com.aklimenko.miro.api.incerceptor.RateLimitInterceptor;
-import com.aklimenko.miro.service.RateLimitService;
+import com.aklimenko.miro.service.ClientRateLimitRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
 
-  private final RateLimitService rateLimitService;
-
-  public MvcConfig(final RateLimitService rateLimitService) {
-    this.rateLimitService = rateLimitService;
+  private final ClientRateLimitRegistry rateLimitClients;
+  private final ObjectMapper objectMapper;
+  private final MiroConfig config;
+
+  public MvcConfig(
+      final ClientRateLimitRegistry rateLimitClients,
+      final ObjectMapper objectMapper,
+      final MiroConfig config) {
+    this.rateLimitClients = rateLimitClients;
+    this.objectMapper = objectMapper;
+    this.config = config;
   }
 
   @Override
   public void addInterceptors(InterceptorRegistry registry) {
     registry.addInterceptor(new LoggingInterceptor());
-    registry.addInterceptor(new RateLimitInterceptor(rateLimitService));
+    registry.addInterceptor(new RateLimitInterceptor(rateLimitClients));
+    registry
+        .addInterceptor(
+            new ImportConcurrencyInterceptor(config.getImports().getMaxConcurrentImports()))
+        .addPathPatterns("/widgets/import");
+  }
+
+  @Override
+  public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+    converters.add(0, new WidgetExportMessageConverter(objectMapper));
+    converters.add(1, new WidgetImportMessageConverter(objectMapper));
   }
 }
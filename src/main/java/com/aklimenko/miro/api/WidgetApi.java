@@ -16,8 +16,13 @@ package com.aklimenko.miro.api;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
 
 import com.aklimenko.miro.model.pagination.Page;
+import com.aklimenko.miro.model.pagination.StreamedPage;
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
 import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetExport;
+import com.aklimenko.miro.model.widget.WidgetImportRequest;
 import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
 import java.util.List;
 import javax.annotation.Nullable;
@@ -29,34 +34,114 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 
-/** Rest API controller for /widgets. */
+/**
+ * Rest API controller for /widgets. <br>
+ * Every operation is applied to the board provided in {@link #BOARD_ID_HEADER} header or to the
+ * default board if header is absent.
+ */
 @RequestMapping(path = "/widgets")
 public interface WidgetApi {
 
+  /** Header with ID of the board to apply operation to. */
+  String BOARD_ID_HEADER = "X-Board-Id";
+
   /**
    * {@code GET /widgets}. <br>
-   * Lists requested widgets ordered by z-index in ascending order.
+   * Lists requested widgets ordered by z-index in ascending order. If bounding box is provided
+   * lists only the widgets intersecting it.
    *
+   * @param boardId Optional ID of the board to list widgets of.
    * @param limit Limits the amount of widgets in the output. Default value is 10 if not provided.
    *     Max value is 500.
-   * @param afterId ID token to perform widgets search after.
+   * @param afterId ID of the widget to perform widgets search after. Kept for compatibility, next
+   *     page is linked by {@code cursor}. Rejected if the widget no longer exists.
+   * @param cursor Opaque cursor token returned in 'Link' header to perform widgets search after.
+   * @param bbox Optional bounding box {@code minX,minY,maxX,maxY} to look up widgets in.
    * @return {@link Page} of {@link List<Widget>} wrapped into {@link ResponseEntity}.
    */
   @GetMapping(produces = APPLICATION_JSON_VALUE)
   ResponseEntity<Page<Widget>> listWidgets(
-      @PathParam("limit") @Nullable Integer limit, @PathParam("afterId") @Nullable String afterId);
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable String boardId,
+      @PathParam("limit") @Nullable Integer limit,
+      @PathParam("afterId") @Nullable String afterId,
+      @PathParam("cursor") @Nullable String cursor,
+      @PathParam("bbox") @Nullable String bbox);
+
+  /**
+   * {@code GET /widgets?stream=true}. <br>
+   * Streams requested widgets ordered by z-index in ascending order. Widgets are written into the
+   * response while being read from the repository without collecting them, so the limit is much
+   * larger than for {@link #listWidgets}. Next page is not linked, since the response is committed
+   * before the last widget is known, it's resumed by {@code afterZ} of the last streamed widget.
+   *
+   * @param boardId Optional ID of the board to stream widgets of.
+   * @param limit Limits the amount of widgets in the output. Default value is 10 if not provided.
+   *     Max value is 100000.
+   * @param afterId ID of the widget to perform widgets search after. Rejected if the widget no
+   *     longer exists.
+   * @param afterZ Z-index to perform widgets search above.
+   * @param cursor Opaque cursor token to perform widgets search after.
+   * @param bbox Not supported, must not be provided.
+   * @return {@link StreamedPage} of widgets wrapped into {@link ResponseEntity}.
+   */
+  @GetMapping(params = "stream=true", produces = APPLICATION_JSON_VALUE)
+  ResponseEntity<StreamedPage<Widget>> streamWidgets(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable String boardId,
+      @PathParam("limit") @Nullable Integer limit,
+      @PathParam("afterId") @Nullable String afterId,
+      @PathParam("afterZ") @Nullable Integer afterZ,
+      @PathParam("cursor") @Nullable String cursor,
+      @PathParam("bbox") @Nullable String bbox);
+
+  /**
+   * {@code GET /widgets/export}. <br>
+   * Exports all the widgets of the board ordered by z-index in ascending order as
+   * newline-delimited JSON. Widgets are written into the response while being read from the
+   * repository, so the response is sent in chunks and the export takes the same memory whatever
+   * the size of the board is. Export is consistent: if the board can't be read as of a single
+   * point in time since it's modified during the export, the export fails, see {@link
+   * com.aklimenko.miro.persistence.WidgetRepository#exportWidgets()}.
+   *
+   * @param boardId Optional ID of the board to export widgets of.
+   * @return {@link WidgetExport} wrapped into {@link ResponseEntity}.
+   */
+  @GetMapping(path = "/export", produces = WidgetExport.MEDIA_TYPE_VALUE)
+  ResponseEntity<WidgetExport> exportWidgets(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable String boardId);
+
+  /**
+   * {@code GET /widgets/hit}. <br>
+   * Lists the topmost widgets covering provided point ordered by z-index in descending order.
+   *
+   * @param boardId Optional ID of the board to look for widgets on.
+   * @param x X coordinate of the point.
+   * @param y Y coordinate of the point.
+   * @param limit Limits the amount of widgets in the output. Default value is 1 if not provided.
+   *     Max value is 500.
+   * @return {@link List<Widget>} wrapped into {@link ResponseEntity}.
+   */
+  @GetMapping(path = "/hit", produces = APPLICATION_JSON_VALUE)
+  ResponseEntity<List<Widget>> hitTest(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable String boardId,
+      @PathParam("x") @Nullable Double x,
+      @PathParam("y") @Nullable Double y,
+      @PathParam("limit") @Nullable Integer limit);
 
   /**
    * {@code GET /widgets/:id}. <br>
    * Reads widget by provided ID.
    *
+   * @param boardId Optional ID of the board to look for widget on.
    * @param id ID to look for widget.
    * @return {@link Widget} wrapped into {@link ResponseEntity}.
    */
   @GetMapping(path = "/{id}", produces = APPLICATION_JSON_VALUE)
-  ResponseEntity<Widget> readWidget(@PathVariable("id") final String id);
+  ResponseEntity<Widget> readWidget(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable final String boardId,
+      @PathVariable("id") final String id);
 
   /**
    * {@code POST /widgets}. <br>
@@ -64,11 +149,14 @@ public interface WidgetApi {
    * widgets. If z-index is provided and there is existing widget at that z-index than starting from
    * the provided z-index all the widgets are shifted upwards.
    *
+   * @param boardId Optional ID of the board to create widget on.
    * @param widgetToCreate Widget creation payload.
    * @return {@link Widget} wrapped into {@link ResponseEntity}.
    */
   @PostMapping(consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
-  ResponseEntity<Widget> createWidget(@RequestBody final WidgetCreateRequest widgetToCreate);
+  ResponseEntity<Widget> createWidget(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable final String boardId,
+      @RequestBody final WidgetCreateRequest widgetToCreate);
 
   /**
    * {@code PUT /widgets/:id}. <br>
@@ -76,21 +164,68 @@ public interface WidgetApi {
    * widget and new z-index acts similar to {@link WidgetApi#createWidget} and shifts existing
    * widgets upwards.
    *
+   * @param boardId Optional ID of the board to look for widget on.
    * @param id ID to look for widget to update.
    * @param widgetUpdate Widget update payload.
    * @return {@link Widget} wrapped into {@link ResponseEntity}.
    */
   @PutMapping(path = "/{id}", consumes = APPLICATION_JSON_VALUE, produces = APPLICATION_JSON_VALUE)
   ResponseEntity<Widget> updateWidget(
-      @PathVariable("id") final String id, @RequestBody final WidgetUpdateRequest widgetUpdate);
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable final String boardId,
+      @PathVariable("id") final String id,
+      @RequestBody final WidgetUpdateRequest widgetUpdate);
 
   /**
    * {@code DELETE /widgets/:id}. <br>
    * Removes existing widget by provided ID.
    *
+   * @param boardId Optional ID of the board to look for widget on.
    * @param id ID to look for widget to remove.
    * @return Empty response.
    */
   @DeleteMapping(path = "/{id}", produces = APPLICATION_JSON_VALUE)
-  ResponseEntity<?> deleteWidget(@PathVariable("id") final String id);
+  ResponseEntity<?> deleteWidget(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable final String boardId,
+      @PathVariable("id") final String id);
+
+  /**
+   * {@code POST /widgets/batch}. <br>
+   * Applies list of create, update and delete operations atomically: other requests observe the
+   * board either without or with all of them applied. Operations are applied in the order they are
+   * provided, each the same way as the standalone request, and fail independently of each other.
+   * Result of every operation carries the HTTP status the standalone request would respond with.
+   *
+   * @param boardId Optional ID of the board to apply operations to.
+   * @param operations Operations to apply. Max amount is 500.
+   * @return {@link List<WidgetBatchResult>} with result of every operation in the order of
+   *     operations wrapped into {@link ResponseEntity}.
+   */
+  @PostMapping(
+      path = "/batch",
+      consumes = APPLICATION_JSON_VALUE,
+      produces = APPLICATION_JSON_VALUE)
+  ResponseEntity<List<WidgetBatchResult>> applyBatch(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable final String boardId,
+      @RequestBody final List<WidgetBatchOperation> operations);
+
+  /**
+   * {@code POST /widgets/import}. <br>
+   * Imports widgets from newline-delimited JSON with a widget create payload per line atomically:
+   * other requests observe the board either without or with all of them imported. Requested
+   * z-indexes refer to the board before the import. Imported widget goes below the existing widget
+   * on the same z-index and widgets are shifted upwards only as far as needed to make room for each
+   * other. Widgets without z-index are placed in the foreground in the order of the lines.
+   *
+   * @param boardId Optional ID of the board to import widgets into.
+   * @param widgetImport Widgets to import. Max amount is 1000000.
+   * @return Imported widgets in the order of the lines as newline-delimited JSON wrapped into
+   *     {@link ResponseEntity}.
+   */
+  @PostMapping(
+      path = "/import",
+      consumes = WidgetExport.MEDIA_TYPE_VALUE,
+      produces = WidgetExport.MEDIA_TYPE_VALUE)
+  ResponseEntity<WidgetExport> importWidgets(
+      @RequestHeader(value = BOARD_ID_HEADER, required = false) @Nullable final String boardId,
+      @RequestBody final WidgetImportRequest widgetImport);
 }
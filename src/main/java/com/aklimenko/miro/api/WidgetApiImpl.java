@@ -13,13 +13,23 @@
 */
 package com.aklimenko.miro.api;
 
+import com.aklimenko.miro.exception.RequestValidationException;
 import com.aklimenko.miro.model.pagination.Page;
 import com.aklimenko.miro.model.pagination.Pagination;
+import com.aklimenko.miro.model.pagination.StreamedPage;
+import com.aklimenko.miro.model.widget.BoundingBox;
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
 import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetExport;
+import com.aklimenko.miro.model.widget.WidgetImportRequest;
 import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
 import com.aklimenko.miro.service.WidgetService;
 import com.aklimenko.miro.utils.ResponseHelper;
+import com.aklimenko.miro.utils.ValidationHelper;
+import java.util.List;
 import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,47 +42,143 @@ public class WidgetApiImpl implements WidgetApi {
 
   private static final Logger log = LoggerFactory.getLogger(WidgetApiImpl.class);
 
+  /** Amount of widgets returned by hit test if limit is not provided. */
+  private static final int DEFAULT_HIT_TEST_LIMIT = 1;
+
+  /** Max amount of operations in a batch. */
+  private static final int MAX_BATCH_SIZE = 500;
+
+  /** Max amount of widgets in an import. */
+  private static final int MAX_IMPORT_SIZE = WidgetImportMessageConverter.MAX_IMPORT_SIZE;
+
   private final WidgetService widgetService;
 
   public WidgetApiImpl(final WidgetService widgetService) {
     this.widgetService = widgetService;
   }
 
+  /**
+   * Resolves board to apply operation to.
+   *
+   * @param boardId Board ID from request header.
+   * @return Validated board ID or default board ID if not provided.
+   */
+  private static String board(@Nullable final String boardId) {
+    return boardId == null
+        ? ShardedWidgetRepository.DEFAULT_BOARD
+        : ValidationHelper.requireValidBoardId(boardId);
+  }
+
   public ResponseEntity<Page<Widget>> listWidgets(
-      @Nullable Integer limit, @Nullable String afterId) {
+      @Nullable String boardId,
+      @Nullable Integer limit,
+      @Nullable String afterId,
+      @Nullable String cursor,
+      @Nullable String bbox) {
     log.debug("Retrieve page of widgets");
 
-    final Pagination pagination = Pagination.of(limit, afterId);
-    final Page<Widget> widgetsPage = widgetService.listWidgets(pagination);
+    final Pagination pagination = Pagination.of(limit, afterId, cursor);
+    final BoundingBox area = bbox == null ? null : BoundingBox.parse(bbox);
+    final Page<Widget> widgetsPage = widgetService.listWidgets(board(boardId), pagination, area);
     return ResponseHelper.ok(widgetsPage);
   }
 
-  public ResponseEntity<Widget> readWidget(final String id) {
+  public ResponseEntity<StreamedPage<Widget>> streamWidgets(
+      @Nullable final String boardId,
+      @Nullable final Integer limit,
+      @Nullable final String afterId,
+      @Nullable final Integer afterZ,
+      @Nullable final String cursor,
+      @Nullable final String bbox) {
+    log.debug("Stream widgets");
+
+    if (bbox != null) {
+      throw new RequestValidationException("Bounding box is not supported by streamed listing.");
+    }
+    final Pagination pagination = Pagination.ofStream(limit, afterId, afterZ, cursor);
+    return ResponseHelper.ok(widgetService.streamWidgets(board(boardId), pagination));
+  }
+
+  public ResponseEntity<WidgetExport> exportWidgets(@Nullable final String boardId) {
+    log.debug("Export widgets");
+
+    return ResponseHelper.ok(widgetService.exportWidgets(board(boardId)));
+  }
+
+  public ResponseEntity<List<Widget>> hitTest(
+      @Nullable final String boardId,
+      @Nullable final Double x,
+      @Nullable final Double y,
+      @Nullable final Integer limit) {
+    log.debug("Hit test widgets at: {}:{}", x, y);
+
+    ValidationHelper.requireNonNull(x, "Point coordinate 'x' must be provided.");
+    ValidationHelper.requireNonNull(y, "Point coordinate 'y' must be provided.");
+    final int hitLimit =
+        ValidationHelper.requireValidLimit(
+            limit == null ? DEFAULT_HIT_TEST_LIMIT : limit, Pagination.MAX_LIMIT);
+    final List<Widget> widgets = widgetService.hitTest(board(boardId), x, y, hitLimit);
+    return ResponseHelper.ok(widgets);
+  }
+
+  public ResponseEntity<Widget> readWidget(@Nullable final String boardId, final String id) {
     log.debug("Retrieve widget by id: {}", id);
 
-    final Widget widget = widgetService.readWidget(id);
+    final Widget widget = widgetService.readWidget(board(boardId), id);
     return ResponseHelper.ok(widget);
   }
 
-  public ResponseEntity<Widget> createWidget(final WidgetCreateRequest widgetToCreate) {
+  public ResponseEntity<Widget> createWidget(
+      @Nullable final String boardId, final WidgetCreateRequest widgetToCreate) {
     log.debug("Create widget: {}", widgetToCreate);
 
-    final Widget widget = widgetService.createWidget(widgetToCreate);
+    final Widget widget = widgetService.createWidget(board(boardId), widgetToCreate);
     return ResponseHelper.created(widget);
   }
 
   public ResponseEntity<Widget> updateWidget(
-      final String id, final WidgetUpdateRequest widgetUpdate) {
+      @Nullable final String boardId, final String id, final WidgetUpdateRequest widgetUpdate) {
     log.debug("Update widget by id: {}", id);
 
-    final Widget updatedWidget = widgetService.updateWidget(id, widgetUpdate);
+    final Widget updatedWidget = widgetService.updateWidget(board(boardId), id, widgetUpdate);
     return ResponseHelper.ok(updatedWidget);
   }
 
-  public ResponseEntity<?> deleteWidget(final String id) {
+  public ResponseEntity<?> deleteWidget(@Nullable final String boardId, final String id) {
     log.debug("Delete widget by id: {}", id);
 
-    widgetService.deleteWidget(id);
+    widgetService.deleteWidget(board(boardId), id);
     return ResponseHelper.noContent();
   }
+
+  public ResponseEntity<List<WidgetBatchResult>> applyBatch(
+      @Nullable final String boardId, final List<WidgetBatchOperation> operations) {
+    log.debug("Apply batch of {} widget operations", operations.size());
+
+    if (operations.isEmpty() || operations.size() > MAX_BATCH_SIZE) {
+      throw new RequestValidationException(
+          "Batch must contain from 1 to " + MAX_BATCH_SIZE + " operations.");
+    }
+    if (operations.contains(null)) {
+      throw new RequestValidationException("Batch operations must not be null.");
+    }
+    final List<WidgetBatchResult> results = widgetService.applyBatch(board(boardId), operations);
+    return ResponseHelper.ok(results);
+  }
+
+  public ResponseEntity<WidgetExport> importWidgets(
+      @Nullable final String boardId, final WidgetImportRequest widgetImport) {
+    final List<WidgetCreateRequest> widgets = widgetImport.getWidgets();
+    log.debug("Import {} widgets", widgets.size());
+
+    if (widgets.isEmpty() || widgets.size() > MAX_IMPORT_SIZE) {
+      throw new RequestValidationException(
+          "Import must contain from 1 to " + MAX_IMPORT_SIZE + " widgets.");
+    }
+    if (widgets.contains(null)) {
+      throw new RequestValidationException("Imported widgets must not be null.");
+    }
+    final List<Widget> imported = widgetService.importWidgets(board(boardId), widgets);
+    return ResponseHelper.created(new WidgetExport(imported.iterator()));
+  }
 }
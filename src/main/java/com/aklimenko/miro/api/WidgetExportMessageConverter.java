@@ -0,0 +1,114 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.api;
+
+import com.aklimenko.miro.exception.BoardModifiedException;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetExport;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.util.Iterator;
+import org.apache.catalina.connector.ClientAbortException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.server.ServletServerHttpResponse;
+
+/**
+ * Writes {@link WidgetExport} as newline-delimited JSON. <br>
+ * Every widget is serialized straight into the response body as soon as it's read from the
+ * iterator. Content length is unknown, so the response is sent with chunked transfer encoding
+ * whenever the servlet buffer fills up, and memory used by the export doesn't depend on the amount
+ * of widgets. <br>
+ * Written by a message converter rather than as a streaming body, so response body advices such as
+ * {@link com.aklimenko.miro.api.incerceptor.RateLimitHeadersAdvice} still apply to the export. <br>
+ * If the board is modified before the first widget is read, the export fails with 409 Conflict
+ * response. If it's modified once the response is committed, the connection is closed without
+ * terminating the chunked body, so the client fails to read an incomplete response rather than
+ * taking the widgets sent so far for the whole export.
+ */
+public class WidgetExportMessageConverter extends AbstractHttpMessageConverter<WidgetExport> {
+  private static final char LINE_SEPARATOR = '\n';
+
+  private final ObjectMapper objectMapper;
+  private final ObjectWriter widgetWriter;
+
+  /** @param objectMapper Mapper to serialize widgets with. */
+  public WidgetExportMessageConverter(final ObjectMapper objectMapper) {
+    super(MediaType.parseMediaType(WidgetExport.MEDIA_TYPE_VALUE));
+    this.objectMapper = objectMapper;
+    // widgets are flushed by the servlet buffer, not one by one
+    this.widgetWriter =
+        objectMapper
+            .writerFor(Widget.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+  }
+
+  @Override
+  protected boolean supports(final Class<?> clazz) {
+    return WidgetExport.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected boolean canRead(final MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected WidgetExport readInternal(
+      final Class<? extends WidgetExport> clazz, final HttpInputMessage inputMessage) {
+    throw new HttpMessageNotReadableException("Widget export can't be read.", inputMessage);
+  }
+
+  @Override
+  protected void writeInternal(final WidgetExport export, final HttpOutputMessage outputMessage)
+      throws IOException {
+    final Iterator<Widget> widgets = export.getWidgets();
+    if (!widgets.hasNext()) {
+      return;
+    }
+    try (JsonGenerator generator =
+        objectMapper
+            .getFactory()
+            .createGenerator(outputMessage.getBody(), JsonEncoding.UTF8)
+            .setRootValueSeparator(new SerializedString(String.valueOf(LINE_SEPARATOR)))
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+      try {
+        while (widgets.hasNext()) {
+          widgetWriter.writeValue(generator, widgets.next());
+        }
+      } catch (BoardModifiedException e) {
+        if (isCommitted(outputMessage)) {
+          // the status is sent already, so the response is aborted rather than completed for the
+          // client to see an incomplete transfer instead of a truncated export
+          throw new ClientAbortException(e);
+        }
+        throw e;
+      }
+      generator.writeRaw(LINE_SEPARATOR);
+    }
+  }
+
+  private static boolean isCommitted(final HttpOutputMessage outputMessage) {
+    return outputMessage instanceof ServletServerHttpResponse
+        && ((ServletServerHttpResponse) outputMessage).getServletResponse().isCommitted();
+  }
+}
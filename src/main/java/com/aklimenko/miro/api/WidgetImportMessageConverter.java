@@ -0,0 +1,234 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.api;
+
+import com.aklimenko.miro.exception.RequestValidationException;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetExport;
+import com.aklimenko.miro.model.widget.WidgetImportRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * Reads {@link WidgetImportRequest} from newline-delimited JSON. <br>
+ * Lines are independent JSON documents, so the body is read in batches of {@link #BATCH_BYTES}
+ * bytes, every batch is split into complete lines and the lines are parsed in parallel on the
+ * common fork-join pool, while an incomplete last line is carried over to the next batch. Blank
+ * lines are skipped. So only the parsed widgets are kept for the whole import rather than its raw
+ * body. <br>
+ * Body larger than {@link #MAX_IMPORT_BYTES} is rejected by its Content-Length or as soon as that
+ * much is read, and body with more than {@link #MAX_IMPORT_SIZE} lines is rejected before the
+ * batch with the line beyond the limit is parsed.
+ */
+public class WidgetImportMessageConverter
+    extends AbstractHttpMessageConverter<WidgetImportRequest> {
+  /** Max amount of widgets in an import. */
+  public static final int MAX_IMPORT_SIZE = 1_000_000;
+
+  /** Max size of an import body in bytes, 256 bytes per widget on average. */
+  public static final int MAX_IMPORT_BYTES = 256 * MAX_IMPORT_SIZE;
+
+  /** Amount of bytes read from the body before its complete lines are parsed. */
+  static final int BATCH_BYTES = 1 << 22;
+
+  private static final byte LINE_SEPARATOR = '\n';
+  private static final byte CARRIAGE_RETURN = '\r';
+
+  private final ObjectReader widgetReader;
+
+  /** @param objectMapper Mapper to deserialize widgets with. */
+  public WidgetImportMessageConverter(final ObjectMapper objectMapper) {
+    super(MediaType.parseMediaType(WidgetExport.MEDIA_TYPE_VALUE));
+    this.widgetReader = objectMapper.readerFor(WidgetCreateRequest.class);
+  }
+
+  @Override
+  protected boolean supports(final Class<?> clazz) {
+    return WidgetImportRequest.class.isAssignableFrom(clazz);
+  }
+
+  @Override
+  protected boolean canWrite(final MediaType mediaType) {
+    return false;
+  }
+
+  @Override
+  protected WidgetImportRequest readInternal(
+      final Class<? extends WidgetImportRequest> clazz, final HttpInputMessage inputMessage)
+      throws IOException {
+    if (inputMessage.getHeaders().getContentLength() > MAX_IMPORT_BYTES) {
+      throw tooLarge(inputMessage);
+    }
+    final InputStream body = inputMessage.getBody();
+    final List<WidgetCreateRequest> widgets = new ArrayList<>();
+    byte[] batch = new byte[BATCH_BYTES];
+    int length = 0;
+    long total = 0;
+    boolean exhausted = false;
+    while (!exhausted) {
+      final int read = body.readNBytes(batch, length, batch.length - length);
+      exhausted = length + read < batch.length;
+      length += read;
+      total += read;
+      if (total > MAX_IMPORT_BYTES) {
+        throw tooLarge(inputMessage);
+      }
+
+      // the last line of the body is complete even without a line separator
+      final int end = exhausted ? length : lastLineEnd(batch, length);
+      if (end == 0 && !exhausted) {
+        // a single line doesn't fit into the batch
+        batch = Arrays.copyOf(batch, batch.length * 2);
+        continue;
+      }
+      final int[] lines = lineBounds(batch, end, MAX_IMPORT_SIZE - widgets.size());
+      if (lines == null) {
+        throw invalid(
+            "Import must contain from 1 to " + MAX_IMPORT_SIZE + " widgets.", inputMessage);
+      }
+      widgets.addAll(parse(batch, lines, inputMessage));
+      System.arraycopy(batch, end, batch, 0, length - end);
+      length -= end;
+    }
+    if (widgets.isEmpty()) {
+      throw invalid(
+          "Import must contain from 1 to " + MAX_IMPORT_SIZE + " widgets.", inputMessage);
+    }
+    return new WidgetImportRequest(Collections.unmodifiableList(widgets));
+  }
+
+  /**
+   * Parses lines of a batch in parallel.
+   *
+   * @param batch Batch of the body.
+   * @param lines Start (inclusive) and end (exclusive) offsets of the lines to parse.
+   * @param inputMessage Request the batch is read from.
+   * @return Parsed widgets in the order of the lines.
+   */
+  private List<WidgetCreateRequest> parse(
+      final byte[] batch, final int[] lines, final HttpInputMessage inputMessage) {
+    try {
+      return IntStream.range(0, lines.length / 2)
+          .parallel()
+          .mapToObj(line -> parse(batch, lines[2 * line], lines[2 * line + 1]))
+          .collect(Collectors.toList());
+    } catch (UncheckedIOException e) {
+      throw new HttpMessageNotReadableException(
+          "Invalid widget import: " + e.getCause().getMessage(), e.getCause(), inputMessage);
+    }
+  }
+
+  private static HttpMessageNotReadableException tooLarge(final HttpInputMessage inputMessage) {
+    return invalid("Import must not exceed " + MAX_IMPORT_BYTES + " bytes.", inputMessage);
+  }
+
+  private static HttpMessageNotReadableException invalid(
+      final String message, final HttpInputMessage inputMessage) {
+    return new HttpMessageNotReadableException(
+        message, new RequestValidationException(message), inputMessage);
+  }
+
+  /**
+   * Looks up the end of the last complete line of the batch.
+   *
+   * @param batch Batch of the body.
+   * @param length Amount of bytes in the batch.
+   * @return Offset right after the last line separator or 0 if there is none.
+   */
+  private static int lastLineEnd(final byte[] batch, final int length) {
+    for (int i = length - 1; i >= 0; i--) {
+      if (batch[i] == LINE_SEPARATOR) {
+        return i + 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Looks up non-blank lines of the batch.
+   *
+   * @param body Batch of the body.
+   * @param length Amount of bytes of the complete lines in the batch.
+   * @param maxLines Max amount of non-blank lines to look up.
+   * @return Start (inclusive) and end (exclusive) offsets of every non-blank line one after
+   *     another, or {@code null} if the batch has more than {@code maxLines} non-blank lines.
+   */
+  @Nullable
+  private static int[] lineBounds(final byte[] body, final int length, final int maxLines) {
+    int[] bounds = new int[64];
+    int size = 0;
+    int start = 0;
+    while (start < length) {
+      int end = start;
+      while (end < length && body[end] != LINE_SEPARATOR) {
+        end++;
+      }
+      final int next = end + 1;
+      if (end > start && body[end - 1] == CARRIAGE_RETURN) {
+        end--;
+      }
+      if (!isBlank(body, start, end)) {
+        if (size == 2 * maxLines) {
+          return null;
+        }
+        if (size == bounds.length) {
+          bounds = Arrays.copyOf(bounds, size * 2);
+        }
+        bounds[size++] = start;
+        bounds[size++] = end;
+      }
+      start = next;
+    }
+    return Arrays.copyOf(bounds, size);
+  }
+
+  private static boolean isBlank(final byte[] body, final int start, final int end) {
+    for (int i = start; i < end; i++) {
+      if (!Character.isWhitespace(body[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private WidgetCreateRequest parse(final byte[] body, final int start, final int end) {
+    try {
+      return widgetReader.readValue(body, start, end - start);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  protected void writeInternal(
+      final WidgetImportRequest widgetImport, final HttpOutputMessage outputMessage) {
+    throw new HttpMessageNotWritableException("Widget import can't be written.");
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.api.incerceptor;
+
+import com.aklimenko.miro.exception.RateLimitExceededException;
+import java.util.concurrent.Semaphore;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Limits amount of imports processed at once. <br>
+ * Every import keeps all of its parsed widgets and the imported ones in memory until it's applied
+ * and written back, so a permit is taken before the body is read and released once the response
+ * is completed. Imports beyond the limit are rejected right away rather than queued, since a
+ * queued import would hold its connection and body for as long as the others take.
+ */
+public class ImportConcurrencyInterceptor extends HandlerInterceptorAdapter {
+
+  private final Semaphore imports;
+
+  /** @param maxConcurrentImports Max amount of imports processed at once. */
+  public ImportConcurrencyInterceptor(final int maxConcurrentImports) {
+    this.imports = new Semaphore(maxConcurrentImports);
+  }
+
+  @Override
+  public boolean preHandle(
+      final HttpServletRequest request, final HttpServletResponse response, final Object handler)
+      throws Exception {
+    if (!imports.tryAcquire()) {
+      throw new RateLimitExceededException();
+    }
+
+    return super.preHandle(request, response, handler);
+  }
+
+  @Override
+  public void afterCompletion(
+      final HttpServletRequest request,
+      final HttpServletResponse response,
+      final Object handler,
+      @Nullable final Exception ex)
+      throws Exception {
+    // called only when the permit was taken by preHandle
+    imports.release();
+    super.afterCompletion(request, response, handler, ex);
+  }
+}
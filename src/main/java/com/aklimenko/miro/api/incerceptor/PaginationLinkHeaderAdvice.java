@@ -43,28 +43,30 @@ public class PaginationLinkHeaderAdvice implements ResponseBodyAdvice<Object> {
       ServerHttpResponse response) {
     if (body instanceof Page) {
       final Page<?> page = (Page<?>) body;
-      page.getAfterId().ifPresent(afterId -> setLinkHeader(request, response, afterId));
+      page.getNextCursor().ifPresent(cursor -> setLinkHeader(request, response, cursor));
       return page;
     }
     return body;
   }
 
   /**
-   * Sets next 'Link' header to return to a user.
+   * Sets next 'Link' header to return to a user. Link always refers to the next page by cursor,
+   * even if the current page was requested by {@code afterId}.
    *
    * @param request Initial request.
    * @param response Response to modify.
-   * @param afterId Param to include into link ref to perform next page search.
+   * @param cursor Param to include into link ref to perform next page search.
    */
   private void setLinkHeader(
-      final ServerHttpRequest request, final ServerHttpResponse response, final String afterId) {
-    response.getHeaders().add("Link", buildLinkHeader(request, afterId));
+      final ServerHttpRequest request, final ServerHttpResponse response, final String cursor) {
+    response.getHeaders().add("Link", buildLinkHeader(request, cursor));
   }
 
-  private String buildLinkHeader(final ServerHttpRequest request, final String afterId) {
+  private String buildLinkHeader(final ServerHttpRequest request, final String cursor) {
     final String uri =
         UriComponentsBuilder.fromUri(request.getURI())
-            .replaceQueryParam("afterId", afterId)
+            .replaceQueryParam("afterId")
+            .replaceQueryParam("cursor", cursor)
             .build()
             .toUriString();
     return "<" + uri + ">; rel=\"next\"";
@@ -16,22 +16,50 @@ package com.aklimenko.miro.api.incerceptor;
 import com.aklimenko.miro.model.ratelimit.RateLimitStats;
 import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
 import com.aklimenko.miro.service.RateLimitService;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import org.springframework.core.MethodParameter;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
 
-/** Response interceptor to add rate limit headers if required. */
+/**
+ * Response interceptor to add rate limit headers if required. Headers report the counters of the
+ * client resolved by {@link RateLimitInterceptor}. <br>
+ * Runs for every rate limited response, so headers are set on the servlet response directly
+ * instead of being buffered by {@link ServerHttpResponse} and header values are formatted by
+ * {@link RateLimitStats} reusing cached strings. Time spent in the advice is counted and exposed
+ * as a JMX attribute when {@code spring.jmx.enabled} is set.
+ */
 @ControllerAdvice
+@ManagedResource(objectName = "com.aklimenko.miro:name=RateLimitHeadersAdvice")
 public class RateLimitHeadersAdvice implements ResponseBodyAdvice<Object> {
 
-  private final RateLimitService rateLimitService;
+  static final String RATE_LIMIT_HEADER = "X-Rate-Limit";
+  static final String AVAILABLE_REQUESTS_HEADER = "X-Available-Requests";
+  static final String NEXT_RESET_HEADER = "X-Next-Reset";
 
-  public RateLimitHeadersAdvice(RateLimitService rateLimitService) {
-    this.rateLimitService = rateLimitService;
+  private final LongAdder invocations = new LongAdder();
+  private final LongAdder nanos = new LongAdder();
+
+  /** @return Amount of rate limited responses the headers were added to. */
+  @ManagedAttribute(description = "Rate limited responses the headers were added to")
+  public long getInvocations() {
+    return invocations.sum();
+  }
+
+  /** @return Total time spent adding rate limit headers in nanoseconds. */
+  @ManagedAttribute(description = "Total time spent adding rate limit headers in nanoseconds")
+  public long getTotalNanos() {
+    return nanos.sum();
   }
 
   @Override
@@ -53,16 +81,36 @@ public class RateLimitHeadersAdvice implements ResponseBodyAdvice<Object> {
       final Class<? extends HttpMessageConverter<?>> selectedConverterType,
       final ServerHttpRequest request,
       final ServerHttpResponse response) {
-    RateLimitTarget.of(request.getMethodValue(), request.getURI().getPath())
-        .map(rateLimitService::getStats)
-        .ifPresent(stats -> setRateLimitHeaders(response, stats));
+    if (request instanceof ServletServerHttpRequest) {
+      // target and client are resolved by RateLimitInterceptor for rate limited requests only
+      final HttpServletRequest servletRequest =
+          ((ServletServerHttpRequest) request).getServletRequest();
+      final RateLimitTarget target =
+          (RateLimitTarget) servletRequest.getAttribute(RateLimitInterceptor.TARGET_ATTRIBUTE);
+      final RateLimitService client =
+          (RateLimitService) servletRequest.getAttribute(RateLimitInterceptor.CLIENT_ATTRIBUTE);
+      if (target != null && client != null) {
+        final long startedAt = System.nanoTime();
+        setRateLimitHeaders(response, client.getStats(target));
+        nanos.add(System.nanoTime() - startedAt);
+        invocations.increment();
+      }
+    }
 
     return body;
   }
 
   private void setRateLimitHeaders(final ServerHttpResponse response, final RateLimitStats stats) {
-    response.getHeaders().add("X-Rate-Limit", stats.getRateLimit());
-    response.getHeaders().add("X-Available-Requests", stats.getAvailableRequests());
-    response.getHeaders().add("X-Next-Reset", stats.getNextReset());
+    if (response instanceof ServletServerHttpResponse) {
+      final HttpServletResponse servletResponse =
+          ((ServletServerHttpResponse) response).getServletResponse();
+      servletResponse.setHeader(RATE_LIMIT_HEADER, stats.getRateLimit());
+      servletResponse.setHeader(AVAILABLE_REQUESTS_HEADER, stats.getAvailableRequests());
+      servletResponse.setHeader(NEXT_RESET_HEADER, stats.getNextReset());
+    } else {
+      response.getHeaders().set(RATE_LIMIT_HEADER, stats.getRateLimit());
+      response.getHeaders().set(AVAILABLE_REQUESTS_HEADER, stats.getAvailableRequests());
+      response.getHeaders().set(NEXT_RESET_HEADER, stats.getNextReset());
+    }
   }
 }
@@ -14,29 +14,87 @@
 package com.aklimenko.miro.api.incerceptor;
 
 import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import com.aklimenko.miro.service.ClientRateLimitRegistry;
 import com.aklimenko.miro.service.RateLimitService;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import javax.annotation.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 /**
  * Rate limit handler interceptor. <br>
  * Applies rate limits rules for requests before they're processed by corresponding controller.
+ * Requests are rate limited per client identified by {@link #API_KEY_HEADER} header, {@code
+ * Authorization} header or remote address, in this order, see {@link ClientRateLimitRegistry}
+ * for how unknown keys are admitted. Requests admitted by the client limits are also counted by
+ * the limits of the whole application instance. Resolved target operation and rate limit counters
+ * of the client are stored into request attributes, so that {@link RateLimitHeadersAdvice}
+ * doesn't resolve them again.
  */
 public class RateLimitInterceptor extends HandlerInterceptorAdapter {
 
-  private final RateLimitService rateLimitService;
+  /** Header with API key identifying the client. */
+  public static final String API_KEY_HEADER = "X-Api-Key";
 
-  public RateLimitInterceptor(RateLimitService rateLimitService) {
-    this.rateLimitService = rateLimitService;
+  /** Request attribute with {@link RateLimitTarget} of rate limited request. */
+  static final String TARGET_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".target";
+
+  /** Request attribute with {@link RateLimitService} of the client of rate limited request. */
+  static final String CLIENT_ATTRIBUTE = RateLimitInterceptor.class.getName() + ".client";
+
+  /** Longer client keys are hashed to keep memory taken by every client bounded. */
+  private static final int MAX_CLIENT_KEY_LENGTH = 64;
+
+  private final ClientRateLimitRegistry clients;
+
+  public RateLimitInterceptor(ClientRateLimitRegistry clients) {
+    this.clients = clients;
   }
 
   @Override
   public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
       throws Exception {
-    RateLimitTarget.of(request.getMethod(), request.getRequestURI())
-        .ifPresent(rateLimitService::tryConsume);
+    final RateLimitTarget target =
+        RateLimitTarget.resolve(request.getMethod(), request.getRequestURI());
+    if (target != null) {
+      final RateLimitService client = clients.client(clientKey(request), request.getRemoteAddr());
+      request.setAttribute(TARGET_ATTRIBUTE, target);
+      request.setAttribute(CLIENT_ATTRIBUTE, client);
+      client.tryConsume(target);
+      // counted after the client limits, so requests rejected for a noisy client don't exhaust
+      // limits of the other clients
+      clients.instance().tryConsume(RateLimitTarget.GLOBAL);
+    }
 
     return super.preHandle(request, response, handler);
   }
+
+  /**
+   * Resolves key provided by the client of the request. Keys of different kinds never collide
+   * since they get different prefixes.
+   *
+   * @param request Request to resolve client key of.
+   * @return Client key or {@code null} if the client is identified by remote address only.
+   */
+  @Nullable
+  static String clientKey(final HttpServletRequest request) {
+    final String apiKey = request.getHeader(API_KEY_HEADER);
+    if (apiKey != null) {
+      return bounded("key:" + apiKey);
+    }
+    final String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+    if (authorization != null) {
+      return bounded("auth:" + authorization);
+    }
+    return null;
+  }
+
+  private static String bounded(final String key) {
+    return key.length() <= MAX_CLIENT_KEY_LENGTH
+        ? key
+        : "hash:" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8));
+  }
 }
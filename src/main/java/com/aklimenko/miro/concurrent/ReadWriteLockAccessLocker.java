@@ -17,11 +17,14 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 /** {@link ConcurrentAccessLocker} implementation based on {@link ReentrantReadWriteLock}. */
 @Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 @ConditionalOnProperty(value = "concurrent.accesslocker", havingValue = "readWriteLock")
 public class ReadWriteLockAccessLocker implements ConcurrentAccessLocker {
 
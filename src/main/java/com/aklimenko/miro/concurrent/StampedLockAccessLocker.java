@@ -16,11 +16,14 @@ package com.aklimenko.miro.concurrent;
 import java.util.concurrent.locks.StampedLock;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 /** {@link ConcurrentAccessLocker} implementation based on {@link StampedLockAccessLocker}. */
 @Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 @ConditionalOnProperty(value = "concurrent.accesslocker", havingValue = "stampedLock", matchIfMissing = true)
 public class StampedLockAccessLocker implements ConcurrentAccessLocker {
   private static final int OPTIMISTIC_READ_RETRIES = 10;
@@ -29,7 +32,12 @@ public class StampedLockAccessLocker implements ConcurrentAccessLocker {
 
   /**
    * Tries read data optimistically (without acquiring read lock) and falls back into read lock
-   * synchronization after specified amount attempts.
+   * synchronization after specified amount attempts. <br>
+   * Optimistic read may observe shared resources in the middle of a concurrent write, so read
+   * supplier may fail with an arbitrary runtime exception (e.g. {@link
+   * java.util.ConcurrentModificationException} or {@link NullPointerException}). Such failures
+   * are treated as inconsistent reads if the stamp turns out to be invalid. Exceptions thrown
+   * under a valid stamp are genuine and propagated as is.
    *
    * @param readSupplier Read data supplier.
    * @param retries Amount of optimistic read attempts.
@@ -37,22 +45,31 @@ public class StampedLockAccessLocker implements ConcurrentAccessLocker {
    */
   private <RESULT> RESULT readOptimisticallyWithRetries(
       final Supplier<RESULT> readSupplier, int retries) {
-    long stamp = lock.tryOptimisticRead();
-    RESULT result = readSupplier.get();
-    if (!lock.validate(stamp)) {
-      if (retries > 0) {
-        return readOptimisticallyWithRetries(readSupplier, retries - 1);
+    for (int attempt = 0; attempt <= retries; attempt++) {
+      final long stamp = lock.tryOptimisticRead();
+      if (stamp == 0) {
+        // write lock is held exclusively so there is no point to read optimistically
+        break;
       }
 
-      stamp = lock.readLock();
       try {
-        result = readSupplier.get();
-      } finally {
-        lock.unlockRead(stamp);
+        final RESULT result = readSupplier.get();
+        if (lock.validate(stamp)) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        if (lock.validate(stamp)) {
+          throw e;
+        }
       }
     }
 
-    return result;
+    final long stamp = lock.readLock();
+    try {
+      return readSupplier.get();
+    } finally {
+      lock.unlockRead(stamp);
+    }
   }
 
   @Override
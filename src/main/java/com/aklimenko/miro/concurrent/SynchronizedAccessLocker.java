@@ -15,11 +15,14 @@ package com.aklimenko.miro.concurrent;
 
 import java.util.function.Function;
 import java.util.function.Supplier;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 /** {@link ConcurrentAccessLocker} implementation based on full synchronization on the locker. */
 @Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 @ConditionalOnProperty(value = "concurrent.accesslocker", havingValue = "synchronized")
 public class SynchronizedAccessLocker implements ConcurrentAccessLocker {
 
@@ -0,0 +1,27 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.exception;
+
+import java.util.ConcurrentModificationException;
+
+/**
+ * Exception to indicate that the board was modified while all of its widgets were being read, so
+ * they can't be read consistently. Mapped to HTTP 409 Conflict response if nothing was sent yet.
+ */
+public class BoardModifiedException extends ConcurrentModificationException {
+
+  public BoardModifiedException() {
+    super("Board was modified during the export. Retry the export.");
+  }
+}
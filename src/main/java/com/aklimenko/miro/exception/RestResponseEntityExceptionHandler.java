@@ -15,6 +15,8 @@ package com.aklimenko.miro.exception;
 
 import com.aklimenko.miro.model.ApiError;
 import com.aklimenko.miro.utils.ResponseHelper;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.ClientAbortException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
@@ -77,6 +79,33 @@ public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionH
     return ResponseHelper.conflict(ex.getMessage());
   }
 
+  @ExceptionHandler({BoardLimitExceededException.class})
+  public ResponseEntity<ApiError> handleBoardLimitExceededException(
+      final Exception ex, final WebRequest request) {
+    log.debug(ex.getMessage());
+
+    return ResponseHelper.conflict(ex.getMessage());
+  }
+
+  @ExceptionHandler({BoardModifiedException.class})
+  public ResponseEntity<ApiError> handleBoardModifiedException(
+      final BoardModifiedException ex, final HttpServletResponse response) {
+    log.debug(ex.getMessage());
+
+    // drops the part of the body written before the failure
+    response.resetBuffer();
+    return ResponseHelper.conflict(ex.getMessage());
+  }
+
+  @ExceptionHandler({ClientAbortException.class})
+  public void handleClientAbortException(final ClientAbortException ex)
+      throws ClientAbortException {
+    log.debug(ex.getMessage());
+
+    // nothing can be sent over the aborted connection, so the container just closes it
+    throw ex;
+  }
+
   @ExceptionHandler({RateLimitExceededException.class})
   public ResponseEntity<ApiError> handleRateLimitExceededException(
       final Exception ex, final WebRequest request) {
@@ -0,0 +1,124 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.pagination;
+
+import com.aklimenko.miro.exception.RequestValidationException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable model of opaque pagination cursor pointing at a position in z-order. <br>
+ * Cursor holds z-index of the last widget of a page. The next page is resumed by a single seek to
+ * the first widget above the position, so the cursor stays valid when the widget it was taken from
+ * is deleted or moved. Since z-index is unique on a board, it identifies the position on its own.
+ * <br>
+ * If repository keeps versions, cursor also holds the version the page was read from, so the next
+ * page is read from the same version.
+ */
+public final class Cursor {
+  private static final char SEPARATOR = '.';
+  private static final String MALFORMED_MSG = "Pagination cursor is malformed.";
+
+  private final int z;
+  @Nullable private final Long version;
+
+  private Cursor(final int z, @Nullable final Long version) {
+    this.z = z;
+    this.version = version;
+  }
+
+  /**
+   * @param z Z-index of the position.
+   * @return Cursor pointing at the position in the latest version.
+   */
+  public static Cursor of(final int z) {
+    return new Cursor(z, null);
+  }
+
+  /**
+   * @param z Z-index of the position.
+   * @param version Optional version the position belongs to.
+   * @return Cursor pointing at the position in provided version.
+   */
+  public static Cursor of(final int z, @Nullable final Long version) {
+    return new Cursor(z, version);
+  }
+
+  /**
+   * Decodes cursor token previously returned to a user.
+   *
+   * @param token Token to decode.
+   * @return Decoded cursor.
+   * @throws RequestValidationException if token is malformed.
+   */
+  public static Cursor decode(final String token) {
+    final String text;
+    try {
+      text = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+    } catch (IllegalArgumentException e) {
+      throw new RequestValidationException(MALFORMED_MSG);
+    }
+
+    final int separator = text.indexOf(SEPARATOR);
+    try {
+      return new Cursor(
+          Integer.parseInt(text, 0, separator < 0 ? text.length() : separator, 10),
+          separator < 0 ? null : Long.parseLong(text, separator + 1, text.length(), 10));
+    } catch (NumberFormatException e) {
+      throw new RequestValidationException(MALFORMED_MSG);
+    }
+  }
+
+  /** @return URL safe token to return to a user. */
+  public String encode() {
+    final String text =
+        version == null ? Integer.toString(z) : Integer.toString(z) + SEPARATOR + version;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(text.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  public int getZ() {
+    return z;
+  }
+
+  @Nullable
+  public Long getVersion() {
+    return version;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    Cursor cursor = (Cursor) o;
+
+    if (z != cursor.z) return false;
+    return version != null ? version.equals(cursor.version) : cursor.version == null;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = z;
+    result = 31 * result + (version != null ? version.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "Cursor{" + "z=" + z + ", version=" + version + '}';
+  }
+}
@@ -14,11 +14,11 @@
 package com.aklimenko.miro.model.pagination;
 
 import com.fasterxml.jackson.annotation.JsonValue;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 import javax.annotation.Nonnull;
 
 /**
@@ -30,32 +30,33 @@ import javax.annotation.Nonnull;
 public class Page<T> {
   @Nonnull private final List<T> responseEntities;
   @Nonnull private final Pagination pagination;
-  @Nonnull private final Function<T, String> getId;
+  @Nonnull private final Function<T, Cursor> getCursor;
 
   public Page(
       final @Nonnull List<T> responseEntities,
       final @Nonnull Pagination pagination,
-      final @Nonnull Function<T, String> getId) {
+      final @Nonnull Function<T, Cursor> getCursor) {
     this.responseEntities = Objects.requireNonNull(responseEntities);
     this.pagination = Objects.requireNonNull(pagination);
-    this.getId = Objects.requireNonNull(getId);
+    this.getCursor = Objects.requireNonNull(getCursor);
   }
 
   /**
-   * @return Unmodifiable list of entities to be serialized into JSON. Ensures the list is capped
-   *     according to pagination limit parameter.
+   * @return Unmodifiable view of entities to be serialized into JSON. Ensures the list is capped
+   *     according to pagination limit parameter without copying it.
    */
   @JsonValue
   @Nonnull
   public List<T> getResponseEntities() {
-    return responseEntities.stream()
-        .limit(pagination.getLimit())
-        .collect(Collectors.toUnmodifiableList());
+    return Collections.unmodifiableList(
+        responseEntities.size() > pagination.getLimit()
+            ? responseEntities.subList(0, pagination.getLimit())
+            : responseEntities);
   }
 
-  /** @return Optional {@code afterID} token param to be included into next ref Link header. */
+  /** @return Optional {@code cursor} token param to be included into next ref Link header. */
   @Nonnull
-  public Optional<String> getAfterId() {
+  public Optional<String> getNextCursor() {
     if (responseEntities.isEmpty()) {
       return Optional.empty();
     }
@@ -63,7 +64,7 @@ public class Page<T> {
     final int responseSize = Math.min(pagination.getLimit(), responseEntities.size());
     final T last = responseEntities.get(responseSize - 1);
     return responseSize == pagination.getLimit()
-        ? Optional.of(getId.apply(last))
+        ? Optional.of(getCursor.apply(last).encode())
         : Optional.empty();
   }
 }
@@ -19,26 +19,87 @@ import javax.annotation.Nullable;
 
 /**
  * Immutable model representing pagination parameters. <br>
- * Defines default and max value for pagination limit.
+ * Defines default and max value for pagination limit. Streamed pages are never collected in
+ * memory, so they're allowed to be much larger than the collected ones. Page is resumed either
+ * from an opaque {@link Cursor} or from the ID of the last widget of the previous page, which is
+ * kept for compatibility. Streamed page can't link the next one, so it's also resumed from the
+ * z-index of the last streamed widget.
  */
 public class Pagination {
   public static final int DEFAULT_LIMIT = 10;
   public static final int MAX_LIMIT = 500;
+  public static final int MAX_STREAM_LIMIT = 100_000;
 
   private final int limit;
   @Nullable private final String afterId;
-
-  private Pagination(int limit, final @Nullable String afterId) {
-    if (limit > MAX_LIMIT) {
-      throw new RequestValidationException("Pagination limit must not exceed " + MAX_LIMIT + ".");
+  @Nullable private final Integer afterZ;
+  @Nullable private final Cursor cursor;
+
+  private Pagination(
+      int limit,
+      final int maxLimit,
+      final @Nullable String afterId,
+      final @Nullable Integer afterZ,
+      final @Nullable Cursor cursor) {
+    if (limit > maxLimit) {
+      throw new RequestValidationException("Pagination limit must not exceed " + maxLimit + ".");
+    }
+    if (afterId != null && cursor != null) {
+      throw new RequestValidationException(
+          "Only one of pagination parameters 'cursor' and 'afterId' may be provided.");
+    }
+    if (afterZ != null && (afterId != null || cursor != null)) {
+      throw new RequestValidationException(
+          "Pagination parameter 'afterZ' may not be provided with 'cursor' or 'afterId'.");
     }
 
     this.limit = limit;
     this.afterId = afterId;
+    this.afterZ = afterZ;
+    this.cursor = cursor;
   }
 
-  public static Pagination of(@Nullable final Integer limit, @Nullable final String afterId) {
-    return new Pagination(Optional.ofNullable(limit).orElse(DEFAULT_LIMIT), afterId);
+  /**
+   * @param limit Optional page size, {@link #DEFAULT_LIMIT} if not provided.
+   * @param afterId Optional ID of the widget to look up for widgets after.
+   * @param cursor Optional cursor token to look up for widgets after.
+   * @return Validated pagination parameters.
+   * @throws RequestValidationException if limit is too big, cursor token is malformed or both ID
+   *     and cursor are provided.
+   */
+  public static Pagination of(
+      @Nullable final Integer limit,
+      @Nullable final String afterId,
+      @Nullable final String cursor) {
+    return new Pagination(
+        Optional.ofNullable(limit).orElse(DEFAULT_LIMIT),
+        MAX_LIMIT,
+        afterId,
+        null,
+        cursor == null ? null : Cursor.decode(cursor));
+  }
+
+  /**
+   * @param limit Optional page size, {@link #DEFAULT_LIMIT} if not provided.
+   * @param afterId Optional ID of the widget to look up for widgets after.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @param cursor Optional cursor token to look up for widgets after.
+   * @return Validated pagination parameters of a streamed page limited by {@link
+   *     #MAX_STREAM_LIMIT}.
+   * @throws RequestValidationException if limit is too big, cursor token is malformed or more than
+   *     one of ID, z-index and cursor are provided.
+   */
+  public static Pagination ofStream(
+      @Nullable final Integer limit,
+      @Nullable final String afterId,
+      @Nullable final Integer afterZ,
+      @Nullable final String cursor) {
+    return new Pagination(
+        Optional.ofNullable(limit).orElse(DEFAULT_LIMIT),
+        MAX_STREAM_LIMIT,
+        afterId,
+        afterZ,
+        cursor == null ? null : Cursor.decode(cursor));
   }
 
   public int getLimit() {
@@ -50,6 +111,16 @@ public class Pagination {
     return afterId;
   }
 
+  @Nullable
+  public Integer getAfterZ() {
+    return afterZ;
+  }
+
+  @Nullable
+  public Cursor getCursor() {
+    return cursor;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -58,18 +129,32 @@ public class Pagination {
     Pagination that = (Pagination) o;
 
     if (limit != that.limit) return false;
-    return afterId != null ? afterId.equals(that.afterId) : that.afterId == null;
+    if (afterId != null ? !afterId.equals(that.afterId) : that.afterId != null) return false;
+    if (afterZ != null ? !afterZ.equals(that.afterZ) : that.afterZ != null) return false;
+    return cursor != null ? cursor.equals(that.cursor) : that.cursor == null;
   }
 
   @Override
   public int hashCode() {
     int result = limit;
     result = 31 * result + (afterId != null ? afterId.hashCode() : 0);
+    result = 31 * result + (afterZ != null ? afterZ.hashCode() : 0);
+    result = 31 * result + (cursor != null ? cursor.hashCode() : 0);
     return result;
   }
 
   @Override
   public String toString() {
-    return "Pagination{" + "limit=" + limit + ", afterId='" + afterId + '\'' + '}';
+    return "Pagination{"
+        + "limit="
+        + limit
+        + ", afterId='"
+        + afterId
+        + '\''
+        + ", afterZ="
+        + afterZ
+        + ", cursor="
+        + cursor
+        + '}';
   }
 }
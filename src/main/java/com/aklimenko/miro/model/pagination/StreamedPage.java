@@ -0,0 +1,62 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.pagination;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+
+/**
+ * Represents page of entities streamed to a user. Serialized into JSON array of entities written
+ * straight from the iterator into the response while iterating, so the page is never collected in
+ * memory. <br>
+ * Entities are read only while the page is being serialized, so the response is already committed
+ * when they're read and the next page can't be linked with 'Link' header. Next page is resumed by
+ * the position of the last streamed entity instead.
+ *
+ * @param <T> Entity type.
+ */
+public class StreamedPage<T> implements JsonSerializable {
+  @Nonnull private final Iterator<T> entities;
+  @Nonnull private final Pagination pagination;
+
+  public StreamedPage(final @Nonnull Iterator<T> entities, final @Nonnull Pagination pagination) {
+    this.entities = Objects.requireNonNull(entities);
+    this.pagination = Objects.requireNonNull(pagination);
+  }
+
+  @Override
+  public void serialize(final JsonGenerator generator, final SerializerProvider serializers)
+      throws IOException {
+    generator.writeStartArray();
+    for (int written = 0; written < pagination.getLimit() && entities.hasNext(); written++) {
+      serializers.defaultSerializeValue(entities.next(), generator);
+    }
+    generator.writeEndArray();
+  }
+
+  @Override
+  public void serializeWithType(
+      final JsonGenerator generator,
+      final SerializerProvider serializers,
+      final TypeSerializer typeSerializer)
+      throws IOException {
+    serialize(generator, serializers);
+  }
+}
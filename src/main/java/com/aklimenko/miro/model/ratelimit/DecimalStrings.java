@@ -0,0 +1,70 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.ratelimit;
+
+/**
+ * Cache of decimal string representations of rate limit stats values sent in response headers.
+ * <br>
+ * Available requests count changes on every request but stays within the limit, so values up to
+ * {@link #SMALL_VALUES} are kept in a table filled lazily. Limits and window reset timestamps
+ * change only on rule updates and at window boundaries, so larger values are kept in a small
+ * direct mapped cache evicting the value sharing the slot. <br>
+ * Both tables are read and written without synchronization: strings and entries are immutable, so
+ * a thread either sees a complete value or formats it once more.
+ */
+final class DecimalStrings {
+
+  private static final int SMALL_VALUES = 4096;
+  private static final int LARGE_SLOTS_BITS = 4;
+
+  private static final String[] small = new String[SMALL_VALUES];
+  private static final Entry[] large = new Entry[1 << LARGE_SLOTS_BITS];
+
+  private DecimalStrings() {}
+
+  /**
+   * Formats value into a decimal string reusing the cached one.
+   *
+   * @param value Value to format.
+   * @return Decimal string representation of the value.
+   */
+  static String of(final long value) {
+    if (value >= 0 && value < SMALL_VALUES) {
+      String text = small[(int) value];
+      if (text == null) {
+        text = Long.toString(value);
+        small[(int) value] = text;
+      }
+      return text;
+    }
+
+    final int slot = (Long.hashCode(value) * 0x9E3779B9) >>> (Integer.SIZE - LARGE_SLOTS_BITS);
+    Entry entry = large[slot];
+    if (entry == null || entry.value != value) {
+      entry = new Entry(value, Long.toString(value));
+      large[slot] = entry;
+    }
+    return entry.text;
+  }
+
+  private static final class Entry {
+    private final long value;
+    private final String text;
+
+    Entry(final long value, final String text) {
+      this.value = value;
+      this.text = text;
+    }
+  }
+}
@@ -14,54 +14,70 @@
 package com.aklimenko.miro.model.ratelimit;
 
 import com.aklimenko.miro.MiroConfig;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import com.aklimenko.miro.exception.RequestValidationException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-/** Represents rate limit rule mutable model for fixed window rate limit algorithm. */
+/**
+ * Represents rate limit rule model. <br>
+ * Rule parameters are kept in an immutable {@link Snapshot} published through {@link
+ * AtomicReference}, so the rule can be reconfigured while requests are rate limited: every
+ * request sees either the old or the new parameters, never a mix of them. Rate limit services
+ * should take a single {@link #snapshot()} per operation instead of reading parameters one by one.
+ * Update is validated before the new snapshot is published, so an invalid update leaves the rule
+ * untouched.
+ */
 @Component
 public class RateLimitRule {
 
-  /** Rate limit fixed size window in milliseconds */
-  private int windowSizeMS;
-
-  /** Limits specified for each rate limited target operation. */
-  private final Map<RateLimitTarget, Integer> limits = new HashMap<>();
+  private final AtomicReference<Snapshot> current;
 
   @Autowired
   public RateLimitRule(@Nonnull final MiroConfig config) {
-    this(
-        config.getRateLimit().getWindowSizeMS(),
-        config.getRateLimit().getLimitGlobal(),
-        config.getRateLimit().getLimitListWidgets(),
-        config.getRateLimit().getLimitReadWidget(),
-        config.getRateLimit().getLimitCreateWidget(),
-        config.getRateLimit().getLimitUpdateWidget(),
-        config.getRateLimit().getLimitDeleteWidget());
+    this.current =
+        new AtomicReference<>(
+            Snapshot.of(
+                config.getRateLimit().getWindowSizeMS(),
+                config.getRateLimit().getLimitGlobal(),
+                config.getRateLimit().getLimitListWidgets(),
+                config.getRateLimit().getLimitReadWidget(),
+                config.getRateLimit().getLimitCreateWidget(),
+                config.getRateLimit().getLimitUpdateWidget(),
+                config.getRateLimit().getLimitDeleteWidget(),
+                config.getRateLimit().getLimitBatchWidgets(),
+                config.getRateLimit().getLimitExportWidgets(),
+                config.getRateLimit().getLimitImportWidgets()));
   }
 
-  private RateLimitRule(
-      final int windowSizeMS,
-      final int limitGlobal,
-      final int limitListWidgets,
-      final int limitReadWidget,
-      final int limitCreateWidget,
-      final int limitUpdateWidget,
-      final int limitDeleteWidget) {
-    this.windowSizeMS = windowSizeMS;
-    limits.put(RateLimitTarget.GLOBAL, limitGlobal);
-    limits.put(RateLimitTarget.WIDGETS_LIST, limitListWidgets);
-    limits.put(RateLimitTarget.WIDGET_READ, limitReadWidget);
-    limits.put(RateLimitTarget.WIDGET_CREATE, limitCreateWidget);
-    limits.put(RateLimitTarget.WIDGET_UPDATE, limitUpdateWidget);
-    limits.put(RateLimitTarget.WIDGET_DELETE, limitDeleteWidget);
+  private RateLimitRule(final Snapshot snapshot) {
+    this.current = new AtomicReference<>(snapshot);
+  }
+
+  /**
+   * Builds rule limiting {@link RateLimitTarget#GLOBAL} target only, every other target is
+   * unlimited.
+   *
+   * @param windowSizeMS Rate limit window size.
+   * @param limitGlobal Limit of {@link RateLimitTarget#GLOBAL} target, -1 if unlimited.
+   * @return Rule with specified global limit.
+   * @throws RequestValidationException if rule parameters are not valid.
+   */
+  public static RateLimitRule global(final int windowSizeMS, final int limitGlobal) {
+    return new RateLimitRule(
+        Snapshot.of(windowSizeMS, limitGlobal, -1, -1, -1, -1, -1, -1, -1, -1));
+  }
+
+  /** @return Current immutable parameters of the rule. */
+  public Snapshot snapshot() {
+    return current.get();
   }
 
   public int getWindowSizeMS() {
-    return windowSizeMS;
+    return current.get().getWindowSizeMS();
   }
 
   /**
@@ -70,28 +86,20 @@ public class RateLimitRule {
    * @param target Target operation to look up limit for.
    * @return Limit for specified target.
    */
-  public Integer getLimit(final RateLimitTarget target) {
-    return limits.get(target);
-  }
-
-  private void putIfNonnull(final Integer limit, final RateLimitTarget target) {
-    Optional.ofNullable(limit).ifPresent(l -> limits.put(target, l));
+  public int getLimit(final RateLimitTarget target) {
+    return current.get().getLimit(target);
   }
 
   /**
    * Updates rate limit rule parameters according to specified rate limit rule update request. <br>
-   * Mutates the existing model bean.
+   * Publishes new snapshot of the rule atomically.
    *
    * @param rateLimitUpdate Rate limit rule update request payload.
+   * @return Published snapshot of the rule.
+   * @throws RequestValidationException if updated rule parameters are not valid.
    */
-  public void updateBy(final RateLimitRuleUpdateRequest rateLimitUpdate) {
-    windowSizeMS = Optional.ofNullable(rateLimitUpdate.getWindowSizeMS()).orElse(windowSizeMS);
-    putIfNonnull(rateLimitUpdate.getLimitGlobal(), RateLimitTarget.GLOBAL);
-    putIfNonnull(rateLimitUpdate.getLimitListWidgets(), RateLimitTarget.WIDGETS_LIST);
-    putIfNonnull(rateLimitUpdate.getLimitReadWidget(), RateLimitTarget.WIDGET_READ);
-    putIfNonnull(rateLimitUpdate.getLimitCreateWidget(), RateLimitTarget.WIDGET_CREATE);
-    putIfNonnull(rateLimitUpdate.getLimitUpdateWidget(), RateLimitTarget.WIDGET_UPDATE);
-    putIfNonnull(rateLimitUpdate.getLimitDeleteWidget(), RateLimitTarget.WIDGET_DELETE);
+  public Snapshot updateBy(final RateLimitRuleUpdateRequest rateLimitUpdate) {
+    return current.updateAndGet(snapshot -> snapshot.updatedBy(rateLimitUpdate));
   }
 
   /**
@@ -101,14 +109,7 @@ public class RateLimitRule {
    * @return {@link RateLimitRuleResponse} built from existing rate limit rule.
    */
   public RateLimitRuleResponse toResponse() {
-    return new RateLimitRuleResponse(
-        windowSizeMS,
-        limits.get(RateLimitTarget.GLOBAL),
-        limits.get(RateLimitTarget.WIDGETS_LIST),
-        limits.get(RateLimitTarget.WIDGET_READ),
-        limits.get(RateLimitTarget.WIDGET_CREATE),
-        limits.get(RateLimitTarget.WIDGET_UPDATE),
-        limits.get(RateLimitTarget.WIDGET_DELETE));
+    return current.get().toResponse();
   }
 
   @Override
@@ -118,14 +119,139 @@ public class RateLimitRule {
 
     RateLimitRule that = (RateLimitRule) o;
 
-    if (windowSizeMS != that.windowSizeMS) return false;
-    return limits.equals(that.limits);
+    return current.get().equals(that.current.get());
   }
 
   @Override
   public int hashCode() {
-    int result = windowSizeMS;
-    result = 31 * result + limits.hashCode();
-    return result;
+    return current.get().hashCode();
+  }
+
+  /** Immutable parameters of the rule with limits indexed by {@link RateLimitTarget#ordinal()}. */
+  public static final class Snapshot {
+
+    /** Rate limit window size in milliseconds */
+    private final int windowSizeMS;
+
+    /** Limits specified for each rate limited target operation. */
+    private final int[] limits;
+
+    private Snapshot(final int windowSizeMS, final int[] limits) {
+      this.windowSizeMS = windowSizeMS;
+      this.limits = limits;
+    }
+
+    private static Snapshot of(
+        final int windowSizeMS,
+        final int limitGlobal,
+        final int limitListWidgets,
+        final int limitReadWidget,
+        final int limitCreateWidget,
+        final int limitUpdateWidget,
+        final int limitDeleteWidget,
+        final int limitBatchWidgets,
+        final int limitExportWidgets,
+        final int limitImportWidgets) {
+      final int[] limits = new int[RateLimitTarget.values().length];
+      limits[RateLimitTarget.GLOBAL.ordinal()] = limitGlobal;
+      limits[RateLimitTarget.WIDGETS_LIST.ordinal()] = limitListWidgets;
+      limits[RateLimitTarget.WIDGET_READ.ordinal()] = limitReadWidget;
+      limits[RateLimitTarget.WIDGET_CREATE.ordinal()] = limitCreateWidget;
+      limits[RateLimitTarget.WIDGET_UPDATE.ordinal()] = limitUpdateWidget;
+      limits[RateLimitTarget.WIDGET_DELETE.ordinal()] = limitDeleteWidget;
+      limits[RateLimitTarget.WIDGETS_BATCH.ordinal()] = limitBatchWidgets;
+      limits[RateLimitTarget.WIDGETS_EXPORT.ordinal()] = limitExportWidgets;
+      limits[RateLimitTarget.WIDGETS_IMPORT.ordinal()] = limitImportWidgets;
+      return validated(windowSizeMS, limits);
+    }
+
+    private static Snapshot validated(final int windowSizeMS, final int[] limits) {
+      if (windowSizeMS <= 0) {
+        throw new RequestValidationException("Rate limit window size must be positive.");
+      }
+      for (final int limit : limits) {
+        if (limit < -1) {
+          throw new RequestValidationException(
+              "Rate limit must be -1 for unlimited operations or not negative.");
+        }
+      }
+      return new Snapshot(windowSizeMS, limits);
+    }
+
+    public int getWindowSizeMS() {
+      return windowSizeMS;
+    }
+
+    /**
+     * Retrieves rate limit for specific target operation.
+     *
+     * @param target Target operation to look up limit for.
+     * @return Limit for specified target, negative if the target is unlimited.
+     */
+    public int getLimit(final RateLimitTarget target) {
+      return limits[target.ordinal()];
+    }
+
+    private Snapshot updatedBy(final RateLimitRuleUpdateRequest rateLimitUpdate) {
+      final int[] updated = limits.clone();
+      putIfNonnull(updated, rateLimitUpdate.getLimitGlobal(), RateLimitTarget.GLOBAL);
+      putIfNonnull(updated, rateLimitUpdate.getLimitListWidgets(), RateLimitTarget.WIDGETS_LIST);
+      putIfNonnull(updated, rateLimitUpdate.getLimitReadWidget(), RateLimitTarget.WIDGET_READ);
+      putIfNonnull(updated, rateLimitUpdate.getLimitCreateWidget(), RateLimitTarget.WIDGET_CREATE);
+      putIfNonnull(updated, rateLimitUpdate.getLimitUpdateWidget(), RateLimitTarget.WIDGET_UPDATE);
+      putIfNonnull(updated, rateLimitUpdate.getLimitDeleteWidget(), RateLimitTarget.WIDGET_DELETE);
+      putIfNonnull(updated, rateLimitUpdate.getLimitBatchWidgets(), RateLimitTarget.WIDGETS_BATCH);
+      putIfNonnull(
+          updated, rateLimitUpdate.getLimitExportWidgets(), RateLimitTarget.WIDGETS_EXPORT);
+      putIfNonnull(
+          updated, rateLimitUpdate.getLimitImportWidgets(), RateLimitTarget.WIDGETS_IMPORT);
+      final Integer updatedWindowSizeMS = rateLimitUpdate.getWindowSizeMS();
+      return validated(
+          updatedWindowSizeMS != null ? updatedWindowSizeMS : windowSizeMS, updated);
+    }
+
+    private static void putIfNonnull(
+        final int[] limits, @Nullable final Integer limit, final RateLimitTarget target) {
+      if (limit != null) {
+        limits[target.ordinal()] = limit;
+      }
+    }
+
+    /**
+     * Builds serializable into JSON rate limit rule response from the snapshot parameters.
+     *
+     * @return {@link RateLimitRuleResponse} built from the snapshot.
+     */
+    public RateLimitRuleResponse toResponse() {
+      return new RateLimitRuleResponse(
+          windowSizeMS,
+          getLimit(RateLimitTarget.GLOBAL),
+          getLimit(RateLimitTarget.WIDGETS_LIST),
+          getLimit(RateLimitTarget.WIDGET_READ),
+          getLimit(RateLimitTarget.WIDGET_CREATE),
+          getLimit(RateLimitTarget.WIDGET_UPDATE),
+          getLimit(RateLimitTarget.WIDGET_DELETE),
+          getLimit(RateLimitTarget.WIDGETS_BATCH),
+          getLimit(RateLimitTarget.WIDGETS_EXPORT),
+          getLimit(RateLimitTarget.WIDGETS_IMPORT));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Snapshot that = (Snapshot) o;
+
+      if (windowSizeMS != that.windowSizeMS) return false;
+      return Arrays.equals(limits, that.limits);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = windowSizeMS;
+      result = 31 * result + Arrays.hashCode(limits);
+      return result;
+    }
   }
 }
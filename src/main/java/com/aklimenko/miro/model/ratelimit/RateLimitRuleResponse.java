@@ -39,6 +39,15 @@ public class RateLimitRuleResponse {
   @JsonProperty("limitDeleteWidget")
   private final int limitDeleteWidget;
 
+  @JsonProperty("limitBatchWidgets")
+  private final int limitBatchWidgets;
+
+  @JsonProperty("limitExportWidgets")
+  private final int limitExportWidgets;
+
+  @JsonProperty("limitImportWidgets")
+  private final int limitImportWidgets;
+
   public RateLimitRuleResponse(
       int windowSizeMS,
       int limitGlobal,
@@ -46,7 +55,10 @@ public class RateLimitRuleResponse {
       int limitReadWidget,
       int limitCreateWidget,
       int limitUpdateWidget,
-      int limitDeleteWidget) {
+      int limitDeleteWidget,
+      int limitBatchWidgets,
+      int limitExportWidgets,
+      int limitImportWidgets) {
     this.windowSizeMS = windowSizeMS;
     this.limitGlobal = limitGlobal;
     this.limitListWidgets = limitListWidgets;
@@ -54,6 +66,9 @@ public class RateLimitRuleResponse {
     this.limitCreateWidget = limitCreateWidget;
     this.limitUpdateWidget = limitUpdateWidget;
     this.limitDeleteWidget = limitDeleteWidget;
+    this.limitBatchWidgets = limitBatchWidgets;
+    this.limitExportWidgets = limitExportWidgets;
+    this.limitImportWidgets = limitImportWidgets;
   }
 
   public int getWindowSizeMS() {
@@ -84,6 +99,18 @@ public class RateLimitRuleResponse {
     return limitDeleteWidget;
   }
 
+  public int getLimitBatchWidgets() {
+    return limitBatchWidgets;
+  }
+
+  public int getLimitExportWidgets() {
+    return limitExportWidgets;
+  }
+
+  public int getLimitImportWidgets() {
+    return limitImportWidgets;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -97,7 +124,10 @@ public class RateLimitRuleResponse {
     if (limitReadWidget != that.limitReadWidget) return false;
     if (limitCreateWidget != that.limitCreateWidget) return false;
     if (limitUpdateWidget != that.limitUpdateWidget) return false;
-    return limitDeleteWidget == that.limitDeleteWidget;
+    if (limitDeleteWidget != that.limitDeleteWidget) return false;
+    if (limitBatchWidgets != that.limitBatchWidgets) return false;
+    if (limitExportWidgets != that.limitExportWidgets) return false;
+    return limitImportWidgets == that.limitImportWidgets;
   }
 
   @Override
@@ -109,6 +139,9 @@ public class RateLimitRuleResponse {
     result = 31 * result + limitCreateWidget;
     result = 31 * result + limitUpdateWidget;
     result = 31 * result + limitDeleteWidget;
+    result = 31 * result + limitBatchWidgets;
+    result = 31 * result + limitExportWidgets;
+    result = 31 * result + limitImportWidgets;
     return result;
   }
 
@@ -129,6 +162,12 @@ public class RateLimitRuleResponse {
         + limitUpdateWidget
         + ", limitDeleteWidget="
         + limitDeleteWidget
+        + ", limitBatchWidgets="
+        + limitBatchWidgets
+        + ", limitExportWidgets="
+        + limitExportWidgets
+        + ", limitImportWidgets="
+        + limitImportWidgets
         + '}';
   }
 }
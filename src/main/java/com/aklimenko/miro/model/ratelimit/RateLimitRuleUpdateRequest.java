@@ -27,6 +27,9 @@ public class RateLimitRuleUpdateRequest {
   @Nullable private final Integer limitCreateWidget;
   @Nullable private final Integer limitUpdateWidget;
   @Nullable private final Integer limitDeleteWidget;
+  @Nullable private final Integer limitBatchWidgets;
+  @Nullable private final Integer limitExportWidgets;
+  @Nullable private final Integer limitImportWidgets;
 
   public RateLimitRuleUpdateRequest(
       @JsonProperty("windowSizeMS") @Nullable final Integer windowSizeMS,
@@ -35,16 +38,22 @@ public class RateLimitRuleUpdateRequest {
       @JsonProperty("limitReadWidget") @Nullable final Integer limitReadWidget,
       @JsonProperty("limitCreateWidget") @Nullable final Integer limitCreateWidget,
       @JsonProperty("limitUpdateWidget") @Nullable final Integer limitUpdateWidget,
-      @JsonProperty("limitDeleteWidget") @Nullable final Integer limitDeleteWidget) {
+      @JsonProperty("limitDeleteWidget") @Nullable final Integer limitDeleteWidget,
+      @JsonProperty("limitBatchWidgets") @Nullable final Integer limitBatchWidgets,
+      @JsonProperty("limitExportWidgets") @Nullable final Integer limitExportWidgets,
+      @JsonProperty("limitImportWidgets") @Nullable final Integer limitImportWidgets) {
     if (windowSizeMS == null
         && limitGlobal == null
         && limitListWidgets == null
         && limitReadWidget == null
         && limitCreateWidget == null
         && limitUpdateWidget == null
-        && limitDeleteWidget == null) {
+        && limitDeleteWidget == null
+        && limitBatchWidgets == null
+        && limitExportWidgets == null
+        && limitImportWidgets == null) {
       throw new RequestValidationException(
-          "At least one of the fields 'windowSizeMS', 'limitGlobal', 'limitListWidgets', 'limitReadWidget', 'limitCreateWidget', 'limitUpdateWidget', 'limitDeleteWidget' must be provided.");
+          "At least one of the fields 'windowSizeMS', 'limitGlobal', 'limitListWidgets', 'limitReadWidget', 'limitCreateWidget', 'limitUpdateWidget', 'limitDeleteWidget', 'limitBatchWidgets', 'limitExportWidgets', 'limitImportWidgets' must be provided.");
     }
     this.windowSizeMS = windowSizeMS;
     this.limitGlobal = limitGlobal;
@@ -53,6 +62,9 @@ public class RateLimitRuleUpdateRequest {
     this.limitCreateWidget = limitCreateWidget;
     this.limitUpdateWidget = limitUpdateWidget;
     this.limitDeleteWidget = limitDeleteWidget;
+    this.limitBatchWidgets = limitBatchWidgets;
+    this.limitExportWidgets = limitExportWidgets;
+    this.limitImportWidgets = limitImportWidgets;
   }
 
   public Integer getWindowSizeMS() {
@@ -83,6 +95,18 @@ public class RateLimitRuleUpdateRequest {
     return limitDeleteWidget;
   }
 
+  public Integer getLimitBatchWidgets() {
+    return limitBatchWidgets;
+  }
+
+  public Integer getLimitExportWidgets() {
+    return limitExportWidgets;
+  }
+
+  public Integer getLimitImportWidgets() {
+    return limitImportWidgets;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -106,9 +130,18 @@ public class RateLimitRuleUpdateRequest {
     if (limitUpdateWidget != null
         ? !limitUpdateWidget.equals(that.limitUpdateWidget)
         : that.limitUpdateWidget != null) return false;
-    return limitDeleteWidget != null
-        ? limitDeleteWidget.equals(that.limitDeleteWidget)
-        : that.limitDeleteWidget == null;
+    if (limitDeleteWidget != null
+        ? !limitDeleteWidget.equals(that.limitDeleteWidget)
+        : that.limitDeleteWidget != null) return false;
+    if (limitBatchWidgets != null
+        ? !limitBatchWidgets.equals(that.limitBatchWidgets)
+        : that.limitBatchWidgets != null) return false;
+    if (limitExportWidgets != null
+        ? !limitExportWidgets.equals(that.limitExportWidgets)
+        : that.limitExportWidgets != null) return false;
+    return limitImportWidgets != null
+        ? limitImportWidgets.equals(that.limitImportWidgets)
+        : that.limitImportWidgets == null;
   }
 
   @Override
@@ -120,6 +153,9 @@ public class RateLimitRuleUpdateRequest {
     result = 31 * result + (limitCreateWidget != null ? limitCreateWidget.hashCode() : 0);
     result = 31 * result + (limitUpdateWidget != null ? limitUpdateWidget.hashCode() : 0);
     result = 31 * result + (limitDeleteWidget != null ? limitDeleteWidget.hashCode() : 0);
+    result = 31 * result + (limitBatchWidgets != null ? limitBatchWidgets.hashCode() : 0);
+    result = 31 * result + (limitExportWidgets != null ? limitExportWidgets.hashCode() : 0);
+    result = 31 * result + (limitImportWidgets != null ? limitImportWidgets.hashCode() : 0);
     return result;
   }
 
@@ -140,6 +176,12 @@ public class RateLimitRuleUpdateRequest {
         + limitUpdateWidget
         + ", limitDeleteWidget="
         + limitDeleteWidget
+        + ", limitBatchWidgets="
+        + limitBatchWidgets
+        + ", limitExportWidgets="
+        + limitExportWidgets
+        + ", limitImportWidgets="
+        + limitImportWidgets
         + '}';
   }
 }
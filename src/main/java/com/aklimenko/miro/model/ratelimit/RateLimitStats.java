@@ -17,10 +17,14 @@ import javax.annotation.Nonnull;
 
 /**
  * Immutable rate limit stats model representing data returning to a user with rate limited
- * requests.
+ * requests. <br>
+ * Stats are built for every rate limited response, so values are formatted with {@link
+ * DecimalStrings} reusing the strings of the recent values instead of formatting them again.
  */
 public class RateLimitStats {
 
+  private static final String UNLIMITED = "unlimited";
+
   @Nonnull private final String rateLimit;
   @Nonnull private final String availableRequests;
   @Nonnull private final String nextReset;
@@ -41,12 +45,14 @@ public class RateLimitStats {
    * @return {@link RateLimitStats} for unlimited requests.
    */
   public static RateLimitStats ofUnlimited(long nextReset) {
-    return new RateLimitStats("unlimited", "unlimited", String.valueOf(nextReset));
+    return new RateLimitStats(UNLIMITED, UNLIMITED, DecimalStrings.of(nextReset));
   }
 
   public static RateLimitStats of(int rateLimit, long availableRequests, long nextReset) {
     return new RateLimitStats(
-        String.valueOf(rateLimit), String.valueOf(availableRequests), String.valueOf(nextReset));
+        DecimalStrings.of(rateLimit),
+        DecimalStrings.of(availableRequests),
+        DecimalStrings.of(nextReset));
   }
 
   public String getRateLimit() {
@@ -13,9 +13,9 @@
 */
 package com.aklimenko.miro.model.ratelimit;
 
-import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
+import javax.annotation.Nullable;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.server.PathContainer;
 import org.springframework.web.util.pattern.PathPattern;
@@ -32,22 +32,31 @@ public enum RateLimitTarget {
    */
   GLOBAL("", ""),
   WIDGETS_LIST(HttpMethod.GET.name(), "/widgets"),
+  /** Precedes {@link #WIDGET_READ} so that pattern matching prefers it same as the router. */
+  WIDGETS_EXPORT(HttpMethod.GET.name(), "/widgets/export"),
   WIDGET_READ(HttpMethod.GET.name(), "/widgets/{id}"),
   WIDGET_CREATE(HttpMethod.POST.name(), "/widgets"),
   WIDGET_UPDATE(HttpMethod.PUT.name(), "/widgets/{id}"),
-  WIDGET_DELETE(HttpMethod.DELETE.name(), "/widgets/{id}");
+  WIDGET_DELETE(HttpMethod.DELETE.name(), "/widgets/{id}"),
+  WIDGETS_BATCH(HttpMethod.POST.name(), "/widgets/batch"),
+  WIDGETS_IMPORT(HttpMethod.POST.name(), "/widgets/import");
 
   RateLimitTarget(final String method, final String pathPattern) {
     this.method = method;
+    this.path = pathPattern;
     this.pathPattern = PathPatternParser.defaultInstance.parse(pathPattern);
   }
 
   private final String method;
+  private final String path;
   private final PathPattern pathPattern;
 
-  private boolean matches(final String requestMethod, final String requestUri) {
-    final PathContainer uriContainer = PathContainer.parsePath(requestUri);
-    return Objects.equals(this.method, requestMethod) && this.pathPattern.matches(uriContainer);
+  String getMethod() {
+    return method;
+  }
+
+  String getPath() {
+    return path;
   }
 
   /**
@@ -59,6 +68,39 @@ public enum RateLimitTarget {
    *     Optional#empty()} when no rate limit target matches specific request.
    */
   public static Optional<RateLimitTarget> of(final String requestMethod, final String requestUri) {
-    return Arrays.stream(values()).filter(t -> t.matches(requestMethod, requestUri)).findFirst();
+    return Optional.ofNullable(resolve(requestMethod, requestUri));
+  }
+
+  /**
+   * Resolves combination of request method and request URI into rate limit target operation with
+   * precompiled {@link RateLimitTargetRouter}. Doesn't allocate, so it's used on every request.
+   *
+   * @param requestMethod Request method to match with rate limit target operation.
+   * @param requestUri Request URI to match with rate limit target operation.
+   * @return Resolved {@link RateLimitTarget} or {@code null} when no rate limit target matches
+   *     specific request.
+   */
+  @Nullable
+  public static RateLimitTarget resolve(final String requestMethod, final String requestUri) {
+    return RateLimitTargetRouter.resolve(requestMethod, requestUri);
+  }
+
+  /**
+   * Matches request against path patterns of all the targets decoding the request URI.
+   *
+   * @param requestMethod Request method to match with rate limit target operation.
+   * @param requestUri Request URI to match with rate limit target operation.
+   * @return The first matching {@link RateLimitTarget} or {@code null} if none matches.
+   */
+  @Nullable
+  static RateLimitTarget matchPatterns(final String requestMethod, final String requestUri) {
+    final PathContainer uriContainer = PathContainer.parsePath(requestUri);
+    for (final RateLimitTarget target : values()) {
+      if (Objects.equals(target.method, requestMethod)
+          && target.pathPattern.matches(uriContainer)) {
+        return target;
+      }
+    }
+    return null;
   }
 }
@@ -0,0 +1,170 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.ratelimit;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Precompiled routing table resolving request method and URI into {@link RateLimitTarget}. <br>
+ * Path patterns of every method are compiled into a trie of path segments on class
+ * initialization. Request URI is walked segment by segment comparing regions of the URI in place,
+ * so resolving neither parses the URI nor allocates. Literal segments take precedence over
+ * {@code {variable}} ones, same as in Spring MVC handler mappings, and optional trailing
+ * separator is matched same as by {@link org.springframework.web.util.pattern.PathPattern}. <br>
+ * URIs with percent-encoded characters or matrix variables are left to {@link
+ * RateLimitTarget#matchPatterns} decoding them.
+ */
+final class RateLimitTargetRouter {
+
+  private static final Node GET = compile(HttpMethod.GET);
+  private static final Node POST = compile(HttpMethod.POST);
+  private static final Node PUT = compile(HttpMethod.PUT);
+  private static final Node DELETE = compile(HttpMethod.DELETE);
+
+  private RateLimitTargetRouter() {}
+
+  /**
+   * Resolves request into rate limit target operation.
+   *
+   * @param requestMethod Request method.
+   * @param requestUri Request URI.
+   * @return Matching target or {@code null} if none matches.
+   */
+  @Nullable
+  static RateLimitTarget resolve(final String requestMethod, final String requestUri) {
+    final Node root = root(requestMethod);
+    if (root == null) {
+      return null;
+    }
+    if (requiresDecoding(requestUri)) {
+      return RateLimitTarget.matchPatterns(requestMethod, requestUri);
+    }
+    return root.match(requestUri);
+  }
+
+  @Nullable
+  private static Node root(final String requestMethod) {
+    switch (requestMethod) {
+      case "GET":
+        return GET;
+      case "POST":
+        return POST;
+      case "PUT":
+        return PUT;
+      case "DELETE":
+        return DELETE;
+      default:
+        return null;
+    }
+  }
+
+  private static boolean requiresDecoding(final String uri) {
+    for (int i = 0; i < uri.length(); i++) {
+      final char c = uri.charAt(i);
+      if (c == '%' || c == ';') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Node compile(final HttpMethod method) {
+    final Node root = new Node();
+    for (final RateLimitTarget target : RateLimitTarget.values()) {
+      if (target.getMethod().equals(method.name())) {
+        root.add(target.getPath(), target);
+      }
+    }
+    return root;
+  }
+
+  /** Trie node of a path segment. */
+  private static final class Node {
+    private String[] literals = new String[0];
+    private Node[] literalChildren = new Node[0];
+    @Nullable private Node variableChild;
+    @Nullable private RateLimitTarget target;
+
+    /** Adds path pattern to the trie. The first target added for a pattern wins. */
+    void add(final String path, final RateLimitTarget patternTarget) {
+      Node node = this;
+      for (final String segment : path.split("/")) {
+        if (!segment.isEmpty()) {
+          node = node.child(segment);
+        }
+      }
+      if (node.target == null) {
+        node.target = patternTarget;
+      }
+    }
+
+    private Node child(final String segment) {
+      if (segment.startsWith("{") && segment.endsWith("}")) {
+        if (variableChild == null) {
+          variableChild = new Node();
+        }
+        return variableChild;
+      }
+      for (int i = 0; i < literals.length; i++) {
+        if (literals[i].equals(segment)) {
+          return literalChildren[i];
+        }
+      }
+      literals = Arrays.copyOf(literals, literals.length + 1);
+      literalChildren = Arrays.copyOf(literalChildren, literalChildren.length + 1);
+      literals[literals.length - 1] = segment;
+      return literalChildren[literalChildren.length - 1] = new Node();
+    }
+
+    @Nullable
+    RateLimitTarget match(final String uri) {
+      if (uri.isEmpty() || uri.charAt(0) != '/') {
+        return null;
+      }
+      final int length = uri.length();
+      Node node = this;
+      int start = 1;
+      while (start < length) {
+        int end = uri.indexOf('/', start);
+        if (end < 0) {
+          end = length;
+        }
+        node = node.next(uri, start, end - start);
+        if (node == null) {
+          return null;
+        }
+        start = end + 1;
+      }
+      // single trailing separator is optional
+      return node.target;
+    }
+
+    @Nullable
+    private Node next(final String uri, final int offset, final int length) {
+      if (length == 0) {
+        // empty segment of a double separator matches nothing
+        return null;
+      }
+      for (int i = 0; i < literals.length; i++) {
+        final String literal = literals[i];
+        if (literal.length() == length && uri.regionMatches(offset, literal, 0, length)) {
+          return literalChildren[i];
+        }
+      }
+      return variableChild;
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import com.aklimenko.miro.exception.RequestValidationException;
+
+/**
+ * Immutable axis-aligned rectangle on the board plane. <br>
+ * Widget occupies the rectangle of its width and height centered at its {@code (x, y)}
+ * coordinates. Rectangles are closed, so the ones touching each other by an edge intersect.
+ */
+public final class BoundingBox {
+
+  private final double minX;
+  private final double minY;
+  private final double maxX;
+  private final double maxY;
+
+  private BoundingBox(final double minX, final double minY, final double maxX, final double maxY) {
+    this.minX = minX;
+    this.minY = minY;
+    this.maxX = maxX;
+    this.maxY = maxY;
+  }
+
+  /**
+   * @param minX Left edge.
+   * @param minY Bottom edge.
+   * @param maxX Right edge.
+   * @param maxY Top edge.
+   * @return Bounding box with provided edges.
+   * @throws RequestValidationException if any edge is not a finite number or edges are reversed.
+   */
+  public static BoundingBox of(
+      final double minX, final double minY, final double maxX, final double maxY) {
+    if (!Double.isFinite(minX)
+        || !Double.isFinite(minY)
+        || !Double.isFinite(maxX)
+        || !Double.isFinite(maxY)) {
+      throw new RequestValidationException("Bounding box edges must be finite numbers.");
+    }
+    if (minX > maxX || minY > maxY) {
+      throw new RequestValidationException(
+          "Bounding box lower-left corner must not exceed its upper-right corner.");
+    }
+    return new BoundingBox(minX, minY, maxX, maxY);
+  }
+
+  /**
+   * @param widget Widget to get bounding box of.
+   * @return Rectangle occupied by the widget.
+   */
+  public static BoundingBox of(final Widget widget) {
+    final double halfWidth = widget.getWidth() / 2;
+    final double halfHeight = widget.getHeight() / 2;
+    return new BoundingBox(
+        widget.getX() - halfWidth,
+        widget.getY() - halfHeight,
+        widget.getX() + halfWidth,
+        widget.getY() + halfHeight);
+  }
+
+  /**
+   * Parses bounding box from {@code minX,minY,maxX,maxY} text.
+   *
+   * @param text Comma separated coordinates of the lower-left and the upper-right corners.
+   * @return Parsed bounding box.
+   * @throws RequestValidationException if text is malformed.
+   */
+  public static BoundingBox parse(final String text) {
+    final String[] edges = text.split(",", -1);
+    if (edges.length != 4) {
+      throw new RequestValidationException(
+          "Bounding box must be provided as 'minX,minY,maxX,maxY'.");
+    }
+    try {
+      return of(
+          Double.parseDouble(edges[0].trim()),
+          Double.parseDouble(edges[1].trim()),
+          Double.parseDouble(edges[2].trim()),
+          Double.parseDouble(edges[3].trim()));
+    } catch (NumberFormatException e) {
+      throw new RequestValidationException(
+          "Bounding box must be provided as 'minX,minY,maxX,maxY'.");
+    }
+  }
+
+  public double getMinX() {
+    return minX;
+  }
+
+  public double getMinY() {
+    return minY;
+  }
+
+  public double getMaxX() {
+    return maxX;
+  }
+
+  public double getMaxY() {
+    return maxY;
+  }
+
+  /**
+   * @param widget Widget to test.
+   * @return Whether rectangle occupied by the widget intersects this one.
+   */
+  public boolean intersects(final Widget widget) {
+    final double halfWidth = widget.getWidth() / 2;
+    final double halfHeight = widget.getHeight() / 2;
+    return widget.getX() - halfWidth <= maxX
+        && widget.getX() + halfWidth >= minX
+        && widget.getY() - halfHeight <= maxY
+        && widget.getY() + halfHeight >= minY;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    BoundingBox that = (BoundingBox) o;
+
+    return Double.compare(that.minX, minX) == 0
+        && Double.compare(that.minY, minY) == 0
+        && Double.compare(that.maxX, maxX) == 0
+        && Double.compare(that.maxY, maxY) == 0;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = Double.hashCode(minX);
+    result = 31 * result + Double.hashCode(minY);
+    result = 31 * result + Double.hashCode(maxX);
+    result = 31 * result + Double.hashCode(maxY);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "BoundingBox{"
+        + "minX="
+        + minX
+        + ", minY="
+        + minY
+        + ", maxX="
+        + maxX
+        + ", maxY="
+        + maxY
+        + '}';
+  }
+}
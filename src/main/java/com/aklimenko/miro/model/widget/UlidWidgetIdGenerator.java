@@ -0,0 +1,37 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link WidgetIdGenerator} implementation generating time-ordered ULIDs: 48 bits of milliseconds
+ * since epoch followed by 80 random bits. <br>
+ * Random bits come from {@link ThreadLocalRandom}, so concurrent writers never contend on a
+ * shared random generator. IDs created within the same millisecond are ordered randomly. Used by
+ * default.
+ */
+@Component
+@ConditionalOnProperty(value = "persistence.idGenerator", havingValue = "ulid", matchIfMissing = true)
+public class UlidWidgetIdGenerator implements WidgetIdGenerator {
+
+  @Override
+  public WidgetId next() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final long high = System.currentTimeMillis() << 16 | (random.nextInt() & 0xffff);
+    return WidgetId.ulid(high, random.nextLong());
+  }
+}
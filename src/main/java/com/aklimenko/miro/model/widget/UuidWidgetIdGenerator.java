@@ -0,0 +1,33 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import java.util.UUID;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link WidgetIdGenerator} implementation generating random UUIDs as it was done before ULIDs
+ * were introduced. Backed by {@link java.security.SecureRandom} shared by all the writers.
+ */
+@Component
+@ConditionalOnProperty(value = "persistence.idGenerator", havingValue = "uuid")
+public class UuidWidgetIdGenerator implements WidgetIdGenerator {
+
+  @Override
+  public WidgetId next() {
+    final UUID uuid = UUID.randomUUID();
+    return WidgetId.uuid(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+  }
+}
@@ -27,7 +27,7 @@ public class Widget {
 
   @JsonProperty("id")
   @Nonnull
-  private final String id;
+  private final WidgetId id;
 
   @JsonProperty("x")
   private final int x;
@@ -49,7 +49,7 @@ public class Widget {
   private final Instant lastModifiedAt;
 
   public Widget(
-      @JsonProperty("id") final String id,
+      @JsonProperty("id") final WidgetId id,
       @JsonProperty("x") int x,
       @JsonProperty("y") int y,
       @JsonProperty("z") int z,
@@ -65,7 +65,7 @@ public class Widget {
     this.lastModifiedAt = lastModifiedAt;
   }
 
-  public String getId() {
+  public WidgetId getId() {
     return id;
   }
 
@@ -104,6 +104,17 @@ public class Widget {
     return new Widget(id, x, y, z + 1, width, height, Instant.now());
   }
 
+  /**
+   * Creates new widget shifted upwards to provided z-index with updated lastModifiedAt. Used when
+   * the widget is shifted by several positions at once.
+   *
+   * @param z Z-index to shift the widget to.
+   * @return {@link Widget} representing new shifted widget.
+   */
+  public Widget shiftUpwardTo(final int z) {
+    return new Widget(id, x, y, z, width, height, Instant.now());
+  }
+
   /**
    * Updates the widget by provided {@link WidgetUpdateRequest}. Creates new {@link Widget} with
    * updated fields and updated lastModifiedAt.
@@ -119,4 +130,52 @@ public class Widget {
     double height = Optional.ofNullable(widgetUpdate.getHeight()).orElse(this.height);
     return new Widget(this.id, x, y, z, width, height, Instant.now());
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    Widget widget = (Widget) o;
+
+    if (x != widget.x) return false;
+    if (y != widget.y) return false;
+    if (z != widget.z) return false;
+    if (Double.compare(widget.width, width) != 0) return false;
+    if (Double.compare(widget.height, height) != 0) return false;
+    if (!id.equals(widget.id)) return false;
+    return lastModifiedAt.equals(widget.lastModifiedAt);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = id.hashCode();
+    result = 31 * result + x;
+    result = 31 * result + y;
+    result = 31 * result + z;
+    result = 31 * result + Double.hashCode(width);
+    result = 31 * result + Double.hashCode(height);
+    result = 31 * result + lastModifiedAt.hashCode();
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "Widget{"
+        + "id="
+        + id
+        + ", x="
+        + x
+        + ", y="
+        + y
+        + ", z="
+        + z
+        + ", width="
+        + width
+        + ", height="
+        + height
+        + ", lastModifiedAt="
+        + lastModifiedAt
+        + '}';
+  }
 }
@@ -0,0 +1,137 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import com.aklimenko.miro.utils.ValidationHelper;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import java.util.Optional;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable model to represent single operation of widget batch request. Deserialized from JSON
+ * with the kind of operation provided in {@code op} field: {@code create} with widget create
+ * payload, {@code update} with widget ID and widget update payload or {@code delete} with widget
+ * ID.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "op")
+@JsonSubTypes({
+  @JsonSubTypes.Type(value = WidgetBatchOperation.Create.class, name = "create"),
+  @JsonSubTypes.Type(value = WidgetBatchOperation.Update.class, name = "update"),
+  @JsonSubTypes.Type(value = WidgetBatchOperation.Delete.class, name = "delete")
+})
+public abstract class WidgetBatchOperation {
+
+  /** Kind of the operation. */
+  public enum Type {
+    CREATE,
+    UPDATE,
+    DELETE
+  }
+
+  @Nonnull private final Type type;
+
+  private WidgetBatchOperation(@Nonnull final Type type) {
+    this.type = type;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** Creates widget the same way as {@code POST /widgets} does. */
+  public static final class Create extends WidgetBatchOperation {
+
+    @Nonnull private final WidgetCreateRequest widget;
+
+    @JsonCreator
+    public Create(@JsonProperty("widget") @Nullable final WidgetCreateRequest widget) {
+      super(Type.CREATE);
+      this.widget = ValidationHelper.requireNonNull(widget, "Field 'widget' must be provided.");
+    }
+
+    public WidgetCreateRequest getWidget() {
+      return widget;
+    }
+
+    @Override
+    public String toString() {
+      return "Create{" + "widget=" + widget + '}';
+    }
+  }
+
+  /** Updates widget found by ID the same way as {@code PUT /widgets/:id} does. */
+  public static final class Update extends WidgetBatchOperation {
+
+    @Nonnull private final String id;
+
+    @Nonnull private final WidgetUpdateRequest widget;
+
+    @JsonCreator
+    public Update(
+        @JsonProperty("id") @Nullable final String id,
+        @JsonProperty("widget") @Nullable final WidgetUpdateRequest widget) {
+      super(Type.UPDATE);
+      this.id = ValidationHelper.requireNonNull(id, "Field 'id' must be provided.");
+      this.widget = ValidationHelper.requireNonNull(widget, "Field 'widget' must be provided.");
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /** @return Parsed widget ID, empty if the ID can't belong to any widget. */
+    public Optional<WidgetId> getWidgetId() {
+      return WidgetId.tryParse(id);
+    }
+
+    public WidgetUpdateRequest getWidget() {
+      return widget;
+    }
+
+    @Override
+    public String toString() {
+      return "Update{" + "id='" + id + '\'' + ", widget=" + widget + '}';
+    }
+  }
+
+  /** Deletes widget found by ID the same way as {@code DELETE /widgets/:id} does. */
+  public static final class Delete extends WidgetBatchOperation {
+
+    @Nonnull private final String id;
+
+    @JsonCreator
+    public Delete(@JsonProperty("id") @Nullable final String id) {
+      super(Type.DELETE);
+      this.id = ValidationHelper.requireNonNull(id, "Field 'id' must be provided.");
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    /** @return Parsed widget ID, empty if the ID can't belong to any widget. */
+    public Optional<WidgetId> getWidgetId() {
+      return WidgetId.tryParse(id);
+    }
+
+    @Override
+    public String toString() {
+      return "Delete{" + "id='" + id + '\'' + '}';
+    }
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import com.aklimenko.miro.exception.WidgetNotFoundException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import javax.annotation.Nullable;
+import org.springframework.http.HttpStatus;
+
+/**
+ * Immutable model to represent outcome of a single operation of widget batch request. Serialized
+ * into JSON with the HTTP status the same operation would get as a standalone request, together
+ * with either the widget it left behind or the error explaining why it wasn't applied. <br>
+ * The widget is reported as the operation left it, later operations of the same batch may shift
+ * it upwards.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WidgetBatchResult {
+
+  @JsonProperty("status")
+  private final int status;
+
+  @JsonProperty("widget")
+  @Nullable
+  private final Widget widget;
+
+  @JsonProperty("error")
+  @Nullable
+  private final String error;
+
+  private WidgetBatchResult(
+      final HttpStatus status, @Nullable final Widget widget, @Nullable final String error) {
+    this.status = status.value();
+    this.widget = widget;
+    this.error = error;
+  }
+
+  public static WidgetBatchResult created(final Widget widget) {
+    return new WidgetBatchResult(HttpStatus.CREATED, widget, null);
+  }
+
+  public static WidgetBatchResult updated(final Widget widget) {
+    return new WidgetBatchResult(HttpStatus.OK, widget, null);
+  }
+
+  public static WidgetBatchResult deleted() {
+    return new WidgetBatchResult(HttpStatus.NO_CONTENT, null, null);
+  }
+
+  public static WidgetBatchResult notFound(final String widgetId) {
+    return new WidgetBatchResult(
+        HttpStatus.NOT_FOUND, null, new WidgetNotFoundException(widgetId).getMessage());
+  }
+
+  public static WidgetBatchResult conflict(final String errorMsg) {
+    return new WidgetBatchResult(HttpStatus.CONFLICT, null, errorMsg);
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  /** @return Whether the operation was applied. */
+  @JsonIgnore
+  public boolean isApplied() {
+    return status < HttpStatus.BAD_REQUEST.value();
+  }
+
+  @Nullable
+  public Widget getWidget() {
+    return widget;
+  }
+
+  @Nullable
+  public String getError() {
+    return error;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    WidgetBatchResult that = (WidgetBatchResult) o;
+
+    if (status != that.status) return false;
+    if (widget != null ? !widget.equals(that.widget) : that.widget != null) return false;
+    return error != null ? error.equals(that.error) : that.error == null;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = status;
+    result = 31 * result + (widget != null ? widget.hashCode() : 0);
+    result = 31 * result + (error != null ? error.hashCode() : 0);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "WidgetBatchResult{"
+        + "status="
+        + status
+        + ", widget="
+        + widget
+        + ", error='"
+        + error
+        + '\''
+        + '}';
+  }
+}
@@ -16,7 +16,6 @@ package com.aklimenko.miro.model.widget;
 import com.aklimenko.miro.utils.ValidationHelper;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.time.Instant;
-import java.util.UUID;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -68,13 +67,13 @@ public class WidgetCreateRequest {
   }
 
   /**
-   * Creates new widget based on {@link WidgetCreateRequest} and provided z-index.
+   * Creates new widget based on {@link WidgetCreateRequest} and provided ID and z-index.
    *
+   * @param id ID of new widget.
    * @param z Z-index of new widget.
    * @return Newly created {@link Widget}.
    */
-  public Widget toNewWidget(int z) {
-    final String id = UUID.randomUUID().toString();
+  public Widget toNewWidget(final WidgetId id, int z) {
     return new Widget(id, x, y, z, width, height, Instant.now());
   }
 
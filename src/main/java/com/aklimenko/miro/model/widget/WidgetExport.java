@@ -0,0 +1,41 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import java.util.Iterator;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+
+/**
+ * Represents export of widgets of a board. Serialized as newline-delimited JSON with a widget per
+ * line in the order of the iterator, which is ascending z-order for export of all the widgets of a
+ * board and the order of the import for imported widgets. <br>
+ * Widgets are read from the iterator while the export is being written, so the export is never
+ * collected in memory whatever the size of the board is.
+ */
+public class WidgetExport {
+  /** Media type of newline-delimited JSON. */
+  public static final String MEDIA_TYPE_VALUE = "application/x-ndjson";
+
+  @Nonnull private final Iterator<Widget> widgets;
+
+  public WidgetExport(final @Nonnull Iterator<Widget> widgets) {
+    this.widgets = Objects.requireNonNull(widgets);
+  }
+
+  /** @return Iterator over the exported widgets, may be consumed only once. */
+  public Iterator<Widget> getWidgets() {
+    return widgets;
+  }
+}
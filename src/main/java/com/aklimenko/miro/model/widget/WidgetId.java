@@ -0,0 +1,227 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.util.Optional;
+
+/**
+ * Immutable 128-bit widget ID kept as two longs. <br>
+ * Rendered to text only at the API boundary, either as a 26 characters long Crockford's base32 <a
+ * href="https://github.com/ulid/spec">ULID</a> or as a canonical UUID for the IDs created before
+ * ULIDs were introduced. Textual format is a part of the ID, so parsing an ID and rendering it
+ * back yields the same ID up to letter case.
+ */
+public final class WidgetId implements Comparable<WidgetId> {
+
+  private static final char[] CROCKFORD = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final int ULID_LENGTH = 26;
+  private static final int UUID_LENGTH = 36;
+
+  private final long high;
+  private final long low;
+  private final boolean uuid;
+
+  private WidgetId(final long high, final long low, final boolean uuid) {
+    this.high = high;
+    this.low = low;
+    this.uuid = uuid;
+  }
+
+  /**
+   * @param high Most significant bits of the ID.
+   * @param low Least significant bits of the ID.
+   * @return ID rendered as ULID.
+   */
+  public static WidgetId ulid(final long high, final long low) {
+    return new WidgetId(high, low, false);
+  }
+
+  /**
+   * @param high Most significant bits of the ID.
+   * @param low Least significant bits of the ID.
+   * @return ID rendered as UUID.
+   */
+  public static WidgetId uuid(final long high, final long low) {
+    return new WidgetId(high, low, true);
+  }
+
+  /**
+   * @param high Most significant bits of the ID.
+   * @param low Least significant bits of the ID.
+   * @param uuid Whether ID is rendered as UUID.
+   * @return ID with provided bits and format.
+   */
+  public static WidgetId of(final long high, final long low, final boolean uuid) {
+    return new WidgetId(high, low, uuid);
+  }
+
+  /**
+   * Parses ULID or UUID text.
+   *
+   * @param text Text to parse.
+   * @return Parsed ID.
+   * @throws IllegalArgumentException if text is neither ULID nor UUID.
+   */
+  @JsonCreator
+  public static WidgetId parse(final String text) {
+    return tryParse(text)
+        .orElseThrow(() -> new IllegalArgumentException("Malformed widget ID: " + text));
+  }
+
+  /**
+   * Parses ULID or UUID text.
+   *
+   * @param text Text to parse.
+   * @return Optionally parsed ID, empty if text is neither ULID nor UUID.
+   */
+  public static Optional<WidgetId> tryParse(final String text) {
+    if (text.length() == ULID_LENGTH) {
+      return parseUlid(text);
+    }
+    if (text.length() == UUID_LENGTH) {
+      return parseUuid(text);
+    }
+    return Optional.empty();
+  }
+
+  private static Optional<WidgetId> parseUlid(final String text) {
+    // the first character holds only 3 bits out of 5 since 26 characters carry 130 bits
+    final int first = crockfordDigit(text.charAt(0));
+    if (first < 0 || first > 7) {
+      return Optional.empty();
+    }
+    long high = 0;
+    long low = first;
+    for (int i = 1; i < ULID_LENGTH; i++) {
+      final int digit = crockfordDigit(text.charAt(i));
+      if (digit < 0) {
+        return Optional.empty();
+      }
+      high = high << 5 | low >>> 59;
+      low = low << 5 | digit;
+    }
+    return Optional.of(ulid(high, low));
+  }
+
+  private static int crockfordDigit(final char c) {
+    final char upper = Character.toUpperCase(c);
+    for (int digit = 0; digit < CROCKFORD.length; digit++) {
+      if (CROCKFORD[digit] == upper) {
+        return digit;
+      }
+    }
+    return -1;
+  }
+
+  private static Optional<WidgetId> parseUuid(final String text) {
+    long high = 0;
+    long low = 0;
+    int digits = 0;
+    for (int i = 0; i < UUID_LENGTH; i++) {
+      final char c = text.charAt(i);
+      if (i == 8 || i == 13 || i == 18 || i == 23) {
+        if (c != '-') {
+          return Optional.empty();
+        }
+        continue;
+      }
+      final int digit = Character.digit(c, 16);
+      if (digit < 0) {
+        return Optional.empty();
+      }
+      if (digits++ < 16) {
+        high = high << 4 | digit;
+      } else {
+        low = low << 4 | digit;
+      }
+    }
+    return Optional.of(uuid(high, low));
+  }
+
+  public long getHigh() {
+    return high;
+  }
+
+  public long getLow() {
+    return low;
+  }
+
+  /** @return Whether ID is rendered as UUID. */
+  public boolean isUuid() {
+    return uuid;
+  }
+
+  /** @return ID rendered as ULID or UUID text. */
+  @JsonValue
+  @Override
+  public String toString() {
+    return uuid ? renderUuid() : renderUlid();
+  }
+
+  private String renderUlid() {
+    final char[] chars = new char[ULID_LENGTH];
+    long high = this.high;
+    long low = this.low;
+    for (int i = ULID_LENGTH - 1; i >= 0; i--) {
+      chars[i] = CROCKFORD[(int) (low & 31)];
+      low = low >>> 5 | high << 59;
+      high >>>= 5;
+    }
+    return new String(chars);
+  }
+
+  private String renderUuid() {
+    final char[] chars = new char[UUID_LENGTH];
+    int digit = 0;
+    for (int i = 0; i < UUID_LENGTH; i++) {
+      if (i == 8 || i == 13 || i == 18 || i == 23) {
+        chars[i] = '-';
+        continue;
+      }
+      final long bits = digit < 16 ? high : low;
+      chars[i] = HEX[(int) (bits >>> (60 - 4 * (digit % 16))) & 15];
+      digit++;
+    }
+    return new String(chars);
+  }
+
+  /** Orders IDs by their bits as unsigned numbers, that is by creation time for ULIDs. */
+  @Override
+  public int compareTo(final WidgetId other) {
+    final int byHigh = Long.compareUnsigned(high, other.high);
+    return byHigh != 0 ? byHigh : Long.compareUnsigned(low, other.low);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+
+    WidgetId widgetId = (WidgetId) o;
+
+    if (high != widgetId.high) return false;
+    if (low != widgetId.low) return false;
+    return uuid == widgetId.uuid;
+  }
+
+  @Override
+  public int hashCode() {
+    final long hash = (high ^ low) * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 32) ^ (uuid ? 1 : 0);
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+/**
+ * Contract of the generator of new widget IDs. Implementation is selected with {@code
+ * persistence.idGenerator} property.
+ */
+public interface WidgetIdGenerator {
+
+  /**
+   * Generates new unique widget ID. Safe to be called concurrently.
+   *
+   * @return New widget ID.
+   */
+  WidgetId next();
+}
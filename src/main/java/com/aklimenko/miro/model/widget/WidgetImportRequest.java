@@ -0,0 +1,36 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nonnull;
+
+/**
+ * Represents import of widgets into a board. Deserialized from newline-delimited JSON with a
+ * widget create request per line. Widgets are imported in the order of the lines.
+ */
+public class WidgetImportRequest {
+
+  @Nonnull private final List<WidgetCreateRequest> widgets;
+
+  public WidgetImportRequest(final @Nonnull List<WidgetCreateRequest> widgets) {
+    this.widgets = Objects.requireNonNull(widgets);
+  }
+
+  /** @return Widget create requests in the order of the import. */
+  public List<WidgetCreateRequest> getWidgets() {
+    return widgets;
+  }
+}
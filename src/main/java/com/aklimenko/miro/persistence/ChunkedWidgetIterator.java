@@ -0,0 +1,111 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.exception.BoardModifiedException;
+import com.aklimenko.miro.model.widget.Widget;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Iterator over the widgets of {@link WidgetRepository} in ascending z-order reading them lazily
+ * in chunks. <br>
+ * Every chunk is read above the last widget of the previous one, so the repository is locked only
+ * while a chunk is being read and not while the widgets are being consumed. Iterating the index of
+ * the repository directly within synchronized context reads the chunks without locking. <br>
+ * Widgets shifted by writes between the chunks may be skipped or repeated. If modifications of
+ * the repository are counted, the iterator fails with {@link BoardModifiedException} instead once
+ * the repository is modified after the first chunk is read, so the widgets it returns are always
+ * consistent.
+ */
+final class ChunkedWidgetIterator implements Iterator<Widget> {
+  /** Amount of widgets read from the repository at once. */
+  static final int CHUNK_SIZE = 256;
+
+  /** Reads requested amount of widgets above provided optional z-index in ascending z-order. */
+  @FunctionalInterface
+  interface Lister {
+    List<Widget> list(int limit, @Nullable Integer afterZ);
+  }
+
+  private final Lister lister;
+  @Nullable private final LongSupplier modifications;
+  private long modificationsBefore;
+  @Nullable private Integer afterZ;
+  private List<Widget> chunk = Collections.emptyList();
+  private int position;
+  private boolean exhausted;
+
+  /**
+   * @param lister Reads widgets of the repository.
+   * @param afterZ Optional z-index to iterate widgets above.
+   */
+  ChunkedWidgetIterator(final Lister lister, @Nullable final Integer afterZ) {
+    this(lister, afterZ, null);
+  }
+
+  /**
+   * @param lister Reads widgets of the repository.
+   * @param afterZ Optional z-index to iterate widgets above.
+   * @param modifications Optional count of modifications of the repository to fail the
+   *     iteration on modifications.
+   */
+  ChunkedWidgetIterator(
+      final Lister lister,
+      @Nullable final Integer afterZ,
+      @Nullable final LongSupplier modifications) {
+    this.lister = lister;
+    this.afterZ = afterZ;
+    this.modifications = modifications;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (position < chunk.size()) {
+      return true;
+    }
+    if (exhausted) {
+      return false;
+    }
+
+    // chunk is empty only before the first one is read
+    if (modifications != null && chunk.isEmpty()) {
+      modificationsBefore = modifications.getAsLong();
+    }
+    chunk = lister.list(CHUNK_SIZE, afterZ);
+    // every chunk is read after the count taken before the first one, so the same count read after
+    // the chunk means no modification could've shifted widgets of any chunk
+    if (modifications != null && modifications.getAsLong() != modificationsBefore) {
+      throw new BoardModifiedException();
+    }
+    position = 0;
+    exhausted = chunk.size() < CHUNK_SIZE;
+    if (!chunk.isEmpty()) {
+      afterZ = chunk.get(chunk.size() - 1).getZ();
+    }
+    return !chunk.isEmpty();
+  }
+
+  @Override
+  public Widget next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return chunk.get(position++);
+  }
+}
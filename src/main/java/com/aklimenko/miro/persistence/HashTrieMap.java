@@ -0,0 +1,346 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable persistent map from keys to non-null values based on a hash array mapped trie.
+ * <br>
+ * Every modification copies only the path from the root to the modified leaf ({@code O(log32 n)}
+ * nodes) and shares the rest of the trie with the previous version, so instances are safe to be
+ * read concurrently without any synchronization.
+ *
+ * @param <K> Type of the keys.
+ * @param <V> Type of the values.
+ */
+final class HashTrieMap<K, V> {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final HashTrieMap<?, ?> EMPTY = new HashTrieMap<>(null, 0);
+
+  @Nullable private final Node<K, V> root;
+  private final int size;
+
+  private HashTrieMap(@Nullable final Node<K, V> root, final int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  @SuppressWarnings("unchecked")
+  static <K, V> HashTrieMap<K, V> empty() {
+    return (HashTrieMap<K, V>) EMPTY;
+  }
+
+  /** Trie node. Nodes are immutable and modifications return new nodes. */
+  private interface Node<K, V> {
+
+    @Nullable
+    V get(int shift, int hash, K key);
+
+    Node<K, V> put(int shift, int hash, K key, V value);
+
+    /** @return Node without provided key or {@code null} if the node gets empty. */
+    @Nullable
+    Node<K, V> remove(int shift, int hash, K key);
+
+    /** Hash of the keys in case node is a leaf or a collision node, ignored otherwise. */
+    int hash();
+  }
+
+  private static final class Leaf<K, V> implements Node<K, V> {
+    private final int hash;
+    private final K key;
+    private final V value;
+
+    private Leaf(final int hash, final K key, final V value) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+    }
+
+    @Nullable
+    @Override
+    public V get(final int shift, final int hash, final K key) {
+      return this.key.equals(key) ? value : null;
+    }
+
+    @Override
+    public Node<K, V> put(final int shift, final int hash, final K key, final V value) {
+      if (this.key.equals(key)) {
+        return new Leaf<>(hash, key, value);
+      }
+      if (this.hash == hash) {
+        final Leaf<K, V>[] leaves = leaves(2);
+        leaves[0] = this;
+        leaves[1] = new Leaf<>(hash, key, value);
+        return new Collision<>(hash, leaves);
+      }
+      return branchOf(shift, this, new Leaf<>(hash, key, value));
+    }
+
+    @Nullable
+    @Override
+    public Node<K, V> remove(final int shift, final int hash, final K key) {
+      return this.key.equals(key) ? null : this;
+    }
+
+    @Override
+    public int hash() {
+      return hash;
+    }
+  }
+
+  /** Leaves with different keys of the same hash. */
+  private static final class Collision<K, V> implements Node<K, V> {
+    private final int hash;
+    private final Leaf<K, V>[] leaves;
+
+    private Collision(final int hash, final Leaf<K, V>[] leaves) {
+      this.hash = hash;
+      this.leaves = leaves;
+    }
+
+    private int indexOf(final K key) {
+      for (int i = 0; i < leaves.length; i++) {
+        if (leaves[i].key.equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Nullable
+    @Override
+    public V get(final int shift, final int hash, final K key) {
+      final int index = indexOf(key);
+      return index < 0 ? null : leaves[index].value;
+    }
+
+    @Override
+    public Node<K, V> put(final int shift, final int hash, final K key, final V value) {
+      if (this.hash != hash) {
+        return branchOf(shift, this, new Leaf<>(hash, key, value));
+      }
+
+      final int index = indexOf(key);
+      final Leaf<K, V>[] copy;
+      if (index < 0) {
+        copy = Arrays.copyOf(leaves, leaves.length + 1);
+        copy[leaves.length] = new Leaf<>(hash, key, value);
+      } else {
+        copy = leaves.clone();
+        copy[index] = new Leaf<>(hash, key, value);
+      }
+      return new Collision<>(hash, copy);
+    }
+
+    @Nullable
+    @Override
+    public Node<K, V> remove(final int shift, final int hash, final K key) {
+      final int index = indexOf(key);
+      if (index < 0) {
+        return this;
+      }
+      if (leaves.length == 2) {
+        return leaves[1 - index];
+      }
+
+      final Leaf<K, V>[] copy = leaves(leaves.length - 1);
+      System.arraycopy(leaves, 0, copy, 0, index);
+      System.arraycopy(leaves, index + 1, copy, index, leaves.length - index - 1);
+      return new Collision<>(hash, copy);
+    }
+
+    @Override
+    public int hash() {
+      return hash;
+    }
+  }
+
+  /** Inner node keeping only present children, positions of which are marked in the bitmap. */
+  private static final class Branch<K, V> implements Node<K, V> {
+    private final int bitmap;
+    private final Node<K, V>[] children;
+
+    private Branch(final int bitmap, final Node<K, V>[] children) {
+      this.bitmap = bitmap;
+      this.children = children;
+    }
+
+    private static int bitOf(final int shift, final int hash) {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private int positionOf(final int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Nullable
+    @Override
+    public V get(final int shift, final int hash, final K key) {
+      final int bit = bitOf(shift, hash);
+      if ((bitmap & bit) == 0) {
+        return null;
+      }
+      return children[positionOf(bit)].get(shift + BITS, hash, key);
+    }
+
+    @Override
+    public Node<K, V> put(final int shift, final int hash, final K key, final V value) {
+      final int bit = bitOf(shift, hash);
+      final int position = positionOf(bit);
+      if ((bitmap & bit) != 0) {
+        final Node<K, V>[] copy = children.clone();
+        copy[position] = children[position].put(shift + BITS, hash, key, value);
+        return new Branch<>(bitmap, copy);
+      }
+
+      final Node<K, V>[] copy = nodes(children.length + 1);
+      System.arraycopy(children, 0, copy, 0, position);
+      copy[position] = new Leaf<>(hash, key, value);
+      System.arraycopy(children, position, copy, position + 1, children.length - position);
+      return new Branch<>(bitmap | bit, copy);
+    }
+
+    @Nullable
+    @Override
+    public Node<K, V> remove(final int shift, final int hash, final K key) {
+      final int bit = bitOf(shift, hash);
+      if ((bitmap & bit) == 0) {
+        return this;
+      }
+
+      final int position = positionOf(bit);
+      final Node<K, V> child = children[position];
+      final Node<K, V> removed = child.remove(shift + BITS, hash, key);
+      if (removed == child) {
+        return this;
+      }
+
+      if (removed != null) {
+        if (children.length == 1 && !(removed instanceof Branch)) {
+          // leaves and collision nodes can be pulled up to any level
+          return removed;
+        }
+        final Node<K, V>[] copy = children.clone();
+        copy[position] = removed;
+        return new Branch<>(bitmap, copy);
+      }
+
+      if (children.length == 1) {
+        return null;
+      }
+      if (children.length == 2 && !(children[1 - position] instanceof Branch)) {
+        return children[1 - position];
+      }
+
+      final Node<K, V>[] copy = nodes(children.length - 1);
+      System.arraycopy(children, 0, copy, 0, position);
+      System.arraycopy(children, position + 1, copy, position, children.length - position - 1);
+      return new Branch<>(bitmap & ~bit, copy);
+    }
+
+    @Override
+    public int hash() {
+      return 0;
+    }
+  }
+
+  /**
+   * Creates a branch holding two nodes with different hashes.
+   *
+   * @param shift Shift of the level the branch is placed at.
+   * @param first Leaf or collision node.
+   * @param second Leaf or collision node with hash different from the first one.
+   * @return Branch holding both nodes.
+   */
+  private static <K, V> Node<K, V> branchOf(
+      final int shift, final Node<K, V> first, final Node<K, V> second) {
+    final int firstIndex = (first.hash() >>> shift) & MASK;
+    final int secondIndex = (second.hash() >>> shift) & MASK;
+    if (firstIndex == secondIndex) {
+      final Node<K, V>[] children = nodes(1);
+      children[0] = branchOf(shift + BITS, first, second);
+      return new Branch<>(1 << firstIndex, children);
+    }
+
+    final Node<K, V>[] children = nodes(2);
+    children[firstIndex < secondIndex ? 0 : 1] = first;
+    children[firstIndex < secondIndex ? 1 : 0] = second;
+    return new Branch<>((1 << firstIndex) | (1 << secondIndex), children);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V>[] nodes(final int length) {
+    return (Node<K, V>[]) new Node<?, ?>[length];
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Leaf<K, V>[] leaves(final int length) {
+    return (Leaf<K, V>[]) new Leaf<?, ?>[length];
+  }
+
+  /**
+   * Spreads higher bits of the hash code so that keys differing only in higher bits get into
+   * different children close to the root.
+   */
+  private static int hashOf(final Object key) {
+    final int hash = key.hashCode();
+    return hash ^ (hash >>> 16);
+  }
+
+  @Nullable
+  V get(final K key) {
+    return root == null ? null : root.get(0, hashOf(key), key);
+  }
+
+  /**
+   * Associates provided value with the key.
+   *
+   * @param key Key.
+   * @param value Non-null value.
+   * @return New version of the map.
+   */
+  HashTrieMap<K, V> put(final K key, final V value) {
+    final int hash = hashOf(key);
+    if (root == null) {
+      return new HashTrieMap<>(new Leaf<>(hash, key, value), 1);
+    }
+
+    final int newSize = root.get(0, hash, key) == null ? size + 1 : size;
+    return new HashTrieMap<>(root.put(0, hash, key, value), newSize);
+  }
+
+  /**
+   * Removes the key if present.
+   *
+   * @param key Key.
+   * @return New version of the map or the same instance if the key is absent.
+   */
+  HashTrieMap<K, V> remove(final K key) {
+    final int hash = hashOf(key);
+    if (root == null || root.get(0, hash, key) == null) {
+      return this;
+    }
+    return new HashTrieMap<>(root.remove(0, hash, key), size - 1);
+  }
+
+  int size() {
+    return size;
+  }
+}
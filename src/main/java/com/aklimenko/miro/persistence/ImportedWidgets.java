@@ -0,0 +1,42 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.Widget;
+import java.util.List;
+import java.util.Objects;
+
+/** Immutable outcome of widgets import. */
+public final class ImportedWidgets {
+  private final List<Widget> imported;
+  private final List<Widget> changed;
+
+  /**
+   * @param imported Imported widgets in the order of the import.
+   * @param changed Imported widgets together with the widgets shifted by the import ordered by
+   *     z-index in ascending order.
+   */
+  public ImportedWidgets(final List<Widget> imported, final List<Widget> changed) {
+    this.imported = Objects.requireNonNull(imported);
+    this.changed = Objects.requireNonNull(changed);
+  }
+
+  public List<Widget> getImported() {
+    return imported;
+  }
+
+  public List<Widget> getChanged() {
+    return changed;
+  }
+}
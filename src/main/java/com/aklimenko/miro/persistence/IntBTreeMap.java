@@ -0,0 +1,449 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+import javax.annotation.Nullable;
+
+/**
+ * Sorted map from primitive {@code int} keys to non-null values based on a B+ tree. <br>
+ * Keys are kept unboxed in sorted arrays of the nodes and values are stored only in the leaves
+ * linked in key order, so a lookup is a few binary searches over {@code int} arrays and an ordered
+ * scan walks the leaf arrays, neither of them allocating anything. Storage costs about one {@code
+ * int} and one reference per entry instead of an entry object and a boxed key. <br>
+ * Nodes left less than half full by a removal are merged with an adjacent sibling or take over
+ * some of its entries, so every node but the root stays at least half full. Not synchronized,
+ * modifications must be serialized with reads.
+ *
+ * @param <V> Type of the values.
+ */
+final class IntBTreeMap<V> {
+
+  /** Maximum amount of keys of a leaf and of children of an inner node. */
+  private static final int NODE_SIZE = 64;
+
+  private abstract static class Node {
+    /** Amount of keys of a leaf or amount of children of an inner node. */
+    int size;
+
+    /** Keys of a leaf or separators of an inner node, one slot larger to hold an overflow. */
+    final int[] keys = new int[NODE_SIZE + 1];
+  }
+
+  private static final class Leaf extends Node {
+    final Object[] values = new Object[NODE_SIZE + 1];
+    @Nullable Leaf next;
+  }
+
+  /** Inner node. Child {@code i} holds keys in range {@code [keys[i - 1], keys[i])}. */
+  private static final class Inner extends Node {
+    final Node[] children = new Node[NODE_SIZE + 1];
+  }
+
+  private Node root = new Leaf();
+  private int size;
+
+  /** Key promoted by the latest split of a node. Used only by modifications. */
+  private int promotedKey;
+
+  /** Value replaced or removed by the latest modification. Used only by modifications. */
+  @Nullable private Object previous;
+
+  /** @return Position of the first key greater than or equal to provided one. */
+  private static int lowerBound(final int[] keys, final int size, final int key) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (keys[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /** @return Index of the child of inner node holding provided key. */
+  private static int childIndex(final Inner inner, final int key) {
+    // amount of separators less than or equal to the key
+    int low = 0;
+    int high = inner.size - 1;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (inner.keys[middle] <= key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private Leaf leafOf(final int key) {
+    Node node = root;
+    while (node instanceof Inner) {
+      final Inner inner = (Inner) node;
+      node = inner.children[childIndex(inner, key)];
+    }
+    return (Leaf) node;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * @param key Key to look up.
+   * @return Value mapped to the key or {@code null} if absent.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  V get(final int key) {
+    final Leaf leaf = leafOf(key);
+    final int position = lowerBound(leaf.keys, leaf.size, key);
+    return position < leaf.size && leaf.keys[position] == key ? (V) leaf.values[position] : null;
+  }
+
+  boolean containsKey(final int key) {
+    return get(key) != null;
+  }
+
+  /**
+   * @return Greatest key.
+   * @throws NoSuchElementException if map is empty.
+   */
+  int lastKey() {
+    final Leaf leaf = lastLeaf();
+    return leaf.keys[leaf.size - 1];
+  }
+
+  /**
+   * @return Value mapped to the greatest key.
+   * @throws NoSuchElementException if map is empty.
+   */
+  @SuppressWarnings("unchecked")
+  V lastValue() {
+    final Leaf leaf = lastLeaf();
+    return (V) leaf.values[leaf.size - 1];
+  }
+
+  private Leaf lastLeaf() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    Node node = root;
+    while (node instanceof Inner) {
+      node = ((Inner) node).children[node.size - 1];
+    }
+    return (Leaf) node;
+  }
+
+  /**
+   * Appends values mapped to the keys greater than or equal to provided one in key order.
+   *
+   * @param fromKey Smallest key to collect value of.
+   * @param limit Maximum amount of values to collect.
+   * @param into Collection to append values to.
+   */
+  @SuppressWarnings("unchecked")
+  void collect(final int fromKey, final int limit, final Collection<? super V> into) {
+    int remaining = limit;
+    Leaf leaf = leafOf(fromKey);
+    int position = lowerBound(leaf.keys, leaf.size, fromKey);
+    while (leaf != null && remaining > 0) {
+      final int count = Math.min(leaf.size - position, remaining);
+      for (int i = position; i < position + count; i++) {
+        into.add((V) leaf.values[i]);
+      }
+      remaining -= count;
+      leaf = leaf.next;
+      position = 0;
+    }
+  }
+
+  /**
+   * @param key Key to map value to.
+   * @param value Non-null value.
+   * @return Value previously mapped to the key or {@code null} if absent.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  V put(final int key, final V value) {
+    previous = null;
+    final Node split = insert(root, key, value, true);
+    if (split != null) {
+      final Inner grown = new Inner();
+      grown.children[0] = root;
+      grown.children[1] = split;
+      grown.keys[0] = promotedKey;
+      grown.size = 2;
+      root = grown;
+    }
+    final V replaced = (V) previous;
+    previous = null;
+    return replaced;
+  }
+
+  /**
+   * @param rightmost Whether the node is the rightmost one on its level.
+   * @return Right part of the node if it got split, {@code null} otherwise.
+   */
+  @Nullable
+  private Node insert(final Node node, final int key, final Object value, final boolean rightmost) {
+    if (node instanceof Leaf) {
+      final Leaf leaf = (Leaf) node;
+      final int position = lowerBound(leaf.keys, leaf.size, key);
+      if (position < leaf.size && leaf.keys[position] == key) {
+        previous = leaf.values[position];
+        leaf.values[position] = value;
+        return null;
+      }
+      System.arraycopy(leaf.keys, position, leaf.keys, position + 1, leaf.size - position);
+      System.arraycopy(leaf.values, position, leaf.values, position + 1, leaf.size - position);
+      leaf.keys[position] = key;
+      leaf.values[position] = value;
+      leaf.size++;
+      size++;
+      return leaf.size > NODE_SIZE ? splitLeaf(leaf, rightmost && position == NODE_SIZE) : null;
+    }
+
+    final Inner inner = (Inner) node;
+    final int child = childIndex(inner, key);
+    final boolean last = child == inner.size - 1;
+    final Node split = insert(inner.children[child], key, value, rightmost && last);
+    if (split == null) {
+      return null;
+    }
+    final int separators = inner.size - 1;
+    System.arraycopy(inner.keys, child, inner.keys, child + 1, separators - child);
+    System.arraycopy(
+        inner.children, child + 1, inner.children, child + 2, inner.size - child - 1);
+    inner.keys[child] = promotedKey;
+    inner.children[child + 1] = split;
+    inner.size++;
+    return inner.size > NODE_SIZE ? splitInner(inner, rightmost && last) : null;
+  }
+
+  /**
+   * Splits overflown node in halves, or leaves it full if the overflow is caused by appending the
+   * greatest key, so that ascending inserts fill the nodes completely.
+   */
+  private static int splitPoint(final boolean appended) {
+    return appended ? NODE_SIZE : (NODE_SIZE + 1) / 2;
+  }
+
+  private Leaf splitLeaf(final Leaf leaf, final boolean appended) {
+    final Leaf right = new Leaf();
+    final int half = splitPoint(appended);
+    right.size = leaf.size - half;
+    System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+    System.arraycopy(leaf.values, half, right.values, 0, right.size);
+    Arrays.fill(leaf.values, half, leaf.size, null);
+    leaf.size = half;
+    right.next = leaf.next;
+    leaf.next = right;
+    promotedKey = right.keys[0];
+    return right;
+  }
+
+  private Inner splitInner(final Inner inner, final boolean appended) {
+    final Inner right = new Inner();
+    final int half = splitPoint(appended);
+    right.size = inner.size - half;
+    System.arraycopy(inner.children, half, right.children, 0, right.size);
+    System.arraycopy(inner.keys, half, right.keys, 0, right.size - 1);
+    Arrays.fill(inner.children, half, inner.size, null);
+    promotedKey = inner.keys[half - 1];
+    inner.size = half;
+    return right;
+  }
+
+  /**
+   * @param key Key to remove mapping of.
+   * @return Removed value or {@code null} if absent.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  V remove(final int key) {
+    previous = null;
+    delete(root, key);
+    while (root instanceof Inner && root.size == 1) {
+      root = ((Inner) root).children[0];
+    }
+    final V removed = (V) previous;
+    previous = null;
+    return removed;
+  }
+
+  private void delete(final Node node, final int key) {
+    if (node instanceof Leaf) {
+      final Leaf leaf = (Leaf) node;
+      final int position = lowerBound(leaf.keys, leaf.size, key);
+      if (position < leaf.size && leaf.keys[position] == key) {
+        previous = leaf.values[position];
+        System.arraycopy(leaf.keys, position + 1, leaf.keys, position, leaf.size - position - 1);
+        System.arraycopy(
+            leaf.values, position + 1, leaf.values, position, leaf.size - position - 1);
+        leaf.size--;
+        leaf.values[leaf.size] = null;
+        size--;
+      }
+      return;
+    }
+
+    final Inner inner = (Inner) node;
+    final int child = childIndex(inner, key);
+    delete(inner.children[child], key);
+    if (previous == null || inner.children[child].size >= NODE_SIZE / 2) {
+      return;
+    }
+    // underfull child is merged with an adjacent sibling if they fit into a single node,
+    // otherwise entries of the siblings are redistributed evenly
+    final int left = child + 1 < inner.size ? child : child - 1;
+    if (left < 0) {
+      return;
+    }
+    if (inner.children[left].size + inner.children[left + 1].size <= NODE_SIZE) {
+      merge(inner, left);
+    } else {
+      redistribute(inner, left);
+    }
+  }
+
+  /** Merges child {@code left + 1} of the inner node into child {@code left}. */
+  private static void merge(final Inner inner, final int left) {
+    final Node target = inner.children[left];
+    final Node source = inner.children[left + 1];
+    if (target instanceof Leaf) {
+      final Leaf targetLeaf = (Leaf) target;
+      final Leaf sourceLeaf = (Leaf) source;
+      System.arraycopy(sourceLeaf.keys, 0, targetLeaf.keys, targetLeaf.size, sourceLeaf.size);
+      System.arraycopy(
+          sourceLeaf.values, 0, targetLeaf.values, targetLeaf.size, sourceLeaf.size);
+      targetLeaf.next = sourceLeaf.next;
+    } else {
+      final Inner targetInner = (Inner) target;
+      final Inner sourceInner = (Inner) source;
+      // separator of the siblings moves down between their children
+      targetInner.keys[targetInner.size - 1] = inner.keys[left];
+      System.arraycopy(
+          sourceInner.keys, 0, targetInner.keys, targetInner.size, sourceInner.size - 1);
+      System.arraycopy(
+          sourceInner.children, 0, targetInner.children, targetInner.size, sourceInner.size);
+    }
+    target.size += source.size;
+
+    final int separators = inner.size - 1;
+    System.arraycopy(inner.keys, left + 1, inner.keys, left, separators - left - 1);
+    System.arraycopy(
+        inner.children, left + 2, inner.children, left + 1, inner.size - left - 2);
+    inner.size--;
+    inner.children[inner.size] = null;
+  }
+
+  /** Splits entries of children {@code left} and {@code left + 1} of the inner node evenly. */
+  private static void redistribute(final Inner inner, final int left) {
+    final Node target = inner.children[left];
+    final Node source = inner.children[left + 1];
+    final int total = target.size + source.size;
+    final int half = total / 2;
+    if (target instanceof Leaf) {
+      final Leaf targetLeaf = (Leaf) target;
+      final Leaf sourceLeaf = (Leaf) source;
+      final int[] keys = new int[total];
+      final Object[] values = new Object[total];
+      System.arraycopy(targetLeaf.keys, 0, keys, 0, targetLeaf.size);
+      System.arraycopy(targetLeaf.values, 0, values, 0, targetLeaf.size);
+      System.arraycopy(sourceLeaf.keys, 0, keys, targetLeaf.size, sourceLeaf.size);
+      System.arraycopy(sourceLeaf.values, 0, values, targetLeaf.size, sourceLeaf.size);
+      Arrays.fill(targetLeaf.values, null);
+      Arrays.fill(sourceLeaf.values, null);
+      System.arraycopy(keys, 0, targetLeaf.keys, 0, half);
+      System.arraycopy(values, 0, targetLeaf.values, 0, half);
+      System.arraycopy(keys, half, sourceLeaf.keys, 0, total - half);
+      System.arraycopy(values, half, sourceLeaf.values, 0, total - half);
+      inner.keys[left] = keys[half];
+    } else {
+      final Inner targetInner = (Inner) target;
+      final Inner sourceInner = (Inner) source;
+      // separator of the siblings goes between their children
+      final int[] keys = new int[total - 1];
+      final Node[] children = new Node[total];
+      System.arraycopy(targetInner.keys, 0, keys, 0, targetInner.size - 1);
+      keys[targetInner.size - 1] = inner.keys[left];
+      System.arraycopy(sourceInner.keys, 0, keys, targetInner.size, sourceInner.size - 1);
+      System.arraycopy(targetInner.children, 0, children, 0, targetInner.size);
+      System.arraycopy(sourceInner.children, 0, children, targetInner.size, sourceInner.size);
+      Arrays.fill(targetInner.children, null);
+      Arrays.fill(sourceInner.children, null);
+      System.arraycopy(keys, 0, targetInner.keys, 0, half - 1);
+      System.arraycopy(children, 0, targetInner.children, 0, half);
+      System.arraycopy(keys, half, sourceInner.keys, 0, total - half - 1);
+      System.arraycopy(children, half, sourceInner.children, 0, total - half);
+      inner.keys[left] = keys[half - 1];
+    }
+    target.size = half;
+    source.size = total - half;
+  }
+
+  /**
+   * Increments all the keys greater than or equal to provided one and replaces their values. Order
+   * of the keys is preserved, so the tree is updated in place without restructuring.
+   *
+   * @param fromKey Smallest key to shift.
+   * @param shift Function producing new value of every shifted key.
+   * @throws IllegalStateException if greatest key is {@link Integer#MAX_VALUE}.
+   */
+  void shiftUpwardsFrom(final int fromKey, final UnaryOperator<V> shift) {
+    if (size > 0 && lastKey() == Integer.MAX_VALUE) {
+      throw new IllegalStateException("Key limit exceeded");
+    }
+    shift(root, fromKey, shift);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <V> void shift(final Node node, final int fromKey, final UnaryOperator<V> shift) {
+    if (node instanceof Leaf) {
+      final Leaf leaf = (Leaf) node;
+      for (int i = lowerBound(leaf.keys, leaf.size, fromKey); i < leaf.size; i++) {
+        leaf.keys[i]++;
+        leaf.values[i] = shift.apply((V) leaf.values[i]);
+      }
+      return;
+    }
+
+    final Inner inner = (Inner) node;
+    // separators preceding the child holding the key are less than or equal to it and stay valid
+    final int first = childIndex(inner, fromKey);
+    for (int i = first; i < inner.size; i++) {
+      shift(inner.children[i], fromKey, shift);
+    }
+    for (int i = first; i < inner.size - 1; i++) {
+      inner.keys[i]++;
+    }
+  }
+
+  void clear() {
+    root = new Leaf();
+    size = 0;
+  }
+}
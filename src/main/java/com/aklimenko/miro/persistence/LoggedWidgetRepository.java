@@ -0,0 +1,265 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import com.aklimenko.miro.persistence.wal.BoardSnapshot;
+import com.aklimenko.miro.persistence.wal.WalRecord;
+import com.aklimenko.miro.persistence.wal.WriteAheadLog;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * {@link WidgetRepository} decorator recording outcomes of all the mutations of a single board into
+ * {@link WriteAheadLog}. <br>
+ * Mutations of the board are applied and appended to the log under the same lock so that the log
+ * keeps them in the order they were applied. Waiting for the record to become durable happens
+ * outside of the lock, so concurrent writers share fsyncs in group commit mode. Reads are
+ * delegated as is. <br>
+ * Log sequence number of the last record of the board is tracked under the same lock, so that a
+ * snapshot of the board taken with {@link #snapshot} knows exactly which records it covers. <br>
+ * Records hold outcomes of the mutations, so they can be appended only after the mutation is
+ * applied. If appending fails, the mutation stays applied in memory but is lost on restart, so
+ * the failed log rejects all the further mutations of every board before they are applied.
+ */
+class LoggedWidgetRepository implements WidgetRepository {
+
+  private final String boardId;
+  private final WidgetRepository delegate;
+  private final WriteAheadLog writeAheadLog;
+
+  private final Object writeLock = new Object();
+
+  /** Log sequence number of the last record of the board. Guarded by {@link #writeLock}. */
+  private long position;
+
+  /**
+   * @param boardId Board ID.
+   * @param delegate Repository of the board.
+   * @param writeAheadLog Log to record mutations into.
+   * @param position Log sequence number of the last record already applied to the delegate.
+   */
+  LoggedWidgetRepository(
+      final String boardId,
+      final WidgetRepository delegate,
+      final WriteAheadLog writeAheadLog,
+      final long position) {
+    this.boardId = boardId;
+    this.delegate = delegate;
+    this.writeAheadLog = writeAheadLog;
+    this.position = position;
+  }
+
+  /**
+   * Applies replayed record to the repository of the board. The same way as live updates do, the
+   * widget is taken out of z-order first and then placed at its z-index, shifting other widgets
+   * upwards if occupied.
+   *
+   * @param delegate Repository of the board to restore.
+   * @param record Replayed record of the board.
+   */
+  static void replay(final WidgetRepository delegate, final WalRecord record) {
+    delegate.deleteWidget(record.getWidgetId());
+    if (record.getType() == WalRecord.Type.PUT) {
+      delegate.restoreWidget(record.getWidget());
+    }
+  }
+
+  /**
+   * Captures state of the board. Mutations of the board wait while widgets are copied, while
+   * mutations of other boards proceed.
+   *
+   * @return State of the board together with the log sequence number of its last record.
+   */
+  BoardSnapshot snapshot() {
+    synchronized (writeLock) {
+      return new BoardSnapshot(boardId, position, delegate.listWidgets(Integer.MAX_VALUE, null));
+    }
+  }
+
+  @Override
+  public Widget createWidget(final WidgetCreateRequest widgetToCreate) {
+    final Widget created;
+    final long logged;
+    synchronized (writeLock) {
+      writeAheadLog.checkNotFailed();
+      created = delegate.createWidget(widgetToCreate);
+      logged = writeAheadLog.append(WalRecord.put(boardId, created));
+      position = logged;
+    }
+    writeAheadLog.awaitDurable(logged);
+    return created;
+  }
+
+  @Override
+  public Widget restoreWidget(final Widget widget) {
+    final long logged;
+    synchronized (writeLock) {
+      writeAheadLog.checkNotFailed();
+      delegate.restoreWidget(widget);
+      logged = writeAheadLog.append(WalRecord.put(boardId, widget));
+      position = logged;
+    }
+    writeAheadLog.awaitDurable(logged);
+    return widget;
+  }
+
+  @Override
+  public List<Widget> listWidgets(final int limit, @Nullable final Integer afterZ) {
+    return delegate.listWidgets(limit, afterZ);
+  }
+
+  @Override
+  public List<Widget> listWidgets(
+      final int limit, @Nullable final Integer afterZ, final BoundingBox area) {
+    return delegate.listWidgets(limit, afterZ, area);
+  }
+
+  @Override
+  public VersionedWidgets listWidgetsAt(
+      @Nullable final Long version,
+      final int limit,
+      @Nullable final Integer afterZ,
+      @Nullable final BoundingBox area) {
+    return delegate.listWidgetsAt(version, limit, afterZ, area);
+  }
+
+  @Override
+  public Iterator<Widget> iterateWidgets(@Nullable final Integer afterZ) {
+    return delegate.iterateWidgets(afterZ);
+  }
+
+  @Override
+  public Iterator<Widget> exportWidgets() {
+    return delegate.exportWidgets();
+  }
+
+  @Override
+  public List<Widget> hitTest(final double x, final double y, final int limit) {
+    return delegate.hitTest(x, y, limit);
+  }
+
+  @Override
+  public Optional<Widget> readWidget(final WidgetId id) {
+    return delegate.readWidget(id);
+  }
+
+  @Override
+  public Optional<Widget> updateWidget(
+      final WidgetId id, final WidgetUpdateRequest widgetToUpdate) {
+    final Optional<Widget> updated;
+    long logged = -1;
+    synchronized (writeLock) {
+      writeAheadLog.checkNotFailed();
+      updated = delegate.updateWidget(id, widgetToUpdate);
+      if (updated.isPresent()) {
+        logged = writeAheadLog.append(WalRecord.put(boardId, updated.get()));
+        position = logged;
+      }
+    }
+    writeAheadLog.awaitDurable(logged);
+    return updated;
+  }
+
+  @Override
+  public boolean deleteWidget(final WidgetId id) {
+    final boolean deleted;
+    long logged = -1;
+    synchronized (writeLock) {
+      writeAheadLog.checkNotFailed();
+      deleted = delegate.deleteWidget(id);
+      if (deleted) {
+        logged = writeAheadLog.append(WalRecord.delete(boardId, id));
+        position = logged;
+      }
+    }
+    writeAheadLog.awaitDurable(logged);
+    return deleted;
+  }
+
+  /**
+   * Applies batch and records every applied operation the same way as the standalone one, so that
+   * replaying the records one by one repeats the shifts made by the batch. Records of the batch
+   * are appended with a single {@link WriteAheadLog#appendAll}, so they are written and forced at
+   * once. The batch is acknowledged once its last record is durable, a batch interrupted by a crash
+   * before that may be recovered partially.
+   */
+  @Override
+  public List<WidgetBatchResult> applyBatch(final List<WidgetBatchOperation> operations) {
+    final List<WidgetBatchResult> results;
+    long logged = -1;
+    synchronized (writeLock) {
+      writeAheadLog.checkNotFailed();
+      results = delegate.applyBatch(operations);
+      final List<WalRecord> records = new ArrayList<>(results.size());
+      for (int i = 0; i < results.size(); i++) {
+        final WidgetBatchResult result = results.get(i);
+        if (!result.isApplied()) {
+          continue;
+        }
+        final Widget widget = result.getWidget();
+        records.add(
+            widget != null
+                ? WalRecord.put(boardId, widget)
+                : WalRecord.delete(
+                    boardId,
+                    ((WidgetBatchOperation.Delete) operations.get(i)).getWidgetId().orElseThrow()));
+      }
+      if (!records.isEmpty()) {
+        logged = writeAheadLog.appendAll(records);
+        position = logged;
+      }
+    }
+    writeAheadLog.awaitDurable(logged);
+    return results;
+  }
+
+  /**
+   * Imports widgets and records every imported and shifted widget at its new z-index. Records are
+   * appended in descending z-order, so every replayed widget is restored at z-index already freed
+   * by the widgets replayed before it and replaying them shifts nothing. Records of the import are
+   * appended with a single {@link WriteAheadLog#appendAll}, so they are written and forced at once.
+   * The import is acknowledged once its last record is durable, an import interrupted by a crash
+   * before that may be recovered partially.
+   */
+  @Override
+  public ImportedWidgets importWidgets(final List<WidgetCreateRequest> widgetsToCreate) {
+    final ImportedWidgets imported;
+    long logged = -1;
+    synchronized (writeLock) {
+      writeAheadLog.checkNotFailed();
+      imported = delegate.importWidgets(widgetsToCreate);
+      final List<Widget> changed = imported.getChanged();
+      final List<WalRecord> records = new ArrayList<>(changed.size());
+      for (int i = changed.size() - 1; i >= 0; i--) {
+        records.add(WalRecord.put(boardId, changed.get(i)));
+      }
+      if (!records.isEmpty()) {
+        logged = writeAheadLog.appendAll(records);
+        position = logged;
+      }
+    }
+    writeAheadLog.awaitDurable(logged);
+    return imported;
+  }
+}
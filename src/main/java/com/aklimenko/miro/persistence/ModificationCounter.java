@@ -0,0 +1,56 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.Widget;
+
+/**
+ * Count of modifications of a board guarded by the write lock of its repository. <br>
+ * Count is incremented only when widgets are actually added, removed or changed, so a reader
+ * seeing the same count before and after its reads knows the board wasn't modified in between,
+ * while writes changing nothing, such as a delete of a missing widget or an update with the same
+ * values, don't disturb it.
+ */
+final class ModificationCounter {
+
+  // incremented only under the write lock, so volatile is enough
+  private volatile long count;
+
+  /** @return Amount of modifications so far. */
+  long get() {
+    return count;
+  }
+
+  /** Counts modification of the board. Must be used only under the write lock. */
+  void modified() {
+    count++;
+  }
+
+  /**
+   * Counts update of the widget unless it changed nothing but the modification time of the
+   * widget. Must be used only under the write lock.
+   *
+   * @param previous Widget before the update.
+   * @param updated Widget after the update.
+   */
+  void updated(final Widget previous, final Widget updated) {
+    if (previous.getX() != updated.getX()
+        || previous.getY() != updated.getY()
+        || previous.getZ() != updated.getZ()
+        || Double.compare(previous.getWidth(), updated.getWidth()) != 0
+        || Double.compare(previous.getHeight(), updated.getHeight()) != 0) {
+      count++;
+    }
+  }
+}
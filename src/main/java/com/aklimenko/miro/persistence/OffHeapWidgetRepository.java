@@ -0,0 +1,52 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.concurrent.ConcurrentAccessLocker;
+import com.aklimenko.miro.model.widget.UlidWidgetIdGenerator;
+import com.aklimenko.miro.model.widget.WidgetIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Implementation of {@link WidgetRepository} contract based on {@link OffHeapZOrderIndex}. <br>
+ * Widgets are stored in fixed-width slots of direct buffers together with primitive ID and
+ * z-order indexes, so the amount of stored widgets doesn't affect heap size and GC pauses.
+ */
+@Repository
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@ConditionalOnProperty(value = "persistence.repository", havingValue = "offHeap")
+public class OffHeapWidgetRepository extends ZOrderIndexWidgetRepository {
+
+  public OffHeapWidgetRepository(final ConcurrentAccessLocker accessLocker) {
+    this(accessLocker, new UlidWidgetIdGenerator());
+  }
+
+  @Autowired
+  public OffHeapWidgetRepository(
+      final ConcurrentAccessLocker accessLocker, final WidgetIdGenerator idGenerator) {
+    super(new OffHeapZOrderIndex(), accessLocker, idGenerator);
+  }
+
+  /**
+   * @param accessLocker Concurrent access locker.
+   * @param initialCapacity Amount of widgets to allocate storage for upfront.
+   */
+  OffHeapWidgetRepository(final ConcurrentAccessLocker accessLocker, final int initialCapacity) {
+    super(new OffHeapZOrderIndex(initialCapacity), accessLocker, new UlidWidgetIdGenerator());
+  }
+}
@@ -0,0 +1,416 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * {@link ZOrderIndex} implementation keeping widgets outside of the Java heap. <br>
+ * Every widget is stored in a fixed-width slot of a direct {@link ByteBuffer}, with its ID kept as
+ * two longs and its modification time as seconds and nanos. Widgets are looked up by ID in an
+ * open-addressing hash table of slot numbers and ordered by z-index in a sorted array of {@code
+ * z << 32 | slot} longs, both of them direct buffers as well. So the heap holds only a handful of
+ * buffer objects regardless of the amount of widgets, and {@link Widget} objects are materialized
+ * only for the widgets being read. <br>
+ * Inserting or removing a widget below the foreground moves the tail of the z-order array, which
+ * is a plain memory move of 8 bytes per widget above it.
+ * Storage grows by doubling and is limited by the maximum size of a direct buffer, that is around
+ * 33.5 million widgets per index.
+ */
+class OffHeapZOrderIndex implements ZOrderIndex {
+
+  /**
+   * Layout of the widget slot: {@code idHigh:long | idLow:long | x:int | y:int | z:int | nanos:int
+   * | width:double | height:double | seconds:long | uuid:int | padding:int}. Field x of a free slot
+   * holds the next free slot.
+   */
+  private static final int ID_HIGH = 0;
+
+  private static final int ID_LOW = 8;
+  private static final int X = 16;
+  private static final int Y = 20;
+  private static final int Z = 24;
+  private static final int NANOS = 28;
+  private static final int WIDTH = 32;
+  private static final int HEIGHT = 40;
+  private static final int SECONDS = 48;
+  private static final int UUID = 56;
+  private static final int SLOT_SIZE = 64;
+
+  private static final int MAX_SLOTS = Integer.MAX_VALUE / SLOT_SIZE;
+
+  /** Size of the on-heap buffer used to move z-order array entries in bulk. */
+  private static final int MOVE_CHUNK = 1024;
+
+  private final int initialCapacity;
+
+  private ByteBuffer slots;
+
+  /** Amount of slots ever used. Slots below are either occupied or in the free list. */
+  private int usedSlots;
+
+  /** Head of the free slots list, {@code -1} if empty. */
+  private int freeSlot;
+
+  /** Open-addressing hash table of slot numbers plus one, zero marks an empty bucket. */
+  private IntBuffer idTable;
+
+  /** Sorted array of {@code z << 32 | slot} entries. */
+  private LongBuffer zOrder;
+
+  private int size;
+
+  private final long[] moveBuffer = new long[MOVE_CHUNK];
+
+  OffHeapZOrderIndex() {
+    this(1024);
+  }
+
+  /** @param initialCapacity Amount of widgets to allocate storage for upfront. */
+  OffHeapZOrderIndex(final int initialCapacity) {
+    this.initialCapacity = Math.max(initialCapacity, 2);
+    clear();
+  }
+
+  private static ByteBuffer allocate(final long bytes) {
+    if (bytes > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Off-heap widget storage capacity exceeded");
+    }
+    return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+  }
+
+  private static long entry(final int z, final int slot) {
+    return (long) z << 32 | slot;
+  }
+
+  private static int zOf(final long entry) {
+    return (int) (entry >> 32);
+  }
+
+  private static int slotOf(final long entry) {
+    return (int) entry;
+  }
+
+  // --- slots ---
+
+  private int allocateSlot() {
+    if (freeSlot >= 0) {
+      final int slot = freeSlot;
+      freeSlot = slots.getInt(slot * SLOT_SIZE + X);
+      return slot;
+    }
+    if (usedSlots == slots.capacity() / SLOT_SIZE) {
+      if (usedSlots == MAX_SLOTS) {
+        throw new IllegalStateException("Off-heap widget storage capacity exceeded");
+      }
+      final ByteBuffer grown = allocate(Math.min(usedSlots * 2L, MAX_SLOTS) * SLOT_SIZE);
+      grown.put(slots.clear());
+      slots = grown;
+    }
+    return usedSlots++;
+  }
+
+  private void freeSlot(final int slot) {
+    slots.putInt(slot * SLOT_SIZE + X, freeSlot);
+    freeSlot = slot;
+  }
+
+  private void write(final int slot, final Widget widget) {
+    final int offset = slot * SLOT_SIZE;
+    slots.putLong(offset + ID_HIGH, widget.getId().getHigh());
+    slots.putLong(offset + ID_LOW, widget.getId().getLow());
+    slots.putInt(offset + UUID, widget.getId().isUuid() ? 1 : 0);
+    slots.putInt(offset + X, widget.getX());
+    slots.putInt(offset + Y, widget.getY());
+    slots.putInt(offset + Z, widget.getZ());
+    slots.putDouble(offset + WIDTH, widget.getWidth());
+    slots.putDouble(offset + HEIGHT, widget.getHeight());
+    writeLastModifiedAt(slot, widget.getLastModifiedAt());
+  }
+
+  private void writeLastModifiedAt(final int slot, final Instant lastModifiedAt) {
+    final int offset = slot * SLOT_SIZE;
+    slots.putLong(offset + SECONDS, lastModifiedAt.getEpochSecond());
+    slots.putInt(offset + NANOS, lastModifiedAt.getNano());
+  }
+
+  private WidgetId idOf(final int slot) {
+    final int offset = slot * SLOT_SIZE;
+    return WidgetId.of(
+        slots.getLong(offset + ID_HIGH),
+        slots.getLong(offset + ID_LOW),
+        slots.getInt(offset + UUID) != 0);
+  }
+
+  private Widget materialize(final int slot) {
+    final int offset = slot * SLOT_SIZE;
+    return new Widget(
+        idOf(slot),
+        slots.getInt(offset + X),
+        slots.getInt(offset + Y),
+        slots.getInt(offset + Z),
+        slots.getDouble(offset + WIDTH),
+        slots.getDouble(offset + HEIGHT),
+        Instant.ofEpochSecond(slots.getLong(offset + SECONDS), slots.getInt(offset + NANOS)));
+  }
+
+  // --- ID hash table ---
+
+  private int bucketOf(final long msb, final long lsb) {
+    final long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+    return (int) (hash >>> 32) & (idTable.capacity() - 1);
+  }
+
+  private int bucketOfSlot(final int slot) {
+    final int offset = slot * SLOT_SIZE;
+    return bucketOf(slots.getLong(offset + ID_HIGH), slots.getLong(offset + ID_LOW));
+  }
+
+  /** @return Bucket holding the widget with provided ID or the empty bucket it would be put to. */
+  private int findBucket(final WidgetId id) {
+    final long high = id.getHigh();
+    final long low = id.getLow();
+    final int uuid = id.isUuid() ? 1 : 0;
+    final int mask = idTable.capacity() - 1;
+    int bucket = bucketOf(high, low);
+    while (true) {
+      final int value = idTable.get(bucket);
+      if (value == 0) {
+        return bucket;
+      }
+      final int offset = (value - 1) * SLOT_SIZE;
+      if (slots.getLong(offset + ID_HIGH) == high
+          && slots.getLong(offset + ID_LOW) == low
+          && slots.getInt(offset + UUID) == uuid) {
+        return bucket;
+      }
+      bucket = (bucket + 1) & mask;
+    }
+  }
+
+  private int findSlot(final WidgetId id) {
+    return idTable.get(findBucket(id)) - 1;
+  }
+
+  private void putId(final WidgetId id, final int slot) {
+    if ((size + 1) * 2L > idTable.capacity()) {
+      growIdTable();
+    }
+    idTable.put(findBucket(id), slot + 1);
+  }
+
+  private void growIdTable() {
+    final IntBuffer previous = idTable;
+    idTable = allocate(previous.capacity() * 2L * Integer.BYTES).asIntBuffer();
+    final int mask = idTable.capacity() - 1;
+    for (int i = 0; i < previous.capacity(); i++) {
+      final int value = previous.get(i);
+      if (value != 0) {
+        int bucket = bucketOfSlot(value - 1);
+        while (idTable.get(bucket) != 0) {
+          bucket = (bucket + 1) & mask;
+        }
+        idTable.put(bucket, value);
+      }
+    }
+  }
+
+  /** Removes bucket shifting back the following buckets of the same probe sequence. */
+  private void removeBucket(int bucket) {
+    final int mask = idTable.capacity() - 1;
+    int next = bucket;
+    while (true) {
+      next = (next + 1) & mask;
+      final int value = idTable.get(next);
+      if (value == 0) {
+        break;
+      }
+      final int home = bucketOfSlot(value - 1);
+      // entry can be moved back unless its home bucket lies cyclically within (bucket, next]
+      final boolean inPlace =
+          bucket <= next ? bucket < home && home <= next : bucket < home || home <= next;
+      if (!inPlace) {
+        idTable.put(bucket, value);
+        bucket = next;
+      }
+    }
+    idTable.put(bucket, 0);
+  }
+
+  // --- z-order array ---
+
+  /** @return Position of the first entry with z-index greater than or equal to provided one. */
+  private int lowerBound(final int z) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (zOf(zOrder.get(middle)) < z) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /** Moves {@code count} entries starting from {@code from} by {@code distance} positions. */
+  private void moveEntries(final int from, final int count, final int distance) {
+    if (distance > 0) {
+      // moving backwards so that entries are not overwritten before they are moved
+      for (int end = from + count; end > from; end -= MOVE_CHUNK) {
+        final int start = Math.max(from, end - MOVE_CHUNK);
+        zOrder.position(start).get(moveBuffer, 0, end - start);
+        zOrder.position(start + distance).put(moveBuffer, 0, end - start);
+      }
+    } else {
+      for (int start = from; start < from + count; start += MOVE_CHUNK) {
+        final int end = Math.min(from + count, start + MOVE_CHUNK);
+        zOrder.position(start).get(moveBuffer, 0, end - start);
+        zOrder.position(start + distance).put(moveBuffer, 0, end - start);
+      }
+    }
+  }
+
+  private void insertEntry(final int position, final long entry) {
+    if (size == zOrder.capacity()) {
+      final LongBuffer grown = allocate(size * 2L * Long.BYTES).asLongBuffer();
+      grown.put(zOrder.clear());
+      zOrder = grown;
+    }
+    moveEntries(position, size - position, 1);
+    zOrder.put(position, entry);
+    size++;
+  }
+
+  private void removeEntry(final int position) {
+    moveEntries(position + 1, size - position - 1, -1);
+    size--;
+  }
+
+  /** Shifts upwards all the widgets starting from provided position in z-order. */
+  private void shiftUpwardsFrom(final int position) {
+    final Instant shiftedAt = Instant.now();
+    for (int i = position; i < size; i++) {
+      final long entry = zOrder.get(i) + (1L << 32);
+      final int slot = slotOf(entry);
+      zOrder.put(i, entry);
+      slots.putInt(slot * SLOT_SIZE + Z, zOf(entry));
+      writeLastModifiedAt(slot, shiftedAt);
+    }
+  }
+
+  private void ensureSafeToPlaceOnTop() {
+    if (size > 0 && zOf(zOrder.get(size - 1)) == Integer.MAX_VALUE) {
+      throw new ZIndexLimitExceededException(idOf(slotOf(zOrder.get(size - 1))).toString());
+    }
+  }
+
+  @Override
+  public int nextForegroundZIndex() {
+    if (size == 0) {
+      return 0;
+    }
+    ensureSafeToPlaceOnTop();
+    return zOf(zOrder.get(size - 1)) + 1;
+  }
+
+  @Override
+  public Widget insert(final Widget widget) {
+    final int position = lowerBound(widget.getZ());
+    if (position < size && zOf(zOrder.get(position)) == widget.getZ()) {
+      ensureSafeToPlaceOnTop();
+      shiftUpwardsFrom(position);
+    }
+
+    final int slot = allocateSlot();
+    write(slot, widget);
+    putId(widget.getId(), slot);
+    insertEntry(position, entry(widget.getZ(), slot));
+    return widget;
+  }
+
+  @Override
+  public Widget replace(final Widget widget) {
+    final int slot = findSlot(widget.getId());
+    write(slot, widget);
+    return widget;
+  }
+
+  @Override
+  public Optional<Widget> remove(final WidgetId id) {
+    final int bucket = findBucket(id);
+    final int slot = idTable.get(bucket) - 1;
+    if (slot < 0) {
+      return Optional.empty();
+    }
+
+    final Widget removed = materialize(slot);
+    removeBucket(bucket);
+    removeEntry(lowerBound(removed.getZ()));
+    freeSlot(slot);
+    return Optional.of(removed);
+  }
+
+  @Override
+  public Optional<Widget> find(final WidgetId id) {
+    final int slot = findSlot(id);
+    return slot < 0 ? Optional.empty() : Optional.of(materialize(slot));
+  }
+
+  @Override
+  public List<Widget> list(final int limit, @Nullable final Integer afterZ) {
+    int from = 0;
+    if (afterZ != null) {
+      if (afterZ == Integer.MAX_VALUE) {
+        return Collections.emptyList();
+      }
+      from = lowerBound(afterZ + 1);
+    }
+
+    final int to = (int) Math.min(size, (long) from + limit);
+    if (from >= to) {
+      return Collections.emptyList();
+    }
+    final List<Widget> widgets = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      widgets.add(materialize(slotOf(zOrder.get(i))));
+    }
+    return Collections.unmodifiableList(widgets);
+  }
+
+  @Override
+  public void clear() {
+    slots = allocate((long) initialCapacity * SLOT_SIZE);
+    usedSlots = 0;
+    freeSlot = -1;
+    idTable =
+        allocate((long) Integer.highestOneBit(initialCapacity * 2 - 1) * 2 * Integer.BYTES)
+            .asIntBuffer();
+    zOrder = allocate((long) initialCapacity * Long.BYTES).asLongBuffer();
+    size = 0;
+  }
+}
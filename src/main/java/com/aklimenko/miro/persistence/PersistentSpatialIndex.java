@@ -0,0 +1,551 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable persistent index of widget IDs by the rectangles occupied by the widgets based on an
+ * R-tree with quadratic split. <br>
+ * Nodes are never modified once built. Every modification copies only the nodes on the path from
+ * the root to the modified leaf ({@code O(log n)} nodes), plus the nodes created by splits and the
+ * entries of underfull nodes reinserted on removal, and shares the rest of the tree with the
+ * previous version. So instances are safe to be read concurrently without any synchronization.
+ * <br>
+ * Queries are answered the same way as by {@link SpatialIndex}. Only IDs and rectangles are
+ * indexed, so z-index shifts don't touch the index.
+ */
+final class PersistentSpatialIndex {
+
+  private static final int MAX_ENTRIES = 16;
+  private static final int MIN_ENTRIES = 6;
+
+  private static final PersistentSpatialIndex EMPTY = new PersistentSpatialIndex(null, 0);
+
+  private static final Comparator<Bounds> BY_CENTER_X =
+      Comparator.comparingDouble(bounds -> bounds.minX + bounds.maxX);
+  private static final Comparator<Bounds> BY_CENTER_Y =
+      Comparator.comparingDouble(bounds -> bounds.minY + bounds.maxY);
+
+  /** Rectangle of a node subtree or of an indexed widget. */
+  private abstract static class Bounds {
+    final double minX;
+    final double minY;
+    final double maxX;
+    final double maxY;
+
+    Bounds(final double minX, final double minY, final double maxX, final double maxY) {
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+    }
+
+    /** Creates rectangle covering all the provided non-empty rectangles. */
+    Bounds(final Bounds[] covered) {
+      double minX = covered[0].minX;
+      double minY = covered[0].minY;
+      double maxX = covered[0].maxX;
+      double maxY = covered[0].maxY;
+      for (int i = 1; i < covered.length; i++) {
+        minX = Math.min(minX, covered[i].minX);
+        minY = Math.min(minY, covered[i].minY);
+        maxX = Math.max(maxX, covered[i].maxX);
+        maxY = Math.max(maxY, covered[i].maxY);
+      }
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+    }
+
+    final boolean intersects(
+        final double minX, final double minY, final double maxX, final double maxY) {
+      return this.minX <= maxX && this.maxX >= minX && this.minY <= maxY && this.maxY >= minY;
+    }
+
+    final boolean contains(final Bounds other) {
+      return minX <= other.minX && maxX >= other.maxX && minY <= other.minY && maxY >= other.maxY;
+    }
+
+    final double area() {
+      return (maxX - minX) * (maxY - minY);
+    }
+
+    /** @return Area of the rectangle covering both this one and provided one. */
+    final double unionArea(final Bounds other) {
+      return (Math.max(maxX, other.maxX) - Math.min(minX, other.minX))
+          * (Math.max(maxY, other.maxY) - Math.min(minY, other.minY));
+    }
+  }
+
+  private static final class Entry extends Bounds {
+    final WidgetId id;
+
+    Entry(final WidgetId id, final BoundingBox box) {
+      super(box.getMinX(), box.getMinY(), box.getMaxX(), box.getMaxY());
+      this.id = id;
+    }
+
+    Entry(final Widget widget) {
+      this(widget.getId(), BoundingBox.of(widget));
+    }
+  }
+
+  private static final class Node extends Bounds {
+    /** Whether children are entries rather than nodes. */
+    final boolean leaf;
+
+    final Bounds[] children;
+
+    Node(final boolean leaf, final Bounds[] children) {
+      super(children);
+      this.leaf = leaf;
+      this.children = children;
+    }
+  }
+
+  /** Group of children being distributed by a split together with the rectangle covering them. */
+  private static final class Group {
+    final List<Bounds> children = new ArrayList<>(MAX_ENTRIES);
+    double minX;
+    double minY;
+    double maxX;
+    double maxY;
+
+    Group(final Bounds seed) {
+      children.add(seed);
+      minX = seed.minX;
+      minY = seed.minY;
+      maxX = seed.maxX;
+      maxY = seed.maxY;
+    }
+
+    void add(final Bounds child) {
+      children.add(child);
+      minX = Math.min(minX, child.minX);
+      minY = Math.min(minY, child.minY);
+      maxX = Math.max(maxX, child.maxX);
+      maxY = Math.max(maxY, child.maxY);
+    }
+
+    double area() {
+      return (maxX - minX) * (maxY - minY);
+    }
+
+    /** @return Growth of the group area if provided child is added. */
+    double growth(final Bounds child) {
+      return (Math.max(maxX, child.maxX) - Math.min(minX, child.minX))
+              * (Math.max(maxY, child.maxY) - Math.min(minY, child.minY))
+          - area();
+    }
+
+    Node toNode(final boolean leaf) {
+      return new Node(leaf, children.toArray(new Bounds[0]));
+    }
+  }
+
+  @Nullable private final Node root;
+  private final int size;
+
+  private PersistentSpatialIndex(@Nullable final Node root, final int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  static PersistentSpatialIndex empty() {
+    return EMPTY;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Indexes widget by its rectangle.
+   *
+   * @param widget Widget not indexed yet.
+   * @return New version of the index.
+   */
+  PersistentSpatialIndex insert(final Widget widget) {
+    return new PersistentSpatialIndex(insert(root, new Entry(widget)), size + 1);
+  }
+
+  /**
+   * Indexes widgets by their rectangles. If there are at least as many widgets as indexed ones,
+   * the tree is rebuilt with all of them by Sort-Tile-Recursive packing as {@link
+   * SpatialIndex#insertAll(List)} does, otherwise widgets are inserted one by one.
+   *
+   * @param widgets Widgets not indexed yet.
+   * @return New version of the index.
+   */
+  PersistentSpatialIndex insertAll(final List<Widget> widgets) {
+    if (widgets.size() < size) {
+      Node inserted = root;
+      for (final Widget widget : widgets) {
+        inserted = insert(inserted, new Entry(widget));
+      }
+      return new PersistentSpatialIndex(inserted, size + widgets.size());
+    }
+
+    final List<Bounds> entries = new ArrayList<>(size + widgets.size());
+    if (root != null) {
+      collectEntries(root, entries);
+    }
+    for (final Widget widget : widgets) {
+      entries.add(new Entry(widget));
+    }
+    if (entries.isEmpty()) {
+      return this;
+    }
+
+    List<Bounds> level = pack(entries, true);
+    while (level.size() > 1) {
+      level = pack(level, false);
+    }
+    return new PersistentSpatialIndex((Node) level.get(0), entries.size());
+  }
+
+  /**
+   * Re-indexes widget if its rectangle has changed.
+   *
+   * @param previous Indexed version of the widget.
+   * @param updated Updated version of the widget.
+   * @return New version of the index or the same one if the rectangle hasn't changed.
+   */
+  PersistentSpatialIndex update(final Widget previous, final Widget updated) {
+    if (previous.getX() != updated.getX()
+        || previous.getY() != updated.getY()
+        || Double.compare(previous.getWidth(), updated.getWidth()) != 0
+        || Double.compare(previous.getHeight(), updated.getHeight()) != 0) {
+      return remove(previous).insert(updated);
+    }
+    return this;
+  }
+
+  /**
+   * Removes widget from the index. Entries of the nodes getting underfull are reinserted.
+   *
+   * @param widget Indexed version of the widget.
+   * @return New version of the index or the same one if widget is not found.
+   */
+  PersistentSpatialIndex remove(final Widget widget) {
+    if (root == null) {
+      return this;
+    }
+    final List<Bounds> orphans = new ArrayList<>();
+    final Node removed = remove(root, new Entry(widget), orphans, true);
+    if (removed == root) {
+      return this;
+    }
+
+    Node condensed = removed;
+    while (condensed != null && !condensed.leaf && condensed.children.length == 1) {
+      condensed = (Node) condensed.children[0];
+    }
+    for (final Bounds orphan : orphans) {
+      condensed = insert(condensed, (Entry) orphan);
+    }
+    return new PersistentSpatialIndex(condensed, size - 1);
+  }
+
+  /**
+   * Looks up requested amount of widgets intersecting provided area ordered by z-index in {@code
+   * O(log n + k log limit)} for {@code k} widgets in the area.
+   *
+   * @param area Area to look up widgets in.
+   * @param limit Amount of widgets to read.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @param widgets Lookup of indexed widgets by ID.
+   * @return Widgets ordered by z-index in ascending order.
+   */
+  List<Widget> list(
+      final BoundingBox area,
+      final int limit,
+      @Nullable final Integer afterZ,
+      final Function<WidgetId, Widget> widgets) {
+    if (root == null) {
+      return List.of();
+    }
+    return SpatialIndex.selectLowest(
+        consumer ->
+            search(root, area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY(), consumer),
+        limit,
+        afterZ,
+        widgets);
+  }
+
+  /**
+   * Looks up requested amount of the topmost widgets covering provided point visiting only the
+   * subtrees covering the point.
+   *
+   * @param x X coordinate of the point.
+   * @param y Y coordinate of the point.
+   * @param limit Amount of widgets to read.
+   * @param widgets Lookup of indexed widgets by ID.
+   * @return Widgets ordered by z-index in descending order.
+   */
+  List<Widget> hitTest(
+      final double x, final double y, final int limit, final Function<WidgetId, Widget> widgets) {
+    if (root == null) {
+      return List.of();
+    }
+    return SpatialIndex.selectTopmost(
+        consumer -> search(root, x, y, x, y, consumer), limit, widgets);
+  }
+
+  private static void search(
+      final Node node,
+      final double minX,
+      final double minY,
+      final double maxX,
+      final double maxY,
+      final Consumer<WidgetId> consumer) {
+    for (final Bounds child : node.children) {
+      if (child.intersects(minX, minY, maxX, maxY)) {
+        if (node.leaf) {
+          consumer.accept(((Entry) child).id);
+        } else {
+          search((Node) child, minX, minY, maxX, maxY, consumer);
+        }
+      }
+    }
+  }
+
+  /** @return Root of the tree with the entry inserted into provided one. */
+  private static Node insert(@Nullable final Node root, final Entry entry) {
+    if (root == null) {
+      return new Node(true, new Bounds[] {entry});
+    }
+    final Node[] inserted = insertInto(root, entry);
+    return inserted.length == 1 ? inserted[0] : new Node(false, inserted);
+  }
+
+  /**
+   * Copies the node with the entry inserted into its subtree.
+   *
+   * @return Copy of the node, or two nodes if the copy overflows and is split.
+   */
+  private static Node[] insertInto(final Node node, final Entry entry) {
+    final Bounds[] children;
+    if (node.leaf) {
+      children = Arrays.copyOf(node.children, node.children.length + 1);
+      children[node.children.length] = entry;
+    } else {
+      final int chosen = chooseSubtree(node, entry);
+      final Node[] inserted = insertInto((Node) node.children[chosen], entry);
+      children = Arrays.copyOf(node.children, node.children.length + inserted.length - 1);
+      children[chosen] = inserted[0];
+      if (inserted.length == 2) {
+        children[node.children.length] = inserted[1];
+      }
+    }
+    return children.length <= MAX_ENTRIES
+        ? new Node[] {new Node(node.leaf, children)}
+        : split(node.leaf, children);
+  }
+
+  /** @return Index of the child whose rectangle needs the least enlargement to include entry. */
+  private static int chooseSubtree(final Node node, final Entry entry) {
+    int best = 0;
+    double bestEnlargement = node.children[0].unionArea(entry) - node.children[0].area();
+    for (int i = 1; i < node.children.length; i++) {
+      final Bounds candidate = node.children[i];
+      final double enlargement = candidate.unionArea(entry) - candidate.area();
+      if (enlargement < bestEnlargement
+          || enlargement == bestEnlargement && candidate.area() < node.children[best].area()) {
+        best = i;
+        bestEnlargement = enlargement;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Distributes children of an overflown node between two new nodes so that the rectangles of both
+   * of them are as small as possible.
+   */
+  private static Node[] split(final boolean leaf, final Bounds[] overflown) {
+    final Bounds[] children = overflown.clone();
+
+    // seeds are the pair of children wasting the most area if put together
+    int first = 0;
+    int second = 1;
+    double worstWaste = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < children.length; i++) {
+      for (int j = i + 1; j < children.length; j++) {
+        final double waste =
+            children[i].unionArea(children[j]) - children[i].area() - children[j].area();
+        if (waste > worstWaste) {
+          worstWaste = waste;
+          first = i;
+          second = j;
+        }
+      }
+    }
+
+    final Group firstGroup = new Group(children[first]);
+    final Group secondGroup = new Group(children[second]);
+    children[first] = null;
+    children[second] = null;
+
+    int remaining = children.length - 2;
+    while (remaining > 0) {
+      final Group group;
+      int next = -1;
+      if (firstGroup.children.size() + remaining == MIN_ENTRIES) {
+        group = firstGroup;
+      } else if (secondGroup.children.size() + remaining == MIN_ENTRIES) {
+        group = secondGroup;
+      } else {
+        // next is the child with the greatest preference for one of the groups
+        double bestDifference = -1;
+        double firstGrowth = 0;
+        double secondGrowth = 0;
+        for (int i = 0; i < children.length; i++) {
+          if (children[i] != null) {
+            final double toFirst = firstGroup.growth(children[i]);
+            final double toSecond = secondGroup.growth(children[i]);
+            if (next < 0 || Math.abs(toFirst - toSecond) > bestDifference) {
+              bestDifference = Math.abs(toFirst - toSecond);
+              next = i;
+              firstGrowth = toFirst;
+              secondGrowth = toSecond;
+            }
+          }
+        }
+        group =
+            firstGrowth < secondGrowth
+                    || firstGrowth == secondGrowth
+                        && firstGroup.children.size() <= secondGroup.children.size()
+                ? firstGroup
+                : secondGroup;
+      }
+
+      for (int i = 0; i < children.length; i++) {
+        if (children[i] != null && (next < 0 || i == next)) {
+          group.add(children[i]);
+          children[i] = null;
+          remaining--;
+        }
+      }
+    }
+    return new Node[] {firstGroup.toNode(leaf), secondGroup.toNode(leaf)};
+  }
+
+  /**
+   * Copies the node with the entry removed from its subtree.
+   *
+   * @param node Node to remove the entry from.
+   * @param probe Entry with the same ID and rectangle as the indexed one.
+   * @param orphans Entries of the removed underfull nodes to reinsert.
+   * @param root Whether the node is the root, which is never considered underfull.
+   * @return The same node if the entry is not found, {@code null} if the node gets empty or
+   *     underfull, or copy of the node otherwise.
+   */
+  @Nullable
+  private static Node remove(
+      final Node node, final Entry probe, final List<Bounds> orphans, final boolean root) {
+    int index = -1;
+    Node replacement = null;
+    for (int i = 0; i < node.children.length && index < 0; i++) {
+      final Bounds child = node.children[i];
+      if (node.leaf) {
+        if (((Entry) child).id.equals(probe.id)) {
+          index = i;
+        }
+      } else if (child.contains(probe)) {
+        final Node removed = remove((Node) child, probe, orphans, false);
+        if (removed != child) {
+          index = i;
+          replacement = removed;
+        }
+      }
+    }
+    if (index < 0) {
+      return node;
+    }
+
+    final Bounds[] children;
+    if (replacement == null) {
+      children = new Bounds[node.children.length - 1];
+      System.arraycopy(node.children, 0, children, 0, index);
+      System.arraycopy(
+          node.children, index + 1, children, index, node.children.length - index - 1);
+    } else {
+      children = node.children.clone();
+      children[index] = replacement;
+    }
+
+    if (children.length == 0) {
+      return null;
+    }
+    if (!root && children.length < MIN_ENTRIES) {
+      for (final Bounds child : children) {
+        collectEntries(child, orphans);
+      }
+      return null;
+    }
+    return new Node(node.leaf, children);
+  }
+
+  private static void collectEntries(final Bounds bounds, final List<Bounds> into) {
+    if (bounds instanceof Entry) {
+      into.add(bounds);
+      return;
+    }
+    for (final Bounds child : ((Node) bounds).children) {
+      collectEntries(child, into);
+    }
+  }
+
+  /**
+   * Packs children into nodes tiling them into vertical slices by the centers of their rectangles
+   * and then into nodes within every slice.
+   *
+   * @param children Children to pack.
+   * @param leaf Whether children are entries.
+   * @return Packed nodes.
+   */
+  private static List<Bounds> pack(final List<Bounds> children, final boolean leaf) {
+    final int nodes = (children.size() + MAX_ENTRIES - 1) / MAX_ENTRIES;
+    final int slices = (int) Math.ceil(Math.sqrt(nodes));
+    children.sort(BY_CENTER_X);
+
+    final List<Bounds> packed = new ArrayList<>(nodes);
+    for (int slice = 0; slice < slices; slice++) {
+      final List<Bounds> tile =
+          children.subList(
+              (int) ((long) children.size() * slice / slices),
+              (int) ((long) children.size() * (slice + 1) / slices));
+      tile.sort(BY_CENTER_Y);
+      final int tileNodes = (tile.size() + MAX_ENTRIES - 1) / MAX_ENTRIES;
+      for (int i = 0; i < tileNodes; i++) {
+        final int from = tile.size() * i / tileNodes;
+        final int to = tile.size() * (i + 1) / tileNodes;
+        packed.add(new Node(leaf, tile.subList(from, to).toArray(new Bounds[0])));
+      }
+    }
+    return packed;
+  }
+}
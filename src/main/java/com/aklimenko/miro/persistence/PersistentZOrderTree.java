@@ -0,0 +1,344 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.Widget;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable persistent sorted set of widgets ordered by z-index based on a treap. <br>
+ * Every modification copies only the nodes on the restructured paths ({@code O(log n)} expected)
+ * and shares the rest of the tree with the previous version, so instances are safe to be read
+ * concurrently without any synchronization.
+ */
+final class PersistentZOrderTree {
+
+  private static final PersistentZOrderTree EMPTY = new PersistentZOrderTree(null);
+
+  @Nullable private final Node root;
+
+  private PersistentZOrderTree(@Nullable final Node root) {
+    this.root = root;
+  }
+
+  static PersistentZOrderTree empty() {
+    return EMPTY;
+  }
+
+  private static final class Node {
+    private final Widget widget;
+    private final int priority;
+    @Nullable private final Node left;
+    @Nullable private final Node right;
+
+    private Node(
+        final Widget widget,
+        final int priority,
+        @Nullable final Node left,
+        @Nullable final Node right) {
+      this.widget = widget;
+      this.priority = priority;
+      this.left = left;
+      this.right = right;
+    }
+
+    private Node withLeft(@Nullable final Node left) {
+      return new Node(widget, priority, left, right);
+    }
+
+    private Node withRight(@Nullable final Node right) {
+      return new Node(widget, priority, left, right);
+    }
+  }
+
+  /**
+   * Splits subtree into widgets below provided z-index and widgets on and above it.
+   *
+   * @param node Subtree root.
+   * @param z Z-index to split at.
+   * @return Pair of roots of lower and upper subtrees.
+   */
+  private static Node[] split(@Nullable final Node node, final long z) {
+    if (node == null) {
+      return new Node[2];
+    }
+
+    if (node.widget.getZ() < z) {
+      final Node[] parts = split(node.right, z);
+      parts[0] = node.withRight(parts[0]);
+      return parts;
+    } else {
+      final Node[] parts = split(node.left, z);
+      parts[1] = node.withLeft(parts[1]);
+      return parts;
+    }
+  }
+
+  /**
+   * Merges two subtrees where all the widgets of the lower one are below the widgets of the upper
+   * one.
+   *
+   * @param lower Lower subtree root.
+   * @param upper Upper subtree root.
+   * @return Merged subtree root.
+   */
+  @Nullable
+  private static Node merge(@Nullable final Node lower, @Nullable final Node upper) {
+    if (lower == null) {
+      return upper;
+    }
+    if (upper == null) {
+      return lower;
+    }
+
+    if (lower.priority > upper.priority) {
+      return lower.withRight(merge(lower.right, upper));
+    } else {
+      return upper.withLeft(merge(lower, upper.left));
+    }
+  }
+
+  /**
+   * Copies subtree shifting all its widgets upwards. Relative order of the widgets is preserved so
+   * the shape of the subtree is preserved as well.
+   *
+   * @param node Subtree root.
+   * @param onShift Consumer of the shifted widgets.
+   * @return Shifted subtree root.
+   */
+  @Nullable
+  private static Node shiftUpward(@Nullable final Node node, final Consumer<Widget> onShift) {
+    if (node == null) {
+      return null;
+    }
+
+    final Widget shifted = node.widget.shiftUpward();
+    onShift.accept(shifted);
+    return new Node(
+        shifted, node.priority, shiftUpward(node.left, onShift), shiftUpward(node.right, onShift));
+  }
+
+  private static void collect(
+      @Nullable final Node node, final long afterZ, final int limit, final List<Widget> widgets) {
+    if (node == null || widgets.size() >= limit) {
+      return;
+    }
+
+    if (node.widget.getZ() > afterZ) {
+      collect(node.left, afterZ, limit, widgets);
+      if (widgets.size() >= limit) {
+        return;
+      }
+      widgets.add(node.widget);
+    }
+    collect(node.right, afterZ, limit, widgets);
+  }
+
+  /**
+   * Looks up widget by z-index.
+   *
+   * @param z Z-index to look up.
+   * @return Found widget or {@code null}.
+   */
+  @Nullable
+  Widget get(final int z) {
+    Node node = root;
+    while (node != null && node.widget.getZ() != z) {
+      node = z < node.widget.getZ() ? node.left : node.right;
+    }
+    return node == null ? null : node.widget;
+  }
+
+  /** @return Widget with the highest z-index or {@code null} if the tree is empty. */
+  @Nullable
+  Widget last() {
+    Node node = root;
+    while (node != null && node.right != null) {
+      node = node.right;
+    }
+    return node == null ? null : node.widget;
+  }
+
+  /**
+   * Inserts widget into free z-index.
+   *
+   * @param widget Widget with z-index not occupied by other widgets.
+   * @return New version of the tree.
+   */
+  PersistentZOrderTree insert(final Widget widget) {
+    final Node[] parts = split(root, widget.getZ());
+    final Node node = new Node(widget, ThreadLocalRandom.current().nextInt(), null, null);
+    return new PersistentZOrderTree(merge(merge(parts[0], node), parts[1]));
+  }
+
+  /**
+   * Replaces widget at its z-index.
+   *
+   * @param widget Widget with z-index occupied by the widget to replace.
+   * @return New version of the tree.
+   */
+  PersistentZOrderTree replace(final Widget widget) {
+    return new PersistentZOrderTree(replace(root, widget));
+  }
+
+  private static Node replace(final Node node, final Widget widget) {
+    if (node.widget.getZ() == widget.getZ()) {
+      return new Node(widget, node.priority, node.left, node.right);
+    }
+    return widget.getZ() < node.widget.getZ()
+        ? node.withLeft(replace(node.left, widget))
+        : node.withRight(replace(node.right, widget));
+  }
+
+  /**
+   * Removes widget at provided z-index.
+   *
+   * @param z Z-index of the widget to remove.
+   * @return New version of the tree.
+   */
+  PersistentZOrderTree remove(final int z) {
+    final Node[] lower = split(root, z);
+    final Node[] upper = split(lower[1], z + 1L);
+    return new PersistentZOrderTree(merge(lower[0], upper[1]));
+  }
+
+  /**
+   * Replaces all the widgets within the z-index range of provided widgets by them. The replacing
+   * subtree is built bottom-up in linear time instead of inserting the widgets one by one.
+   *
+   * @param widgets Widgets ordered by z-index in ascending order.
+   * @return New version of the tree.
+   */
+  PersistentZOrderTree splice(final List<Widget> widgets) {
+    if (widgets.isEmpty()) {
+      return this;
+    }
+
+    final Node[] lower = split(root, widgets.get(0).getZ());
+    final Node[] upper = split(lower[1], widgets.get(widgets.size() - 1).getZ() + 1L);
+    return new PersistentZOrderTree(merge(merge(lower[0], build(widgets)), upper[1]));
+  }
+
+  /**
+   * Builds subtree out of widgets ordered by z-index as a complete binary tree laid out by heap
+   * indexes. Random priorities are sorted once and assigned by heap index in descending order, so
+   * every node has priority not lower than its children and the subtree remains a valid treap.
+   *
+   * @param widgets Widgets ordered by z-index in ascending order.
+   * @return Subtree root.
+   */
+  @Nullable
+  private static Node build(final List<Widget> widgets) {
+    final int[] priorities = new int[widgets.size()];
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int i = 0; i < priorities.length; i++) {
+      priorities[i] = random.nextInt();
+    }
+    Arrays.sort(priorities);
+    return build(widgets.iterator(), priorities, 0);
+  }
+
+  /**
+   * Builds subtree rooted at provided heap index assigning widgets in-order.
+   *
+   * @param widgets Widgets to assign in ascending z-order.
+   * @param priorities Priorities in ascending order.
+   * @param index Heap index of the subtree root.
+   * @return Subtree root.
+   */
+  @Nullable
+  private static Node build(
+      final Iterator<Widget> widgets, final int[] priorities, final int index) {
+    if (index >= priorities.length) {
+      return null;
+    }
+
+    final Node left = build(widgets, priorities, 2 * index + 1);
+    final Widget widget = widgets.next();
+    final Node right = build(widgets, priorities, 2 * index + 2);
+    return new Node(widget, priorities[priorities.length - 1 - index], left, right);
+  }
+
+  /**
+   * Shifts upwards all the widgets starting from provided z-index.
+   *
+   * @param z Z-index to start shifting from.
+   * @param onShift Consumer of the shifted widgets.
+   * @return New version of the tree.
+   */
+  PersistentZOrderTree shiftUpwardsFrom(final int z, final Consumer<Widget> onShift) {
+    final Node[] parts = split(root, z);
+    return new PersistentZOrderTree(merge(parts[0], shiftUpward(parts[1], onShift)));
+  }
+
+  /**
+   * Collects widgets above provided z-index in ascending z-order.
+   *
+   * @param afterZ Z-index to collect widgets above.
+   * @param limit Amount of widgets to collect.
+   * @param widgets Collected widgets.
+   */
+  void collect(final long afterZ, final int limit, final List<Widget> widgets) {
+    collect(root, afterZ, limit, widgets);
+  }
+
+  /**
+   * Iterates widgets above provided z-index in ascending z-order. Iterator keeps only the path
+   * from the root to the next widget, and since the tree is immutable it's not affected by later
+   * modifications.
+   *
+   * @param afterZ Z-index to iterate widgets above.
+   * @return Iterator over the widgets.
+   */
+  Iterator<Widget> iterator(final long afterZ) {
+    final Deque<Node> path = new ArrayDeque<>();
+    descend(root, afterZ, path);
+    return new Iterator<>() {
+      @Override
+      public boolean hasNext() {
+        return !path.isEmpty();
+      }
+
+      @Override
+      public Widget next() {
+        if (path.isEmpty()) {
+          throw new NoSuchElementException();
+        }
+        final Node node = path.pop();
+        descend(node.right, afterZ, path);
+        return node.widget;
+      }
+    };
+  }
+
+  /** Pushes the path to the lowest widget above provided z-index in the subtree. */
+  private static void descend(@Nullable Node node, final long afterZ, final Deque<Node> path) {
+    while (node != null) {
+      if (node.widget.getZ() > afterZ) {
+        path.push(node);
+        node = node.left;
+      } else {
+        node = node.right;
+      }
+    }
+  }
+}
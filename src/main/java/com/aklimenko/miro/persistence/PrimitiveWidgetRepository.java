@@ -0,0 +1,45 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.concurrent.ConcurrentAccessLocker;
+import com.aklimenko.miro.model.widget.UlidWidgetIdGenerator;
+import com.aklimenko.miro.model.widget.WidgetIdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Implementation of {@link WidgetRepository} contract based on {@link PrimitiveZOrderIndex}. <br>
+ * Widgets are indexed by ID in an open-addressing hash table of primitive IDs and by z-index in a
+ * B+ tree of primitive z-indexes, so the indexes cost a fraction of the memory of boxed hash and
+ * tree maps and lookups don't allocate.
+ */
+@Repository
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@ConditionalOnProperty(value = "persistence.repository", havingValue = "primitive")
+public class PrimitiveWidgetRepository extends ZOrderIndexWidgetRepository {
+
+  public PrimitiveWidgetRepository(final ConcurrentAccessLocker accessLocker) {
+    this(accessLocker, new UlidWidgetIdGenerator());
+  }
+
+  @Autowired
+  public PrimitiveWidgetRepository(
+      final ConcurrentAccessLocker accessLocker, final WidgetIdGenerator idGenerator) {
+    super(new PrimitiveZOrderIndex(), accessLocker, idGenerator);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.utils.ValidationHelper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * {@link ZOrderIndex} implementation based on primitive-specialized collections. <br>
+ * Widgets are looked up by ID in {@link WidgetIdMap} keeping ID halves in {@code long} arrays and
+ * ordered by z-index in {@link IntBTreeMap} keeping z-indexes in {@code int} arrays, so neither of
+ * them boxes keys or allocates an entry object per widget, and lookups and z-ordered scans
+ * allocate nothing. <br>
+ * Inserting a widget into occupied z-index rewrites all the widgets above it same as {@link
+ * WidgetRepositoryImpl}, but z-indexes are incremented in place in the tree without reinserting.
+ */
+class PrimitiveZOrderIndex implements ZOrderIndex {
+
+  private final WidgetIdMap widgetsById = new WidgetIdMap();
+  private final IntBTreeMap<Widget> widgetsByZIndex = new IntBTreeMap<>();
+
+  private Widget shiftUpward(final Widget widget) {
+    final Widget shifted = widget.shiftUpward();
+    widgetsById.put(shifted);
+    return shifted;
+  }
+
+  @Override
+  public int nextForegroundZIndex() {
+    if (widgetsByZIndex.isEmpty()) {
+      return 0;
+    }
+
+    final Widget topWidget = widgetsByZIndex.lastValue();
+    ValidationHelper.ensureSafeToPlaceOnTopOf(topWidget);
+    return topWidget.getZ() + 1;
+  }
+
+  @Override
+  public Widget insert(final Widget widget) {
+    if (widgetsByZIndex.containsKey(widget.getZ())) {
+      // ensure there is room on top of the widget in the foreground
+      nextForegroundZIndex();
+      widgetsByZIndex.shiftUpwardsFrom(widget.getZ(), this::shiftUpward);
+    }
+
+    widgetsById.put(widget);
+    widgetsByZIndex.put(widget.getZ(), widget);
+    return widget;
+  }
+
+  @Override
+  public Widget replace(final Widget widget) {
+    widgetsById.put(widget);
+    widgetsByZIndex.put(widget.getZ(), widget);
+    return widget;
+  }
+
+  @Override
+  public Optional<Widget> remove(final WidgetId id) {
+    final Widget removed = widgetsById.remove(id);
+    if (removed == null) {
+      return Optional.empty();
+    }
+
+    widgetsByZIndex.remove(removed.getZ());
+    return Optional.of(removed);
+  }
+
+  @Override
+  public Optional<Widget> find(final WidgetId id) {
+    return Optional.ofNullable(widgetsById.get(id));
+  }
+
+  @Override
+  public List<Widget> list(final int limit, @Nullable final Integer afterZ) {
+    int fromZ = Integer.MIN_VALUE;
+    if (afterZ != null) {
+      if (afterZ == Integer.MAX_VALUE) {
+        return Collections.emptyList();
+      }
+      fromZ = afterZ + 1;
+    }
+
+    final List<Widget> widgets = new ArrayList<>(Math.min(limit, widgetsById.size()));
+    widgetsByZIndex.collect(fromZ, limit, widgets);
+    return Collections.unmodifiableList(widgets);
+  }
+
+  @Override
+  public void clear() {
+    widgetsById.clear();
+    widgetsByZIndex.clear();
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.exception.BoardLimitExceededException;
+import com.aklimenko.miro.persistence.wal.BoardSnapshot;
+import com.aklimenko.miro.persistence.wal.SnapshotFile;
+import com.aklimenko.miro.persistence.wal.WriteAheadLog;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Widget storage sharded by board. <br>
+ * Board is an independent namespace of widgets with its own z-order. Every board is backed by its
+ * own {@link WidgetRepository} instance with its own storage and its own concurrent access
+ * locker, so operations on different boards never contend with each other. Board repositories are
+ * created lazily on the first write to the board and are never evicted, so the amount of boards is
+ * limited to keep clients from exhausting the heap by writing to ever new board IDs. <br>
+ * If {@link WriteAheadLog} is provided, mutations of every board are recorded into it and the
+ * boards are rebuilt from it on startup. Snapshots of the boards are taken periodically so that
+ * the log can be truncated and startup replays only the tail of the log written after the latest
+ * snapshot.
+ */
+@Component
+public class ShardedWidgetRepository implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ShardedWidgetRepository.class);
+
+  /** Board used when client doesn't specify one. */
+  public static final String DEFAULT_BOARD = "default";
+
+  private final Map<String, WidgetRepository> boards = new ConcurrentHashMap<>();
+
+  private final Supplier<WidgetRepository> boardRepositoryFactory;
+
+  private final int maxBoards;
+
+  /** Amount of boards created so far including the ones being created. */
+  private final AtomicInteger boardCount = new AtomicInteger();
+
+  @Nullable private final WriteAheadLog writeAheadLog;
+
+  @Nullable private final Path snapshotPath;
+
+  @Nullable private final ScheduledExecutorService snapshotScheduler;
+
+  /** Serializes snapshots taken periodically and on demand. */
+  private final Object snapshotLock = new Object();
+
+  /**
+   * @param boardRepositoryFactory Factory creating new independent {@link WidgetRepository}
+   *     instance for every board.
+   * @param maxBoards Maximum amount of boards.
+   */
+  public ShardedWidgetRepository(
+      final Supplier<WidgetRepository> boardRepositoryFactory, final int maxBoards) {
+    this.boardRepositoryFactory = boardRepositoryFactory;
+    this.maxBoards = maxBoards;
+    this.writeAheadLog = null;
+    this.snapshotPath = null;
+    this.snapshotScheduler = null;
+  }
+
+  /**
+   * Restores the boards from the latest snapshot and the tail of write-ahead log written after it,
+   * and starts taking snapshots periodically if configured. Restored boards count towards the
+   * maximum amount of boards but are restored even if there are more of them.
+   *
+   * @param boardRepositoryFactory Factory creating new independent {@link WidgetRepository}
+   *     instance for every board.
+   * @param maxBoards Maximum amount of boards.
+   * @param walConfig Write-ahead log configuration.
+   * @throws UncheckedIOException if snapshot or write-ahead log can not be read.
+   */
+  public ShardedWidgetRepository(
+      final Supplier<WidgetRepository> boardRepositoryFactory,
+      final int maxBoards,
+      final MiroConfig.Wal walConfig) {
+    this.boardRepositoryFactory = boardRepositoryFactory;
+    this.maxBoards = maxBoards;
+    if (!walConfig.isEnabled()) {
+      this.writeAheadLog = null;
+      this.snapshotPath = null;
+      this.snapshotScheduler = null;
+      return;
+    }
+
+    final long startedAt = System.nanoTime();
+    this.snapshotPath = Path.of(walConfig.getSnapshotPath());
+    final Map<String, WidgetRepository> restored = new HashMap<>();
+    final Map<String, Long> positions = new HashMap<>();
+    long snapshotPosition = 0;
+    long snapshotWidgets = 0;
+    try {
+      for (final BoardSnapshot board : SnapshotFile.read(snapshotPath)) {
+        final WidgetRepository repository = boardRepositoryFactory.get();
+        // widgets are ordered by z-index and never shift each other
+        board.getWidgets().forEach(repository::restoreWidget);
+        restored.put(board.getBoardId(), repository);
+        positions.put(board.getBoardId(), board.getPosition());
+        snapshotPosition = Math.max(snapshotPosition, board.getPosition());
+        snapshotWidgets += board.getWidgets().size();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to load widget snapshot", e);
+    }
+    final long snapshotLoadedAt = System.nanoTime();
+
+    final long[] replayed = {0};
+    try {
+      this.writeAheadLog =
+          WriteAheadLog.open(
+              Path.of(walConfig.getPath()),
+              walConfig.getFsyncMode(),
+              walConfig.getFsyncIntervalMS(),
+              // records covered by the snapshot may be missing from the log torn by a crash
+              snapshotPosition,
+              (record, position) -> {
+                // records written before the board was captured are already in the snapshot
+                if (position <= positions.getOrDefault(record.getBoardId(), 0L)) {
+                  return;
+                }
+                LoggedWidgetRepository.replay(
+                    restored.computeIfAbsent(
+                        record.getBoardId(), id -> boardRepositoryFactory.get()),
+                    record);
+                positions.put(record.getBoardId(), position);
+                replayed[0]++;
+              });
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open write-ahead log", e);
+    }
+    restored.forEach(
+        (boardId, repository) ->
+            boards.put(
+                boardId,
+                new LoggedWidgetRepository(
+                    boardId, repository, writeAheadLog, positions.get(boardId))));
+    boardCount.set(boards.size());
+
+    final long readyAt = System.nanoTime();
+    log.info(
+        "Restored {} boards in {} ms: {} widgets loaded from snapshot {} in {} ms, "
+            + "{} write-ahead log records replayed in {} ms",
+        restored.size(),
+        TimeUnit.NANOSECONDS.toMillis(readyAt - startedAt),
+        snapshotWidgets,
+        snapshotPath,
+        TimeUnit.NANOSECONDS.toMillis(snapshotLoadedAt - startedAt),
+        replayed[0],
+        TimeUnit.NANOSECONDS.toMillis(readyAt - snapshotLoadedAt));
+
+    if (walConfig.getSnapshotIntervalMS() > 0) {
+      snapshotScheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                final Thread thread = new Thread(runnable, "widget-snapshot");
+                thread.setDaemon(true);
+                return thread;
+              });
+      snapshotScheduler.scheduleWithFixedDelay(
+          this::snapshotQuietly,
+          walConfig.getSnapshotIntervalMS(),
+          walConfig.getSnapshotIntervalMS(),
+          TimeUnit.MILLISECONDS);
+    } else {
+      snapshotScheduler = null;
+    }
+  }
+
+  /**
+   * @param widgetRepositories Provider of prototype scoped {@link WidgetRepository} beans selected
+   *     with {@code persistence.repository} property.
+   * @param config Application configuration.
+   */
+  @Autowired
+  public ShardedWidgetRepository(
+      final ObjectProvider<WidgetRepository> widgetRepositories, final MiroConfig config) {
+    this(widgetRepositories::getObject, config.getBoards().getMaxBoards(), config.getWal());
+  }
+
+  /**
+   * Retrieves repository of the board creating it if absent.
+   *
+   * @param boardId Board ID.
+   * @return {@link WidgetRepository} of the board.
+   * @throws BoardLimitExceededException if the board is absent and the maximum amount of boards is
+   *     reached.
+   */
+  public WidgetRepository board(final String boardId) {
+    final WidgetRepository existing = boards.get(boardId);
+    return existing != null ? existing : boards.computeIfAbsent(boardId, this::createBoard);
+  }
+
+  private WidgetRepository createBoard(final String boardId) {
+    // the slot is reserved before the board is created, so concurrent creations of different
+    // boards can't exceed the limit together
+    if (boardCount.incrementAndGet() > maxBoards) {
+      boardCount.decrementAndGet();
+      throw new BoardLimitExceededException(boardId);
+    }
+    return writeAheadLog == null
+        ? boardRepositoryFactory.get()
+        : new LoggedWidgetRepository(boardId, boardRepositoryFactory.get(), writeAheadLog, 0);
+  }
+
+  /**
+   * Retrieves repository of the board if it exists. Used by read, update and delete operations so
+   * that they don't allocate storage for boards nobody has written to.
+   *
+   * @param boardId Board ID.
+   * @return Optionally found {@link WidgetRepository} of the board.
+   */
+  public Optional<WidgetRepository> existingBoard(final String boardId) {
+    return Optional.ofNullable(boards.get(boardId));
+  }
+
+  /**
+   * Cleans up storage of all the boards. Used only for testing purposes. Not synchronized with
+   * operations on the boards.
+   */
+  public void cleanUp() {
+    boards.clear();
+    boardCount.set(0);
+  }
+
+  /**
+   * Takes snapshot of all the boards and deletes write-ahead log segments covered by it. <br>
+   * Log is switched to a new segment first, so all the records of the previous segments are
+   * applied to the boards by the time they are captured. Boards are captured one by one without
+   * stopping writers of other boards, and every board remembers the log sequence number of its
+   * last record, so on restart only the records written after the board was captured are replayed
+   * on top of it. Records appended after the rotation may be captured too, so they are forced
+   * before the snapshot is written, and on restart the log continues after the last captured
+   * record even if the log itself ends before it. Does nothing if write-ahead log is disabled.
+   *
+   * @throws IOException if snapshot can not be written or log segments can not be deleted.
+   */
+  public void snapshot() throws IOException {
+    if (writeAheadLog == null) {
+      return;
+    }
+
+    synchronized (snapshotLock) {
+      final long startedAt = System.nanoTime();
+      final long rotatedAt = writeAheadLog.rotate();
+      final List<BoardSnapshot> captured = new ArrayList<>();
+      long capturedPosition = rotatedAt;
+      for (final WidgetRepository board : boards.values()) {
+        // all the boards are logged when write-ahead log is enabled
+        final BoardSnapshot boardSnapshot = ((LoggedWidgetRepository) board).snapshot();
+        captured.add(boardSnapshot);
+        capturedPosition = Math.max(capturedPosition, boardSnapshot.getPosition());
+      }
+      writeAheadLog.force(capturedPosition);
+      final long size = SnapshotFile.write(snapshotPath, captured);
+      final int deleted = writeAheadLog.deleteSegmentsBefore(rotatedAt);
+      log.info(
+          "Snapshot of {} boards ({} bytes) taken in {} ms, {} write-ahead log segments deleted",
+          captured.size(),
+          size,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt),
+          deleted);
+    }
+  }
+
+  private void snapshotQuietly() {
+    try {
+      snapshot();
+    } catch (IOException | RuntimeException e) {
+      log.error("Failed to take widget snapshot", e);
+    }
+  }
+
+  /** Stops taking snapshots and closes write-ahead log if any. */
+  @PreDestroy
+  @Override
+  public void close() throws IOException {
+    if (snapshotScheduler != null) {
+      snapshotScheduler.shutdown();
+    }
+    if (writeAheadLog != null) {
+      writeAheadLog.close();
+    }
+  }
+}
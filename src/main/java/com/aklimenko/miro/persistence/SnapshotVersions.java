@@ -0,0 +1,127 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Registry of {@link WidgetSnapshot} versions pinned by pagination cursors. <br>
+ * Page read from a snapshot pins its version, so that the following pages are read from the same
+ * snapshot no matter how many widgets were inserted, moved or deleted since. Thanks to structural
+ * sharing a pinned snapshot retains only the nodes replaced by the later snapshots. <br>
+ * Version expires if no page was read from it for the timeout. Expired versions are dropped once
+ * per timeout by the reader pinning a version, so their snapshots get garbage collected without
+ * any background thread. When the max amount of versions is pinned, newly read pages are not
+ * pinned and are followed by the pages read from the latest snapshot instead.
+ */
+final class SnapshotVersions {
+
+  /** Pinned snapshot with the time it expires at. */
+  private static final class Pin {
+    private final WidgetSnapshot snapshot;
+    private volatile long expiresAt;
+
+    private Pin(final WidgetSnapshot snapshot, final long expiresAt) {
+      this.snapshot = snapshot;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final Map<Long, Pin> pins = new ConcurrentHashMap<>();
+  private final int maxPinned;
+  private final long timeoutNanos;
+  private final LongSupplier nanoClock;
+
+  private volatile long nextSweepAt;
+
+  /**
+   * @param maxPinned Max amount of versions pinned at the same time.
+   * @param timeoutMS Time in milliseconds a version stays pinned after a page was read from it.
+   * @param nanoClock Monotonic clock in nanoseconds.
+   */
+  SnapshotVersions(final int maxPinned, final long timeoutMS, final LongSupplier nanoClock) {
+    this.maxPinned = maxPinned;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMS);
+    this.nanoClock = nanoClock;
+    this.nextSweepAt = nanoClock.getAsLong() + timeoutNanos;
+  }
+
+  /**
+   * Retrieves pinned snapshot of provided version and extends its pinning.
+   *
+   * @param version Version to look up.
+   * @return Pinned snapshot or {@code null} if version is not pinned or expired.
+   */
+  @Nullable
+  WidgetSnapshot get(final long version) {
+    final Pin pin = pins.get(version);
+    if (pin == null) {
+      return null;
+    }
+
+    final long now = nanoClock.getAsLong();
+    if (now - pin.expiresAt >= 0) {
+      pins.remove(version, pin);
+      return null;
+    }
+    pin.expiresAt = now + timeoutNanos;
+    return pin.snapshot;
+  }
+
+  /**
+   * Pins provided snapshot, or extends its pinning if it's already pinned.
+   *
+   * @param snapshot Snapshot to pin.
+   * @return {@code true} if snapshot is pinned, {@code false} if max amount of versions is pinned.
+   */
+  boolean pin(final WidgetSnapshot snapshot) {
+    final long now = nanoClock.getAsLong();
+    if (now - nextSweepAt >= 0) {
+      nextSweepAt = now + timeoutNanos;
+      sweep(now);
+    }
+
+    final Pin pinned = pins.get(snapshot.getVersion());
+    if (pinned != null) {
+      pinned.expiresAt = now + timeoutNanos;
+      return true;
+    }
+    if (pins.size() >= maxPinned) {
+      sweep(now);
+      if (pins.size() >= maxPinned) {
+        return false;
+      }
+    }
+    pins.computeIfAbsent(snapshot.getVersion(), version -> new Pin(snapshot, now + timeoutNanos));
+    return true;
+  }
+
+  /** @return Amount of pinned versions including expired ones not dropped yet. */
+  int size() {
+    return pins.size();
+  }
+
+  /** Unpins all the versions. */
+  void clear() {
+    pins.clear();
+  }
+
+  private void sweep(final long now) {
+    pins.values().removeIf(pin -> now - pin.expiresAt >= 0);
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.UlidWidgetIdGenerator;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetIdGenerator;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Lock-free implementation of {@link WidgetRepository} contract based on copy-on-write {@link
+ * WidgetSnapshot}. <br>
+ * Readers take the current snapshot from a single atomic reference, so they never block and never
+ * retry, and every read (including listing a page) observes a consistent state. Writers build a
+ * new snapshot out of the current one and publish it with compare-and-set, retrying if another
+ * writer published first. Thanks to structural sharing of persistent data structures a write
+ * copies only {@code O(log n)} nodes, plus the widgets being shifted upwards. <br>
+ * Batch builds a single new snapshot out of all its operations, so it's published with a single
+ * compare-and-set. <br>
+ * Snapshots are versioned, and a full page of widgets pins the snapshot it was read from in {@link
+ * SnapshotVersions}, so paging through a board observes a single consistent snapshot even while
+ * the widgets are being shifted by concurrent writes. Iterating widgets walks a single snapshot
+ * without collecting the widgets. <br>
+ * Area queries and hit tests are answered from {@link PersistentSpatialIndex} kept in every
+ * snapshot, which is copied on write the same way as the other indexes.
+ */
+@Repository
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@ConditionalOnProperty(value = "persistence.repository", havingValue = "snapshot")
+public class SnapshotWidgetRepository implements WidgetRepository {
+
+  private final AtomicReference<WidgetSnapshot> snapshot =
+      new AtomicReference<>(WidgetSnapshot.EMPTY);
+
+  private final WidgetIdGenerator idGenerator;
+  private final SnapshotVersions versions;
+
+  public SnapshotWidgetRepository() {
+    this(new UlidWidgetIdGenerator(), new MiroConfig());
+  }
+
+  @Autowired
+  public SnapshotWidgetRepository(final WidgetIdGenerator idGenerator, final MiroConfig config) {
+    this(
+        idGenerator,
+        new SnapshotVersions(
+            config.getPagination().getMaxPinnedVersions(),
+            config.getPagination().getVersionTimeoutMS(),
+            System::nanoTime));
+  }
+
+  SnapshotWidgetRepository(final WidgetIdGenerator idGenerator, final SnapshotVersions versions) {
+    this.idGenerator = idGenerator;
+    this.versions = versions;
+  }
+
+  /** Result of the write operation together with the snapshot to publish. */
+  private static class Modification<T> {
+    private final WidgetSnapshot snapshot;
+    private final T result;
+
+    private Modification(final WidgetSnapshot snapshot, final T result) {
+      this.snapshot = snapshot;
+      this.result = result;
+    }
+  }
+
+  /**
+   * Applies modification to the current snapshot and publishes the new one. Modification is
+   * applied again to the fresh snapshot if another writer published its one in between, so it
+   * must be free of side effects.
+   *
+   * @param modification Function building new snapshot out of the current one.
+   * @return Result of the successfully published modification.
+   */
+  private <T> T modify(final Function<WidgetSnapshot, Modification<T>> modification) {
+    while (true) {
+      final WidgetSnapshot current = snapshot.get();
+      final Modification<T> modified = modification.apply(current);
+      if (modified.snapshot == current || snapshot.compareAndSet(current, modified.snapshot)) {
+        return modified.result;
+      }
+    }
+  }
+
+  @Override
+  public Widget createWidget(WidgetCreateRequest widgetToCreate) {
+    // ID is generated once so that retried modifications don't waste IDs
+    final WidgetId id = idGenerator.next();
+    return modify(
+        current -> {
+          final Integer z = widgetToCreate.getZ();
+          final Widget newWidget =
+              widgetToCreate.toNewWidget(id, z != null ? z : current.nextForegroundZIndex());
+          return new Modification<>(current.insert(newWidget), newWidget);
+        });
+  }
+
+  @Override
+  public Widget restoreWidget(final Widget widget) {
+    return modify(current -> new Modification<>(current.insert(widget), widget));
+  }
+
+  @Override
+  public List<Widget> listWidgets(int limit, @Nullable Integer afterZ) {
+    return snapshot.get().list(limit, afterZ);
+  }
+
+  @Override
+  public List<Widget> listWidgets(
+      final int limit, @Nullable final Integer afterZ, final BoundingBox area) {
+    return snapshot.get().list(limit, afterZ, area);
+  }
+
+  @Override
+  public List<Widget> hitTest(final double x, final double y, final int limit) {
+    return snapshot.get().hitTest(x, y, limit);
+  }
+
+  @Override
+  public VersionedWidgets listWidgetsAt(
+      @Nullable final Long version,
+      final int limit,
+      @Nullable final Integer afterZ,
+      @Nullable final BoundingBox area) {
+    final WidgetSnapshot pinned = version == null ? null : versions.get(version);
+    final WidgetSnapshot listed = pinned != null ? pinned : snapshot.get();
+    final List<Widget> widgets =
+        area == null ? listed.list(limit, afterZ) : listed.list(limit, afterZ, area);
+
+    // only a full page is followed by the next one
+    final boolean pinnedListed =
+        pinned != null || (!widgets.isEmpty() && widgets.size() == limit && versions.pin(listed));
+    return new VersionedWidgets(widgets, pinnedListed ? listed.getVersion() : null);
+  }
+
+  @Override
+  public Iterator<Widget> iterateWidgets(@Nullable final Integer afterZ) {
+    return snapshot.get().iterator(afterZ);
+  }
+
+  @Override
+  public Iterator<Widget> exportWidgets() {
+    return snapshot.get().iterator(null);
+  }
+
+  @Override
+  public Optional<Widget> readWidget(WidgetId id) {
+    return snapshot.get().find(id);
+  }
+
+  @Override
+  public Optional<Widget> updateWidget(WidgetId id, WidgetUpdateRequest widgetUpdate) {
+    return modify(
+        current -> {
+          final Optional<Widget> updatedWidget =
+              current.find(id).map(toUpdate -> toUpdate.updateBy(widgetUpdate));
+          if (updatedWidget.isEmpty()) {
+            return new Modification<>(current, updatedWidget);
+          }
+
+          final Widget widget = updatedWidget.get();
+          // snapshots are immutable so nothing has to be rolled back if z-index limit exceeded
+          final WidgetSnapshot updated =
+              widgetUpdate.getZ() == null
+                  ? current.replace(widget)
+                  : current.remove(id).insert(widget);
+          return new Modification<>(updated, updatedWidget);
+        });
+  }
+
+  @Override
+  public boolean deleteWidget(WidgetId id) {
+    return modify(
+        current -> {
+          final WidgetSnapshot updated = current.remove(id);
+          return new Modification<>(updated, updated != current);
+        });
+  }
+
+  @Override
+  public List<WidgetBatchResult> applyBatch(final List<WidgetBatchOperation> operations) {
+    // IDs are generated once so that retried modifications don't waste IDs
+    final List<WidgetId> ids = new ArrayList<>();
+    for (final WidgetBatchOperation operation : operations) {
+      if (operation.getType() == WidgetBatchOperation.Type.CREATE) {
+        ids.add(idGenerator.next());
+      }
+    }
+    return modify(
+        current -> {
+          final Batch batch = new Batch(current, ids.iterator());
+          final List<WidgetBatchResult> results = WidgetBatch.apply(operations, batch);
+          return new Modification<>(batch.snapshot, results);
+        });
+  }
+
+  /**
+   * Places imported widgets on the current snapshot and publishes the new one with a single
+   * compare-and-set, placing them again if another writer published its snapshot in between.
+   */
+  @Override
+  public ImportedWidgets importWidgets(final List<WidgetCreateRequest> widgetsToCreate) {
+    // IDs are generated and widgets are sorted once so that retried modifications only merge
+    final WidgetImport widgetImport = new WidgetImport(widgetsToCreate, idGenerator);
+    return modify(
+        current -> {
+          final WidgetImport.Placement placement =
+              widgetImport.place(current::iterator, current::nextForegroundZIndex);
+          return new Modification<>(current.importWidgets(placement), placement.result());
+        });
+  }
+
+  /** Mutations of a batch building new snapshot out of the current one. */
+  private static final class Batch implements WidgetBatch.Mutations {
+    private WidgetSnapshot snapshot;
+    private final Iterator<WidgetId> ids;
+
+    private Batch(final WidgetSnapshot snapshot, final Iterator<WidgetId> ids) {
+      this.snapshot = snapshot;
+      this.ids = ids;
+    }
+
+    @Override
+    public Widget create(final WidgetCreateRequest widgetToCreate) {
+      final Integer z = widgetToCreate.getZ();
+      final Widget newWidget =
+          widgetToCreate.toNewWidget(ids.next(), z != null ? z : snapshot.nextForegroundZIndex());
+      snapshot = snapshot.insert(newWidget);
+      return newWidget;
+    }
+
+    @Override
+    public Optional<Widget> update(final WidgetId id, final WidgetUpdateRequest widgetUpdate) {
+      final Optional<Widget> updatedWidget =
+          snapshot.find(id).map(toUpdate -> toUpdate.updateBy(widgetUpdate));
+      updatedWidget.ifPresent(
+          widget ->
+              snapshot =
+                  widgetUpdate.getZ() == null
+                      ? snapshot.replace(widget)
+                      : snapshot.remove(id).insert(widget));
+      return updatedWidget;
+    }
+
+    @Override
+    public Optional<Widget> delete(final WidgetId id) {
+      final Optional<Widget> found = snapshot.find(id);
+      found.ifPresent(widget -> snapshot = snapshot.remove(id));
+      return found;
+    }
+  }
+
+  /**
+   * Cleans up repository storage. Not part of the {@link WidgetRepository} contract and used only
+   * for testing purposes.
+   */
+  public void cleanUp() {
+    snapshot.set(WidgetSnapshot.EMPTY);
+    versions.clear();
+  }
+}
@@ -0,0 +1,433 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.utils.ValidationHelper;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Z-order index keeping widgets ordered by sparse internal slots instead of absolute z-indexes.
+ * Not synchronized so must be used only in synchronized context. <br>
+ * After every layout widgets are placed into slots {@link #SPACING} apart. Widgets inserted
+ * afterwards take a free slot in between their neighbours, so inserting never touches neighbour
+ * widgets while there is a free slot. <br>
+ * External z-index of a widget is derived as its base z-index plus the amount of upward shifts
+ * applied to its slot. Shifts are recorded lazily in {@link ShiftLog} (a Fenwick tree over slots),
+ * so shifting all the widgets above a slot costs {@code O(log n)}. <br>
+ * When there is no free slot in between the neighbours, only the smallest aligned window of slots
+ * around them that is sparse enough is relabeled, doubling the window until its density is below
+ * the threshold of its size (order maintenance). Threshold decreases from full for the smallest
+ * windows to a half for the whole index, so a relabeled window leaves room in all the smaller
+ * windows inside it and relabeling takes {@code O(log^2 n)} amortized per insert even when all the
+ * widgets are inserted at the same z-index. The index is laid out again in a single {@code O(n)}
+ * pass only once as many widgets were inserted or removed as it had, which is amortized over them.
+ */
+class SparseZOrderIndex implements ZOrderIndex {
+
+  /** Distance between slots of neighbour widgets right after layout. */
+  static final int SPACING = 4;
+
+  /** Min amount of slots of the index. */
+  static final int MIN_CAPACITY = 64;
+
+  /** Max amount of slots of the index. */
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  private final Map<WidgetId, Entry> entriesById = new HashMap<>();
+  private final NavigableMap<Integer, Entry> entriesBySlot = new TreeMap<>();
+  private ShiftLog shifts = new ShiftLog(MIN_CAPACITY);
+
+  /** Amount of widgets inserted or removed since the last layout. */
+  private int changesSinceLayout = 0;
+
+  /** Amount of widgets moved into another slot so far. */
+  private long relabels = 0;
+
+  /** Internal mutable representation of the stored widget. */
+  private static class Entry {
+    private Widget widget;
+    private int baseZ;
+    private int slot;
+
+    private Entry(final Widget widget, final int baseZ, final int slot) {
+      this.widget = widget;
+      this.baseZ = baseZ;
+      this.slot = slot;
+    }
+  }
+
+  /**
+   * Fenwick tree accumulating amount of upward shifts and the latest shift timestamp per slot.
+   * Prefix query over slots returns total shift applied to the widget of the slot. Capacity is
+   * always a power of two.
+   */
+  private static class ShiftLog {
+    private final int[] counts;
+    private final long[] shiftedAt;
+
+    private ShiftLog(final int capacity) {
+      this.counts = new int[capacity + 1];
+      this.shiftedAt = new long[capacity + 1];
+    }
+
+    private int capacity() {
+      return counts.length - 1;
+    }
+
+    /**
+     * Copies the tree into a tree of twice the capacity. The only node of the new half covering
+     * the existing slots is its root, which covers all of them same as the current root.
+     *
+     * @return Grown tree.
+     */
+    private ShiftLog grow() {
+      final int capacity = capacity();
+      final ShiftLog grown = new ShiftLog(capacity * 2);
+      System.arraycopy(counts, 0, grown.counts, 0, counts.length);
+      System.arraycopy(shiftedAt, 0, grown.shiftedAt, 0, shiftedAt.length);
+      grown.counts[capacity * 2] = counts[capacity];
+      grown.shiftedAt[capacity * 2] = shiftedAt[capacity];
+      return grown;
+    }
+
+    private void shiftFrom(final int slot, final long at) {
+      for (int i = slot + 1; i < counts.length; i += i & -i) {
+        counts[i]++;
+        shiftedAt[i] = Math.max(shiftedAt[i], at);
+      }
+    }
+
+    private int shiftsOf(final int slot) {
+      int sum = 0;
+      for (int i = Math.min(slot + 1, counts.length - 1); i > 0; i -= i & -i) {
+        sum += counts[i];
+      }
+      return sum;
+    }
+
+    private long lastShiftOf(final int slot) {
+      long last = 0;
+      for (int i = Math.min(slot + 1, shiftedAt.length - 1); i > 0; i -= i & -i) {
+        last = Math.max(last, shiftedAt[i]);
+      }
+      return last;
+    }
+  }
+
+  private static long toNanos(final Instant instant) {
+    return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+  }
+
+  private static Instant fromNanos(final long nanos) {
+    return Instant.ofEpochSecond(0, nanos);
+  }
+
+  private int zOf(final Entry entry) {
+    return entry.baseZ + shifts.shiftsOf(entry.slot);
+  }
+
+  /**
+   * Materializes the widget with its current external z-index.
+   *
+   * @param entry Entry to materialize.
+   * @return {@link Widget} with up to date z-index and lastModifiedAt.
+   */
+  private Widget widgetOf(final Entry entry) {
+    final Widget stored = entry.widget;
+    final int z = zOf(entry);
+    if (stored.getZ() == z) {
+      return stored;
+    }
+
+    final long lastShift = shifts.lastShiftOf(entry.slot);
+    final Instant lastModifiedAt =
+        lastShift > toNanos(stored.getLastModifiedAt())
+            ? fromNanos(lastShift)
+            : stored.getLastModifiedAt();
+    return new Widget(
+        stored.getId(),
+        stored.getX(),
+        stored.getY(),
+        z,
+        stored.getWidth(),
+        stored.getHeight(),
+        lastModifiedAt);
+  }
+
+  /**
+   * Looks up the first entry in z-order with z-index not less than provided one. Since z-index is
+   * monotonic along slots this is a binary search over the slots.
+   *
+   * @param z Z-index to look up.
+   * @return Found entry or {@code null} if all the widgets are below provided z-index.
+   */
+  @Nullable
+  private Entry ceilingByZ(final int z) {
+    if (entriesBySlot.isEmpty() || zOf(entriesBySlot.lastEntry().getValue()) < z) {
+      return null;
+    }
+
+    int low = entriesBySlot.firstKey();
+    int high = entriesBySlot.lastKey();
+    while (low < high) {
+      final int mid = low + (high - low) / 2;
+      if (zOf(entriesBySlot.ceilingEntry(mid).getValue()) >= z) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return entriesBySlot.ceilingEntry(low).getValue();
+  }
+
+  /**
+   * Moves the widget into another slot keeping its z-index. Shifts recorded for the slots are
+   * kept, so the base z-index of the widget is adjusted to the shifts of the new slot. The entry
+   * must be taken out of {@link #entriesBySlot} before.
+   *
+   * @param entry Entry to move.
+   * @param slot Slot to move the entry to.
+   */
+  private void relabel(final Entry entry, final int slot) {
+    entry.widget = widgetOf(entry);
+    entry.slot = slot;
+    entry.baseZ = entry.widget.getZ() - shifts.shiftsOf(slot);
+    entriesBySlot.put(slot, entry);
+    relabels++;
+  }
+
+  /**
+   * Places all the widgets into evenly spaced slots and folds recorded shifts into their base
+   * z-indexes.
+   */
+  private void layout() {
+    final List<Entry> ordered = new ArrayList<>(entriesBySlot.values());
+    final long slots = Math.max((long) (ordered.size() + 1) * SPACING, MIN_CAPACITY);
+    final int capacity = (int) Math.min(Long.highestOneBit(slots - 1) << 1, MAX_CAPACITY);
+    final int spacing = Math.max(1, Math.min(SPACING, capacity / (ordered.size() + 1)));
+
+    entriesBySlot.clear();
+    for (int i = 0; i < ordered.size(); i++) {
+      final Entry entry = ordered.get(i);
+      entry.widget = widgetOf(entry);
+      entry.baseZ = entry.widget.getZ();
+      entry.slot = i * spacing;
+      entriesBySlot.put(entry.slot, entry);
+    }
+    relabels += ordered.size();
+
+    shifts = new ShiftLog(capacity);
+    changesSinceLayout = 0;
+  }
+
+  /** Lays the index out if enough widgets were inserted or removed since the last layout. */
+  private void layoutIfOutdated() {
+    if (changesSinceLayout > Math.max(MIN_CAPACITY, entriesById.size())) {
+      layout();
+    }
+  }
+
+  /**
+   * Shifts upwards the provided widget and all the widgets above it.
+   *
+   * @param from Entry to start shifting from.
+   */
+  private void shiftUpwardsFrom(final Entry from) {
+    ensureSafeToPlaceOnTop();
+
+    // all the slots starting from the slot of the entry are shifted lazily
+    shifts.shiftFrom(from.slot, toNanos(Instant.now()));
+  }
+
+  /**
+   * Ensures there is room on top of the widget in the foreground.
+   *
+   * @throws ZIndexLimitExceededException if z-index limit exceeded.
+   */
+  private void ensureSafeToPlaceOnTop() {
+    if (!entriesBySlot.isEmpty()) {
+      ValidationHelper.ensureSafeToPlaceOnTopOf(widgetOf(entriesBySlot.lastEntry().getValue()));
+    }
+  }
+
+  /**
+   * Picks a free slot in front of the provided entry or on top of all the entries. Relabels the
+   * neighbourhood of the entry if there is no free slot in front of it.
+   *
+   * @param before Entry to place in front of or {@code null} to place on top.
+   * @return Free slot.
+   */
+  private int freeSlotBefore(@Nullable final Entry before) {
+    if (before == null) {
+      final int slot = entriesBySlot.isEmpty() ? 0 : entriesBySlot.lastKey() + SPACING;
+      if (slot >= MAX_CAPACITY) {
+        layout();
+        return freeSlotBefore(null);
+      }
+      while (slot >= shifts.capacity()) {
+        shifts = shifts.grow();
+      }
+      return slot;
+    }
+
+    final Integer previous = entriesBySlot.lowerKey(before.slot);
+    final int low = previous == null ? -1 : previous;
+    if (before.slot - low > 1) {
+      return low + (before.slot - low) / 2;
+    }
+    return relabelAround(before);
+  }
+
+  /**
+   * Relabels the smallest aligned window of slots around the entry which stays sparse enough with
+   * one more widget, spreading its widgets evenly and leaving a free slot in front of the entry.
+   * Lays the whole index out if even the whole index is too dense.
+   *
+   * @param before Entry to free a slot in front of.
+   * @return Free slot in front of the entry.
+   */
+  private int relabelAround(final Entry before) {
+    final int height = Integer.numberOfTrailingZeros(shifts.capacity());
+    for (int level = 1; level <= height; level++) {
+      final int size = 1 << level;
+      final int low = before.slot & -size;
+      final NavigableMap<Integer, Entry> window =
+          entriesBySlot.subMap(low, true, low + size, false);
+      final int count = window.size() + 1;
+      // allowed density decreases from full for the smallest windows to a half for the whole index
+      if ((long) count * 2 * height > (long) size * (2 * height - level)) {
+        continue;
+      }
+
+      final List<Entry> entries = new ArrayList<>(window.values());
+      window.clear();
+      int free = -1;
+      for (int i = 0, position = 0; position < count; position++) {
+        final int slot = low + (int) ((long) position * size / count);
+        if (free < 0 && (i == entries.size() || entries.get(i) == before)) {
+          free = slot;
+        } else {
+          relabel(entries.get(i++), slot);
+        }
+      }
+      return free;
+    }
+
+    layout();
+    return freeSlotBefore(before);
+  }
+
+  @Override
+  public int nextForegroundZIndex() {
+    if (entriesBySlot.isEmpty()) {
+      return 0;
+    }
+
+    ensureSafeToPlaceOnTop();
+    return zOf(entriesBySlot.lastEntry().getValue()) + 1;
+  }
+
+  @Override
+  public Widget insert(final Widget widget) {
+    layoutIfOutdated();
+
+    final Entry before = ceilingByZ(widget.getZ());
+    if (before != null && zOf(before) == widget.getZ()) {
+      shiftUpwardsFrom(before);
+    }
+
+    final int slot = freeSlotBefore(before);
+    final Entry entry = new Entry(widget, widget.getZ() - shifts.shiftsOf(slot), slot);
+    entriesById.put(widget.getId(), entry);
+    entriesBySlot.put(slot, entry);
+    changesSinceLayout++;
+
+    return widget;
+  }
+
+  @Override
+  public Widget replace(final Widget widget) {
+    final Entry entry = entriesById.get(widget.getId());
+    entry.widget = widget;
+    return widget;
+  }
+
+  @Override
+  public Optional<Widget> remove(final WidgetId id) {
+    final Entry entry = entriesById.remove(id);
+    if (entry == null) {
+      return Optional.empty();
+    }
+
+    final Widget removed = widgetOf(entry);
+    entriesBySlot.remove(entry.slot);
+    changesSinceLayout++;
+    return Optional.of(removed);
+  }
+
+  @Override
+  public Optional<Widget> find(final WidgetId id) {
+    return Optional.ofNullable(entriesById.get(id)).map(this::widgetOf);
+  }
+
+  @Override
+  public List<Widget> list(final int limit, @Nullable final Integer afterZ) {
+    NavigableMap<Integer, Entry> afterSlotMap = entriesBySlot;
+    if (afterZ != null) {
+      final Entry from = afterZ == Integer.MAX_VALUE ? null : ceilingByZ(afterZ + 1);
+      if (from == null) {
+        return Collections.emptyList();
+      }
+      afterSlotMap = entriesBySlot.tailMap(from.slot, true);
+    }
+
+    final List<Widget> widgets = new ArrayList<>(Math.min(limit, entriesById.size()));
+    final Iterator<Entry> entries = afterSlotMap.values().iterator();
+    while (widgets.size() < limit && entries.hasNext()) {
+      widgets.add(widgetOf(entries.next()));
+    }
+    return Collections.unmodifiableList(widgets);
+  }
+
+  @Override
+  public void clear() {
+    entriesById.clear();
+    entriesBySlot.clear();
+    shifts = new ShiftLog(MIN_CAPACITY);
+    changesSinceLayout = 0;
+  }
+
+  /**
+   * Retrieves amount of widgets moved into another slot by relabeling or layout so far. Used only
+   * for testing purposes.
+   *
+   * @return Amount of relabeled widgets.
+   */
+  long relabels() {
+    return relabels;
+  }
+}
@@ -0,0 +1,598 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * Index of widget IDs by the rectangles occupied by the widgets based on an R-tree with quadratic
+ * split. <br>
+ * Every node keeps the bounding rectangle of its subtree, so a search descends only into the
+ * subtrees intersecting the queried area and visits {@code O(log n + k)} nodes for {@code k}
+ * widgets in the area on average. Only IDs and rectangles are indexed, so z-index shifts don't
+ * touch the index and found widgets are resolved by the repository itself. <br>
+ * Not synchronized, modifications must be serialized with reads.
+ */
+final class SpatialIndex {
+
+  private static final int MAX_ENTRIES = 16;
+  private static final int MIN_ENTRIES = 6;
+
+  private static final Comparator<Widget> BY_Z_INDEX = Comparator.comparingInt(Widget::getZ);
+  private static final Comparator<Bounds> BY_CENTER_X =
+      Comparator.comparingDouble(bounds -> bounds.minX + bounds.maxX);
+  private static final Comparator<Bounds> BY_CENTER_Y =
+      Comparator.comparingDouble(bounds -> bounds.minY + bounds.maxY);
+
+  /** Rectangle of a node subtree or of an indexed widget. */
+  private abstract static class Bounds {
+    double minX;
+    double minY;
+    double maxX;
+    double maxY;
+
+    final void set(final Bounds other) {
+      minX = other.minX;
+      minY = other.minY;
+      maxX = other.maxX;
+      maxY = other.maxY;
+    }
+
+    final void extend(final Bounds other) {
+      minX = Math.min(minX, other.minX);
+      minY = Math.min(minY, other.minY);
+      maxX = Math.max(maxX, other.maxX);
+      maxY = Math.max(maxY, other.maxY);
+    }
+
+    final boolean intersects(
+        final double minX, final double minY, final double maxX, final double maxY) {
+      return this.minX <= maxX && this.maxX >= minX && this.minY <= maxY && this.maxY >= minY;
+    }
+
+    final boolean contains(final Bounds other) {
+      return minX <= other.minX && maxX >= other.maxX && minY <= other.minY && maxY >= other.maxY;
+    }
+
+    final double area() {
+      return (maxX - minX) * (maxY - minY);
+    }
+
+    /** @return Area of the rectangle covering both this one and provided one. */
+    final double unionArea(final Bounds other) {
+      return (Math.max(maxX, other.maxX) - Math.min(minX, other.minX))
+          * (Math.max(maxY, other.maxY) - Math.min(minY, other.minY));
+    }
+  }
+
+  private static final class Entry extends Bounds {
+    final WidgetId id;
+
+    Entry(final Widget widget) {
+      this.id = widget.getId();
+      final BoundingBox box = BoundingBox.of(widget);
+      minX = box.getMinX();
+      minY = box.getMinY();
+      maxX = box.getMaxX();
+      maxY = box.getMaxY();
+    }
+  }
+
+  private static final class Node extends Bounds {
+    /** Whether children are entries rather than nodes. */
+    final boolean leaf;
+
+    final Bounds[] children = new Bounds[MAX_ENTRIES + 1];
+    int size;
+    @Nullable Node parent;
+
+    Node(final boolean leaf) {
+      this.leaf = leaf;
+    }
+
+    void append(final Bounds child) {
+      if (size == 0) {
+        set(child);
+      } else {
+        extend(child);
+      }
+      children[size++] = child;
+      if (child instanceof Node) {
+        ((Node) child).parent = this;
+      }
+    }
+
+    void removeAt(final int index) {
+      System.arraycopy(children, index + 1, children, index, size - index - 1);
+      children[--size] = null;
+    }
+
+    void recalculate() {
+      if (size > 0) {
+        set(children[0]);
+        for (int i = 1; i < size; i++) {
+          extend(children[i]);
+        }
+      }
+    }
+  }
+
+  private Node root = new Node(true);
+  private int size;
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Indexes widget by its rectangle.
+   *
+   * @param widget Widget not indexed yet.
+   */
+  void insert(final Widget widget) {
+    insert(new Entry(widget));
+    size++;
+  }
+
+  /**
+   * Indexes widgets by their rectangles. If there are at least as many widgets as indexed ones,
+   * the tree is rebuilt with all of them by Sort-Tile-Recursive packing, which sorts the rectangles
+   * once per level instead of descending and splitting nodes for every widget, and packs the nodes
+   * fuller than the splits do.
+   *
+   * @param widgets Widgets not indexed yet.
+   */
+  void insertAll(final List<Widget> widgets) {
+    if (widgets.size() < size) {
+      widgets.forEach(this::insert);
+      return;
+    }
+
+    final List<Entry> entries = new ArrayList<>(size + widgets.size());
+    collectEntries(root, entries);
+    for (final Widget widget : widgets) {
+      entries.add(new Entry(widget));
+    }
+    size = entries.size();
+
+    List<Node> level = pack(entries, true);
+    while (level.size() > 1) {
+      level = pack(level, false);
+    }
+    root = level.isEmpty() ? new Node(true) : level.get(0);
+    root.parent = null;
+  }
+
+  /**
+   * Packs children into nodes tiling them into vertical slices by the centers of their rectangles
+   * and then into nodes within every slice. Children are spread evenly between the slices and
+   * between the nodes of a slice, so that nodes are not underfull.
+   *
+   * @param children Children to pack.
+   * @param leaf Whether children are entries.
+   * @return Packed nodes.
+   */
+  private static List<Node> pack(final List<? extends Bounds> children, final boolean leaf) {
+    final int nodes = (children.size() + MAX_ENTRIES - 1) / MAX_ENTRIES;
+    final int slices = (int) Math.ceil(Math.sqrt(nodes));
+    children.sort(BY_CENTER_X);
+
+    final List<Node> packed = new ArrayList<>(nodes);
+    for (int slice = 0; slice < slices; slice++) {
+      final List<? extends Bounds> tile =
+          children.subList(
+              (int) ((long) children.size() * slice / slices),
+              (int) ((long) children.size() * (slice + 1) / slices));
+      tile.sort(BY_CENTER_Y);
+      final int tileNodes = (tile.size() + MAX_ENTRIES - 1) / MAX_ENTRIES;
+      for (int i = 0; i < tileNodes; i++) {
+        final Node node = new Node(leaf);
+        final int from = tile.size() * i / tileNodes;
+        final int to = tile.size() * (i + 1) / tileNodes;
+        for (int j = from; j < to; j++) {
+          node.append(tile.get(j));
+        }
+        packed.add(node);
+      }
+    }
+    return packed;
+  }
+
+  /**
+   * Re-indexes widget if its rectangle has changed.
+   *
+   * @param previous Indexed version of the widget.
+   * @param updated Updated version of the widget.
+   */
+  void update(final Widget previous, final Widget updated) {
+    if (previous.getX() != updated.getX()
+        || previous.getY() != updated.getY()
+        || Double.compare(previous.getWidth(), updated.getWidth()) != 0
+        || Double.compare(previous.getHeight(), updated.getHeight()) != 0) {
+      remove(previous);
+      insert(updated);
+    }
+  }
+
+  /**
+   * Removes widget from the index.
+   *
+   * @param widget Indexed version of the widget.
+   * @return Whether widget was found in the index.
+   */
+  boolean remove(final Widget widget) {
+    final Entry probe = new Entry(widget);
+    final Node leaf = findLeaf(root, probe);
+    if (leaf == null) {
+      return false;
+    }
+    for (int i = 0; i < leaf.size; i++) {
+      if (((Entry) leaf.children[i]).id.equals(probe.id)) {
+        leaf.removeAt(i);
+        break;
+      }
+    }
+    condense(leaf);
+    size--;
+    return true;
+  }
+
+  /**
+   * Passes IDs of all the widgets intersecting provided area to the consumer in no particular
+   * order.
+   *
+   * @param area Area to look up widgets in.
+   * @param consumer Consumer of found widget IDs.
+   */
+  void search(final BoundingBox area, final Consumer<WidgetId> consumer) {
+    if (root.size > 0) {
+      search(root, area.getMinX(), area.getMinY(), area.getMaxX(), area.getMaxY(), consumer);
+    }
+  }
+
+  /**
+   * Looks up requested amount of widgets intersecting provided area ordered by z-index. <br>
+   * Index isn't ordered by z-index, so all the {@code k} widgets in the area are visited, but only
+   * the lowest ones above provided z-index are kept in a heap bounded by the limit. So a page
+   * costs {@code O(log n + k log limit)} time and {@code O(limit)} memory.
+   *
+   * @param area Area to look up widgets in.
+   * @param limit Amount of widgets to read.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @param widgets Lookup of indexed widgets by ID.
+   * @return Widgets ordered by z-index in ascending order.
+   */
+  List<Widget> list(
+      final BoundingBox area,
+      final int limit,
+      @Nullable final Integer afterZ,
+      final Function<WidgetId, Widget> widgets) {
+    if (root.size == 0) {
+      return List.of();
+    }
+    return selectLowest(consumer -> search(area, consumer), limit, afterZ, widgets);
+  }
+
+  /**
+   * Looks up requested amount of the topmost widgets covering provided point. <br>
+   * Only the subtrees covering the point are visited, and found widgets are kept in a heap bounded
+   * by the limit, so the lookup doesn't depend on the amount of widgets elsewhere on the board.
+   *
+   * @param x X coordinate of the point.
+   * @param y Y coordinate of the point.
+   * @param limit Amount of widgets to read.
+   * @param widgets Lookup of indexed widgets by ID.
+   * @return Widgets ordered by z-index in descending order.
+   */
+  List<Widget> hitTest(
+      final double x, final double y, final int limit, final Function<WidgetId, Widget> widgets) {
+    if (root.size == 0) {
+      return List.of();
+    }
+    return selectTopmost(consumer -> search(root, x, y, x, y, consumer), limit, widgets);
+  }
+
+  /**
+   * Selects requested amount of the lowest widgets above provided z-index out of the found ones,
+   * keeping them in a heap bounded by the limit.
+   *
+   * @param search Search passing IDs of the found widgets to provided consumer.
+   * @param limit Amount of widgets to select.
+   * @param afterZ Optional z-index to select widgets above.
+   * @param widgets Lookup of indexed widgets by ID.
+   * @return Widgets ordered by z-index in ascending order.
+   */
+  static List<Widget> selectLowest(
+      final Consumer<Consumer<WidgetId>> search,
+      final int limit,
+      @Nullable final Integer afterZ,
+      final Function<WidgetId, Widget> widgets) {
+    if (limit <= 0) {
+      return List.of();
+    }
+    final PriorityQueue<Widget> lowest = new PriorityQueue<>(BY_Z_INDEX.reversed());
+    search.accept(
+        id -> {
+          final Widget widget = widgets.apply(id);
+          if (afterZ != null && widget.getZ() <= afterZ) {
+            return;
+          }
+          if (lowest.size() < limit) {
+            lowest.add(widget);
+          } else if (widget.getZ() < lowest.peek().getZ()) {
+            lowest.poll();
+            lowest.add(widget);
+          }
+        });
+    return drain(lowest);
+  }
+
+  /**
+   * Selects requested amount of the topmost widgets out of the found ones, keeping them in a heap
+   * bounded by the limit.
+   *
+   * @param search Search passing IDs of the found widgets to provided consumer.
+   * @param limit Amount of widgets to select.
+   * @param widgets Lookup of indexed widgets by ID.
+   * @return Widgets ordered by z-index in descending order.
+   */
+  static List<Widget> selectTopmost(
+      final Consumer<Consumer<WidgetId>> search,
+      final int limit,
+      final Function<WidgetId, Widget> widgets) {
+    if (limit <= 0) {
+      return List.of();
+    }
+    final PriorityQueue<Widget> topmost = new PriorityQueue<>(BY_Z_INDEX);
+    search.accept(
+        id -> {
+          final Widget widget = widgets.apply(id);
+          if (topmost.size() < limit) {
+            topmost.add(widget);
+          } else if (widget.getZ() > topmost.peek().getZ()) {
+            topmost.poll();
+            topmost.add(widget);
+          }
+        });
+    return drain(topmost);
+  }
+
+  /** @return Widgets of the heap in the reverse order of polling them. */
+  private static List<Widget> drain(final PriorityQueue<Widget> heap) {
+    final Widget[] found = new Widget[heap.size()];
+    for (int i = found.length - 1; i >= 0; i--) {
+      found[i] = heap.poll();
+    }
+    return List.of(found);
+  }
+
+  void clear() {
+    root = new Node(true);
+    size = 0;
+  }
+
+  private static void search(
+      final Node node,
+      final double minX,
+      final double minY,
+      final double maxX,
+      final double maxY,
+      final Consumer<WidgetId> consumer) {
+    for (int i = 0; i < node.size; i++) {
+      final Bounds child = node.children[i];
+      if (child.intersects(minX, minY, maxX, maxY)) {
+        if (node.leaf) {
+          consumer.accept(((Entry) child).id);
+        } else {
+          search((Node) child, minX, minY, maxX, maxY, consumer);
+        }
+      }
+    }
+  }
+
+  private void insert(final Entry entry) {
+    Node node = chooseLeaf(entry);
+    Bounds child = entry;
+    while (true) {
+      node.append(child);
+      if (node.size <= MAX_ENTRIES) {
+        for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+          ancestor.extend(entry);
+        }
+        return;
+      }
+
+      final Node sibling = split(node);
+      final Node parent = node.parent;
+      if (parent == null) {
+        root = new Node(false);
+        root.append(node);
+        root.append(sibling);
+        return;
+      }
+      parent.extend(entry);
+      child = sibling;
+      node = parent;
+    }
+  }
+
+  /** @return Leaf whose rectangle needs the least enlargement to include the entry. */
+  private Node chooseLeaf(final Entry entry) {
+    Node node = root;
+    while (!node.leaf) {
+      Node best = (Node) node.children[0];
+      double bestEnlargement = best.unionArea(entry) - best.area();
+      for (int i = 1; i < node.size; i++) {
+        final Node candidate = (Node) node.children[i];
+        final double enlargement = candidate.unionArea(entry) - candidate.area();
+        if (enlargement < bestEnlargement
+            || enlargement == bestEnlargement && candidate.area() < best.area()) {
+          best = candidate;
+          bestEnlargement = enlargement;
+        }
+      }
+      node = best;
+    }
+    return node;
+  }
+
+  /**
+   * Splits overflown node distributing its children between the node and a new sibling so that
+   * the rectangles of both of them are as small as possible.
+   *
+   * @return New sibling.
+   */
+  private static Node split(final Node node) {
+    final Bounds[] children = Arrays.copyOf(node.children, node.size);
+    Arrays.fill(node.children, null);
+    node.size = 0;
+
+    // seeds are the pair of children wasting the most area if put together
+    int first = 0;
+    int second = 1;
+    double worstWaste = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < children.length; i++) {
+      for (int j = i + 1; j < children.length; j++) {
+        final double waste =
+            children[i].unionArea(children[j]) - children[i].area() - children[j].area();
+        if (waste > worstWaste) {
+          worstWaste = waste;
+          first = i;
+          second = j;
+        }
+      }
+    }
+
+    final Node sibling = new Node(node.leaf);
+    node.append(children[first]);
+    sibling.append(children[second]);
+    children[first] = null;
+    children[second] = null;
+
+    int remaining = children.length - 2;
+    while (remaining > 0) {
+      final Node group;
+      int next = -1;
+      if (node.size + remaining == MIN_ENTRIES) {
+        group = node;
+      } else if (sibling.size + remaining == MIN_ENTRIES) {
+        group = sibling;
+      } else {
+        // next is the child with the greatest preference for one of the groups
+        double bestDifference = -1;
+        double nodeGrowth = 0;
+        double siblingGrowth = 0;
+        for (int i = 0; i < children.length; i++) {
+          if (children[i] != null) {
+            final double toNode = node.unionArea(children[i]) - node.area();
+            final double toSibling = sibling.unionArea(children[i]) - sibling.area();
+            if (next < 0 || Math.abs(toNode - toSibling) > bestDifference) {
+              bestDifference = Math.abs(toNode - toSibling);
+              next = i;
+              nodeGrowth = toNode;
+              siblingGrowth = toSibling;
+            }
+          }
+        }
+        group =
+            nodeGrowth < siblingGrowth
+                    || nodeGrowth == siblingGrowth && node.size <= sibling.size
+                ? node
+                : sibling;
+      }
+
+      for (int i = 0; i < children.length; i++) {
+        if (children[i] != null && (next < 0 || i == next)) {
+          group.append(children[i]);
+          children[i] = null;
+          remaining--;
+        }
+      }
+    }
+    return sibling;
+  }
+
+  /** @return Leaf holding the entry with the same ID and rectangle or {@code null} if absent. */
+  @Nullable
+  private static Node findLeaf(final Node node, final Entry probe) {
+    for (int i = 0; i < node.size; i++) {
+      final Bounds child = node.children[i];
+      if (node.leaf) {
+        if (((Entry) child).id.equals(probe.id)) {
+          return node;
+        }
+      } else if (child.contains(probe)) {
+        final Node found = findLeaf((Node) child, probe);
+        if (found != null) {
+          return found;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes underfull nodes on the path from the leaf to the root reinserting their entries, and
+   * shrinks rectangles of the remaining nodes.
+   */
+  private void condense(final Node leaf) {
+    final List<Entry> orphans = new ArrayList<>();
+    Node node = leaf;
+    while (node.parent != null) {
+      final Node parent = node.parent;
+      if (node.size < MIN_ENTRIES) {
+        for (int i = 0; i < parent.size; i++) {
+          if (parent.children[i] == node) {
+            parent.removeAt(i);
+            break;
+          }
+        }
+        collectEntries(node, orphans);
+      } else {
+        node.recalculate();
+      }
+      node = parent;
+    }
+    root.recalculate();
+
+    while (!root.leaf && root.size == 1) {
+      root = (Node) root.children[0];
+      root.parent = null;
+    }
+    if (!root.leaf && root.size == 0) {
+      root = new Node(true);
+    }
+    orphans.forEach(this::insert);
+  }
+
+  private static void collectEntries(final Node node, final List<Entry> into) {
+    for (int i = 0; i < node.size; i++) {
+      if (node.leaf) {
+        into.add((Entry) node.children[i]);
+      } else {
+        collectEntries((Node) node.children[i], into);
+      }
+    }
+  }
+}
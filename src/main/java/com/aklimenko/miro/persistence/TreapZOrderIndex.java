@@ -0,0 +1,378 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.utils.ValidationHelper;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+
+/**
+ * {@link ZOrderIndex} implementation based on a treap (randomized balanced binary search tree)
+ * ordered by z-index. <br>
+ * Z-index of a widget is not stored as an absolute value. Each node keeps its base z-index and a
+ * lazy offset not yet propagated down to its subtree, so actual z-index of a widget is its base
+ * plus offsets of all its ancestors. Shifting all the widgets starting from some z-index upwards
+ * is a split of the tree at that z-index and a lazy increment of the upper part root, which costs
+ * {@code O(log n)} expected instead of {@code O(n)}. <br>
+ * Write operations push lazy offsets down along the paths they restructure. Read operations never
+ * modify the tree and accumulate offsets of the ancestors instead.
+ */
+class TreapZOrderIndex implements ZOrderIndex {
+
+  private final Map<WidgetId, Node> nodesById = new HashMap<>();
+  @Nullable private Node root;
+
+  /** Treap node holding a widget. */
+  private static class Node {
+    private Widget widget;
+    private final int priority;
+
+    /** Z-index of the widget not including lazy offsets of the ancestors. */
+    private int z;
+
+    /** Pending z-index offset of all the nodes in the subtree excluding this node. */
+    private int lazyZ;
+
+    /** Time of the last shift of this node not including lazy shifts of the ancestors. */
+    @Nullable private Instant shiftedAt;
+
+    /** Time of the last pending shift of all the nodes in the subtree excluding this node. */
+    @Nullable private Instant lazyShiftedAt;
+
+    @Nullable private Node left;
+    @Nullable private Node right;
+    @Nullable private Node parent;
+
+    private Node(final Widget widget) {
+      this.widget = widget;
+      this.z = widget.getZ();
+      this.priority = ThreadLocalRandom.current().nextInt();
+    }
+  }
+
+  @Nullable
+  private static Instant latest(@Nullable final Instant first, @Nullable final Instant second) {
+    if (first == null) {
+      return second;
+    }
+    return second == null || first.isAfter(second) ? first : second;
+  }
+
+  /**
+   * Shifts upwards the whole subtree of the provided node.
+   *
+   * @param node Subtree root.
+   * @param shiftedAt Time of the shift.
+   */
+  private static void shiftUpward(@Nullable final Node node, final Instant shiftedAt) {
+    if (node != null) {
+      node.z++;
+      node.lazyZ++;
+      node.shiftedAt = latest(node.shiftedAt, shiftedAt);
+      node.lazyShiftedAt = latest(node.lazyShiftedAt, shiftedAt);
+    }
+  }
+
+  /**
+   * Propagates lazy offset of the node down to its children.
+   *
+   * @param node Node to propagate lazy offset of.
+   */
+  private static void push(final Node node) {
+    if (node.lazyZ == 0) {
+      return;
+    }
+
+    pushTo(node.left, node.lazyZ, node.lazyShiftedAt);
+    pushTo(node.right, node.lazyZ, node.lazyShiftedAt);
+    node.lazyZ = 0;
+    node.lazyShiftedAt = null;
+  }
+
+  private static void pushTo(
+      @Nullable final Node child, final int lazyZ, @Nullable final Instant lazyShiftedAt) {
+    if (child != null) {
+      child.z += lazyZ;
+      child.lazyZ += lazyZ;
+      child.shiftedAt = latest(child.shiftedAt, lazyShiftedAt);
+      child.lazyShiftedAt = latest(child.lazyShiftedAt, lazyShiftedAt);
+    }
+  }
+
+  private static void setLeft(final Node node, @Nullable final Node left) {
+    node.left = left;
+    if (left != null) {
+      left.parent = node;
+    }
+  }
+
+  private static void setRight(final Node node, @Nullable final Node right) {
+    node.right = right;
+    if (right != null) {
+      right.parent = node;
+    }
+  }
+
+  /**
+   * Splits subtree into nodes below provided z-index and nodes on and above it.
+   *
+   * @param node Subtree root.
+   * @param z Z-index to split at.
+   * @return Pair of roots of lower and upper subtrees.
+   */
+  private static Node[] split(@Nullable final Node node, final long z) {
+    if (node == null) {
+      return new Node[2];
+    }
+
+    push(node);
+    if (node.z < z) {
+      final Node[] upper = split(node.right, z);
+      setRight(node, upper[0]);
+      upper[0] = node;
+      return upper;
+    } else {
+      final Node[] lower = split(node.left, z);
+      setLeft(node, lower[1]);
+      lower[1] = node;
+      return lower;
+    }
+  }
+
+  /**
+   * Merges two subtrees where all the nodes of the lower one are below the nodes of the upper one.
+   *
+   * @param lower Lower subtree root.
+   * @param upper Upper subtree root.
+   * @return Merged subtree root.
+   */
+  @Nullable
+  private static Node merge(@Nullable final Node lower, @Nullable final Node upper) {
+    if (lower == null) {
+      return upper;
+    }
+    if (upper == null) {
+      return lower;
+    }
+
+    if (lower.priority > upper.priority) {
+      push(lower);
+      setRight(lower, merge(lower.right, upper));
+      return lower;
+    } else {
+      push(upper);
+      setLeft(upper, merge(lower, upper.left));
+      return upper;
+    }
+  }
+
+  private void setRoot(@Nullable final Node node) {
+    root = node;
+    if (root != null) {
+      root.parent = null;
+    }
+  }
+
+  /**
+   * Calculates actual z-index of the node without modifying the tree.
+   *
+   * @param node Node to calculate z-index of.
+   * @return Actual z-index.
+   */
+  private static int zOf(final Node node) {
+    int z = node.z;
+    for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+      z += ancestor.lazyZ;
+    }
+    return z;
+  }
+
+  /**
+   * Materializes the widget of the node with provided actual z-index.
+   *
+   * @param node Node to materialize widget of.
+   * @param z Actual z-index of the node.
+   * @param ancestorsShiftedAt Time of the last lazy shift pending in the ancestors.
+   * @return {@link Widget} with up to date z-index and lastModifiedAt.
+   */
+  private static Widget widgetOf(
+      final Node node, final int z, @Nullable final Instant ancestorsShiftedAt) {
+    final Widget stored = node.widget;
+    if (stored.getZ() == z) {
+      return stored;
+    }
+
+    final Instant lastModifiedAt =
+        latest(stored.getLastModifiedAt(), latest(node.shiftedAt, ancestorsShiftedAt));
+    return new Widget(
+        stored.getId(),
+        stored.getX(),
+        stored.getY(),
+        z,
+        stored.getWidth(),
+        stored.getHeight(),
+        lastModifiedAt);
+  }
+
+  private static Widget widgetOf(final Node node) {
+    Instant ancestorsShiftedAt = null;
+    for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+      ancestorsShiftedAt = latest(ancestorsShiftedAt, ancestor.lazyShiftedAt);
+    }
+    return widgetOf(node, zOf(node), ancestorsShiftedAt);
+  }
+
+  /**
+   * Looks up the node with provided actual z-index without modifying the tree.
+   *
+   * @param z Z-index to look up.
+   * @return Found node or {@code null}.
+   */
+  @Nullable
+  private Node findByZ(final int z) {
+    int offset = 0;
+    Node node = root;
+    while (node != null) {
+      final int nodeZ = node.z + offset;
+      if (nodeZ == z) {
+        return node;
+      }
+      offset += node.lazyZ;
+      node = z < nodeZ ? node.left : node.right;
+    }
+    return null;
+  }
+
+  @Nullable
+  private Widget topWidget() {
+    Node node = root;
+    while (node != null && node.right != null) {
+      node = node.right;
+    }
+    return node == null ? null : widgetOf(node);
+  }
+
+  /**
+   * Collects widgets above provided z-index in ascending z-order.
+   *
+   * @param node Subtree root.
+   * @param offset Lazy offset of the ancestors of the subtree.
+   * @param shiftedAt Time of the last lazy shift pending in the ancestors of the subtree.
+   * @param afterZ Z-index to collect widgets above.
+   * @param limit Amount of widgets to collect.
+   * @param widgets Collected widgets.
+   */
+  private static void collect(
+      @Nullable final Node node,
+      final int offset,
+      @Nullable final Instant shiftedAt,
+      final long afterZ,
+      final int limit,
+      final List<Widget> widgets) {
+    if (node == null || widgets.size() >= limit) {
+      return;
+    }
+
+    final int z = node.z + offset;
+    final int childrenOffset = offset + node.lazyZ;
+    final Instant childrenShiftedAt = latest(shiftedAt, node.lazyShiftedAt);
+    if (z > afterZ) {
+      collect(node.left, childrenOffset, childrenShiftedAt, afterZ, limit, widgets);
+      if (widgets.size() >= limit) {
+        return;
+      }
+      widgets.add(widgetOf(node, z, shiftedAt));
+    }
+    collect(node.right, childrenOffset, childrenShiftedAt, afterZ, limit, widgets);
+  }
+
+  @Override
+  public int nextForegroundZIndex() {
+    final Widget top = topWidget();
+    if (top == null) {
+      return 0;
+    }
+
+    ValidationHelper.ensureSafeToPlaceOnTopOf(top);
+    return top.getZ() + 1;
+  }
+
+  @Override
+  public Widget insert(final Widget widget) {
+    final boolean occupied = findByZ(widget.getZ()) != null;
+    if (occupied) {
+      // ensure there is room on top of the widget in the foreground
+      nextForegroundZIndex();
+    }
+
+    final Node[] parts = split(root, widget.getZ());
+    if (occupied) {
+      shiftUpward(parts[1], Instant.now());
+    }
+
+    final Node node = new Node(widget);
+    nodesById.put(widget.getId(), node);
+    setRoot(merge(merge(parts[0], node), parts[1]));
+    return widget;
+  }
+
+  @Override
+  public Widget replace(final Widget widget) {
+    final Node node = nodesById.get(widget.getId());
+    node.widget = widget;
+    node.shiftedAt = null;
+    return widget;
+  }
+
+  @Override
+  public Optional<Widget> remove(final WidgetId id) {
+    final Node node = nodesById.remove(id);
+    if (node == null) {
+      return Optional.empty();
+    }
+
+    final Widget removed = widgetOf(node);
+    final Node[] lower = split(root, removed.getZ());
+    final Node[] upper = split(lower[1], removed.getZ() + 1L);
+    setRoot(merge(lower[0], upper[1]));
+    return Optional.of(removed);
+  }
+
+  @Override
+  public Optional<Widget> find(final WidgetId id) {
+    return Optional.ofNullable(nodesById.get(id)).map(TreapZOrderIndex::widgetOf);
+  }
+
+  @Override
+  public List<Widget> list(final int limit, @Nullable final Integer afterZ) {
+    final List<Widget> widgets = new ArrayList<>(Math.min(limit, nodesById.size()));
+    collect(root, 0, null, afterZ == null ? (long) Integer.MIN_VALUE - 1 : afterZ, limit, widgets);
+    return Collections.unmodifiableList(widgets);
+  }
+
+  @Override
+  public void clear() {
+    nodesById.clear();
+    root = null;
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.Widget;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/** Immutable page of widgets together with the version of repository it was read from. */
+public final class VersionedWidgets {
+  private final List<Widget> widgets;
+  @Nullable private final Long version;
+
+  /**
+   * @param widgets Widgets ordered by z-index in ascending order.
+   * @param version Pinned version the widgets were read from or {@code null} if not pinned.
+   */
+  public VersionedWidgets(final List<Widget> widgets, @Nullable final Long version) {
+    this.widgets = Objects.requireNonNull(widgets);
+    this.version = version;
+  }
+
+  public List<Widget> getWidgets() {
+    return widgets;
+  }
+
+  @Nullable
+  public Long getVersion() {
+    return version;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Applies operations of widget batch one by one and turns outcome of every operation into {@link
+ * WidgetBatchResult}. Repositories provide their own {@link Mutations} and call it within a single
+ * critical section, so that the batch is observed either not applied or applied as a whole.
+ * Operation failing on z-index limit leaves the repository unchanged and doesn't stop the batch.
+ */
+final class WidgetBatch {
+
+  private WidgetBatch() {}
+
+  /** Mutations of the repository. Called within critical section of the batch only. */
+  interface Mutations {
+
+    /**
+     * @param widgetToCreate Widget create payload.
+     * @return Created widget.
+     * @throws ZIndexLimitExceededException if z-index limit exceeded.
+     */
+    Widget create(WidgetCreateRequest widgetToCreate);
+
+    /**
+     * @param id ID to look for widget to update.
+     * @param widgetUpdate Widget update payload.
+     * @return Optionally found and updated widget.
+     * @throws ZIndexLimitExceededException if z-index limit exceeded.
+     */
+    Optional<Widget> update(WidgetId id, WidgetUpdateRequest widgetUpdate);
+
+    /**
+     * @param id ID to look for widget to delete.
+     * @return Deleted widget if found.
+     */
+    Optional<Widget> delete(WidgetId id);
+  }
+
+  /**
+   * Applies operations in the order they are provided.
+   *
+   * @param operations Operations to apply.
+   * @param mutations Mutations of the repository.
+   * @return Result of every operation in the order of operations.
+   */
+  static List<WidgetBatchResult> apply(
+      final List<WidgetBatchOperation> operations, final Mutations mutations) {
+    final List<WidgetBatchResult> results = new ArrayList<>(operations.size());
+    for (final WidgetBatchOperation operation : operations) {
+      try {
+        results.add(apply(operation, mutations));
+      } catch (ZIndexLimitExceededException e) {
+        results.add(WidgetBatchResult.conflict(e.getMessage()));
+      }
+    }
+    return results;
+  }
+
+  private static WidgetBatchResult apply(
+      final WidgetBatchOperation operation, final Mutations mutations) {
+    switch (operation.getType()) {
+      case CREATE:
+        final WidgetBatchOperation.Create create = (WidgetBatchOperation.Create) operation;
+        return WidgetBatchResult.created(mutations.create(create.getWidget()));
+      case UPDATE:
+        final WidgetBatchOperation.Update update = (WidgetBatchOperation.Update) operation;
+        return update
+            .getWidgetId()
+            .flatMap(id -> mutations.update(id, update.getWidget()))
+            .map(WidgetBatchResult::updated)
+            .orElseGet(() -> WidgetBatchResult.notFound(update.getId()));
+      case DELETE:
+        final WidgetBatchOperation.Delete delete = (WidgetBatchOperation.Delete) operation;
+        return delete
+            .getWidgetId()
+            .flatMap(mutations::delete)
+            .map(deleted -> WidgetBatchResult.deleted())
+            .orElseGet(() -> WidgetBatchResult.notFound(delete.getId()));
+      default:
+        throw new IllegalArgumentException("Unknown batch operation: " + operation.getType());
+    }
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import javax.annotation.Nullable;
+
+/**
+ * Map of widgets by their IDs based on an open-addressing hash table with linear probing. <br>
+ * Hash codes of the IDs are cached in an {@code int} array next to the array of widgets, so a
+ * lookup compares primitives of consecutive buckets and dereferences only the widget with matching
+ * hash, and an entry costs an {@code int} and a reference instead of a hash map node. Removal
+ * shifts back the following buckets of the probe sequence instead of leaving tombstones. Lookups
+ * allocate nothing. Not synchronized, modifications must be serialized with reads.
+ */
+final class WidgetIdMap {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int[] hashes;
+
+  /** Widgets by bucket, {@code null} marks an empty bucket. */
+  private Widget[] widgets;
+
+  private int size;
+
+  WidgetIdMap() {
+    allocate(INITIAL_CAPACITY);
+  }
+
+  private void allocate(final int capacity) {
+    hashes = new int[capacity];
+    widgets = new Widget[capacity];
+  }
+
+  private static int hashOf(final WidgetId id) {
+    return (int) ((id.getHigh() ^ id.getLow()) * 0x9E3779B97F4A7C15L >>> 32);
+  }
+
+  /** @return Bucket holding the widget with provided ID or the empty bucket it would be put to. */
+  private int findBucket(final WidgetId id, final int hash) {
+    final int mask = widgets.length - 1;
+    int bucket = hash & mask;
+    while (true) {
+      final Widget widget = widgets[bucket];
+      if (widget == null || hashes[bucket] == hash && widget.getId().equals(id)) {
+        return bucket;
+      }
+      bucket = (bucket + 1) & mask;
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @param id Widget ID to look up.
+   * @return Widget with provided ID or {@code null} if absent.
+   */
+  @Nullable
+  Widget get(final WidgetId id) {
+    return widgets[findBucket(id, hashOf(id))];
+  }
+
+  /**
+   * @param widget Widget to put by its ID.
+   * @return Widget previously stored by the same ID or {@code null} if absent.
+   */
+  @Nullable
+  Widget put(final Widget widget) {
+    // load factor is kept below 3/4
+    if ((size + 1) * 4L > widgets.length * 3L) {
+      grow();
+    }
+    final int hash = hashOf(widget.getId());
+    final int bucket = findBucket(widget.getId(), hash);
+    final Widget previous = widgets[bucket];
+    if (previous == null) {
+      hashes[bucket] = hash;
+      size++;
+    }
+    widgets[bucket] = widget;
+    return previous;
+  }
+
+  private void grow() {
+    final int[] previousHashes = hashes;
+    final Widget[] previousWidgets = widgets;
+    allocate(previousWidgets.length * 2);
+    final int mask = widgets.length - 1;
+    for (int i = 0; i < previousWidgets.length; i++) {
+      if (previousWidgets[i] != null) {
+        int bucket = previousHashes[i] & mask;
+        while (widgets[bucket] != null) {
+          bucket = (bucket + 1) & mask;
+        }
+        hashes[bucket] = previousHashes[i];
+        widgets[bucket] = previousWidgets[i];
+      }
+    }
+  }
+
+  /**
+   * @param id Widget ID to remove widget by.
+   * @return Removed widget or {@code null} if absent.
+   */
+  @Nullable
+  Widget remove(final WidgetId id) {
+    int bucket = findBucket(id, hashOf(id));
+    final Widget removed = widgets[bucket];
+    if (removed == null) {
+      return null;
+    }
+
+    final int mask = widgets.length - 1;
+    int next = bucket;
+    while (true) {
+      next = (next + 1) & mask;
+      if (widgets[next] == null) {
+        break;
+      }
+      final int home = hashes[next] & mask;
+      // entry can be moved back unless its home bucket lies cyclically within (bucket, next]
+      final boolean inPlace =
+          bucket <= next ? bucket < home && home <= next : bucket < home || home <= next;
+      if (!inPlace) {
+        hashes[bucket] = hashes[next];
+        widgets[bucket] = widgets[next];
+        bucket = next;
+      }
+    }
+    widgets[bucket] = null;
+    size--;
+    return removed;
+  }
+
+  void clear() {
+    allocate(INITIAL_CAPACITY);
+    size = 0;
+  }
+}
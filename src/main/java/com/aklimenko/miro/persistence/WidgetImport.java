@@ -0,0 +1,224 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetIdGenerator;
+import com.aklimenko.miro.utils.ValidationHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Places widgets imported in bulk into z-order. <br>
+ * Requested z-indexes refer to the board before the import. Imported widgets are ordered by
+ * requested z-index, in the order of the import for the same z-index, with a single sort before
+ * the repository is locked. Then they're merged with the widgets of the board in a single pass
+ * in which imported widget goes below the widget of the board on the same z-index, and every
+ * widget takes its z-index or the one next to the widget placed before it, whichever is higher.
+ * So the widgets of the board are shifted upwards only as far as needed to make room for the
+ * imported ones, and the merge stops at the first widget of the board above all the imported
+ * ones it doesn't have to shift. Widgets without z-index are placed into the foreground in the
+ * order of the import.
+ */
+final class WidgetImport {
+
+  private final List<WidgetCreateRequest> requests;
+  private final WidgetId[] ids;
+
+  /** Requested z-indexes in the high and request indexes in the low 32 bits, sorted. */
+  private final long[] ordered;
+
+  /** Indexes of the requests without z-index. */
+  private final int[] foreground;
+
+  /**
+   * Generates IDs and orders the requests by z-index. Doesn't access the repository, so it's
+   * called before the repository is locked.
+   *
+   * @param requests Validated widget create payloads in the order of the import.
+   * @param idGenerator Generator of new widget IDs.
+   */
+  WidgetImport(final List<WidgetCreateRequest> requests, final WidgetIdGenerator idGenerator) {
+    this.requests = requests;
+    ids = new WidgetId[requests.size()];
+    int requestingZ = 0;
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = idGenerator.next();
+      if (requests.get(i).getZ() != null) {
+        requestingZ++;
+      }
+    }
+
+    ordered = new long[requestingZ];
+    foreground = new int[ids.length - requestingZ];
+    int o = 0;
+    int f = 0;
+    for (int i = 0; i < ids.length; i++) {
+      final Integer z = requests.get(i).getZ();
+      if (z != null) {
+        ordered[o++] = ((long) z << 32) | i;
+      } else {
+        foreground[f++] = i;
+      }
+    }
+    Arrays.parallelSort(ordered);
+  }
+
+  private int requestedZ(final int position) {
+    return (int) (ordered[position] >> 32);
+  }
+
+  /**
+   * Places the imported widgets merging them with the widgets of the board. Accesses the
+   * repository, so must be used only in synchronized context.
+   *
+   * @param existingAfter Iterates widgets of the board above provided optional z-index in
+   *     ascending z-order. Consumed only as far as the merge needs.
+   * @param nextForegroundZIndex Next free foreground z-index of the board.
+   * @return Placement of the widgets.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded.
+   */
+  Placement place(
+      final Function<Integer, Iterator<Widget>> existingAfter,
+      final IntSupplier nextForegroundZIndex) {
+    final Widget[] imported = new Widget[ids.length];
+    final Placement placement = new Placement(imported);
+
+    Widget previous = null;
+    if (ordered.length > 0) {
+      final int lowestZ = requestedZ(0);
+      final Iterator<Widget> existing =
+          existingAfter.apply(lowestZ == Integer.MIN_VALUE ? null : lowestZ - 1);
+      Widget next = existing.hasNext() ? existing.next() : null;
+      int position = 0;
+      while (position < ordered.length
+          || (next != null && previous != null && next.getZ() <= previous.getZ())) {
+        final Widget placed;
+        if (position < ordered.length && (next == null || requestedZ(position) <= next.getZ())) {
+          final int index = (int) ordered[position];
+          placed =
+              requests.get(index).toNewWidget(ids[index], zIndex(requestedZ(position), previous));
+          imported[index] = placed;
+          placement.changed.add(placed);
+          position++;
+        } else {
+          final int z = zIndex(next.getZ(), previous);
+          placed = z == next.getZ() ? next : next.shiftUpwardTo(z);
+          placement.replaced.add(next);
+          if (placed != next) {
+            placement.changed.add(placed);
+          }
+          next = existing.hasNext() ? existing.next() : null;
+        }
+        placement.placed.add(placed);
+        previous = placed;
+      }
+    }
+
+    if (foreground.length > 0) {
+      int z = nextForegroundZIndex.getAsInt();
+      for (final int index : foreground) {
+        if (previous != null) {
+          z = zIndex(z, previous);
+        }
+        final Widget placed = requests.get(index).toNewWidget(ids[index], z);
+        imported[index] = placed;
+        placement.changed.add(placed);
+        placement.foreground.add(placed);
+        previous = placed;
+      }
+    }
+    return placement;
+  }
+
+  /**
+   * @param z Z-index requested by the widget.
+   * @param previous Widget placed right before, if any.
+   * @return The higher of the requested z-index and the one next to the previous widget.
+   * @throws ZIndexLimitExceededException if the previous widget is on the top z-index.
+   */
+  private static int zIndex(final int z, @Nullable final Widget previous) {
+    if (previous == null || z > previous.getZ()) {
+      return z;
+    }
+    ValidationHelper.ensureSafeToPlaceOnTopOf(previous);
+    return previous.getZ() + 1;
+  }
+
+  /** Widgets placed by the import. */
+  static final class Placement {
+    private final List<Widget> imported;
+    private final List<Widget> replaced = new ArrayList<>();
+    private final List<Widget> placed = new ArrayList<>();
+    private final List<Widget> foreground = new ArrayList<>();
+    private final List<Widget> changed = new ArrayList<>();
+
+    private Placement(final Widget[] imported) {
+      this.imported = Collections.unmodifiableList(Arrays.asList(imported));
+    }
+
+    /**
+     * @return Widgets of the board merged with the imported ones as they were before the import
+     *     ordered by z-index in ascending order.
+     */
+    List<Widget> replaced() {
+      return replaced;
+    }
+
+    /**
+     * @return Imported widgets with requested z-index together with the widgets of the board
+     *     replaced by the import as they are after the import ordered by z-index in ascending
+     *     order. All of them are above the widgets of the board below the lowest requested z-index
+     *     and below the rest of the widgets of the board.
+     */
+    List<Widget> placed() {
+      return placed;
+    }
+
+    /**
+     * @return Imported widgets without z-index ordered by z-index in ascending order. All of them
+     *     are above all the other widgets.
+     */
+    List<Widget> foreground() {
+      return foreground;
+    }
+
+    /**
+     * @return Imported widgets together with the widgets shifted by the import ordered by z-index
+     *     in ascending order.
+     */
+    List<Widget> changed() {
+      return changed;
+    }
+
+    /** @return Imported widgets in the order of the import. */
+    List<Widget> imported() {
+      return imported;
+    }
+
+    /** @return Outcome of the import. */
+    ImportedWidgets result() {
+      return new ImportedWidgets(imported, Collections.unmodifiableList(changed));
+    }
+  }
+}
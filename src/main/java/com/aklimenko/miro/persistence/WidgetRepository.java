@@ -13,10 +13,20 @@
 */
 package com.aklimenko.miro.persistence;
 
+import com.aklimenko.miro.exception.BoardModifiedException;
 import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.BoundingBox;
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
 import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
 import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import javax.annotation.Nullable;
@@ -34,14 +44,132 @@ public interface WidgetRepository {
   Widget createWidget(WidgetCreateRequest widgetToCreate);
 
   /**
-   * Read requested amount of widgets from repository starting after provided ID and ordered by
-   * z-index in ascending order.
+   * Restore previously created widget in the repository keeping its ID and last modification time.
+   * Widget is placed at its z-index shifting upwards the widget on the same z-index and all the
+   * widgets above it. Used to rebuild repository state during recovery.
+   *
+   * @param widget Widget to restore.
+   * @return Restored {@link Widget}.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded during restoration.
+   */
+  Widget restoreWidget(Widget widget);
+
+  /**
+   * Read requested amount of widgets from repository with z-index greater than provided one and
+   * ordered by z-index in ascending order. Widget on the provided z-index doesn't have to exist.
+   *
+   * @param limit Amount of widgets to read.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @return {@link List<Widget>} ordered by z-index in ascending order.
+   */
+  List<Widget> listWidgets(int limit, @Nullable Integer afterZ);
+
+  /**
+   * Read requested amount of widgets intersecting provided area from repository with z-index
+   * greater than provided one and ordered by z-index in ascending order. <br>
+   * Default implementation filters lazy z-ordered scan of the widgets above provided z-index until
+   * the page is filled. Implementations maintaining spatial index override it.
    *
    * @param limit Amount of widgets to read.
-   * @param afterId Optional ID token to look up for widgets after.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @param area Area to look up widgets intersecting.
    * @return {@link List<Widget>} ordered by z-index in ascending order.
    */
-  List<Widget> listWidgets(int limit, @Nullable String afterId);
+  default List<Widget> listWidgets(
+      final int limit, @Nullable final Integer afterZ, final BoundingBox area) {
+    final List<Widget> widgets = new ArrayList<>();
+    final Iterator<Widget> scanned = iterateWidgets(afterZ);
+    while (widgets.size() < limit && scanned.hasNext()) {
+      final Widget widget = scanned.next();
+      if (area.intersects(widget)) {
+        widgets.add(widget);
+      }
+    }
+    return Collections.unmodifiableList(widgets);
+  }
+
+  /**
+   * Read requested amount of widgets from provided version of repository with z-index greater
+   * than provided one, optionally intersecting provided area, ordered by z-index in ascending
+   * order. <br>
+   * Repository keeping versions pins the version a full page was read from, so that the following
+   * pages are read from the same version and neither skip nor repeat widgets shifted by concurrent
+   * writes. If provided version is no longer pinned, page is read from the latest version. <br>
+   * Default implementation doesn't keep versions and reads the latest state.
+   *
+   * @param version Optional version pinned by the previous page.
+   * @param limit Amount of widgets to read.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @param area Optional area to look up widgets intersecting.
+   * @return {@link VersionedWidgets} with the version to read the following pages from.
+   */
+  default VersionedWidgets listWidgetsAt(
+      @Nullable final Long version,
+      final int limit,
+      @Nullable final Integer afterZ,
+      @Nullable final BoundingBox area) {
+    return new VersionedWidgets(
+        area == null ? listWidgets(limit, afterZ) : listWidgets(limit, afterZ, area), null);
+  }
+
+  /**
+   * Iterate widgets of repository with z-index greater than provided one in z-index ascending
+   * order. Widgets are read lazily while iterating, so any amount of widgets can be consumed
+   * without collecting them. <br>
+   * Default implementation reads widgets in chunks with {@link #listWidgets(int, Integer)}, so
+   * widgets shifted by concurrent writes between the chunks may be skipped or repeated.
+   *
+   * @param afterZ Optional z-index to iterate widgets above.
+   * @return {@link Iterator<Widget>} ordered by z-index in ascending order.
+   */
+  default Iterator<Widget> iterateWidgets(@Nullable final Integer afterZ) {
+    return new ChunkedWidgetIterator(this::listWidgets, afterZ);
+  }
+
+  /**
+   * Iterate all the widgets of repository in z-index ascending order as they were at a single
+   * point in time. Widgets are read lazily while iterating as by {@link #iterateWidgets(Integer)}.
+   * <br>
+   * Repositories keeping snapshots iterate a single snapshot. Other repositories read widgets in
+   * chunks and fail the iteration with {@link BoardModifiedException} if widgets are added,
+   * removed or changed after the first chunk is read, rather than skipping or repeating shifted
+   * widgets. Writes changing nothing don't fail the iteration.
+   *
+   * @return {@link Iterator<Widget>} ordered by z-index in ascending order.
+   */
+  Iterator<Widget> exportWidgets();
+
+  /**
+   * Read requested amount of the topmost widgets covering provided point from repository. Widgets
+   * covering the point with their edges are included. <br>
+   * Default implementation filters lazy z-ordered scan of all the widgets keeping only the
+   * topmost covering ones, so it takes {@code O(n)} time but only {@code O(limit)} memory.
+   * Implementations maintaining spatial index override it.
+   *
+   * @param x X coordinate of the point.
+   * @param y Y coordinate of the point.
+   * @param limit Amount of widgets to read.
+   * @return {@link List<Widget>} ordered by z-index in descending order.
+   */
+  default List<Widget> hitTest(final double x, final double y, final int limit) {
+    if (limit <= 0) {
+      return List.of();
+    }
+    final BoundingBox point = BoundingBox.of(x, y, x, y);
+    // widgets are scanned bottom up, so the topmost ones are the last covering ones
+    final Deque<Widget> topmost = new ArrayDeque<>();
+    final Iterator<Widget> scanned = iterateWidgets(null);
+    while (scanned.hasNext()) {
+      final Widget widget = scanned.next();
+      if (point.intersects(widget)) {
+        if (topmost.size() == limit) {
+          topmost.pollLast();
+        }
+        topmost.addFirst(widget);
+      }
+    }
+    return List.copyOf(topmost);
+  }
 
   /**
    * Read widget from repository by provided ID if found.
@@ -49,7 +177,7 @@ public interface WidgetRepository {
    * @param id ID to look for widget.
    * @return Optionally found {@link Widget}.
    */
-  Optional<Widget> readWidget(String id);
+  Optional<Widget> readWidget(WidgetId id);
 
   /**
    * Update widget in repository with {@link WidgetUpdateRequest} if found by provided ID.
@@ -59,12 +187,38 @@ public interface WidgetRepository {
    * @return Optionally found and updated {@link Widget}.
    * @throws ZIndexLimitExceededException if z-index limit exceeded during widget update.
    */
-  Optional<Widget> updateWidget(String id, WidgetUpdateRequest widgetToUpdate);
+  Optional<Widget> updateWidget(WidgetId id, WidgetUpdateRequest widgetToUpdate);
 
   /**
    * Delete widget from repository by provided ID if found.
    *
    * @param id ID to look for widget to delete.
    */
-  boolean deleteWidget(String id);
+  boolean deleteWidget(WidgetId id);
+
+  /**
+   * Apply batch of widget operations atomically: readers observe the repository either without or
+   * with all the operations applied. Operations are applied in the order they are provided, each
+   * the same way as the standalone operation. Operation on widget which is not found or failing
+   * on z-index limit leaves the repository unchanged and doesn't stop the batch.
+   *
+   * @param operations Operations to apply.
+   * @return {@link List<WidgetBatchResult>} with result of every operation in the order of
+   *     operations.
+   */
+  List<WidgetBatchResult> applyBatch(List<WidgetBatchOperation> operations);
+
+  /**
+   * Import widgets in bulk atomically: readers observe the repository either without or with all
+   * the widgets imported. Requested z-indexes refer to the repository before the import. Imported
+   * widgets are merged with the widgets of the repository ordered by z-index, where imported
+   * widget goes below the widget on the same z-index and widgets are shifted upwards only as far
+   * as needed to make room for each other. Widgets without z-index are placed into the foreground
+   * in the order of the import.
+   *
+   * @param widgetsToCreate Validated widget create payloads in the order of the import.
+   * @return {@link ImportedWidgets} with imported and shifted widgets.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded, nothing is imported then.
+   */
+  ImportedWidgets importWidgets(List<WidgetCreateRequest> widgetsToCreate);
 }
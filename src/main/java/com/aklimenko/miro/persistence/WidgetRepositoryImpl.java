@@ -14,8 +14,15 @@
 package com.aklimenko.miro.persistence;
 
 import com.aklimenko.miro.concurrent.ConcurrentAccessLocker;
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.UlidWidgetIdGenerator;
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
 import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetIdGenerator;
 import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
 import com.aklimenko.miro.utils.ValidationHelper;
 import java.util.ArrayList;
@@ -30,32 +37,51 @@ import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Repository;
 
-/** Implementation of {@link WidgetRepository} contract. */
+/**
+ * Implementation of {@link WidgetRepository} contract. <br>
+ * Widgets are indexed by ID in a {@link HashMap}, by z-index in a {@link TreeMap} and by the
+ * rectangles they occupy in {@link SpatialIndex}. <br>
+ * Every shift replaces the shifted widgets in both maps, so batches coalesce the shifts of all
+ * their operations and put every shifted widget back into z-order only once.
+ */
 @Repository
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@ConditionalOnProperty(value = "persistence.repository", havingValue = "treeMap", matchIfMissing = true)
 public class WidgetRepositoryImpl implements WidgetRepository {
 
-  private final Map<String, Widget> widgetsById = new HashMap<>();
+  private final Map<WidgetId, Widget> widgetsById = new HashMap<>();
   private final NavigableMap<Integer, Widget> widgetsByZIndex = new TreeMap<>();
+  private final SpatialIndex widgetsByArea = new SpatialIndex();
+
+  private final ModificationCounter modifications = new ModificationCounter();
 
   private final ConcurrentAccessLocker accessLocker;
+  private final WidgetIdGenerator idGenerator;
 
   private static class WidgetUpdateState {
     private final Widget updatedWidget;
-    private final Integer shiftFromZ;
-    private final int previousZ;
+    private final Widget previousWidget;
 
-    public WidgetUpdateState(
-        final Widget updatedWidget, final Integer shiftFromZ, final int previousZ) {
+    public WidgetUpdateState(final Widget updatedWidget, final Widget previousWidget) {
       this.updatedWidget = updatedWidget;
-      this.shiftFromZ = shiftFromZ;
-      this.previousZ = previousZ;
+      this.previousWidget = previousWidget;
     }
   }
 
   public WidgetRepositoryImpl(final ConcurrentAccessLocker accessLocker) {
+    this(accessLocker, new UlidWidgetIdGenerator());
+  }
+
+  @Autowired
+  public WidgetRepositoryImpl(
+      final ConcurrentAccessLocker accessLocker, final WidgetIdGenerator idGenerator) {
     this.accessLocker = accessLocker;
+    this.idGenerator = idGenerator;
   }
 
   /**
@@ -102,43 +128,77 @@ public class WidgetRepositoryImpl implements WidgetRepository {
         });
   }
 
+  /**
+   * Inserts widget at its z-index shifting upwards all the widgets starting from that z-index if it
+   * is occupied. This method accesses and modifies shared resources so must be used only in
+   * synchronized context.
+   *
+   * @param widget Widget to insert.
+   * @return Inserted widget.
+   */
+  private Widget insert(final Widget widget) {
+    if (widgetsByZIndex.containsKey(widget.getZ())) {
+      shiftUpwardsFrom(widget.getZ());
+    }
+
+    final Widget previous = widgetsById.put(widget.getId(), widget);
+    widgetsByZIndex.put(widget.getZ(), widget);
+    if (previous == null) {
+      widgetsByArea.insert(widget);
+      modifications.modified();
+    } else {
+      widgetsByArea.update(previous, widget);
+      modifications.updated(previous, widget);
+    }
+
+    return widget;
+  }
+
   @Override
   public Widget createWidget(WidgetCreateRequest widgetToCreate) {
     return accessLocker.readStateAndWrite(
         // reading state first since nextForegroundZIndex method accessing shared resources
         () -> {
           final int zIndex =
-              Optional.ofNullable(widgetToCreate.getZ()).orElse(nextForegroundZIndex());
-          return widgetToCreate.toNewWidget(zIndex);
+              Optional.ofNullable(widgetToCreate.getZ()).orElseGet(this::nextForegroundZIndex);
+          return widgetToCreate.toNewWidget(idGenerator.next(), zIndex);
         },
-        (newWidget) -> {
-          if (widgetsByZIndex.containsKey(newWidget.getZ())) {
-            shiftUpwardsFrom(newWidget.getZ());
-          }
-
-          widgetsById.put(newWidget.getId(), newWidget);
-          widgetsByZIndex.put(newWidget.getZ(), newWidget);
+        this::insert);
+  }
 
-          return newWidget;
-        });
+  @Override
+  public Widget restoreWidget(final Widget widget) {
+    return accessLocker.write(() -> insert(widget));
   }
 
   @Override
-  public List<Widget> listWidgets(int limit, @Nullable String afterId) {
+  public List<Widget> listWidgets(int limit, @Nullable Integer afterZ) {
     return accessLocker.read(
         () -> {
           final NavigableMap<Integer, Widget> afterZMap =
-              Optional.ofNullable(afterId)
-                  .map(widgetsById::get)
-                  .map(Widget::getZ)
-                  .map(afterZ -> widgetsByZIndex.tailMap(afterZ, false))
-                  .orElse(widgetsByZIndex);
+              afterZ == null ? widgetsByZIndex : widgetsByZIndex.tailMap(afterZ, false);
           return afterZMap.values().stream().limit(limit).collect(Collectors.toUnmodifiableList());
         });
   }
 
   @Override
-  public Optional<Widget> readWidget(String id) {
+  public List<Widget> listWidgets(
+      final int limit, @Nullable final Integer afterZ, final BoundingBox area) {
+    return accessLocker.read(() -> widgetsByArea.list(area, limit, afterZ, widgetsById::get));
+  }
+
+  @Override
+  public Iterator<Widget> exportWidgets() {
+    return new ChunkedWidgetIterator(this::listWidgets, null, modifications::get);
+  }
+
+  @Override
+  public List<Widget> hitTest(final double x, final double y, final int limit) {
+    return accessLocker.read(() -> widgetsByArea.hitTest(x, y, limit, widgetsById::get));
+  }
+
+  @Override
+  public Optional<Widget> readWidget(WidgetId id) {
     return accessLocker.read(
         () -> {
           final Widget foundWidget = widgetsById.get(id);
@@ -147,7 +207,7 @@ public class WidgetRepositoryImpl implements WidgetRepository {
   }
 
   @Override
-  public Optional<Widget> updateWidget(String id, WidgetUpdateRequest widgetUpdate) {
+  public Optional<Widget> updateWidget(WidgetId id, WidgetUpdateRequest widgetUpdate) {
     // z-Index is not updated
     if (widgetUpdate.getZ() == null) {
       return accessLocker.readStateAndWrite(
@@ -160,8 +220,10 @@ public class WidgetRepositoryImpl implements WidgetRepository {
           (Optional<Widget> updatedWidget) -> {
             updatedWidget.ifPresent(
                 widget -> {
-                  widgetsById.put(id, widget);
+                  final Widget previous = widgetsById.put(id, widget);
+                  widgetsByArea.update(previous, widget);
                   widgetsByZIndex.put(widget.getZ(), widget);
+                  modifications.updated(previous, widget);
                 });
             return updatedWidget;
           });
@@ -169,31 +231,21 @@ public class WidgetRepositoryImpl implements WidgetRepository {
 
     // z-Index is updated
     return accessLocker.readStateAndWrite(
-        () -> {
-          final Widget widgetToUpdate = widgetsById.get(id);
-          return Optional.ofNullable(widgetToUpdate)
-              .map(
-                  toUpdate -> {
-                    int previousZ = widgetToUpdate.getZ();
-                    final Widget updatedWidget = widgetToUpdate.updateBy(widgetUpdate);
-
-                    final int z = widgetUpdate.getZ();
-                    final Integer zToShift = (widgetsByZIndex.containsKey(z)) ? z : null;
-                    return new WidgetUpdateState(updatedWidget, zToShift, previousZ);
-                  });
-        },
+        () ->
+            Optional.ofNullable(widgetsById.get(id))
+                .map(toUpdate -> new WidgetUpdateState(toUpdate.updateBy(widgetUpdate), toUpdate)),
         (Optional<WidgetUpdateState> widgetUpdateState) -> {
           widgetUpdateState.ifPresent(
               state -> {
-                final Integer shiftFromZ = state.shiftFromZ;
-                if (shiftFromZ != null) {
-                  shiftUpwardsFrom(shiftFromZ);
+                // widget is taken out of z-order first so that it is not shifted by itself
+                final Widget previousWidget = state.previousWidget;
+                widgetsByZIndex.remove(previousWidget.getZ());
+                try {
+                  insert(state.updatedWidget);
+                } catch (ZIndexLimitExceededException e) {
+                  widgetsByZIndex.put(previousWidget.getZ(), previousWidget);
+                  throw e;
                 }
-                widgetsByZIndex.remove(state.previousZ);
-
-                final Widget updatedWidget = state.updatedWidget;
-                widgetsById.put(id, updatedWidget);
-                widgetsByZIndex.put(updatedWidget.getZ(), updatedWidget);
               });
 
           return widgetUpdateState.map(state -> state.updatedWidget);
@@ -201,7 +253,7 @@ public class WidgetRepositoryImpl implements WidgetRepository {
   }
 
   @Override
-  public boolean deleteWidget(String id) {
+  public boolean deleteWidget(WidgetId id) {
     return accessLocker.readStateAndWrite(
         // reading state to ensure widget with provided id exists
         () -> {
@@ -214,12 +266,280 @@ public class WidgetRepositoryImpl implements WidgetRepository {
               widget -> {
                 widgetsById.remove(id);
                 widgetsByZIndex.remove(widget.getZ());
+                widgetsByArea.remove(widget);
+                modifications.modified();
               });
 
           return widgetToRemove.isPresent();
         });
   }
 
+  @Override
+  public List<WidgetBatchResult> applyBatch(final List<WidgetBatchOperation> operations) {
+    final int lowestZ = lowestRequestedZIndex(operations);
+    return accessLocker.write(
+        () -> {
+          final Batch batch = new Batch(lowestZ, operations.size());
+          try {
+            return WidgetBatch.apply(operations, batch);
+          } finally {
+            batch.renumber();
+          }
+        });
+  }
+
+  /**
+   * Places imported widgets with a single merge pass over the widgets starting from the lowest
+   * requested z-index. Every replaced widget is taken out of z-order first, so the placed widgets
+   * are put into both maps without shifting.
+   */
+  @Override
+  public ImportedWidgets importWidgets(final List<WidgetCreateRequest> widgetsToCreate) {
+    final WidgetImport widgetImport = new WidgetImport(widgetsToCreate, idGenerator);
+    return accessLocker.write(
+        () -> {
+          final WidgetImport.Placement placement =
+              widgetImport.place(
+                  afterZ ->
+                      (afterZ == null ? widgetsByZIndex : widgetsByZIndex.tailMap(afterZ, false))
+                          .values()
+                          .iterator(),
+                  this::nextForegroundZIndex);
+          placement.replaced().forEach(widget -> widgetsByZIndex.remove(widget.getZ()));
+          placement.placed().forEach(this::put);
+          placement.foreground().forEach(this::put);
+          widgetsByArea.insertAll(placement.imported());
+          if (!placement.imported().isEmpty()) {
+            modifications.modified();
+          }
+          return placement.result();
+        });
+  }
+
+  /**
+   * Puts widget into both maps. Doesn't shift widgets, so must be used only in synchronized
+   * context for the widget on free z-index.
+   *
+   * @param widget Widget to put.
+   */
+  private void put(final Widget widget) {
+    widgetsById.put(widget.getId(), widget);
+    widgetsByZIndex.put(widget.getZ(), widget);
+  }
+
+  /**
+   * Looks up the lowest z-index the operations place widgets at explicitly. No operation of the
+   * batch can shift widgets below it.
+   *
+   * @param operations Batch operations.
+   * @return The lowest requested z-index or {@link Integer#MAX_VALUE} if none is requested.
+   */
+  private static int lowestRequestedZIndex(final List<WidgetBatchOperation> operations) {
+    int lowestZ = Integer.MAX_VALUE;
+    for (final WidgetBatchOperation operation : operations) {
+      Integer z = null;
+      if (operation.getType() == WidgetBatchOperation.Type.CREATE) {
+        z = ((WidgetBatchOperation.Create) operation).getWidget().getZ();
+      } else if (operation.getType() == WidgetBatchOperation.Type.UPDATE) {
+        z = ((WidgetBatchOperation.Update) operation).getWidget().getZ();
+      }
+      if (z != null) {
+        lowestZ = Math.min(lowestZ, z);
+      }
+    }
+    return lowestZ;
+  }
+
+  /** Widget taken out of z-order by the batch together with its current z-index. */
+  private static class Shifted {
+    private Widget widget;
+    private int z;
+
+    private Shifted(final Widget widget) {
+      this.widget = widget;
+      this.z = widget.getZ();
+    }
+
+    /** @return The widget at its current z-index. */
+    private Widget current() {
+      if (widget.getZ() != z) {
+        widget = widget.shiftUpwardTo(z);
+      }
+      return widget;
+    }
+  }
+
+  /**
+   * Mutations of a batch. All the widgets starting from the lowest z-index requested by the batch
+   * are taken out of z-order into a list ordered by z-index, where shifting a widget upwards only
+   * increments its z-index. The list is put back into z-order by {@link #renumber} once all the
+   * operations are applied, so every widget is replaced at most once no matter how many times the
+   * batch shifted it. Widgets below the lowest requested z-index are never shifted by the batch,
+   * so they are updated in place. Accesses and modifies shared resources so must be used only in
+   * synchronized context.
+   */
+  private final class Batch implements WidgetBatch.Mutations {
+
+    /** Widgets taken out of z-order ordered by z-index. */
+    private final List<Shifted> tail;
+
+    /** Widgets taken out of z-order by ID. */
+    private final Map<WidgetId, Shifted> tailById = new HashMap<>();
+
+    private Batch(final int lowestZ, final int operations) {
+      final NavigableMap<Integer, Widget> taken = widgetsByZIndex.tailMap(lowestZ, true);
+      tail = new ArrayList<>(taken.size() + operations);
+      for (final Widget widget : taken.values()) {
+        final Shifted shifted = new Shifted(widget);
+        tail.add(shifted);
+        tailById.put(widget.getId(), shifted);
+      }
+      taken.clear();
+    }
+
+    @Override
+    public Widget create(final WidgetCreateRequest widgetToCreate) {
+      final int z =
+          widgetToCreate.getZ() != null ? widgetToCreate.getZ() : nextForegroundZIndex();
+      final Widget created = widgetToCreate.toNewWidget(idGenerator.next(), z);
+      place(created);
+      widgetsById.put(created.getId(), created);
+      widgetsByArea.insert(created);
+      modifications.modified();
+      return created;
+    }
+
+    @Override
+    public Optional<Widget> update(final WidgetId id, final WidgetUpdateRequest widgetUpdate) {
+      final Widget stored = widgetsById.get(id);
+      if (stored == null) {
+        return Optional.empty();
+      }
+
+      final Shifted shifted = tailById.get(id);
+      final Widget updated = (shifted == null ? stored : shifted.current()).updateBy(widgetUpdate);
+      if (widgetUpdate.getZ() == null) {
+        if (shifted == null) {
+          widgetsByZIndex.put(updated.getZ(), updated);
+        } else {
+          shifted.widget = updated;
+        }
+      } else {
+        // widget is taken out of z-order first so that it is not shifted by itself
+        final int index = shifted == null ? -1 : indexOf(shifted.z);
+        if (shifted == null) {
+          widgetsByZIndex.remove(stored.getZ());
+        } else {
+          tail.remove(index);
+          tailById.remove(id);
+        }
+        try {
+          place(updated);
+        } catch (ZIndexLimitExceededException e) {
+          if (shifted == null) {
+            widgetsByZIndex.put(stored.getZ(), stored);
+          } else {
+            tail.add(index, shifted);
+            tailById.put(id, shifted);
+          }
+          throw e;
+        }
+      }
+
+      widgetsById.put(id, updated);
+      widgetsByArea.update(stored, updated);
+      modifications.updated(stored, updated);
+      return Optional.of(updated);
+    }
+
+    @Override
+    public Optional<Widget> delete(final WidgetId id) {
+      final Widget stored = widgetsById.remove(id);
+      if (stored == null) {
+        return Optional.empty();
+      }
+
+      final Shifted shifted = tailById.remove(id);
+      if (shifted == null) {
+        widgetsByZIndex.remove(stored.getZ());
+      } else {
+        tail.remove(indexOf(shifted.z));
+      }
+      widgetsByArea.remove(stored);
+      modifications.modified();
+      return Optional.of(stored);
+    }
+
+    /** Puts the widgets back into z-order replacing the shifted ones. */
+    private void renumber() {
+      for (final Shifted shifted : tail) {
+        final Widget widget = shifted.current();
+        widgetsById.put(widget.getId(), widget);
+        widgetsByZIndex.put(widget.getZ(), widget);
+      }
+    }
+
+    /**
+     * Retrieves next free foreground z-index. The topmost widget is the last one of the list
+     * unless the list is empty.
+     *
+     * @return Next free z-index.
+     */
+    private int nextForegroundZIndex() {
+      if (tail.isEmpty()) {
+        return widgetsByZIndex.isEmpty() ? 0 : widgetsByZIndex.lastKey() + 1;
+      }
+      ensureSafeToPlaceOnTop();
+      return tail.get(tail.size() - 1).z + 1;
+    }
+
+    private void ensureSafeToPlaceOnTop() {
+      final Shifted top = tail.get(tail.size() - 1);
+      if (top.z == Integer.MAX_VALUE) {
+        throw new ZIndexLimitExceededException(top.widget.getId().toString());
+      }
+    }
+
+    /**
+     * Places widget into the list shifting upwards the widget on the same z-index and all the
+     * widgets above it.
+     *
+     * @param widget Widget to place.
+     */
+    private void place(final Widget widget) {
+      final int index = indexOf(widget.getZ());
+      if (index < tail.size() && tail.get(index).z == widget.getZ()) {
+        ensureSafeToPlaceOnTop();
+        for (int i = index; i < tail.size(); i++) {
+          tail.get(i).z++;
+        }
+      }
+      final Shifted placed = new Shifted(widget);
+      tail.add(index, placed);
+      tailById.put(widget.getId(), placed);
+    }
+
+    /**
+     * Binary searches the list for z-index.
+     *
+     * @param z Z-index to look for.
+     * @return Index of the first widget on or above the z-index.
+     */
+    private int indexOf(final int z) {
+      int low = 0;
+      int high = tail.size();
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (tail.get(mid).z < z) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
   /**
    * Cleans up repository storage. Not part of the {@link WidgetRepository} contract and used only
    * for testing purposes. Not synchronized.
@@ -227,5 +547,6 @@ public class WidgetRepositoryImpl implements WidgetRepository {
   public void cleanUp() {
     widgetsById.clear();
     widgetsByZIndex.clear();
+    widgetsByArea.clear();
   }
 }
@@ -0,0 +1,214 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.utils.ValidationHelper;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable snapshot of all the widgets indexed by ID, by z-index and by the rectangles they
+ * occupy. Modifications return new snapshots sharing unchanged parts with the previous one.
+ * Every modification increments version of the snapshot, so snapshots published one after
+ * another have growing versions.
+ */
+final class WidgetSnapshot {
+
+  static final WidgetSnapshot EMPTY =
+      new WidgetSnapshot(
+          HashTrieMap.empty(), PersistentZOrderTree.empty(), PersistentSpatialIndex.empty(), 0);
+
+  private final HashTrieMap<WidgetId, Widget> widgetsById;
+  private final PersistentZOrderTree widgetsByZIndex;
+  private final PersistentSpatialIndex widgetsByArea;
+  private final long version;
+
+  private WidgetSnapshot(
+      final HashTrieMap<WidgetId, Widget> widgetsById,
+      final PersistentZOrderTree widgetsByZIndex,
+      final PersistentSpatialIndex widgetsByArea,
+      final long version) {
+    this.widgetsById = widgetsById;
+    this.widgetsByZIndex = widgetsByZIndex;
+    this.widgetsByArea = widgetsByArea;
+    this.version = version;
+  }
+
+  long getVersion() {
+    return version;
+  }
+
+  /**
+   * Retrieves next free foreground z-index.
+   *
+   * @return Next free z-index.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded.
+   */
+  int nextForegroundZIndex() {
+    final Widget top = widgetsByZIndex.last();
+    if (top == null) {
+      return 0;
+    }
+
+    ValidationHelper.ensureSafeToPlaceOnTopOf(top);
+    return top.getZ() + 1;
+  }
+
+  /**
+   * Inserts widget at its z-index shifting upwards the widget on the same z-index and all the
+   * widgets above it.
+   *
+   * @param widget Widget to insert.
+   * @return New snapshot.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded.
+   */
+  WidgetSnapshot insert(final Widget widget) {
+    HashTrieMap<WidgetId, Widget> byId = widgetsById;
+    PersistentZOrderTree byZIndex = widgetsByZIndex;
+    if (byZIndex.get(widget.getZ()) != null) {
+      // ensure there is room on top of the widget in the foreground
+      nextForegroundZIndex();
+
+      final List<Widget> shifted = new ArrayList<>();
+      byZIndex = byZIndex.shiftUpwardsFrom(widget.getZ(), shifted::add);
+      for (final Widget shiftedWidget : shifted) {
+        byId = byId.put(shiftedWidget.getId(), shiftedWidget);
+      }
+    }
+
+    return new WidgetSnapshot(
+        byId.put(widget.getId(), widget),
+        byZIndex.insert(widget),
+        widgetsByArea.insert(widget),
+        version + 1);
+  }
+
+  /**
+   * Installs placement of imported widgets. Replaced widgets are spliced out of z-order together
+   * with the free z-indexes the placed widgets take, so no widget is shifted.
+   *
+   * @param placement Placement of the widgets made on this snapshot.
+   * @return New snapshot.
+   */
+  WidgetSnapshot importWidgets(final WidgetImport.Placement placement) {
+    HashTrieMap<WidgetId, Widget> byId = widgetsById;
+    for (final Widget widget : placement.changed()) {
+      byId = byId.put(widget.getId(), widget);
+    }
+    return new WidgetSnapshot(
+        byId,
+        widgetsByZIndex.splice(placement.placed()).splice(placement.foreground()),
+        widgetsByArea.insertAll(placement.imported()),
+        version + 1);
+  }
+
+  /**
+   * Replaces stored widget with the provided one keeping its position in z-order.
+   *
+   * @param widget Widget with the same ID and z-index as the stored one.
+   * @return New snapshot.
+   */
+  WidgetSnapshot replace(final Widget widget) {
+    return new WidgetSnapshot(
+        widgetsById.put(widget.getId(), widget),
+        widgetsByZIndex.replace(widget),
+        widgetsByArea.update(widgetsById.get(widget.getId()), widget),
+        version + 1);
+  }
+
+  /**
+   * Removes widget by provided ID if found.
+   *
+   * @param id ID to look for widget to remove.
+   * @return New snapshot or the same one if widget is not found.
+   */
+  WidgetSnapshot remove(final WidgetId id) {
+    final Widget widget = widgetsById.get(id);
+    if (widget == null) {
+      return this;
+    }
+    return new WidgetSnapshot(
+        widgetsById.remove(id),
+        widgetsByZIndex.remove(widget.getZ()),
+        widgetsByArea.remove(widget),
+        version + 1);
+  }
+
+  /**
+   * Reads widget by provided ID if found.
+   *
+   * @param id ID to look for widget.
+   * @return Optionally found {@link Widget}.
+   */
+  Optional<Widget> find(final WidgetId id) {
+    return Optional.ofNullable(widgetsById.get(id));
+  }
+
+  /**
+   * Reads requested amount of widgets ordered by z-index with z-index greater than provided one.
+   *
+   * @param limit Amount of widgets to read.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @return Widgets ordered by z-index in ascending order.
+   */
+  List<Widget> list(final int limit, @Nullable final Integer afterZ) {
+    final List<Widget> widgets = new ArrayList<>(Math.min(limit, widgetsById.size()));
+    widgetsByZIndex.collect(
+        afterZ == null ? (long) Integer.MIN_VALUE - 1 : afterZ, limit, widgets);
+    return Collections.unmodifiableList(widgets);
+  }
+
+  /**
+   * Reads requested amount of widgets intersecting provided area ordered by z-index with z-index
+   * greater than provided one.
+   *
+   * @param limit Amount of widgets to read.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @param area Area to look up widgets intersecting.
+   * @return Widgets ordered by z-index in ascending order.
+   */
+  List<Widget> list(final int limit, @Nullable final Integer afterZ, final BoundingBox area) {
+    return widgetsByArea.list(area, limit, afterZ, widgetsById::get);
+  }
+
+  /**
+   * Reads requested amount of the topmost widgets covering provided point.
+   *
+   * @param x X coordinate of the point.
+   * @param y Y coordinate of the point.
+   * @param limit Amount of widgets to read.
+   * @return Widgets ordered by z-index in descending order.
+   */
+  List<Widget> hitTest(final double x, final double y, final int limit) {
+    return widgetsByArea.hitTest(x, y, limit, widgetsById::get);
+  }
+
+  /**
+   * Iterates widgets ordered by z-index with z-index greater than provided one.
+   *
+   * @param afterZ Optional z-index to iterate widgets above.
+   * @return Iterator over the widgets of this snapshot in ascending z-order.
+   */
+  Iterator<Widget> iterator(@Nullable final Integer afterZ) {
+    return widgetsByZIndex.iterator(afterZ == null ? (long) Integer.MIN_VALUE - 1 : afterZ);
+  }
+}
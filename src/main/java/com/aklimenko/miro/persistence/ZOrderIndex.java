@@ -0,0 +1,101 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Contract of the index keeping widgets ordered by z-index. Implementations are not synchronized
+ * so must be used only in synchronized context.
+ */
+interface ZOrderIndex {
+
+  /**
+   * Retrieves next free foreground z-index.
+   *
+   * @return Next free z-index.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded.
+   */
+  int nextForegroundZIndex();
+
+  /**
+   * Inserts widget at its z-index shifting upwards the widget on the same z-index and all the
+   * widgets above it.
+   *
+   * @param widget Widget to insert.
+   * @return Inserted widget.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded.
+   */
+  Widget insert(Widget widget);
+
+  /**
+   * Replaces stored widget with the provided one keeping its position in z-order.
+   *
+   * @param widget Widget with the same ID and z-index as the stored one.
+   * @return Replaced widget.
+   */
+  Widget replace(Widget widget);
+
+  /**
+   * Moves stored widget to the z-index of the provided one. Keeps the index unchanged if z-index
+   * limit gets exceeded.
+   *
+   * @param widget Updated widget with the same ID as the stored one.
+   * @return Moved widget.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded.
+   */
+  default Widget move(final Widget widget) {
+    final Widget previous = remove(widget.getId()).orElseThrow();
+    try {
+      return insert(widget);
+    } catch (ZIndexLimitExceededException e) {
+      // z-index of the removed widget is free so it's inserted back without shifting
+      insert(previous);
+      throw e;
+    }
+  }
+
+  /**
+   * Removes widget by provided ID if found.
+   *
+   * @param id ID to look for widget to remove.
+   * @return Optionally removed {@link Widget}.
+   */
+  Optional<Widget> remove(WidgetId id);
+
+  /**
+   * Reads widget by provided ID if found.
+   *
+   * @param id ID to look for widget.
+   * @return Optionally found {@link Widget}.
+   */
+  Optional<Widget> find(WidgetId id);
+
+  /**
+   * Reads requested amount of widgets ordered by z-index with z-index greater than provided one.
+   *
+   * @param limit Amount of widgets to read.
+   * @param afterZ Optional z-index to look up for widgets above.
+   * @return Widgets ordered by z-index in ascending order.
+   */
+  List<Widget> list(int limit, @Nullable Integer afterZ);
+
+  /** Removes all the widgets from the index. */
+  void clear();
+}
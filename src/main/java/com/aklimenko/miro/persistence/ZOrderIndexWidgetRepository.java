@@ -0,0 +1,232 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import com.aklimenko.miro.concurrent.ConcurrentAccessLocker;
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetIdGenerator;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of {@link WidgetRepository} contract delegating z-ordering of widgets to {@link
+ * ZOrderIndex}. Widgets are indexed by the rectangles they occupy in {@link SpatialIndex} alongside
+ * the z-order index. Access to both indexes is synchronized with {@link ConcurrentAccessLocker}.
+ * <br>
+ * Batches apply their operations one by one within a single write. Z-order indexes shift widgets
+ * without replacing them, so shifts of the batch operations don't need to be coalesced.
+ */
+public abstract class ZOrderIndexWidgetRepository implements WidgetRepository {
+
+  private final ZOrderIndex index;
+
+  private final SpatialIndex spatialIndex = new SpatialIndex();
+
+  private final ModificationCounter modifications = new ModificationCounter();
+
+  private final ConcurrentAccessLocker accessLocker;
+
+  private final WidgetIdGenerator idGenerator;
+
+  private static class WidgetUpdateState {
+    private final Widget updatedWidget;
+    private final Widget previousWidget;
+
+    public WidgetUpdateState(final Widget updatedWidget, final Widget previousWidget) {
+      this.updatedWidget = updatedWidget;
+      this.previousWidget = previousWidget;
+    }
+  }
+
+  ZOrderIndexWidgetRepository(
+      final ZOrderIndex index,
+      final ConcurrentAccessLocker accessLocker,
+      final WidgetIdGenerator idGenerator) {
+    this.index = index;
+    this.accessLocker = accessLocker;
+    this.idGenerator = idGenerator;
+  }
+
+  @Override
+  public Widget createWidget(WidgetCreateRequest widgetToCreate) {
+    return accessLocker.readStateAndWrite(
+        // reading state first since nextForegroundZIndex method accessing shared resources
+        () -> {
+          final Integer z = widgetToCreate.getZ();
+          return widgetToCreate.toNewWidget(
+              idGenerator.next(), z != null ? z : index.nextForegroundZIndex());
+        },
+        this::insert);
+  }
+
+  @Override
+  public Widget restoreWidget(final Widget widget) {
+    return accessLocker.write(() -> insert(widget));
+  }
+
+  private Widget insert(final Widget widget) {
+    index.insert(widget);
+    spatialIndex.insert(widget);
+    modifications.modified();
+    return widget;
+  }
+
+  @Override
+  public List<Widget> listWidgets(int limit, @Nullable Integer afterZ) {
+    return accessLocker.read(() -> index.list(limit, afterZ));
+  }
+
+  @Override
+  public List<Widget> listWidgets(
+      final int limit, @Nullable final Integer afterZ, final BoundingBox area) {
+    return accessLocker.read(
+        () -> spatialIndex.list(area, limit, afterZ, id -> index.find(id).orElseThrow()));
+  }
+
+  @Override
+  public Iterator<Widget> exportWidgets() {
+    return new ChunkedWidgetIterator(this::listWidgets, null, modifications::get);
+  }
+
+  @Override
+  public List<Widget> hitTest(final double x, final double y, final int limit) {
+    return accessLocker.read(
+        () -> spatialIndex.hitTest(x, y, limit, id -> index.find(id).orElseThrow()));
+  }
+
+  @Override
+  public Optional<Widget> readWidget(WidgetId id) {
+    return accessLocker.read(() -> index.find(id));
+  }
+
+  @Override
+  public Optional<Widget> updateWidget(WidgetId id, WidgetUpdateRequest widgetUpdate) {
+    return accessLocker.readStateAndWrite(
+        // reading state to ensure widget with provided id exists
+        () ->
+            index
+                .find(id)
+                .map(toUpdate -> new WidgetUpdateState(toUpdate.updateBy(widgetUpdate), toUpdate)),
+        (Optional<WidgetUpdateState> widgetUpdateState) ->
+            widgetUpdateState.map(
+                state -> {
+                  final Widget updated =
+                      widgetUpdate.getZ() == null
+                          ? index.replace(state.updatedWidget)
+                          : index.move(state.updatedWidget);
+                  spatialIndex.update(state.previousWidget, updated);
+                  modifications.updated(state.previousWidget, updated);
+                  return updated;
+                }));
+  }
+
+  @Override
+  public boolean deleteWidget(WidgetId id) {
+    return accessLocker.write(
+        () -> {
+          final Optional<Widget> removed = index.remove(id);
+          removed.ifPresent(this::removed);
+          return removed.isPresent();
+        });
+  }
+
+  private void removed(final Widget widget) {
+    spatialIndex.remove(widget);
+    modifications.modified();
+  }
+
+  @Override
+  public List<WidgetBatchResult> applyBatch(final List<WidgetBatchOperation> operations) {
+    return accessLocker.write(() -> WidgetBatch.apply(operations, new Batch()));
+  }
+
+  /**
+   * Places imported widgets with a single merge pass over the z-order index starting from the
+   * lowest requested z-index. Every replaced widget is taken out of z-order first, so the placed
+   * widgets are inserted without shifting.
+   */
+  @Override
+  public ImportedWidgets importWidgets(final List<WidgetCreateRequest> widgetsToCreate) {
+    final WidgetImport widgetImport = new WidgetImport(widgetsToCreate, idGenerator);
+    return accessLocker.write(
+        () -> {
+          final WidgetImport.Placement placement =
+              widgetImport.place(
+                  afterZ -> new ChunkedWidgetIterator(index::list, afterZ),
+                  index::nextForegroundZIndex);
+          placement.replaced().forEach(widget -> index.remove(widget.getId()));
+          placement.placed().forEach(index::insert);
+          placement.foreground().forEach(index::insert);
+          spatialIndex.insertAll(placement.imported());
+          if (!placement.imported().isEmpty()) {
+            modifications.modified();
+          }
+          return placement.result();
+        });
+  }
+
+  /**
+   * Mutations of a batch applied directly to the indexes. Accesses and modifies shared resources
+   * so must be used only in synchronized context.
+   */
+  private final class Batch implements WidgetBatch.Mutations {
+
+    @Override
+    public Widget create(final WidgetCreateRequest widgetToCreate) {
+      final Integer z = widgetToCreate.getZ();
+      final int zIndex = z != null ? z : index.nextForegroundZIndex();
+      return insert(widgetToCreate.toNewWidget(idGenerator.next(), zIndex));
+    }
+
+    @Override
+    public Optional<Widget> update(final WidgetId id, final WidgetUpdateRequest widgetUpdate) {
+      return index
+          .find(id)
+          .map(
+              previous -> {
+                final Widget updated =
+                    widgetUpdate.getZ() == null
+                        ? index.replace(previous.updateBy(widgetUpdate))
+                        : index.move(previous.updateBy(widgetUpdate));
+                spatialIndex.update(previous, updated);
+                modifications.updated(previous, updated);
+                return updated;
+              });
+    }
+
+    @Override
+    public Optional<Widget> delete(final WidgetId id) {
+      final Optional<Widget> removed = index.remove(id);
+      removed.ifPresent(ZOrderIndexWidgetRepository.this::removed);
+      return removed;
+    }
+  }
+
+  /**
+   * Cleans up repository storage. Not part of the {@link WidgetRepository} contract and used only
+   * for testing purposes. Not synchronized.
+   */
+  public void cleanUp() {
+    index.clear();
+    spatialIndex.clear();
+  }
+}
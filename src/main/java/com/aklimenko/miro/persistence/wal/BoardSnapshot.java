@@ -0,0 +1,48 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence.wal;
+
+import com.aklimenko.miro.model.widget.Widget;
+import java.util.List;
+
+/** Immutable state of a single board captured at some position of {@link WriteAheadLog}. */
+public class BoardSnapshot {
+
+  private final String boardId;
+  private final long position;
+  private final List<Widget> widgets;
+
+  /**
+   * @param boardId Board ID.
+   * @param position Log sequence number of the last record of the board applied to the state.
+   * @param widgets Widgets of the board ordered by z-index.
+   */
+  public BoardSnapshot(final String boardId, final long position, final List<Widget> widgets) {
+    this.boardId = boardId;
+    this.position = position;
+    this.widgets = widgets;
+  }
+
+  public String getBoardId() {
+    return boardId;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  public List<Widget> getWidgets() {
+    return widgets;
+  }
+}
@@ -0,0 +1,32 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence.wal;
+
+/** Defines when records appended to {@link WriteAheadLog} are forced to the storage device. */
+public enum FsyncMode {
+  /** Every record is forced right after it is written. Writers wait for their own fsync. */
+  OP,
+
+  /**
+   * Group commit. Records of concurrent writers are forced together by a single fsync and every
+   * writer waits until the batch containing its record is forced.
+   */
+  BATCH,
+
+  /**
+   * Records are forced periodically in the background. Writers never wait, so records written
+   * within the last interval may be lost on crash.
+   */
+  INTERVAL
+}
@@ -0,0 +1,151 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence.wal;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary snapshot of the widgets of all the boards. <br>
+ * Snapshot is written into a temporary file which is forced and atomically moved over the previous
+ * snapshot, so a crash in the middle of writing leaves the previous snapshot intact. Binary
+ * layout of the file:
+ *
+ * <pre>
+ * magic:int | boards:int
+ *   [per board] boardId:utf | position:long | widgets:int
+ *     [per widget] uuid:boolean | idHigh:long | idLow:long | x:int | y:int | z:int
+ *       | width:double | height:double | seconds:long | nanos:int
+ * crc32:int
+ * </pre>
+ */
+public final class SnapshotFile {
+
+  private static final int MAGIC = 0x4d57534e;
+
+  private SnapshotFile() {}
+
+  /**
+   * Writes snapshot replacing the previous one.
+   *
+   * @param path Path to the snapshot file.
+   * @param boards States of the boards.
+   * @return Size of the written snapshot in bytes.
+   * @throws IOException if snapshot can not be written.
+   */
+  public static long write(final Path path, final List<BoardSnapshot> boards) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+    try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+      final CheckedOutputStream checked =
+          new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+      final DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(MAGIC);
+      out.writeInt(boards.size());
+      for (final BoardSnapshot board : boards) {
+        out.writeUTF(board.getBoardId());
+        out.writeLong(board.getPosition());
+        out.writeInt(board.getWidgets().size());
+        for (final Widget widget : board.getWidgets()) {
+          out.writeBoolean(widget.getId().isUuid());
+          out.writeLong(widget.getId().getHigh());
+          out.writeLong(widget.getId().getLow());
+          out.writeInt(widget.getX());
+          out.writeInt(widget.getY());
+          out.writeInt(widget.getZ());
+          out.writeDouble(widget.getWidth());
+          out.writeDouble(widget.getHeight());
+          out.writeLong(widget.getLastModifiedAt().getEpochSecond());
+          out.writeInt(widget.getLastModifiedAt().getNano());
+        }
+      }
+      out.writeInt((int) checked.getChecksum().getValue());
+      out.flush();
+      file.getFD().sync();
+    }
+
+    Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+    return Files.size(path);
+  }
+
+  /**
+   * Reads snapshot.
+   *
+   * @param path Path to the snapshot file.
+   * @return States of the boards, empty if snapshot doesn't exist.
+   * @throws IOException if snapshot can not be read or is corrupted.
+   */
+  public static List<BoardSnapshot> read(final Path path) throws IOException {
+    if (!Files.exists(path)) {
+      return List.of();
+    }
+
+    try (CheckedInputStream checked =
+        new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path)), new CRC32())) {
+      final DataInputStream in = new DataInputStream(checked);
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a widget snapshot: " + path);
+      }
+
+      final int boardCount = in.readInt();
+      final List<BoardSnapshot> boards = new ArrayList<>(boardCount);
+      for (int board = 0; board < boardCount; board++) {
+        final String boardId = in.readUTF();
+        final long position = in.readLong();
+        final int widgetCount = in.readInt();
+        final List<Widget> widgets = new ArrayList<>(widgetCount);
+        for (int widget = 0; widget < widgetCount; widget++) {
+          final boolean uuid = in.readBoolean();
+          widgets.add(
+              new Widget(
+                  WidgetId.of(in.readLong(), in.readLong(), uuid),
+                  in.readInt(),
+                  in.readInt(),
+                  in.readInt(),
+                  in.readDouble(),
+                  in.readDouble(),
+                  Instant.ofEpochSecond(in.readLong(), in.readInt())));
+        }
+        boards.add(new BoardSnapshot(boardId, position, widgets));
+      }
+
+      final int expected = (int) checked.getChecksum().getValue();
+      if (in.readInt() != expected) {
+        throw new IOException("Widget snapshot checksum mismatch: " + path);
+      }
+      return boards;
+    } catch (EOFException e) {
+      throw new IOException("Widget snapshot is truncated: " + path, e);
+    }
+  }
+}
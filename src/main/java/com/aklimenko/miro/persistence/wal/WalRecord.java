@@ -0,0 +1,141 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence.wal;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable record of {@link WriteAheadLog} describing the outcome of a single widget mutation.
+ * <br>
+ * Records carry resulting widget state rather than the request, so replaying them restores the
+ * same IDs and z-indexes, and the modification times of the recorded widgets. Only imports record
+ * the widgets they shift upwards, widgets shifted by other mutations are shifted again on replay
+ * and get the replay time as their modification time. Binary layout of the record payload:
+ *
+ * <pre>
+ * type:byte | boardId:short+utf8 | uuid:byte | idHigh:long | idLow:long
+ *   [PUT only] x:int | y:int | z:int | width:double | height:double | seconds:long | nanos:int
+ * </pre>
+ */
+public class WalRecord {
+
+  /** Type of the mutation. */
+  public enum Type {
+    /** Widget was created or updated. Previous state of the widget is replaced if any. */
+    PUT,
+    /** Widget was deleted. */
+    DELETE
+  }
+
+  private final Type type;
+  private final String boardId;
+  private final WidgetId widgetId;
+  @Nullable private final Widget widget;
+
+  private WalRecord(
+      final Type type,
+      final String boardId,
+      final WidgetId widgetId,
+      @Nullable final Widget widget) {
+    this.type = type;
+    this.boardId = boardId;
+    this.widgetId = widgetId;
+    this.widget = widget;
+  }
+
+  public static WalRecord put(final String boardId, final Widget widget) {
+    return new WalRecord(Type.PUT, boardId, widget.getId(), widget);
+  }
+
+  public static WalRecord delete(final String boardId, final WidgetId widgetId) {
+    return new WalRecord(Type.DELETE, boardId, widgetId, null);
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getBoardId() {
+    return boardId;
+  }
+
+  public WidgetId getWidgetId() {
+    return widgetId;
+  }
+
+  /** @return Resulting widget state for {@link Type#PUT} records, {@code null} otherwise. */
+  @Nullable
+  public Widget getWidget() {
+    return widget;
+  }
+
+  /**
+   * Encodes record payload.
+   *
+   * @return Buffer with encoded payload ready to be read.
+   */
+  ByteBuffer encode() {
+    final byte[] board = boardId.getBytes(StandardCharsets.UTF_8);
+    final int widgetSize = widget == null ? 0 : 3 * Integer.BYTES + 3 * Long.BYTES + Integer.BYTES;
+    final ByteBuffer buffer =
+        ByteBuffer.allocate(1 + Short.BYTES + board.length + 1 + 2 * Long.BYTES + widgetSize);
+
+    buffer.put((byte) type.ordinal());
+    buffer.putShort((short) board.length).put(board);
+    buffer.put((byte) (widgetId.isUuid() ? 1 : 0));
+    buffer.putLong(widgetId.getHigh()).putLong(widgetId.getLow());
+    if (widget != null) {
+      buffer.putInt(widget.getX()).putInt(widget.getY()).putInt(widget.getZ());
+      buffer.putDouble(widget.getWidth()).putDouble(widget.getHeight());
+      buffer.putLong(widget.getLastModifiedAt().getEpochSecond());
+      buffer.putInt(widget.getLastModifiedAt().getNano());
+    }
+    return buffer.flip();
+  }
+
+  /**
+   * Decodes record payload.
+   *
+   * @param buffer Buffer positioned at the start of the payload.
+   * @return Decoded record.
+   */
+  static WalRecord decode(final ByteBuffer buffer) {
+    final Type type = Type.values()[buffer.get()];
+    final String boardId = readString(buffer);
+    final boolean uuid = buffer.get() != 0;
+    final WidgetId widgetId = WidgetId.of(buffer.getLong(), buffer.getLong(), uuid);
+    if (type == Type.DELETE) {
+      return delete(boardId, widgetId);
+    }
+
+    final int x = buffer.getInt();
+    final int y = buffer.getInt();
+    final int z = buffer.getInt();
+    final double width = buffer.getDouble();
+    final double height = buffer.getDouble();
+    final Instant lastModifiedAt = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+    return put(boardId, new Widget(widgetId, x, y, z, width, height, lastModifiedAt));
+  }
+
+  private static String readString(final ByteBuffer buffer) {
+    final byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,598 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence.wal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only binary write-ahead log of widget mutations written through {@link FileChannel}. <br>
+ * Every record is framed as {@code length:int | crc32:int | payload} so that a record torn by a
+ * crash is detected on replay and cut off together with everything after it. <br>
+ * Appending a record and making it durable are separate steps, so callers can append under their
+ * own lock (keeping the log in the order mutations were applied) and wait for durability outside
+ * of it. When exactly records are forced to the storage device is defined by {@link FsyncMode}.
+ * <br>
+ * The log is split into segment files named after the log file with the offset of their first
+ * record appended, e.g. {@code widgets.wal.00000000000000004096}. Offset of the end of a record in
+ * the whole log is its log sequence number, which lets snapshots tell which records they already
+ * cover. Log is switched to a new segment with {@link #rotate} so that segments covered by a
+ * snapshot can be deleted as a whole with {@link #deleteSegmentsBefore}. <br>
+ * Once a record can not be written or forced, the log is left in unknown state and records
+ * appended after it could be cut off on replay, so the log fails and rejects everything appended
+ * afterwards. Callers check it with {@link #checkNotFailed} before applying their mutations.
+ */
+public class WriteAheadLog implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+  private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+  private final Path path;
+  private final FsyncMode fsyncMode;
+
+  /** Guards writes into the channel and switching segments. */
+  private final Object appendLock = new Object();
+
+  /** Channel of the current segment. Guarded by {@link #appendLock}. */
+  private FileChannel channel;
+
+  /** Offset of the current segment in the whole log. Guarded by {@link #appendLock}. */
+  private long segmentStart;
+
+  /** Offset of the end of the last written record in the whole log. */
+  private volatile long writtenPosition;
+
+  /** Failure after which nothing is appended, or {@code null} while the log is healthy. */
+  @Nullable private volatile IOException failure;
+
+  /** Guards group commit state. */
+  private final ReentrantLock syncLock = new ReentrantLock();
+
+  private final Condition synced = syncLock.newCondition();
+
+  /** Position up to which all the records are forced. Guarded by {@link #syncLock}. */
+  private long durablePosition;
+
+  /**
+   * Whether some thread is forcing the channel or switching segments on behalf of others. Guarded
+   * by {@link #syncLock}.
+   */
+  private boolean syncing = false;
+
+  @Nullable private final ScheduledExecutorService scheduler;
+
+  private WriteAheadLog(
+      final Path path,
+      final FileChannel channel,
+      final long segmentStart,
+      final FsyncMode fsyncMode,
+      final long fsyncIntervalMS)
+      throws IOException {
+    this.path = path;
+    this.channel = channel;
+    this.segmentStart = segmentStart;
+    this.fsyncMode = fsyncMode;
+    this.writtenPosition = segmentStart + channel.position();
+    this.durablePosition = writtenPosition;
+
+    if (fsyncMode == FsyncMode.INTERVAL) {
+      scheduler =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                final Thread thread = new Thread(runnable, "wal-fsync");
+                thread.setDaemon(true);
+                return thread;
+              });
+      scheduler.scheduleWithFixedDelay(
+          this::forceQuietly, fsyncIntervalMS, fsyncIntervalMS, TimeUnit.MILLISECONDS);
+    } else {
+      scheduler = null;
+    }
+  }
+
+  /**
+   * Opens the log creating it if absent and replays all the records found in it. Log written as a
+   * single file at provided path is taken over as the first segment.
+   *
+   * @param path Path to the log file. Segments are placed next to it.
+   * @param fsyncMode Mode of forcing appended records to the storage device.
+   * @param fsyncIntervalMS Interval of forcing records in {@link FsyncMode#INTERVAL} mode.
+   * @param replay Consumer of the replayed records together with their log sequence numbers
+   *     invoked in the order records were appended.
+   * @return Opened log positioned after the last valid record.
+   * @throws IOException if log can not be opened or read.
+   */
+  public static WriteAheadLog open(
+      final Path path,
+      final FsyncMode fsyncMode,
+      final long fsyncIntervalMS,
+      final ObjLongConsumer<WalRecord> replay)
+      throws IOException {
+    return open(path, fsyncMode, fsyncIntervalMS, 0, replay);
+  }
+
+  /**
+   * Opens the log creating it if absent and replays all the records found in it. Log written as a
+   * single file at provided path is taken over as the first segment. <br>
+   * If the log ends before provided log sequence number, e.g. because records covered by a
+   * snapshot were torn by a crash, the log is switched to a new segment starting from it, so that
+   * records appended from now on are never mistaken for the ones already covered.
+   *
+   * @param path Path to the log file. Segments are placed next to it.
+   * @param fsyncMode Mode of forcing appended records to the storage device.
+   * @param fsyncIntervalMS Interval of forcing records in {@link FsyncMode#INTERVAL} mode.
+   * @param minPosition Log sequence number appended records must start from at least.
+   * @param replay Consumer of the replayed records together with their log sequence numbers
+   *     invoked in the order records were appended.
+   * @return Opened log positioned after the last valid record or at {@code minPosition}, whichever
+   *     is larger.
+   * @throws IOException if log can not be opened or read.
+   */
+  public static WriteAheadLog open(
+      final Path path,
+      final FsyncMode fsyncMode,
+      final long fsyncIntervalMS,
+      final long minPosition,
+      final ObjLongConsumer<WalRecord> replay)
+      throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    if (Files.isRegularFile(path)) {
+      Files.move(path, segment(path, 0));
+    }
+
+    final TreeMap<Long, Path> segments = segments(path);
+    if (segments.isEmpty()) {
+      segments.put(0L, segment(path, 0));
+    }
+
+    long replayed = 0;
+    long segmentStart = 0;
+    FileChannel channel = null;
+    try {
+      for (final var segment : segments.entrySet()) {
+        if (channel != null) {
+          channel.close();
+        }
+        segmentStart = segment.getKey();
+        channel =
+            FileChannel.open(
+                segment.getValue(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        final Replay result = replay(channel, segmentStart, replay);
+        replayed += result.records;
+        if (result.validPosition < channel.size()) {
+          log.warn(
+              "Truncating {} bytes of torn write-ahead log tail at position {} of {}",
+              channel.size() - result.validPosition,
+              result.validPosition,
+              segment.getValue());
+          channel.truncate(result.validPosition);
+          channel.force(true);
+          channel.position(result.validPosition);
+          // nothing appended after the torn record can be applied without it
+          for (final Path following : segments.tailMap(segmentStart, false).values()) {
+            log.warn("Deleting write-ahead log segment {} following the torn tail", following);
+            Files.delete(following);
+          }
+          break;
+        }
+        channel.position(result.validPosition);
+      }
+
+      log.info("Replayed {} write-ahead log records", replayed);
+      if (segmentStart + channel.position() < minPosition) {
+        log.warn(
+            "Write-ahead log ends at {} before position {} already covered, continuing from it",
+            segmentStart + channel.position(),
+            minPosition);
+        channel.close();
+        // not closed twice if the new segment can't be created
+        channel = null;
+        channel =
+            FileChannel.open(
+                segment(path, minPosition),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        segmentStart = minPosition;
+      }
+      return new WriteAheadLog(path, channel, segmentStart, fsyncMode, fsyncIntervalMS);
+    } catch (IOException | RuntimeException e) {
+      if (channel != null) {
+        channel.close();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Resolves path of the segment.
+   *
+   * @param path Path to the log file.
+   * @param segmentStart Offset of the segment in the whole log.
+   * @return Path of the segment file.
+   */
+  static Path segment(final Path path, final long segmentStart) {
+    return path.resolveSibling(String.format("%s.%020d", path.getFileName(), segmentStart));
+  }
+
+  /** @return Paths of the existing segments of the log by their offsets. */
+  private static TreeMap<Long, Path> segments(final Path path) throws IOException {
+    final TreeMap<Long, Path> segments = new TreeMap<>();
+    final String prefix = path.getFileName() + ".";
+    try (DirectoryStream<Path> files =
+        Files.newDirectoryStream(path.toAbsolutePath().getParent(), prefix + "*")) {
+      for (final Path file : files) {
+        final String suffix = file.getFileName().toString().substring(prefix.length());
+        if (suffix.length() == 20 && suffix.chars().allMatch(Character::isDigit)) {
+          segments.put(Long.parseLong(suffix), file);
+        }
+      }
+    }
+    return segments;
+  }
+
+  /** Outcome of replaying a single segment. */
+  private static class Replay {
+    private final long validPosition;
+    private final long records;
+
+    private Replay(final long validPosition, final long records) {
+      this.validPosition = validPosition;
+      this.records = records;
+    }
+  }
+
+  /**
+   * Reads records from the start of the segment until the end or the first invalid record.
+   *
+   * @return Position in the segment after the last valid record and amount of replayed records.
+   */
+  private static Replay replay(
+      final FileChannel channel, final long segmentStart, final ObjLongConsumer<WalRecord> replay)
+      throws IOException {
+    final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    final CRC32 crc = new CRC32();
+    long position = 0;
+    long replayed = 0;
+
+    while (true) {
+      header.clear();
+      if (readFully(channel, header, position) < HEADER_SIZE) {
+        break;
+      }
+      header.flip();
+      final int length = header.getInt();
+      final int checksum = header.getInt();
+      if (length <= 0 || position + HEADER_SIZE + length > channel.size()) {
+        break;
+      }
+
+      final ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(channel, payload, position + HEADER_SIZE);
+      crc.reset();
+      crc.update(payload.array());
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+
+      final WalRecord record;
+      try {
+        record = WalRecord.decode(payload.flip());
+      } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+        break;
+      }
+      position += HEADER_SIZE + length;
+      replay.accept(record, segmentStart + position);
+      replayed++;
+    }
+
+    return new Replay(position, replayed);
+  }
+
+  private static int readFully(final FileChannel channel, final ByteBuffer buffer, long position)
+      throws IOException {
+    int total = 0;
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read < 0) {
+        break;
+      }
+      total += read;
+      position += read;
+    }
+    return total;
+  }
+
+  /**
+   * Appends record to the log. Record is forced to the storage device right away only in {@link
+   * FsyncMode#OP} mode, use {@link #awaitDurable} to wait until it is forced in other modes.
+   *
+   * @param record Record to append.
+   * @return Log sequence number of the record, which is the offset of its end in the whole log.
+   * @throws UncheckedIOException if record can not be written.
+   */
+  public long append(final WalRecord record) {
+    final ByteBuffer payload = record.encode();
+    final ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.remaining());
+    return write(putFrame(frame, payload).flip());
+  }
+
+  /**
+   * Appends records to the log framed into a single buffer, so that they are written with a single
+   * write and forced once in {@link FsyncMode#OP} mode. Every record keeps its own frame, so
+   * records are replayed one by one and a crash in the middle of the write cuts off the torn record
+   * together with the ones after it.
+   *
+   * @param records Records to append in order.
+   * @return Log sequence number of the last record, or {@code -1} if there are no records.
+   * @throws UncheckedIOException if records can not be written.
+   */
+  public long appendAll(final List<WalRecord> records) {
+    if (records.isEmpty()) {
+      return -1;
+    }
+    final ByteBuffer[] payloads = new ByteBuffer[records.size()];
+    int size = 0;
+    for (int i = 0; i < payloads.length; i++) {
+      payloads[i] = records.get(i).encode();
+      size = Math.addExact(size, HEADER_SIZE + payloads[i].remaining());
+    }
+    final ByteBuffer frames = ByteBuffer.allocate(size);
+    for (final ByteBuffer payload : payloads) {
+      putFrame(frames, payload);
+    }
+    return write(frames.flip());
+  }
+
+  private static ByteBuffer putFrame(final ByteBuffer buffer, final ByteBuffer payload) {
+    final CRC32 crc = new CRC32();
+    crc.update(payload.duplicate());
+    return buffer.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload);
+  }
+
+  /** @return Log sequence number of the end of written frames. */
+  private long write(final ByteBuffer frames) {
+    synchronized (appendLock) {
+      checkNotFailed();
+      try {
+        while (frames.hasRemaining()) {
+          channel.write(frames);
+        }
+        if (fsyncMode == FsyncMode.OP) {
+          channel.force(false);
+        }
+        writtenPosition = segmentStart + channel.position();
+        return writtenPosition;
+      } catch (IOException e) {
+        throw fail("Failed to append write-ahead log record", e);
+      }
+    }
+  }
+
+  /**
+   * Checks that nothing failed to be written into the log so far.
+   *
+   * @throws UncheckedIOException if the log failed and rejects appended records.
+   */
+  public void checkNotFailed() {
+    final IOException cause = failure;
+    if (cause != null) {
+      throw new UncheckedIOException("Write-ahead log failed, writes are rejected", cause);
+    }
+  }
+
+  private UncheckedIOException fail(final String message, final IOException cause) {
+    failure = cause;
+    log.error("{}, rejecting all the further writes", message, cause);
+    return new UncheckedIOException(message, cause);
+  }
+
+  /**
+   * Waits until all the records up to provided position are forced to the storage device. <br>
+   * In {@link FsyncMode#BATCH} mode the first waiting writer becomes a leader and forces all the
+   * records written so far with a single fsync, while the others wait for it. Writers whose records
+   * were written after the leader started wait for the next batch. In other modes returns
+   * immediately.
+   *
+   * @param position Position returned by {@link #append}.
+   * @throws UncheckedIOException if log can not be forced.
+   */
+  public void awaitDurable(final long position) {
+    if (fsyncMode == FsyncMode.BATCH) {
+      forceUpTo(position);
+    }
+  }
+
+  /**
+   * Forces all the records up to provided position to the storage device whatever the mode is.
+   * Used before anything relying on these records is made durable, e.g. a snapshot covering them.
+   *
+   * @param position Position returned by {@link #append}.
+   * @throws UncheckedIOException if log can not be forced.
+   */
+  public void force(final long position) {
+    forceUpTo(position);
+  }
+
+  private void forceUpTo(final long position) {
+    while (true) {
+      syncLock.lock();
+      try {
+        while (syncing && durablePosition < position) {
+          synced.awaitUninterruptibly();
+        }
+        if (durablePosition >= position) {
+          return;
+        }
+        syncing = true;
+      } finally {
+        syncLock.unlock();
+      }
+
+      long forced = -1;
+      try {
+        final long target;
+        final FileChannel current;
+        synchronized (appendLock) {
+          target = writtenPosition;
+          current = channel;
+        }
+        current.force(false);
+        forced = target;
+      } catch (IOException e) {
+        throw fail("Failed to force write-ahead log", e);
+      } finally {
+        releaseSync(forced);
+      }
+    }
+  }
+
+  /**
+   * Waits until no other thread forces the channel and takes over. Used by operations replacing
+   * the channel so that nobody forces the channel being closed.
+   */
+  private void acquireSync() {
+    syncLock.lock();
+    try {
+      while (syncing) {
+        synced.awaitUninterruptibly();
+      }
+      syncing = true;
+    } finally {
+      syncLock.unlock();
+    }
+  }
+
+  /**
+   * Lets other threads force the channel and wakes up the ones waiting for durability.
+   *
+   * @param forced Position up to which the records were forced, or {@code -1} if forcing failed.
+   */
+  private void releaseSync(final long forced) {
+    syncLock.lock();
+    try {
+      syncing = false;
+      durablePosition = Math.max(durablePosition, forced);
+      synced.signalAll();
+    } finally {
+      syncLock.unlock();
+    }
+  }
+
+  private void forceQuietly() {
+    try {
+      forceUpTo(writtenPosition);
+    } catch (UncheckedIOException e) {
+      log.error("Failed to force write-ahead log", e);
+    }
+  }
+
+  /**
+   * Forces the current segment and switches the log to a new one, unless the current segment is
+   * empty. Records appended before the call are all placed into the previous segments.
+   *
+   * @return Log sequence number the new segment starts from.
+   * @throws UncheckedIOException if segment can not be forced or created.
+   */
+  public long rotate() {
+    acquireSync();
+    long rotatedAt = -1;
+    try {
+      synchronized (appendLock) {
+        channel.force(false);
+        if (writtenPosition != segmentStart) {
+          final FileChannel next =
+              FileChannel.open(
+                  segment(path, writtenPosition),
+                  StandardOpenOption.CREATE_NEW,
+                  StandardOpenOption.READ,
+                  StandardOpenOption.WRITE);
+          channel.close();
+          channel = next;
+          segmentStart = writtenPosition;
+        }
+        rotatedAt = segmentStart;
+      }
+      log.debug("Write-ahead log rotated at {}", rotatedAt);
+      return rotatedAt;
+    } catch (IOException e) {
+      throw fail("Failed to rotate write-ahead log", e);
+    } finally {
+      releaseSync(rotatedAt);
+    }
+  }
+
+  /**
+   * Deletes all the segments preceding provided log sequence number. Used once the records of
+   * these segments are covered by a durable snapshot.
+   *
+   * @param position Log sequence number returned by {@link #rotate}.
+   * @return Amount of deleted segments.
+   * @throws IOException if segments can not be listed or deleted.
+   */
+  public int deleteSegmentsBefore(final long position) throws IOException {
+    final List<Path> obsolete = new ArrayList<>(segments(path).headMap(position, false).values());
+    for (final Path segment : obsolete) {
+      Files.delete(segment);
+    }
+    return obsolete.size();
+  }
+
+  /** Forces all the appended records and closes the log. */
+  @Override
+  public void close() throws IOException {
+    if (scheduler != null) {
+      scheduler.shutdown();
+    }
+    acquireSync();
+    try {
+      synchronized (appendLock) {
+        if (channel.isOpen()) {
+          channel.force(false);
+          channel.close();
+        }
+      }
+    } finally {
+      releaseSync(writtenPosition);
+    }
+  }
+}
@@ -0,0 +1,228 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.service.counter.CounterStore;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Registry of rate limit counters of every client. <br>
+ * Every client gets its own {@link RateLimitService} instance of the configured algorithm, so a
+ * noisy client exhausts only its own limits. Instances are created lazily on the first rate
+ * limited request of the client. When a {@link CounterStore} is configured with {@code
+ * ratelimit.store} property, clients get {@link LeasingRateLimitService} limiting them across all
+ * the application instances instead. <br>
+ * Client keys aren't authenticated, so a client could rotate them to get fresh limits. Every
+ * remote address may introduce up to {@link MiroConfig.RateLimit#getMaxKeysPerAddress()} new keys
+ * per generation, requests with other unknown keys from the address are limited as the address
+ * itself. All the clients together are also limited by {@link #instance()} counters, so no amount
+ * of clients exceeds {@link MiroConfig.RateLimit#getLimitInstance()}. <br>
+ * Memory is bounded by keeping clients in 2 generations of maps. Clients are looked up in the
+ * current generation first and are promoted into it from the previous one. When a new client
+ * arrives and the current generation holds half of {@link MiroConfig.RateLimit#getMaxClients()}
+ * clients or is older than {@link MiroConfig.RateLimit#getClientIdleTimeoutMS()}, it becomes the
+ * previous one and the clients left in the previous one are evicted. So the registry holds about
+ * the max amount of clients at most, clients idle for 2 generations are evicted, and neither
+ * lookups nor evictions scan the clients. Evicted client starts with full limits on its next
+ * request.
+ */
+@Component
+public class ClientRateLimitRegistry {
+
+  private static final String ADDRESS_KEY_PREFIX = "ip:";
+
+  private final Function<String, RateLimitService> rateLimitServiceFactory;
+  private final RateLimitService instance;
+  private final int generationCapacity;
+  private final int maxKeysPerAddress;
+  private final long generationTimeoutNanos;
+  private final LongSupplier nanoClock;
+
+  private volatile Generation current;
+  private volatile Generation previous;
+
+  /**
+   * @param rateLimitServices Provider of prototype scoped {@link RateLimitService} beans selected
+   *     with {@code ratelimit.algorithm} property.
+   * @param counterStores Provider of the {@link CounterStore} selected with {@code
+   *     ratelimit.store} property, if any.
+   * @param rule Rate limit rule.
+   * @param config Application configuration.
+   */
+  @Autowired
+  public ClientRateLimitRegistry(
+      final ObjectProvider<RateLimitService> rateLimitServices,
+      final ObjectProvider<CounterStore> counterStores,
+      final RateLimitRule rule,
+      final MiroConfig config) {
+    this(
+        rateLimitServiceFactory(rateLimitServices, counterStores.getIfAvailable(), rule, config),
+        new RateLimitServiceImpl(
+            RateLimitRule.global(
+                config.getRateLimit().getWindowSizeMS(), config.getRateLimit().getLimitInstance())),
+        config.getRateLimit().getMaxClients(),
+        config.getRateLimit().getMaxKeysPerAddress(),
+        config.getRateLimit().getClientIdleTimeoutMS(),
+        System::nanoTime);
+  }
+
+  ClientRateLimitRegistry(
+      final Function<String, RateLimitService> rateLimitServiceFactory,
+      final RateLimitService instance,
+      final int maxClients,
+      final int maxKeysPerAddress,
+      final long clientIdleTimeoutMS,
+      final LongSupplier nanoClock) {
+    this.rateLimitServiceFactory = rateLimitServiceFactory;
+    this.instance = instance;
+    this.generationCapacity = Math.max(1, maxClients / 2);
+    this.maxKeysPerAddress = maxKeysPerAddress;
+    this.generationTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(clientIdleTimeoutMS);
+    this.nanoClock = nanoClock;
+    this.current = new Generation(nanoClock.getAsLong());
+    this.previous = new Generation(current.startedAt);
+  }
+
+  /**
+   * Retrieves rate limit counters shared by all the clients of this application instance. Only
+   * {@link com.aklimenko.miro.model.ratelimit.RateLimitTarget#GLOBAL} target is limited by them.
+   *
+   * @return {@link RateLimitService} of the application instance.
+   */
+  public RateLimitService instance() {
+    return instance;
+  }
+
+  /**
+   * Retrieves rate limit counters of the client creating them if absent. Unknown key is accepted
+   * only if the remote address hasn't introduced too many new keys already, otherwise the client
+   * is identified by the remote address.
+   *
+   * @param key Key provided by the client, if any.
+   * @param remoteAddress Remote address of the client.
+   * @return {@link RateLimitService} of the client.
+   */
+  public RateLimitService client(@Nullable final String key, final String remoteAddress) {
+    if (key == null || (!isKnown(key) && !admitNewKey(remoteAddress))) {
+      return client(ADDRESS_KEY_PREFIX + remoteAddress);
+    }
+    return client(key);
+  }
+
+  /**
+   * Retrieves rate limit counters of the client creating them if absent.
+   *
+   * @param clientKey Key identifying the client.
+   * @return {@link RateLimitService} of the client.
+   */
+  public RateLimitService client(final String clientKey) {
+    final RateLimitService found = current.clients.get(clientKey);
+    if (found != null) {
+      return found;
+    }
+
+    rotateIfFull();
+    final Generation older = previous;
+    return current.clients.computeIfAbsent(
+        clientKey,
+        key -> {
+          final RateLimitService promoted = older.clients.get(key);
+          return promoted != null ? promoted : rateLimitServiceFactory.apply(key);
+        });
+  }
+
+  /** @return Amount of clients kept by the registry. */
+  public int size() {
+    return current.clients.size() + previous.clients.size();
+  }
+
+  private boolean isKnown(final String key) {
+    return current.clients.containsKey(key) || previous.clients.containsKey(key);
+  }
+
+  /**
+   * Counts new key introduced by the remote address. Counts are kept in generations along with
+   * the clients, so there are no more of them than clients.
+   *
+   * @param remoteAddress Remote address of the client.
+   * @return {@code true} if the address may introduce one more key.
+   */
+  private boolean admitNewKey(final String remoteAddress) {
+    rotateIfFull();
+    final Generation older = previous;
+    final AtomicInteger keys =
+        current.keysByAddress.computeIfAbsent(
+            remoteAddress,
+            address -> {
+              final AtomicInteger promoted = older.keysByAddress.get(address);
+              return new AtomicInteger(promoted != null ? promoted.get() : 0);
+            });
+    // doesn't increment past the limit, so rejected requests never overflow the counter
+    return keys.get() < maxKeysPerAddress && keys.incrementAndGet() <= maxKeysPerAddress;
+  }
+
+  /**
+   * Starts new generation if the current one is full or too old. Happens only when a client is
+   * missing from the current generation, so it doesn't slow down lookups of active clients.
+   */
+  private void rotateIfFull() {
+    if (current.clients.size() < generationCapacity
+        && nanoClock.getAsLong() - current.startedAt < generationTimeoutNanos) {
+      return;
+    }
+    synchronized (this) {
+      final long now = nanoClock.getAsLong();
+      if (current.clients.size() >= generationCapacity
+          || now - current.startedAt >= generationTimeoutNanos) {
+        previous = current;
+        current = new Generation(now);
+      }
+    }
+  }
+
+  private static Function<String, RateLimitService> rateLimitServiceFactory(
+      final ObjectProvider<RateLimitService> rateLimitServices,
+      @Nullable final CounterStore counterStore,
+      final RateLimitRule rule,
+      final MiroConfig config) {
+    if (counterStore == null) {
+      return key -> rateLimitServices.getObject();
+    }
+    final int leaseSize = config.getRateLimit().getLeaseSize();
+    final int timeoutMS = config.getRateLimit().getStoreTimeoutMS();
+    return key -> new LeasingRateLimitService(key, rule, counterStore, leaseSize, timeoutMS);
+  }
+
+  /** Clients and counts of keys introduced by remote addresses started at the same time. */
+  private static final class Generation {
+    private final Map<String, RateLimitService> clients = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> keysByAddress = new ConcurrentHashMap<>();
+    private final long startedAt;
+
+    private Generation(final long startedAt) {
+      this.startedAt = startedAt;
+    }
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.aklimenko.miro.exception.RateLimitExceededException;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.model.ratelimit.RateLimitStats;
+import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import com.aklimenko.miro.service.counter.CounterStore;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Implementation of the {@link RateLimitService} contract enforcing fixed window limits of a
+ * client across all the application instances with counters kept in a shared {@link
+ * CounterStore}. <br>
+ * Calling the store on every request would add a network round trip to each of them, so instead
+ * the instance leases quota from the store in chunks of up to the lease size and consumes it
+ * locally with a CAS. Once half of the lease is consumed, the next one is acquired asynchronously
+ * in background, so requests of an active client rarely wait for the store. Only a request
+ * finding the local quota exhausted acquires the lease synchronously, waiting for the store not
+ * longer than the configured timeout. <br>
+ * The store never grants more than the limit in total, so the instances together never admit
+ * more requests than the limit. Leased quota left unused by an instance when its window ends is
+ * lost though, so all the instances together may admit up to a lease size per instance less than
+ * the limit. <br>
+ * When the store fails or doesn't respond in time, requests are admitted (fail open): losing the
+ * store should degrade rate limiting, not availability of the service. <br>
+ * Counters of the store are kept per window index, so a change of the window size starts new
+ * counters at the change instead of migrating them.
+ */
+public class LeasingRateLimitService implements RateLimitService {
+
+  private static final Logger log = LoggerFactory.getLogger(LeasingRateLimitService.class);
+  private static final long LOW_MASK = 0xffffffffL;
+
+  private final RateLimitRule rule;
+  private final CounterStore store;
+  private final int leaseSize;
+  private final long timeoutMS;
+  private final LongSupplier clock;
+  private final Map<RateLimitTarget, Lease> leases = new EnumMap<>(RateLimitTarget.class);
+
+  private volatile boolean storeAvailable = true;
+
+  /**
+   * @param clientKey Key of the client, see {@link ClientRateLimitRegistry}.
+   * @param rule Rate limit rule.
+   * @param store Store of the counters shared by all the instances.
+   * @param leaseSize Max amount of requests acquired from the store at once.
+   * @param timeoutMS Max time to wait for the store when the local quota is exhausted.
+   */
+  public LeasingRateLimitService(
+      final String clientKey,
+      final RateLimitRule rule,
+      final CounterStore store,
+      final int leaseSize,
+      final long timeoutMS) {
+    this(clientKey, rule, store, leaseSize, timeoutMS, System::currentTimeMillis);
+  }
+
+  LeasingRateLimitService(
+      final String clientKey,
+      final RateLimitRule rule,
+      final CounterStore store,
+      final int leaseSize,
+      final long timeoutMS,
+      final LongSupplier clock) {
+    this.rule = rule;
+    this.store = store;
+    this.leaseSize = Math.max(1, leaseSize);
+    this.timeoutMS = timeoutMS;
+    this.clock = clock;
+    for (final RateLimitTarget target : RateLimitTarget.values()) {
+      leases.put(target, new Lease(clientKey + "/" + target.name()));
+    }
+  }
+
+  @Override
+  public void tryConsume(final RateLimitTarget target) {
+    tryConsume(rule.snapshot(), target);
+  }
+
+  private void tryConsume(final RateLimitRule.Snapshot snapshot, final RateLimitTarget target) {
+    final int limit = snapshot.getLimit(target);
+    if (target == RateLimitTarget.GLOBAL && limit < 0) {
+      // do nothing if global operations are unlimited
+      return;
+    } else if (limit < 0) {
+      // use global limit if target operation is unlimited
+      tryConsume(snapshot, RateLimitTarget.GLOBAL);
+      return;
+    }
+
+    final long window = clock.getAsLong() / snapshot.getWindowSizeMS();
+    final Lease lease = leases.get(target);
+    while (true) {
+      final long local = lease.local.get();
+      final long remaining = valueIn(local, window);
+      if (remaining == 0) {
+        acquireNow(lease, window, limit);
+        return;
+      }
+      if (lease.local.compareAndSet(local, pack(window, remaining - 1))) {
+        if (remaining - 1 <= leaseSize / 2) {
+          prefetch(lease, window, limit);
+        }
+        return;
+      }
+    }
+  }
+
+  @Override
+  public RateLimitStats getStats(final RateLimitTarget target) {
+    return getStats(rule.snapshot(), target);
+  }
+
+  private RateLimitStats getStats(
+      final RateLimitRule.Snapshot snapshot, final RateLimitTarget target) {
+    final int windowSize = snapshot.getWindowSizeMS();
+    final long window = clock.getAsLong() / windowSize;
+    final long nextReset = (window + 1) * windowSize;
+    final int limit = snapshot.getLimit(target);
+    if (target == RateLimitTarget.GLOBAL && limit < 0) {
+      return RateLimitStats.ofUnlimited(nextReset);
+    } else if (limit < 0) {
+      // use global rate limit stat if target operation is unlimited
+      return getStats(snapshot, RateLimitTarget.GLOBAL);
+    } else {
+      // requests of the other instances are seen only as of the last lease
+      final Lease lease = leases.get(target);
+      final long available =
+          valueIn(lease.local.get(), window)
+              + Math.max(0, limit - valueIn(lease.storeTotal.get(), window));
+      return RateLimitStats.of(limit, Math.min(limit, available), nextReset);
+    }
+  }
+
+  /**
+   * Acquires the lease waiting for the store and consumes a request of it. Doesn't call the store
+   * if the last lease already exhausted the limit of the window.
+   *
+   * @throws RateLimitExceededException if the store has no quota left for the window.
+   */
+  private void acquireNow(final Lease lease, final long window, final int limit) {
+    if (valueIn(lease.storeTotal.get(), window) >= limit) {
+      throw new RateLimitExceededException();
+    }
+
+    final long amount = Math.min(leaseSize, limit);
+    final long before;
+    try {
+      before = store.acquire(lease.counter, window, amount, limit).get(timeoutMS, MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } catch (ExecutionException | TimeoutException e) {
+      storeFailed(e instanceof ExecutionException ? e.getCause() : e);
+      return;
+    }
+
+    storeRecovered();
+    final long granted = CounterStore.granted(before, amount, limit);
+    lease.recordTotal(window, before + granted);
+    if (granted == 0) {
+      throw new RateLimitExceededException();
+    }
+    lease.add(window, granted - 1);
+  }
+
+  /** Acquires the next lease in background unless it's being acquired already. */
+  private void prefetch(final Lease lease, final long window, final int limit) {
+    if (valueIn(lease.storeTotal.get(), window) >= limit
+        || !lease.fetching.compareAndSet(false, true)) {
+      return;
+    }
+
+    final long amount = Math.min(leaseSize, limit);
+    store
+        .acquire(lease.counter, window, amount, limit)
+        .whenComplete(
+            (before, error) -> {
+              lease.fetching.set(false);
+              if (error != null) {
+                storeFailed(error);
+                return;
+              }
+              storeRecovered();
+              final long granted = CounterStore.granted(before, amount, limit);
+              lease.recordTotal(window, before + granted);
+              lease.add(window, granted);
+            });
+  }
+
+  private void storeFailed(final Throwable error) {
+    if (storeAvailable) {
+      storeAvailable = false;
+      log.warn(
+          "Counter store is not available, requests are not rate limited: {}", error.toString());
+    }
+  }
+
+  private void storeRecovered() {
+    if (!storeAvailable) {
+      storeAvailable = true;
+      log.info("Counter store is available again");
+    }
+  }
+
+  /**
+   * @return Value of the packed pair if it belongs to provided window, otherwise 0 since the value
+   *     is left from an older window.
+   */
+  private static long valueIn(final long packed, final long window) {
+    return (int) (packed >>> 32) == (int) window ? packed & LOW_MASK : 0;
+  }
+
+  /** Packs lower 32 bits of window index and a value into a single {@code long}. */
+  private static long pack(final long window, final long value) {
+    return window << 32 | value;
+  }
+
+  /** Quota leased from the store for a single target. */
+  private static class Lease {
+    private final String counter;
+    /** Window and the amount of requests left in the local quota. */
+    private final AtomicLong local = new AtomicLong();
+    /** Window and the counter value in the store as of the last lease. */
+    private final AtomicLong storeTotal = new AtomicLong();
+
+    private final AtomicBoolean fetching = new AtomicBoolean();
+
+    Lease(final String counter) {
+      this.counter = counter;
+    }
+
+    /** Adds granted quota to the local one unless the window is over, then the quota is lost. */
+    void add(final long window, final long granted) {
+      while (true) {
+        final long current = local.get();
+        if (isAfter(current, window)) {
+          return;
+        }
+        if (local.compareAndSet(current, pack(window, valueIn(current, window) + granted))) {
+          return;
+        }
+      }
+    }
+
+    /** Records the counter value in the store unless a greater or newer one is already known. */
+    void recordTotal(final long window, final long total) {
+      storeTotal.accumulateAndGet(
+          pack(window, total),
+          (current, update) ->
+              isAfter(current, window) || valueIn(current, window) > total ? current : update);
+    }
+
+    /** @return Whether the packed pair belongs to a window after the provided one. */
+    private static boolean isAfter(final long packed, final long window) {
+      // difference of the truncated indexes stays correct when they wrap around
+      return (int) (packed >>> 32) - (int) window > 0;
+    }
+  }
+}
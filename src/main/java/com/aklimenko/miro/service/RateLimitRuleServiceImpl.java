@@ -28,7 +28,6 @@ public class RateLimitRuleServiceImpl implements RateLimitRuleService {
   @Override
   public RateLimitRuleResponse updateRateLimitRule(
       final RateLimitRuleUpdateRequest rateLimitUpdate) {
-    rule.updateBy(rateLimitUpdate);
-    return rule.toResponse();
+    return rule.updateBy(rateLimitUpdate).toResponse();
   }
 }
@@ -17,7 +17,11 @@ import com.aklimenko.miro.exception.RateLimitExceededException;
 import com.aklimenko.miro.model.ratelimit.RateLimitStats;
 import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
 
-/** Represents rate limit service contract. <br> */
+/**
+ * Represents rate limit service contract. <br>
+ * Every instance keeps rate limit counters of a single client, see {@link
+ * ClientRateLimitRegistry}.
+ */
 public interface RateLimitService {
 
   /**
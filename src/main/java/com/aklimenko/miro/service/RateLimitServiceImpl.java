@@ -22,6 +22,9 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Service;
 
 /**
@@ -36,17 +39,18 @@ import org.springframework.stereotype.Service;
  * Current version leans to be performant while almost not synchronized :). So it's quite important
  * to understand all the possible side-effects. Below I'm listing potential pitfalls and
  * justifications related to concurrent access to 3 shared resources: {@link #rule}, {@link
- * #requests} and {@link #lastResetAt}.
+ * #requests} and {@link #windowEndsAt}.
  *
  * <ul>
- *   <li>While modification of mutable {@link #rule} expected to be insignificantly rare it still
- *       can happen during execution of rate limit operations for another request. In this case
- *       there is a risk to read partially updated {@link #rule} and use it during rate limit
- *       calculations. In this case both decision on rate limit and returned rate limit stats might
- *       be wrong.
- *   <li>While modification of {@link #lastResetAt} happens regularly and can happen concurrently by
- *       multiple threads the next {@link #lastResetAt} does not depends on its previous value so
- *       multiple threads can concurrently set {@link #lastResetAt} to the same new value which
+ *   <li>Modification of {@link #rule} is expected to be insignificantly rare and it can happen
+ *       during execution of rate limit operations for another request. Every operation takes a
+ *       single immutable {@link RateLimitRule.Snapshot} of the rule, so it never sees partially
+ *       updated rule parameters. When window size is changed, requests counted in the current
+ *       window are kept: the current window ends at the old boundary or at the new one if it's
+ *       earlier, and the next windows follow the new size.
+ *   <li>While modification of {@link #windowEndsAt} happens regularly and can happen concurrently
+ *       by multiple threads the next {@link #windowEndsAt} does not depends on its previous value
+ *       so multiple threads can concurrently set {@link #windowEndsAt} to the same new value which
  *       shouldn't be a problem. Additional {@code volatile} modifier prevents caching of the value
  *       in the current thread so all threads see actual up to date value.
  *   <li>Modification of {@link #requests} map internals also happens on a regular basis. Since
@@ -60,65 +64,70 @@ import org.springframework.stereotype.Service;
  * </ul>
  */
 @Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@ConditionalOnProperty(value = "ratelimit.algorithm", havingValue = "fixedWindow", matchIfMissing = true)
 public class RateLimitServiceImpl implements RateLimitService {
 
   private final RateLimitRule rule;
   private final Map<RateLimitTarget, AtomicLong> requests = new HashMap<>();
-  private volatile long lastResetAt;
+  private volatile long windowEndsAt;
 
   public RateLimitServiceImpl(final RateLimitRule rule) {
     this.rule = rule;
-    this.lastResetAt = lastWindowReset();
+    this.windowEndsAt = nextWindowReset(System.currentTimeMillis(), rule.getWindowSizeMS());
     Arrays.stream(RateLimitTarget.values())
         .forEach(target -> requests.put(target, new AtomicLong(0)));
   }
 
   @Override
   public void tryConsume(final RateLimitTarget target) {
-    final long lastReset = lastWindowReset();
-    if (lastResetAt != lastReset) {
+    final RateLimitRule.Snapshot snapshot = rule.snapshot();
+    final long now = System.currentTimeMillis();
+    final long nextReset = nextWindowReset(now, snapshot.getWindowSizeMS());
+    final long endsAt = windowEndsAt;
+    if (now >= endsAt) {
       // new rate limit window
-      lastResetAt = lastReset;
+      windowEndsAt = nextReset;
       resetRequests();
+    } else if (nextReset < endsAt) {
+      // window size was decreased, current window ends at the boundary of the new window keeping
+      // requests counted so far
+      windowEndsAt = nextReset;
     }
 
-    tryConsumeRequest(target);
+    tryConsumeRequest(snapshot, target);
   }
 
   @Override
   public RateLimitStats getStats(final RateLimitTarget target) {
-    final int limit = rule.getLimit(target);
+    return getStats(rule.snapshot(), target);
+  }
+
+  private RateLimitStats getStats(
+      final RateLimitRule.Snapshot snapshot, final RateLimitTarget target) {
+    final long nextReset = windowEndsAt;
+    final int limit = snapshot.getLimit(target);
     if (target == RateLimitTarget.GLOBAL && limit < 0) {
-      return RateLimitStats.ofUnlimited(nextWindowReset());
+      return RateLimitStats.ofUnlimited(nextReset);
     } else if (limit < 0) {
       // use global rate limit stat if target operation is unlimited
-      return getStats(RateLimitTarget.GLOBAL);
+      return getStats(snapshot, RateLimitTarget.GLOBAL);
     } else {
       // because of concurrent requests increment they can briefly exceed the actual rate limit
       final long available = Math.max(0, limit - requests.get(target).get());
-      return RateLimitStats.of(limit, available, nextWindowReset());
+      return RateLimitStats.of(limit, available, nextReset);
     }
   }
 
-  /**
-   * Calculates potential last rate limit window reset timestamp based on current time and window
-   * size.
-   *
-   * @return Timestamp when window was potentially reset last time.
-   */
-  private long lastWindowReset() {
-    final long now = System.currentTimeMillis();
-    final long sinceLastReset = now % rule.getWindowSizeMS();
-    return now - sinceLastReset;
-  }
-
   /**
    * Calculates next rate limit window reset timestamp based on current time and window size.
    *
+   * @param now Current timestamp.
+   * @param windowSizeMS Window size.
    * @return Timestamp when window should be reset next time.
    */
-  private long nextWindowReset() {
-    return lastWindowReset() + rule.getWindowSizeMS();
+  private static long nextWindowReset(final long now, final int windowSizeMS) {
+    return now - now % windowSizeMS + windowSizeMS;
   }
 
   /**
@@ -138,16 +147,18 @@ public class RateLimitServiceImpl implements RateLimitService {
    * operations are not limited does nothing. <br>
    * For incrementing requests value uses CAS {@link AtomicInteger#incrementAndGet()} operation.
    *
+   * @param snapshot Rule parameters of the current request.
    * @param target Target operation to increment requests for.
    */
-  private void tryConsumeRequest(final RateLimitTarget target) {
-    final int limit = rule.getLimit(target);
+  private void tryConsumeRequest(
+      final RateLimitRule.Snapshot snapshot, final RateLimitTarget target) {
+    final int limit = snapshot.getLimit(target);
     if (target == RateLimitTarget.GLOBAL && limit < 0) {
       // do nothing if global operations are unlimited
       return;
     } else if (limit < 0) {
       // use global limit if target operation is unlimited
-      tryConsumeRequest(RateLimitTarget.GLOBAL);
+      tryConsumeRequest(snapshot, RateLimitTarget.GLOBAL);
     } else {
       final AtomicLong targetRequests = requests.get(target);
       if (targetRequests.get() >= limit) {
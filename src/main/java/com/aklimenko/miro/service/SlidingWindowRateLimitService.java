@@ -0,0 +1,203 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import com.aklimenko.miro.exception.RateLimitExceededException;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.model.ratelimit.RateLimitStats;
+import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+/**
+ * Lock-free implementation of the {@link RateLimitService} contract implementing sliding window
+ * counter rate limit algorithm. <br>
+ * Requests are counted in fixed windows same as in {@link RateLimitServiceImpl}, but the amount of
+ * requests in the sliding window ending now is estimated as the requests of the current window
+ * plus the requests of the previous window weighted by the part of the previous window still
+ * covered by the sliding one. So bursts across a window boundary can't exceed the limit, and
+ * requests become available gradually as the previous window slides out instead of all at once at
+ * the window reset. <br>
+ * Every target has 2 buckets for even and odd windows, each packing the index of its window and
+ * the amount of requests in it into a single {@code long}. The bucket of the current window is
+ * rolled over and incremented by the same CAS, so a new window never wipes increments of other
+ * threads and requests never exceed the limit. <br>
+ * Window indexes depend on the window size, so when the rule changes window size the requests
+ * estimated in the sliding window are migrated into the bucket of the current window of the new
+ * size instead of being dropped with the buckets of the old size.
+ */
+@Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@ConditionalOnProperty(value = "ratelimit.algorithm", havingValue = "slidingWindow")
+public class SlidingWindowRateLimitService implements RateLimitService {
+
+  private static final long COUNT_MASK = 0xffffffffL;
+
+  private final RateLimitRule rule;
+  private final LongSupplier clock;
+  private final Map<RateLimitTarget, AtomicLongArray> buckets =
+      new EnumMap<>(RateLimitTarget.class);
+
+  /** Window size the buckets are counted with. */
+  private volatile int countedWindowSize;
+
+  @Autowired
+  public SlidingWindowRateLimitService(final RateLimitRule rule) {
+    this(rule, System::currentTimeMillis);
+  }
+
+  SlidingWindowRateLimitService(final RateLimitRule rule, final LongSupplier clock) {
+    this.rule = rule;
+    this.clock = clock;
+    this.countedWindowSize = rule.getWindowSizeMS();
+    for (final RateLimitTarget target : RateLimitTarget.values()) {
+      buckets.put(target, new AtomicLongArray(2));
+    }
+  }
+
+  @Override
+  public void tryConsume(final RateLimitTarget target) {
+    final RateLimitRule.Snapshot snapshot = rule.snapshot();
+    final long now = clock.getAsLong();
+    migrateIfResized(snapshot.getWindowSizeMS(), now);
+    tryConsume(snapshot, target, now);
+  }
+
+  private void tryConsume(
+      final RateLimitRule.Snapshot snapshot, final RateLimitTarget target, final long now) {
+    final int limit = snapshot.getLimit(target);
+    if (target == RateLimitTarget.GLOBAL && limit < 0) {
+      // do nothing if global operations are unlimited
+      return;
+    } else if (limit < 0) {
+      // use global limit if target operation is unlimited
+      tryConsume(snapshot, RateLimitTarget.GLOBAL, now);
+      return;
+    }
+
+    final int windowSize = snapshot.getWindowSizeMS();
+    final long window = now / windowSize;
+    final int current = (int) (window & 1);
+    final AtomicLongArray targetBuckets = buckets.get(target);
+    final double previous = previousRequests(targetBuckets, window, now % windowSize, windowSize);
+    while (true) {
+      final long bucket = targetBuckets.get(current);
+      final long requests = requestsIn(bucket, window);
+      if (previous + requests + 1 > limit) {
+        throw new RateLimitExceededException();
+      }
+      if (targetBuckets.compareAndSet(current, bucket, pack(window, requests + 1))) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public RateLimitStats getStats(final RateLimitTarget target) {
+    final RateLimitRule.Snapshot snapshot = rule.snapshot();
+    final long now = clock.getAsLong();
+    migrateIfResized(snapshot.getWindowSizeMS(), now);
+    return getStats(snapshot, target, now);
+  }
+
+  private RateLimitStats getStats(
+      final RateLimitRule.Snapshot snapshot, final RateLimitTarget target, final long now) {
+    final int windowSize = snapshot.getWindowSizeMS();
+    final long window = now / windowSize;
+    final long nextReset = (window + 1) * windowSize;
+    final int limit = snapshot.getLimit(target);
+    if (target == RateLimitTarget.GLOBAL && limit < 0) {
+      return RateLimitStats.ofUnlimited(nextReset);
+    } else if (limit < 0) {
+      // use global rate limit stat if target operation is unlimited
+      return getStats(snapshot, RateLimitTarget.GLOBAL, now);
+    } else {
+      final AtomicLongArray targetBuckets = buckets.get(target);
+      final double requests =
+          previousRequests(targetBuckets, window, now % windowSize, windowSize)
+              + requestsIn(targetBuckets.get((int) (window & 1)), window);
+      final long available = Math.max(0, (long) Math.floor(limit - requests));
+      return RateLimitStats.of(limit, available, nextReset);
+    }
+  }
+
+  /**
+   * Migrates buckets counted with the old window size into the buckets of the new one, so that
+   * requests already made are still counted after the window size changes. Requests estimated in
+   * the sliding window of the old size are put into the current window of the new size. Happens
+   * only on rule updates, so it's synchronized.
+   *
+   * @param windowSize Window size of the current rule.
+   * @param now Current time.
+   */
+  private void migrateIfResized(final int windowSize, final long now) {
+    if (countedWindowSize == windowSize) {
+      return;
+    }
+    synchronized (this) {
+      final int oldWindowSize = countedWindowSize;
+      if (oldWindowSize == windowSize) {
+        return;
+      }
+      final long oldWindow = now / oldWindowSize;
+      final long window = now / windowSize;
+      for (final AtomicLongArray targetBuckets : buckets.values()) {
+        final double requests =
+            previousRequests(targetBuckets, oldWindow, now % oldWindowSize, oldWindowSize)
+                + requestsIn(targetBuckets.get((int) (oldWindow & 1)), oldWindow);
+        targetBuckets.set((int) ((window - 1) & 1), 0);
+        targetBuckets.set((int) (window & 1), pack(window, (long) Math.ceil(requests)));
+      }
+      countedWindowSize = windowSize;
+    }
+  }
+
+  /**
+   * Estimates requests of the previous window still covered by the sliding window.
+   *
+   * @param targetBuckets Buckets of the target.
+   * @param window Index of the current window.
+   * @param elapsed Time elapsed since the current window start.
+   * @param windowSize Window size.
+   * @return Requests of the previous window weighted by the part of it in the sliding window.
+   */
+  private static double previousRequests(
+      final AtomicLongArray targetBuckets,
+      final long window,
+      final long elapsed,
+      final int windowSize) {
+    final long requests = requestsIn(targetBuckets.get((int) ((window - 1) & 1)), window - 1);
+    return requests * (double) (windowSize - elapsed) / windowSize;
+  }
+
+  /**
+   * @return Amount of requests in the bucket if it belongs to provided window, otherwise 0 since
+   *     the bucket is left from an older window.
+   */
+  private static long requestsIn(final long bucket, final long window) {
+    return (int) (bucket >>> 32) == (int) window ? bucket & COUNT_MASK : 0;
+  }
+
+  /** Packs lower 32 bits of window index and amount of requests into a single bucket value. */
+  private static long pack(final long window, final long requests) {
+    return window << 32 | requests;
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.exception.RateLimitExceededException;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.model.ratelimit.RateLimitStats;
+import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Scope;
+import org.springframework.stereotype.Service;
+
+/**
+ * Lock-free implementation of the {@link RateLimitService} contract implementing token bucket rate
+ * limit algorithm. <br>
+ * Bucket of every target is refilled with the limit of the target per window, so the limit
+ * defines the sustained rate of requests, while the bucket holds up to {@link
+ * MiroConfig.RateLimit#getBurstCapacityPercent()} percent of the limit, which defines the burst
+ * allowed after the target was idle. Tokens are refilled lazily on access using monotonic {@link
+ * System#nanoTime()}, so there are no windows to reset. <br>
+ * Both the amount of tokens and the time of the last refill are packed into a single {@code long}
+ * as the time when the bucket has been or will be empty, the amount of tokens being the time
+ * elapsed since then divided by the refill interval of one token, capped by the capacity. So a
+ * request is consumed by a single CAS of that time advanced by one interval, and concurrent
+ * requests never consume more tokens than there are.
+ */
+@Service
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+@ConditionalOnProperty(value = "ratelimit.algorithm", havingValue = "tokenBucket")
+public class TokenBucketRateLimitService implements RateLimitService {
+
+  /** Upper bound of the time to refill a bucket keeping time arithmetic far from overflow. */
+  private static final long MAX_REFILL_NANOS = Long.MAX_VALUE / 4;
+
+  private final RateLimitRule rule;
+  private final int burstCapacityPercent;
+  private final LongSupplier nanoClock;
+  private final LongSupplier wallClock;
+  private final long origin;
+
+  /** Times when the buckets have been or will be empty relative to {@link #origin}. */
+  private final Map<RateLimitTarget, AtomicLong> emptyAt = new EnumMap<>(RateLimitTarget.class);
+
+  @Autowired
+  public TokenBucketRateLimitService(final RateLimitRule rule, final MiroConfig config) {
+    this(
+        rule,
+        config.getRateLimit().getBurstCapacityPercent(),
+        System::nanoTime,
+        System::currentTimeMillis);
+  }
+
+  TokenBucketRateLimitService(
+      final RateLimitRule rule,
+      final int burstCapacityPercent,
+      final LongSupplier nanoClock,
+      final LongSupplier wallClock) {
+    this.rule = rule;
+    this.burstCapacityPercent = burstCapacityPercent;
+    this.nanoClock = nanoClock;
+    this.wallClock = wallClock;
+    this.origin = nanoClock.getAsLong();
+    for (final RateLimitTarget target : RateLimitTarget.values()) {
+      // buckets are full initially
+      emptyAt.put(target, new AtomicLong(-MAX_REFILL_NANOS));
+    }
+  }
+
+  /** Refill parameters of the bucket derived from the current rate limit rule. */
+  private static final class Bucket {
+    /** Time to refill one token. */
+    final long interval;
+    /** Time to refill the bucket from empty to full. */
+    final long refill;
+
+    Bucket(final int limit, final int windowSizeMS, final int burstCapacityPercent) {
+      final double nanosPerToken = TimeUnit.MILLISECONDS.toNanos(windowSizeMS) / (double) limit;
+      final double capacity = Math.max(1.0, Math.floor(limit * burstCapacityPercent / 100.0));
+      this.interval = Math.max(1, Math.round(nanosPerToken));
+      this.refill = (long) Math.min(MAX_REFILL_NANOS, capacity * nanosPerToken);
+    }
+
+    long capacity() {
+      return refill / interval;
+    }
+  }
+
+  @Override
+  public void tryConsume(final RateLimitTarget target) {
+    tryConsume(rule.snapshot(), target);
+  }
+
+  private void tryConsume(final RateLimitRule.Snapshot snapshot, final RateLimitTarget target) {
+    final int limit = snapshot.getLimit(target);
+    if (target == RateLimitTarget.GLOBAL && limit < 0) {
+      // do nothing if global operations are unlimited
+      return;
+    } else if (limit < 0) {
+      // use global limit if target operation is unlimited
+      tryConsume(snapshot, RateLimitTarget.GLOBAL);
+      return;
+    } else if (limit == 0) {
+      throw new RateLimitExceededException();
+    }
+
+    final Bucket bucket = new Bucket(limit, snapshot.getWindowSizeMS(), burstCapacityPercent);
+    final AtomicLong targetEmptyAt = emptyAt.get(target);
+    final long now = nanoClock.getAsLong() - origin;
+    while (true) {
+      final long empty = targetEmptyAt.get();
+      // tokens above capacity are not accumulated
+      final long refilled = Math.max(empty, now - bucket.refill);
+      if (now - refilled < bucket.interval) {
+        throw new RateLimitExceededException();
+      }
+      if (targetEmptyAt.compareAndSet(empty, refilled + bucket.interval)) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public RateLimitStats getStats(final RateLimitTarget target) {
+    return getStats(rule.snapshot(), target);
+  }
+
+  private RateLimitStats getStats(
+      final RateLimitRule.Snapshot snapshot, final RateLimitTarget target) {
+    final int limit = snapshot.getLimit(target);
+    if (target == RateLimitTarget.GLOBAL && limit < 0) {
+      return RateLimitStats.ofUnlimited(wallClock.getAsLong());
+    } else if (limit < 0) {
+      // use global rate limit stat if target operation is unlimited
+      return getStats(snapshot, RateLimitTarget.GLOBAL);
+    } else if (limit == 0) {
+      return RateLimitStats.of(0, 0, wallClock.getAsLong());
+    } else {
+      final Bucket bucket = new Bucket(limit, snapshot.getWindowSizeMS(), burstCapacityPercent);
+      final long now = nanoClock.getAsLong() - origin;
+      final long refilled = Math.max(emptyAt.get(target).get(), now - bucket.refill);
+      final long available = (now - refilled) / bucket.interval;
+      // bucket is full again when the time to refill all the tokens passes since it was empty
+      final long untilFull = refilled + bucket.refill - now;
+      final long nextReset = wallClock.getAsLong() + (untilFull + 999_999) / 1_000_000;
+      return RateLimitStats.of((int) bucket.capacity(), available, nextReset);
+    }
+  }
+}
@@ -17,57 +17,124 @@ import com.aklimenko.miro.exception.WidgetNotFoundException;
 import com.aklimenko.miro.exception.ZIndexLimitExceededException;
 import com.aklimenko.miro.model.pagination.Page;
 import com.aklimenko.miro.model.pagination.Pagination;
+import com.aklimenko.miro.model.pagination.StreamedPage;
+import com.aklimenko.miro.model.widget.BoundingBox;
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
 import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetExport;
 import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
 import java.util.List;
+import javax.annotation.Nullable;
 
-/** Contract of widget service with basic CRUD operations on widgets. */
+/**
+ * Contract of widget service with basic CRUD operations on widgets. Every board has its own
+ * independent set of widgets.
+ */
 public interface WidgetService {
 
   /**
    * Create widget.
    *
+   * @param boardId Board to create widget on.
    * @param widgetToCreate Widget create payload.
    * @return Created {@link Widget}.
    * @throws ZIndexLimitExceededException if z-index limit exceeded during creation.
    */
-  Widget createWidget(WidgetCreateRequest widgetToCreate);
+  Widget createWidget(String boardId, WidgetCreateRequest widgetToCreate);
 
   /**
    * Read page of widgets ordered by z-index in ascending order based on provided pagination
    * parameters.
    *
+   * @param boardId Board to list widgets of.
    * @param pagination Pagination parameters to apply to look up.
+   * @param area Optional area to look up only widgets intersecting it.
    * @return {@link List<Widget>} ordered by z-index in ascending order.
    */
-  Page<Widget> listWidgets(Pagination pagination);
+  Page<Widget> listWidgets(String boardId, Pagination pagination, @Nullable BoundingBox area);
+
+  /**
+   * Stream page of widgets ordered by z-index in ascending order based on provided pagination
+   * parameters. Widgets are read from the board while the page is being serialized.
+   *
+   * @param boardId Board to stream widgets of.
+   * @param pagination Pagination parameters to apply to look up.
+   * @return {@link StreamedPage} of widgets ordered by z-index in ascending order.
+   */
+  StreamedPage<Widget> streamWidgets(String boardId, Pagination pagination);
+
+  /**
+   * Export all the widgets of the board ordered by z-index in ascending order. Widgets are read
+   * from the board while the export is being written, the export fails if they can't be read as
+   * of a single point in time.
+   *
+   * @param boardId Board to export widgets of.
+   * @return {@link WidgetExport} of the board widgets.
+   */
+  WidgetExport exportWidgets(String boardId);
+
+  /**
+   * Read requested amount of the topmost widgets covering provided point.
+   *
+   * @param boardId Board to look for widgets on.
+   * @param x X coordinate of the point.
+   * @param y Y coordinate of the point.
+   * @param limit Amount of widgets to read.
+   * @return {@link List<Widget>} ordered by z-index in descending order.
+   */
+  List<Widget> hitTest(String boardId, double x, double y, int limit);
 
   /**
    * Read widget by provided ID.
    *
+   * @param boardId Board to look for widget on.
    * @param id ID to look for widget.
    * @return Found {@link Widget}.
    * @throws WidgetNotFoundException if widget not found by ID.
    */
-  Widget readWidget(String id);
+  Widget readWidget(String boardId, String id);
 
   /**
    * Update widget with {@link WidgetUpdateRequest} by provided ID.
    *
+   * @param boardId Board to look for widget on.
    * @param id ID to look for widget to update.
    * @param widgetToUpdate Widget update request payload.
    * @return Updated {@link Widget}.
    * @throws WidgetNotFoundException if widget not found by ID.
    * @throws ZIndexLimitExceededException if z-index limit exceeded during widget update.
    */
-  Widget updateWidget(String id, WidgetUpdateRequest widgetToUpdate);
+  Widget updateWidget(String boardId, String id, WidgetUpdateRequest widgetToUpdate);
 
   /**
    * Delete widget by provided ID.
    *
+   * @param boardId Board to look for widget on.
    * @param id ID to look for widget to delete.
    * @throws WidgetNotFoundException if widget not found by ID.
    */
-  void deleteWidget(String id);
+  void deleteWidget(String boardId, String id);
+
+  /**
+   * Apply batch of create, update and delete operations atomically. Operations are applied in the
+   * order they are provided and fail independently of each other.
+   *
+   * @param boardId Board to apply operations to.
+   * @param operations Operations to apply.
+   * @return {@link List<WidgetBatchResult>} with result of every operation in the order of
+   *     operations.
+   */
+  List<WidgetBatchResult> applyBatch(String boardId, List<WidgetBatchOperation> operations);
+
+  /**
+   * Import widgets in bulk atomically. Requested z-indexes refer to the board before the import.
+   *
+   * @param boardId Board to import widgets into.
+   * @param widgetsToCreate Validated widget create payloads in the order of the import.
+   * @return {@link List<Widget>} of imported widgets in the order of the import.
+   * @throws ZIndexLimitExceededException if z-index limit exceeded, nothing is imported then.
+   */
+  List<Widget> importWidgets(String boardId, List<WidgetCreateRequest> widgetsToCreate);
 }
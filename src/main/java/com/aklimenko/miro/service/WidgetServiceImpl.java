@@ -13,57 +13,227 @@
 */
 package com.aklimenko.miro.service;
 
+import com.aklimenko.miro.exception.RequestValidationException;
 import com.aklimenko.miro.exception.WidgetNotFoundException;
+import com.aklimenko.miro.model.pagination.Cursor;
 import com.aklimenko.miro.model.pagination.Page;
 import com.aklimenko.miro.model.pagination.Pagination;
+import com.aklimenko.miro.model.pagination.StreamedPage;
+import com.aklimenko.miro.model.widget.BoundingBox;
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
 import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetExport;
+import com.aklimenko.miro.model.widget.WidgetId;
 import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
+import com.aklimenko.miro.persistence.VersionedWidgets;
 import com.aklimenko.miro.persistence.WidgetRepository;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import org.springframework.stereotype.Service;
 
-/** Implementation of {@link WidgetService} contract. */
+/**
+ * Implementation of {@link WidgetService} contract. <br>
+ * Textual widget IDs received from clients are parsed into {@link WidgetId} here. IDs which can't
+ * be parsed can't belong to any widget, so they are treated as not found ones.
+ */
 @Service
 public class WidgetServiceImpl implements WidgetService {
 
-  private final WidgetRepository widgetRepository;
+  private final ShardedWidgetRepository widgetRepository;
 
-  public WidgetServiceImpl(final WidgetRepository widgetRepository) {
+  public WidgetServiceImpl(final ShardedWidgetRepository widgetRepository) {
     this.widgetRepository = widgetRepository;
   }
 
   @Override
-  public Widget createWidget(WidgetCreateRequest widgetToCreate) {
-    return widgetRepository.createWidget(widgetToCreate);
+  public Widget createWidget(final String boardId, WidgetCreateRequest widgetToCreate) {
+    return widgetRepository.board(boardId).createWidget(widgetToCreate);
   }
 
   @Override
-  public Page<Widget> listWidgets(final Pagination pagination) {
-    final List<Widget> widgets =
-        widgetRepository.listWidgets(pagination.getLimit(), pagination.getAfterId());
+  public Page<Widget> listWidgets(
+      final String boardId, final Pagination pagination, @Nullable final BoundingBox area) {
+    final Cursor cursor = pagination.getCursor();
+    final VersionedWidgets widgets =
+        widgetRepository
+            .existingBoard(boardId)
+            .map(
+                board ->
+                    board.listWidgetsAt(
+                        cursor == null ? null : cursor.getVersion(),
+                        pagination.getLimit(),
+                        afterZ(board, pagination),
+                        area))
+            .orElse(new VersionedWidgets(List.of(), null));
 
-    return new Page<>(widgets, pagination, Widget::getId);
+    return new Page<>(
+        widgets.getWidgets(),
+        pagination,
+        widget -> Cursor.of(widget.getZ(), widgets.getVersion()));
   }
 
   @Override
-  public Widget readWidget(String id) {
-    final Optional<Widget> found = widgetRepository.readWidget(id);
+  public StreamedPage<Widget> streamWidgets(final String boardId, final Pagination pagination) {
+    final Iterator<Widget> widgets =
+        widgetRepository
+            .existingBoard(boardId)
+            .map(board -> board.iterateWidgets(streamAfterZ(board, pagination)))
+            .orElse(Collections.emptyIterator());
+    return new StreamedPage<>(widgets, pagination);
+  }
+
+  @Override
+  public WidgetExport exportWidgets(final String boardId) {
+    return new WidgetExport(
+        widgetRepository
+            .existingBoard(boardId)
+            .map(WidgetRepository::exportWidgets)
+            .orElse(Collections.emptyIterator()));
+  }
+
+  /**
+   * Resolves z-index to look up widgets above. Cursor holds the z-index itself, while {@code
+   * afterId} kept for compatibility is resolved by reading the widget. {@code afterId} of a widget
+   * that no longer exists is rejected instead of silently restarting the listing from the first
+   * page.
+   *
+   * @param board Board to list widgets of.
+   * @param pagination Pagination parameters.
+   * @return Z-index to look up widgets above or {@code null} to start from the bottom.
+   * @throws RequestValidationException if {@code afterId} widget doesn't exist.
+   */
+  @Nullable
+  private static Integer afterZ(final WidgetRepository board, final Pagination pagination) {
+    return afterZ(
+        board,
+        pagination,
+        "Widget 'afterId' no longer exists, resume the listing by the 'cursor' of its page.");
+  }
+
+  /**
+   * Resolves z-index to stream widgets above. Streamed page doesn't link the next one, so it's
+   * resumed by {@code afterZ}, while {@code afterId} is resolved as for the listing.
+   *
+   * @param board Board to stream widgets of.
+   * @param pagination Pagination parameters.
+   * @return Z-index to look up widgets above or {@code null} to start from the bottom.
+   * @throws RequestValidationException if {@code afterId} widget doesn't exist.
+   */
+  @Nullable
+  private static Integer streamAfterZ(final WidgetRepository board, final Pagination pagination) {
+    if (pagination.getAfterZ() != null) {
+      return pagination.getAfterZ();
+    }
+    return afterZ(
+        board, pagination, "Widget 'afterId' no longer exists, resume the stream by its 'afterZ'.");
+  }
+
+  @Nullable
+  private static Integer afterZ(
+      final WidgetRepository board, final Pagination pagination, final String missingAfterIdMsg) {
+    final Cursor cursor = pagination.getCursor();
+    if (cursor != null) {
+      return cursor.getZ();
+    }
+    if (pagination.getAfterId() == null) {
+      return null;
+    }
+    return WidgetId.tryParse(pagination.getAfterId())
+        .flatMap(board::readWidget)
+        .map(Widget::getZ)
+        .orElseThrow(() -> new RequestValidationException(missingAfterIdMsg));
+  }
+
+  @Override
+  public List<Widget> hitTest(final String boardId, final double x, final double y, int limit) {
+    return widgetRepository
+        .existingBoard(boardId)
+        .map(board -> board.hitTest(x, y, limit))
+        .orElse(List.of());
+  }
+
+  @Override
+  public Widget readWidget(final String boardId, String id) {
+    final Optional<Widget> found =
+        WidgetId.tryParse(id)
+            .flatMap(
+                widgetId ->
+                    widgetRepository
+                        .existingBoard(boardId)
+                        .flatMap(board -> board.readWidget(widgetId)));
     return found.orElseThrow(() -> new WidgetNotFoundException(id));
   }
 
   @Override
-  public Widget updateWidget(String id, WidgetUpdateRequest widgetToUpdate) {
-    final Optional<Widget> updated = widgetRepository.updateWidget(id, widgetToUpdate);
+  public Widget updateWidget(final String boardId, String id, WidgetUpdateRequest widgetToUpdate) {
+    final Optional<Widget> updated =
+        WidgetId.tryParse(id)
+            .flatMap(
+                widgetId ->
+                    widgetRepository
+                        .existingBoard(boardId)
+                        .flatMap(board -> board.updateWidget(widgetId, widgetToUpdate)));
     return updated.orElseThrow(() -> new WidgetNotFoundException(id));
   }
 
   @Override
-  public void deleteWidget(String id) {
-    boolean deleted = widgetRepository.deleteWidget(id);
+  public void deleteWidget(final String boardId, String id) {
+    boolean deleted =
+        WidgetId.tryParse(id)
+            .flatMap(
+                widgetId ->
+                    widgetRepository
+                        .existingBoard(boardId)
+                        .map(board -> board.deleteWidget(widgetId)))
+            .orElse(false);
     if (!deleted) {
       throw new WidgetNotFoundException(id);
     }
   }
+
+  @Override
+  public List<WidgetBatchResult> applyBatch(
+      final String boardId, final List<WidgetBatchOperation> operations) {
+    final boolean creates =
+        operations.stream()
+            .anyMatch(operation -> operation.getType() == WidgetBatchOperation.Type.CREATE);
+    if (creates) {
+      return widgetRepository.board(boardId).applyBatch(operations);
+    }
+
+    return widgetRepository
+        .existingBoard(boardId)
+        .map(board -> board.applyBatch(operations))
+        .orElseGet(
+            () ->
+                operations.stream()
+                    .map(WidgetServiceImpl::notFound)
+                    .collect(Collectors.toUnmodifiableList()));
+  }
+
+  @Override
+  public List<Widget> importWidgets(
+      final String boardId, final List<WidgetCreateRequest> widgetsToCreate) {
+    return widgetRepository.board(boardId).importWidgets(widgetsToCreate).getImported();
+  }
+
+  /**
+   * Result of update or delete operation on the board nobody has written to.
+   *
+   * @param operation Update or delete operation.
+   * @return Not found result.
+   */
+  private static WidgetBatchResult notFound(final WidgetBatchOperation operation) {
+    return WidgetBatchResult.notFound(
+        operation.getType() == WidgetBatchOperation.Type.UPDATE
+            ? ((WidgetBatchOperation.Update) operation).getId()
+            : ((WidgetBatchOperation.Delete) operation).getId());
+  }
 }
@@ -0,0 +1,51 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service.counter;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Service provider interface of a store of rate limit counters shared by all the application
+ * instances. <br>
+ * Every counter counts requests of a fixed window and never exceeds the limit provided by the
+ * caller. Instances don't increment counters per request, but acquire quota in chunks and consume
+ * it locally, see {@link com.aklimenko.miro.service.LeasingRateLimitService}. Counters of windows
+ * older than the previous one are discarded by the store.
+ */
+public interface CounterStore {
+
+  /**
+   * Adds up to requested amount to the counter of the window without exceeding the limit.
+   *
+   * @param counter Counter name.
+   * @param window Index of the window.
+   * @param amount Amount to add.
+   * @param limit Limit the counter must not exceed.
+   * @return Future of the counter value before the addition, see {@link #granted}. Completes
+   *     exceptionally if the store is not available.
+   */
+  CompletableFuture<Long> acquire(String counter, long window, long amount, long limit);
+
+  /**
+   * Calculates amount actually added to the counter by {@link #acquire}.
+   *
+   * @param before Counter value before the addition.
+   * @param amount Requested amount.
+   * @param limit Limit the counter must not exceed.
+   * @return Added amount from 0 to the requested one.
+   */
+  static long granted(final long before, final long amount, final long limit) {
+    return Math.max(0, Math.min(amount, limit - before));
+  }
+}
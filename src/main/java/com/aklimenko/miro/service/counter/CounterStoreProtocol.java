@@ -0,0 +1,75 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service.counter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary protocol spoken by {@link RemoteCounterStore} and {@link CounterStoreServer} over TCP.
+ * <br>
+ * Request is framed as {@code id:int | window:long | amount:long | limit:long | counter:UTF} and
+ * response as {@code id:int | before:long}. Requests are pipelined over a single connection and
+ * responses are matched to them by ID, so a client doesn't wait for one response before sending
+ * the next request.
+ */
+final class CounterStoreProtocol {
+
+  private CounterStoreProtocol() {}
+
+  /** Acquire request of {@link CounterStore#acquire}. */
+  static final class Request {
+    final int id;
+    final String counter;
+    final long window;
+    final long amount;
+    final long limit;
+
+    Request(
+        final int id,
+        final String counter,
+        final long window,
+        final long amount,
+        final long limit) {
+      this.id = id;
+      this.counter = counter;
+      this.window = window;
+      this.amount = amount;
+      this.limit = limit;
+    }
+
+    void write(final DataOutputStream out) throws IOException {
+      out.writeInt(id);
+      out.writeLong(window);
+      out.writeLong(amount);
+      out.writeLong(limit);
+      out.writeUTF(counter);
+    }
+
+    static Request read(final DataInputStream in) throws IOException {
+      final int id = in.readInt();
+      final long window = in.readLong();
+      final long amount = in.readLong();
+      final long limit = in.readLong();
+      return new Request(id, in.readUTF(), window, amount, limit);
+    }
+  }
+
+  static void writeResponse(final DataOutputStream out, final int id, final long before)
+      throws IOException {
+    out.writeInt(id);
+    out.writeLong(before);
+  }
+}
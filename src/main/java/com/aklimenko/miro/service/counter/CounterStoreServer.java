@@ -0,0 +1,142 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service.counter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server sharing {@link InMemoryCounterStore} counters with {@link RemoteCounterStore} clients of
+ * all the application instances. <br>
+ * Can be embedded into a test or run standalone with {@link #main}. Every connection is served by
+ * its own thread processing pipelined requests in order and flushing responses once there are no
+ * more buffered requests, so a burst of requests is answered with a single write.
+ */
+public class CounterStoreServer implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(CounterStoreServer.class);
+
+  private final InMemoryCounterStore store = new InMemoryCounterStore();
+  private final ServerSocket serverSocket;
+  private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Starts the server listening on the loopback address.
+   *
+   * @param port Port to listen on, {@code 0} to pick a free one.
+   * @throws UncheckedIOException if the server socket can not be opened.
+   */
+  public CounterStoreServer(final int port) {
+    this(port, InetAddress.getLoopbackAddress());
+  }
+
+  /**
+   * Starts the server.
+   *
+   * @param port Port to listen on, {@code 0} to pick a free one.
+   * @param address Address to listen on.
+   * @throws UncheckedIOException if the server socket can not be opened.
+   */
+  public CounterStoreServer(final int port, final InetAddress address) {
+    try {
+      serverSocket = new ServerSocket(port, 50, address);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open counter store server socket", e);
+    }
+    final Thread acceptor = new Thread(this::accept, "counter-store-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  private void accept() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+        connections.add(socket);
+        final Thread connection = new Thread(() -> serve(socket), "counter-store-connection");
+        connection.setDaemon(true);
+        connection.start();
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          log.warn("Failed to accept counter store connection", e);
+        }
+      }
+    }
+  }
+
+  private void serve(final Socket socket) {
+    try (socket) {
+      final DataInputStream in =
+          new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      final DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      while (true) {
+        final CounterStoreProtocol.Request request = CounterStoreProtocol.Request.read(in);
+        final long before =
+            store.acquireNow(request.counter, request.window, request.amount, request.limit);
+        CounterStoreProtocol.writeResponse(out, request.id, before);
+        if (in.available() == 0) {
+          out.flush();
+        }
+      }
+    } catch (EOFException e) {
+      // client disconnected
+    } catch (IOException e) {
+      if (!serverSocket.isClosed()) {
+        log.warn("Counter store connection failed", e);
+      }
+    } finally {
+      connections.remove(socket);
+    }
+  }
+
+  /** Stops accepting connections and closes the accepted ones. */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    for (final Socket socket : connections) {
+      socket.close();
+    }
+  }
+
+  /**
+   * Runs standalone server.
+   *
+   * @param args Port to listen on, {@code 7070} by default.
+   */
+  public static void main(final String[] args) throws InterruptedException {
+    final int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+    final CounterStoreServer server = new CounterStoreServer(port, null);
+    log.info("Counter store server is listening on port {}", server.getPort());
+    Thread.currentThread().join();
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service.counter;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link CounterStore} implementation keeping counters in memory of the current process. Shares
+ * counters only between the clients of the same process, so it's used by a single instance
+ * deployment and by {@link CounterStoreServer} serving the counters to the other instances. <br>
+ * Counters of every window are kept in their own map, so the counters of old windows are dropped
+ * at once when a new window starts.
+ */
+@Component
+@ConditionalOnProperty(value = "ratelimit.store", havingValue = "memory")
+public class InMemoryCounterStore implements CounterStore {
+
+  private final Map<Long, Map<String, AtomicLong>> windows = new ConcurrentHashMap<>();
+
+  @Override
+  public CompletableFuture<Long> acquire(
+      final String counter, final long window, final long amount, final long limit) {
+    return CompletableFuture.completedFuture(acquireNow(counter, window, amount, limit));
+  }
+
+  /**
+   * Synchronous version of {@link #acquire}.
+   *
+   * @return Counter value before the addition.
+   */
+  long acquireNow(final String counter, final long window, final long amount, final long limit) {
+    Map<String, AtomicLong> counters = windows.get(window);
+    if (counters == null) {
+      counters = windows.computeIfAbsent(window, w -> new ConcurrentHashMap<>());
+      // clocks of the instances may be slightly off, so the neighbour windows are kept
+      windows.keySet().removeIf(w -> Math.abs(w - window) > 1);
+    }
+
+    final AtomicLong value = counters.computeIfAbsent(counter, c -> new AtomicLong());
+    while (true) {
+      final long before = value.get();
+      final long granted = CounterStore.granted(before, amount, limit);
+      if (granted == 0 || value.compareAndSet(before, before + granted)) {
+        return before;
+      }
+    }
+  }
+}
@@ -0,0 +1,284 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service.counter;
+
+import com.aklimenko.miro.MiroConfig;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link CounterStore} implementation sharing counters of all the application instances through
+ * {@link CounterStoreServer}. <br>
+ * All requests of the instance are pipelined over a single TCP connection, so the calling thread
+ * only writes the request and doesn't wait for the response: the future is completed by the
+ * thread reading responses. <br>
+ * Connection is opened lazily by a background thread, so a request never waits for a connect
+ * under the store lock. Requests made while the connection is being opened are sent once it's
+ * opened or failed if it can't be. After a failed attempt, requests fail at once until the next
+ * attempt, which is made by the first request after a delay doubling with every failed attempt up
+ * to {@link #MAX_RECONNECT_DELAY_MS}. Requests in flight during a failure are completed
+ * exceptionally, leaving the decision to fail open or closed to the caller.
+ */
+@Component
+@ConditionalOnProperty(value = "ratelimit.store", havingValue = "remote")
+public class RemoteCounterStore implements CounterStore, Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(RemoteCounterStore.class);
+
+  static final long MIN_RECONNECT_DELAY_MS = 100;
+  static final long MAX_RECONNECT_DELAY_MS = 10000;
+
+  private final InetSocketAddress address;
+  private final int connectTimeoutMS;
+  private final LongSupplier nanoClock;
+  private final AtomicInteger ids = new AtomicInteger();
+
+  @Nullable private Connection connection;
+
+  /** Requests waiting for the connection being opened, {@code null} if it's not being opened. */
+  @Nullable private Map<CounterStoreProtocol.Request, CompletableFuture<Long>> connecting;
+
+  private long reconnectDelayMS = MIN_RECONNECT_DELAY_MS;
+  private long reconnectAt;
+  private boolean closed;
+
+  /**
+   * @param config Application configuration providing {@code host:port} address of the server.
+   */
+  @Autowired
+  public RemoteCounterStore(final MiroConfig config) {
+    this(
+        parseAddress(config.getRateLimit().getStoreAddress()),
+        config.getRateLimit().getStoreTimeoutMS());
+  }
+
+  public RemoteCounterStore(final InetSocketAddress address, final int connectTimeoutMS) {
+    this(address, connectTimeoutMS, System::nanoTime);
+  }
+
+  RemoteCounterStore(
+      final InetSocketAddress address, final int connectTimeoutMS, final LongSupplier nanoClock) {
+    this.address = address;
+    this.connectTimeoutMS = connectTimeoutMS;
+    this.nanoClock = nanoClock;
+    this.reconnectAt = nanoClock.getAsLong();
+  }
+
+  @Override
+  public synchronized CompletableFuture<Long> acquire(
+      final String counter, final long window, final long amount, final long limit) {
+    final CompletableFuture<Long> result = new CompletableFuture<>();
+    if (closed) {
+      result.completeExceptionally(new IOException("Counter store is closed"));
+      return result;
+    }
+    final CounterStoreProtocol.Request request =
+        new CounterStoreProtocol.Request(ids.incrementAndGet(), counter, window, amount, limit);
+    if (connection != null) {
+      send(connection, request, result);
+    } else if (connecting != null) {
+      connecting.put(request, result);
+    } else if (nanoClock.getAsLong() - reconnectAt >= 0) {
+      connecting = new LinkedHashMap<>();
+      connecting.put(request, result);
+      final Thread connector = new Thread(this::connect, "counter-store-connector");
+      connector.setDaemon(true);
+      connector.start();
+    } else {
+      result.completeExceptionally(
+          new IOException("Counter store at " + address + " is not connected"));
+    }
+    return result;
+  }
+
+  /** Closes the connection failing all the requests in flight. */
+  @Override
+  @PreDestroy
+  public synchronized void close() {
+    closed = true;
+    final IOException cause = new IOException("Counter store is closed");
+    if (connection != null) {
+      connection.close(cause);
+      connection = null;
+    }
+    if (connecting != null) {
+      connecting.values().forEach(result -> result.completeExceptionally(cause));
+      connecting = null;
+    }
+  }
+
+  /** Writes the request to the connection closing it on failure. Called under the lock. */
+  private void send(
+      final Connection opened,
+      final CounterStoreProtocol.Request request,
+      final CompletableFuture<Long> result) {
+    try {
+      opened.pending.put(request.id, result);
+      request.write(opened.out);
+      opened.out.flush();
+    } catch (IOException e) {
+      opened.close(e);
+      if (connection == opened) {
+        connection = null;
+      }
+      result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Opens the connection in background and sends the requests made meanwhile. Publishes the
+   * connection under the lock, so requests are never added to a connection closed by the store.
+   */
+  private void connect() {
+    Connection opened = null;
+    IOException failure = null;
+    try {
+      opened = new Connection();
+    } catch (IOException e) {
+      failure = e;
+    }
+
+    synchronized (this) {
+      final Map<CounterStoreProtocol.Request, CompletableFuture<Long>> waiting = connecting;
+      connecting = null;
+      if (closed) {
+        if (opened != null) {
+          opened.close(new IOException("Counter store is closed"));
+        }
+        return;
+      }
+      if (opened != null) {
+        final Connection established = opened;
+        connection = established;
+        reconnectDelayMS = MIN_RECONNECT_DELAY_MS;
+        waiting.forEach((request, result) -> send(established, request, result));
+      } else {
+        reconnectAt = nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(reconnectDelayMS);
+        reconnectDelayMS = Math.min(2 * reconnectDelayMS, MAX_RECONNECT_DELAY_MS);
+        for (final CompletableFuture<Long> result : waiting.values()) {
+          result.completeExceptionally(failure);
+        }
+        log.warn("Counter store connection to {} failed: {}", address, failure.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Closes failed connection under the lock, so no request is added to it after its requests in
+   * flight were failed.
+   */
+  private synchronized void disconnected(final Connection failed, final IOException cause) {
+    failed.close(cause);
+    if (connection == failed) {
+      connection = null;
+    }
+    if (!closed) {
+      log.warn("Counter store connection to {} failed: {}", address, cause.getMessage());
+    }
+  }
+
+  private static InetSocketAddress parseAddress(final String address) {
+    final int separator = address.lastIndexOf(':');
+    if (separator < 0) {
+      throw new IllegalArgumentException(
+          "Counter store address must be in 'host:port' format: " + address);
+    }
+    return InetSocketAddress.createUnresolved(
+        address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+  }
+
+  /** Single connection to the server with its own thread reading responses. */
+  private class Connection {
+    private final Socket socket = new Socket();
+    private final Map<Integer, CompletableFuture<Long>> pending = new ConcurrentHashMap<>();
+    private final DataOutputStream out;
+    private final DataInputStream in;
+
+    Connection() throws IOException {
+      try {
+        final InetSocketAddress resolved =
+            address.isUnresolved()
+                ? new InetSocketAddress(address.getHostString(), address.getPort())
+                : address;
+        socket.connect(resolved, connectTimeoutMS);
+        // connecting to a free local port from the same ephemeral port connects the socket to
+        // itself, so requests would be read back as responses
+        if (socket.getLocalSocketAddress().equals(socket.getRemoteSocketAddress())) {
+          throw new IOException("Counter store connection is connected to itself: " + resolved);
+        }
+        socket.setTcpNoDelay(true);
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      } catch (IOException e) {
+        socket.close();
+        throw e;
+      }
+      final Thread reader = new Thread(this::read, "counter-store-reader");
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    private void read() {
+      try {
+        while (true) {
+          final int id = in.readInt();
+          final long before = in.readLong();
+          final CompletableFuture<Long> result = pending.remove(id);
+          if (result != null) {
+            result.complete(before);
+          }
+        }
+      } catch (IOException e) {
+        disconnected(this, e);
+      }
+    }
+
+    /** Closes the socket and fails all the requests in flight over this connection. */
+    void close(final IOException cause) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        cause.addSuppressed(e);
+      }
+      pending.keySet().forEach(id -> failPending(id, cause));
+    }
+
+    private void failPending(final int id, final IOException cause) {
+      final CompletableFuture<Long> result = pending.remove(id);
+      if (result != null) {
+        result.completeExceptionally(cause);
+      }
+    }
+  }
+}
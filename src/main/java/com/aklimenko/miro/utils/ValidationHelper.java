@@ -20,6 +20,9 @@ import com.aklimenko.miro.model.widget.Widget;
 /** Helper class to simplify validation of request payload. */
 public class ValidationHelper {
 
+  /** Max length of the board ID. */
+  public static final int MAX_BOARD_ID_LENGTH = 64;
+
   /**
    * Ensures non-null argument is provided.
    *
@@ -35,6 +38,22 @@ public class ValidationHelper {
     return arg;
   }
 
+  /**
+   * Ensures provided limit of the amount of widgets in the output is positive and doesn't exceed
+   * the max one.
+   *
+   * @param limit Limit to validate.
+   * @param maxLimit Max allowed limit.
+   * @return Provided limit.
+   * @throws RequestValidationException if limit is not positive or exceeds max limit.
+   */
+  public static int requireValidLimit(final int limit, final int maxLimit) {
+    if (limit < 1 || limit > maxLimit) {
+      throw new RequestValidationException("Limit must be between 1 and " + maxLimit + ".");
+    }
+    return limit;
+  }
+
   /**
    * Ensures there is still room to place another widget on top of provided one.
    *
@@ -43,7 +62,22 @@ public class ValidationHelper {
    */
   public static void ensureSafeToPlaceOnTopOf(final Widget widget) {
     if (widget.getZ() == Integer.MAX_VALUE) {
-      throw new ZIndexLimitExceededException(widget.getId());
+      throw new ZIndexLimitExceededException(widget.getId().toString());
+    }
+  }
+
+  /**
+   * Ensures provided board ID is not blank and not too long.
+   *
+   * @param boardId Board ID to validate.
+   * @return Provided board ID.
+   * @throws RequestValidationException if board ID is blank or too long.
+   */
+  public static String requireValidBoardId(final String boardId) {
+    if (boardId.isBlank() || boardId.length() > MAX_BOARD_ID_LENGTH) {
+      throw new RequestValidationException(
+          "Board ID must not be blank and must not exceed " + MAX_BOARD_ID_LENGTH + " characters.");
     }
+    return boardId;
   }
 }
@@ -0,0 +1,106 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.concurrent;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class StampedLockAccessLockerTest {
+
+  private static final int READERS = 4;
+  private static final int WRITES = 1000;
+
+  @Test
+  @DisplayName("should propagate exceptions thrown by read supplier under valid stamp")
+  void shouldPropagateGenuineExceptions() {
+    var locker = new StampedLockAccessLocker();
+
+    assertThrows(
+        IllegalStateException.class,
+        () ->
+            locker.read(
+                () -> {
+                  throw new IllegalStateException("genuine");
+                }));
+  }
+
+  @Test
+  @DisplayName("should never fail optimistic reads racing with shifting writes")
+  void shouldTolerateInconsistentOptimisticReads() throws Exception {
+    var repository = new WidgetRepositoryImpl(new StampedLockAccessLocker());
+    var failures = new ConcurrentLinkedQueue<Throwable>();
+    var writing = new AtomicBoolean(true);
+    var readersStarted = new CountDownLatch(READERS);
+    ExecutorService executor = Executors.newFixedThreadPool(READERS + 1);
+
+    for (int i = 0; i < READERS; i++) {
+      executor.submit(
+          () -> {
+            readersStarted.countDown();
+            while (writing.get()) {
+              try {
+                assertContiguous(repository.listWidgets(100, null));
+              } catch (Throwable e) {
+                failures.add(e);
+              }
+            }
+          });
+    }
+
+    executor.submit(
+        () -> {
+          try {
+            readersStarted.await();
+            for (int i = 0; i < WRITES; i++) {
+              // every insert into the bottom shifts all the widgets upwards
+              repository.createWidget(new WidgetCreateRequest(1, 1, 0, 1.0, 1.0));
+            }
+          } catch (Throwable e) {
+            failures.add(e);
+          } finally {
+            writing.set(false);
+          }
+          return null;
+        });
+
+    executor.shutdown();
+    assertThat(executor.awaitTermination(1, TimeUnit.MINUTES), equalTo(true));
+    assertThat(new ArrayList<>(failures), empty());
+    assertThat(repository.listWidgets(Integer.MAX_VALUE, null).size(), equalTo(WRITES));
+  }
+
+  private static void assertContiguous(final List<Widget> widgets) {
+    for (int i = 0; i < widgets.size(); i++) {
+      if (widgets.get(i).getZ() != i) {
+        throw new AssertionError("Inconsistent page " + widgets);
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import com.aklimenko.miro.api.incerceptor.RateLimitInterceptor;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class RateLimitITest {
+
+  @LocalServerPort private int serverPort;
+
+  @BeforeEach
+  void restAssuredPort() {
+    RestAssured.port = serverPort;
+  }
+
+  private long availableRequests(final String apiKey) {
+    var available =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .header(RateLimitInterceptor.API_KEY_HEADER, apiKey)
+            .get("/widgets")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .extract()
+            .header("X-Available-Requests");
+    return Long.parseLong(available);
+  }
+
+  @Test
+  @DisplayName("should rate limit every client separately")
+  void shouldRateLimitClientsSeparately() {
+    // given
+    var firstAvailable = availableRequests("first-client");
+    availableRequests("first-client");
+
+    // when
+    var firstAvailableAfter = availableRequests("first-client");
+    var secondAvailable = availableRequests("second-client");
+
+    // then
+    assertThat(firstAvailableAfter, equalTo(firstAvailable - 2));
+    assertThat(secondAvailable, equalTo(firstAvailable));
+  }
+}
@@ -52,7 +52,10 @@ public class RateLimitRuleApiITest {
         .body("limitReadWidget", equalTo(config.getRateLimit().getLimitReadWidget()))
         .body("limitCreateWidget", equalTo(config.getRateLimit().getLimitCreateWidget()))
         .body("limitUpdateWidget", equalTo(config.getRateLimit().getLimitUpdateWidget()))
-        .body("limitDeleteWidget", equalTo(config.getRateLimit().getLimitDeleteWidget()));
+        .body("limitDeleteWidget", equalTo(config.getRateLimit().getLimitDeleteWidget()))
+        .body("limitBatchWidgets", equalTo(config.getRateLimit().getLimitBatchWidgets()))
+        .body("limitExportWidgets", equalTo(config.getRateLimit().getLimitExportWidgets()))
+        .body("limitImportWidgets", equalTo(config.getRateLimit().getLimitImportWidgets()));
   }
 
   @Test
@@ -76,6 +79,29 @@ public class RateLimitRuleApiITest {
         .body("limitReadWidget", equalTo(config.getRateLimit().getLimitReadWidget()))
         .body("limitCreateWidget", equalTo(config.getRateLimit().getLimitCreateWidget()))
         .body("limitUpdateWidget", equalTo(config.getRateLimit().getLimitUpdateWidget()))
-        .body("limitDeleteWidget", equalTo(config.getRateLimit().getLimitDeleteWidget()));
+        .body("limitDeleteWidget", equalTo(config.getRateLimit().getLimitDeleteWidget()))
+        .body("limitBatchWidgets", equalTo(config.getRateLimit().getLimitBatchWidgets()))
+        .body("limitExportWidgets", equalTo(config.getRateLimit().getLimitExportWidgets()))
+        .body("limitImportWidgets", equalTo(config.getRateLimit().getLimitImportWidgets()));
+  }
+
+  @Test
+  @DisplayName("should return 400 on invalid rate limit rule update")
+  void shouldFailOnInvalidRateLimitRuleUpdate() {
+    // given / when
+    var request =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .body("{\"windowSizeMS\":0,\"limitGlobal\":5}")
+            .put("/rateLimitRule");
+
+    // then
+    request
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .contentType(ContentType.JSON)
+        .body("status", equalTo(HttpStatus.BAD_REQUEST.value()))
+        .body("error", equalTo("Rate limit window size must be positive."));
   }
 }
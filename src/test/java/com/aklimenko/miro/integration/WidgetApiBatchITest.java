@@ -0,0 +1,172 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
+import io.restassured.RestAssured;
+import io.restassured.common.mapper.TypeRef;
+import io.restassured.http.ContentType;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class WidgetApiBatchITest {
+  @LocalServerPort private int serverPort;
+  @Autowired ShardedWidgetRepository widgetRepository;
+
+  @BeforeEach
+  void restAssuredPort() {
+    RestAssured.port = serverPort;
+  }
+
+  @AfterEach
+  void cleanUp() {
+    widgetRepository.cleanUp();
+  }
+
+  private static Widget create(final int z) {
+    return RestAssured.given()
+        .when()
+        .contentType(ContentType.JSON)
+        .body(String.format("{\"x\":1,\"y\":1,\"z\":%d,\"width\":1.0,\"height\":1.0}", z))
+        .post("/widgets")
+        .then()
+        .statusCode(HttpStatus.CREATED.value())
+        .extract()
+        .body()
+        .as(Widget.class);
+  }
+
+  @Test
+  @DisplayName("should apply batch of operations with result of every operation")
+  void shouldApplyBatch() {
+    // given
+    var bottom = create(1);
+    var top = create(2);
+    var body =
+        "[{\"op\":\"create\",\"widget\":{\"x\":5,\"y\":5,\"z\":1,\"width\":2.0,\"height\":2.0}},"
+            + "{\"op\":\"update\",\"id\":\""
+            + top.getId()
+            + "\",\"widget\":{\"z\":1}},"
+            + "{\"op\":\"delete\",\"id\":\"123-456-789\"},"
+            + "{\"op\":\"delete\",\"id\":\""
+            + bottom.getId()
+            + "\"}]";
+
+    // when
+    var request =
+        RestAssured.given().when().contentType(ContentType.JSON).body(body).post("/widgets/batch");
+
+    // then
+    request
+        .then()
+        .statusCode(HttpStatus.OK.value())
+        .body("status", equalTo(List.of(201, 200, 404, 204)))
+        .body("[0].widget.x", equalTo(5))
+        .body("[0].widget.z", equalTo(1))
+        .body("[1].widget.id", equalTo(top.getId().toString()))
+        .body("[1].widget.z", equalTo(1))
+        .body("[2].error", equalTo("Widget [id=123-456-789] not found."))
+        .body("[3].widget", nullValue());
+
+    var widgets =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .get("/widgets")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .extract()
+            .body()
+            .as(new TypeRef<List<Widget>>() {});
+    assertThat(
+        widgets.stream().map(Widget::getZ).collect(Collectors.toList()), equalTo(List.of(1, 2)));
+    assertThat(widgets.get(0).getId(), equalTo(top.getId()));
+  }
+
+  @Test
+  @DisplayName("should return 404 for every operation on the board nobody has written to")
+  void shouldReportNotFoundOnMissingBoard() {
+    // when
+    var request =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .header("X-Board-Id", "missing")
+            .body(
+                "[{\"op\":\"delete\",\"id\":\"abc\"},"
+                    + "{\"op\":\"update\",\"id\":\"def\",\"widget\":{\"x\":1}}]")
+            .post("/widgets/batch");
+
+    // then
+    request
+        .then()
+        .statusCode(HttpStatus.OK.value())
+        .body("status", equalTo(List.of(404, 404)))
+        .body("[1].error", equalTo("Widget [id=def] not found."));
+  }
+
+  @Test
+  @DisplayName("should return 400 if batch is empty")
+  void shouldFailIfBatchIsEmpty() {
+    // when
+    var request =
+        RestAssured.given().when().contentType(ContentType.JSON).body("[]").post("/widgets/batch");
+
+    // then
+    request
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Batch must contain from 1 to 500 operations."));
+  }
+
+  @Test
+  @DisplayName("should return 400 and apply nothing if any operation is invalid")
+  void shouldFailIfOperationIsInvalid() {
+    // when
+    var request =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .body(
+                "[{\"op\":\"create\",\"widget\":{\"x\":1,\"y\":1,\"width\":1.0,\"height\":1.0}},"
+                    + "{\"op\":\"delete\"}]")
+            .post("/widgets/batch");
+
+    // then
+    request
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Field 'id' must be provided."));
+    assertThat(
+        widgetRepository
+            .existingBoard(ShardedWidgetRepository.DEFAULT_BOARD)
+            .map(board -> board.listWidgets(10, null).size())
+            .orElse(0),
+        equalTo(0));
+  }
+}
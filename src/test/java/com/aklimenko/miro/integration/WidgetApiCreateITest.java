@@ -20,7 +20,7 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 
 import com.aklimenko.miro.model.widget.Widget;
-import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.restassured.RestAssured;
@@ -47,7 +47,7 @@ public class WidgetApiCreateITest {
 
   @LocalServerPort private int serverPort;
   @Autowired private ObjectMapper objectMapper;
-  @Autowired WidgetRepositoryImpl widgetRepository;
+  @Autowired ShardedWidgetRepository widgetRepository;
 
   @BeforeEach
   void restAssuredPort() {
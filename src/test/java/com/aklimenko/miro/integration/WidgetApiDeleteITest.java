@@ -19,7 +19,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.not;
 
 import com.aklimenko.miro.model.widget.Widget;
-import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
 import io.restassured.RestAssured;
 import io.restassured.common.mapper.TypeRef;
 import io.restassured.http.ContentType;
@@ -42,7 +42,7 @@ import org.springframework.http.MediaType;
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 public class WidgetApiDeleteITest {
   @LocalServerPort private int serverPort;
-  @Autowired WidgetRepositoryImpl widgetRepository;
+  @Autowired ShardedWidgetRepository widgetRepository;
 
   @BeforeEach
   void restAssuredPort() {
@@ -78,7 +78,7 @@ public class WidgetApiDeleteITest {
             .extract()
             .body()
             .as(new TypeRef<List<Widget>>() {});
-    var id = widgets.get(2).getId();
+    var id = widgets.get(2).getId().toString();
 
     // when
     var request = RestAssured.given().when().contentType(ContentType.JSON).delete("/widgets/" + id);
@@ -0,0 +1,164 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.api.WidgetApi;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetExport;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.RestAssured;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class WidgetApiExportITest {
+
+  @LocalServerPort private int serverPort;
+  @Autowired ShardedWidgetRepository widgetRepository;
+  @Autowired ObjectMapper objectMapper;
+
+  @BeforeEach
+  void restAssuredPort() {
+    RestAssured.port = serverPort;
+  }
+
+  @AfterEach
+  void cleanUp() {
+    widgetRepository.cleanUp();
+  }
+
+  @Test
+  @DisplayName("should export all widgets as newline-delimited JSON ordered by z-index")
+  void shouldExportWidgets() throws Exception {
+    // given
+    var board = widgetRepository.board(ShardedWidgetRepository.DEFAULT_BOARD);
+    var created = new ArrayList<String>();
+    for (int i = 1000; i >= 1; i--) {
+      var request = new WidgetCreateRequest(i, i, i, 1.0, 1.0);
+      created.add(0, board.createWidget(request).getId().toString());
+    }
+
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .get("/widgets/export")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .contentType(startsWith(WidgetExport.MEDIA_TYPE_VALUE))
+            .header("Transfer-Encoding", equalTo("chunked"))
+            .header("Content-Length", nullValue())
+            .header("X-Rate-Limit", notNullValue())
+            .extract()
+            .asString();
+
+    // then
+    var lines = response.split("\n", -1);
+    assertThat(lines.length, equalTo(created.size() + 1));
+    assertThat(lines[lines.length - 1], equalTo(""));
+    var exported = new ArrayList<String>();
+    for (int i = 0; i < created.size(); i++) {
+      var widget = objectMapper.readValue(lines[i], Widget.class);
+      assertThat(widget.getZ(), equalTo(i + 1));
+      exported.add(widget.getId().toString());
+    }
+    assertThat(exported, equalTo(created));
+  }
+
+  @Test
+  @DisplayName("should export widgets of requested board only")
+  void shouldExportWidgetsOfRequestedBoard() throws Exception {
+    // given
+    var widget =
+        widgetRepository.board("board-1").createWidget(new WidgetCreateRequest(1, 1, 1, 1.0, 1.0));
+    widgetRepository.board("board-2").createWidget(new WidgetCreateRequest(2, 2, 2, 1.0, 1.0));
+
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .header(WidgetApi.BOARD_ID_HEADER, "board-1")
+            .get("/widgets/export")
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .extract()
+            .asString();
+
+    // then
+    assertThat(
+        List.of(response.split("\n")), equalTo(List.of(objectMapper.writeValueAsString(widget))));
+  }
+
+  @Test
+  @DisplayName("should export empty board as empty body")
+  void shouldExportEmptyBoard() {
+    RestAssured.given()
+        .when()
+        .header(WidgetApi.BOARD_ID_HEADER, "missing")
+        .get("/widgets/export")
+        .then()
+        .statusCode(HttpStatus.OK.value())
+        .body(equalTo(""));
+  }
+
+  @Test
+  @DisplayName("should abort export when board is modified after response is committed")
+  void shouldAbortExportModifiedAfterCommit() throws Exception {
+    // given
+    var board = widgetRepository.board(ShardedWidgetRepository.DEFAULT_BOARD);
+    for (int i = 0; i < 200_000; i++) {
+      board.createWidget(new WidgetCreateRequest(i, i, null, 1.0, 1.0));
+    }
+    var connection =
+        (HttpURLConnection)
+            new URL("http://localhost:" + serverPort + "/widgets/export").openConnection();
+    assertThat(connection.getResponseCode(), equalTo(HttpStatus.OK.value()));
+    InputStream body = connection.getInputStream();
+    var buffer = new byte[64 * 1024];
+    body.readNBytes(buffer, 0, buffer.length);
+
+    // when
+    board.createWidget(new WidgetCreateRequest(0, 0, 0, 1.0, 1.0));
+
+    // then
+    assertThrows(
+        IOException.class,
+        () -> {
+          while (body.read(buffer) >= 0) {
+            // reading till the response ends
+          }
+        });
+  }
+}
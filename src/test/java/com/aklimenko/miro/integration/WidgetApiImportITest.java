@@ -0,0 +1,326 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.integration;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+import com.aklimenko.miro.api.WidgetApi;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetExport;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.restassured.RestAssured;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class WidgetApiImportITest {
+
+  @LocalServerPort private int serverPort;
+  @Autowired ShardedWidgetRepository widgetRepository;
+  @Autowired ObjectMapper objectMapper;
+
+  @BeforeEach
+  void restAssuredPort() {
+    RestAssured.port = serverPort;
+  }
+
+  @AfterEach
+  void cleanUp() {
+    widgetRepository.cleanUp();
+  }
+
+  /** Request body of unknown to RestAssured media type is sent as bytes. */
+  private static byte[] ndjson(final String lines) {
+    return lines.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private List<Widget> parse(final String ndjson) throws Exception {
+    var widgets = new ArrayList<Widget>();
+    for (var line : ndjson.split("\n")) {
+      widgets.add(objectMapper.readValue(line, Widget.class));
+    }
+    return widgets;
+  }
+
+  @Test
+  @DisplayName("should import widgets from newline-delimited JSON in the order of the lines")
+  void shouldImportWidgets() throws Exception {
+    // given
+    var body = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      var z = i % 2 == 0 ? Integer.valueOf(2000 - i) : null;
+      body.append(objectMapper.writeValueAsString(new WidgetCreateRequest(i, i, z, 1.0, 1.0)));
+      // blank lines and CRLF line endings are tolerated
+      body.append(i % 100 == 0 ? "\r\n\n" : "\n");
+    }
+
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .header(WidgetApi.BOARD_ID_HEADER, "board-1")
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(ndjson(body.toString()))
+            .post("/widgets/import")
+            .then()
+            .statusCode(HttpStatus.CREATED.value())
+            .contentType(startsWith(WidgetExport.MEDIA_TYPE_VALUE))
+            .header("X-Rate-Limit", notNullValue())
+            .extract()
+            .asString();
+
+    // then
+    var imported = parse(response);
+    assertThat(
+        imported.stream().map(Widget::getX).collect(Collectors.toList()),
+        equalTo(IntStream.range(0, 2000).boxed().collect(Collectors.toList())));
+    assertThat(imported.get(0).getZ(), equalTo(2000));
+    assertThat(imported.get(1).getZ(), equalTo(2001));
+    assertThat(imported.get(1998).getZ(), equalTo(2));
+    assertThat(imported.get(1999).getZ(), equalTo(3000));
+    var board = widgetRepository.board("board-1").listWidgets(Integer.MAX_VALUE, null);
+    assertThat(board.size(), equalTo(2000));
+    assertThat(board.get(0).getId(), equalTo(imported.get(1998).getId()));
+  }
+
+  @Test
+  @DisplayName("should import body read in several batches with lines split between them")
+  void shouldImportBodyOfSeveralBatches() {
+    // given
+    var body = new StringBuilder();
+    for (int i = 0; i < 300_000; i++) {
+      body.append("{\"x\":").append(i).append(",\"y\":1,\"width\":1,\"height\":1}\n");
+    }
+
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(ndjson(body.toString()))
+            .post("/widgets/import")
+            .then()
+            .statusCode(HttpStatus.CREATED.value())
+            .extract()
+            .asString();
+
+    // then
+    assertThat(response.split("\n").length, equalTo(300_000));
+    var board =
+        widgetRepository
+            .board(ShardedWidgetRepository.DEFAULT_BOARD)
+            .listWidgets(Integer.MAX_VALUE, null);
+    assertThat(
+        board.stream().map(Widget::getX).collect(Collectors.toList()),
+        equalTo(IntStream.range(0, 300_000).boxed().collect(Collectors.toList())));
+  }
+
+  @Test
+  @DisplayName("should return 429 while max amount of imports is processed")
+  void shouldRejectImportsBeyondConcurrencyLimit() throws Exception {
+    // given
+    var line = "{\"x\":1,\"y\":1,\"width\":1,\"height\":1}\n";
+    var pending = new ArrayList<HttpURLConnection>();
+    for (int i = 0; i < 2; i++) {
+      var connection =
+          (HttpURLConnection)
+              new URL("http://localhost:" + serverPort + "/widgets/import").openConnection();
+      connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", WidgetExport.MEDIA_TYPE_VALUE);
+      connection.setDoOutput(true);
+      connection.setChunkedStreamingMode(0);
+      connection.getOutputStream().write(ndjson(line));
+      connection.getOutputStream().flush();
+      pending.add(connection);
+    }
+
+    // when
+    // pending imports take their permits once their headers are dispatched
+    var rejected = HttpStatus.TOO_MANY_REQUESTS.value();
+    var status = HttpStatus.CREATED.value();
+    for (int attempt = 0; attempt < 50 && status != rejected; attempt++) {
+      Thread.sleep(100);
+      status =
+          RestAssured.given()
+              .when()
+              .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+              .body(ndjson(line))
+              .post("/widgets/import")
+              .statusCode();
+    }
+
+    // then
+    assertThat(status, equalTo(rejected));
+    for (var connection : pending) {
+      connection.getOutputStream().close();
+      assertThat(connection.getResponseCode(), equalTo(HttpStatus.CREATED.value()));
+    }
+    RestAssured.given()
+        .when()
+        .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+        .body(ndjson(line))
+        .post("/widgets/import")
+        .then()
+        .statusCode(HttpStatus.CREATED.value());
+  }
+
+  @Test
+  @DisplayName("should merge imported widgets with existing ones shifting them only as needed")
+  void shouldImportWidgetsBetweenExistingOnes() throws Exception {
+    // given
+    var board = widgetRepository.board(ShardedWidgetRepository.DEFAULT_BOARD);
+    var bottom = board.createWidget(new WidgetCreateRequest(1, 1, 1, 1.0, 1.0));
+    var middle = board.createWidget(new WidgetCreateRequest(1, 1, 2, 1.0, 1.0));
+    var top = board.createWidget(new WidgetCreateRequest(1, 1, 10, 1.0, 1.0));
+
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(ndjson("{\"x\":5,\"y\":5,\"z\":2,\"width\":1,\"height\":1}\n"))
+            .post("/widgets/import")
+            .then()
+            .statusCode(HttpStatus.CREATED.value())
+            .extract()
+            .asString();
+
+    // then
+    var imported = parse(response);
+    assertThat(imported.size(), equalTo(1));
+    assertThat(imported.get(0).getZ(), equalTo(2));
+    assertThat(board.readWidget(bottom.getId()).get(), equalTo(bottom));
+    assertThat(board.readWidget(middle.getId()).get().getZ(), equalTo(3));
+    assertThat(board.readWidget(top.getId()).get(), equalTo(top));
+  }
+
+  @Test
+  @DisplayName("should return 400 and import nothing if any line is malformed")
+  void shouldFailIfLineIsMalformed() {
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(
+                ndjson(
+                    "{\"x\":1,\"y\":1,\"width\":1,\"height\":1}\n"
+                        + "{\"x\":1,\"y\":1,\"width\":1,\n"))
+            .post("/widgets/import");
+
+    // then
+    response
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Invalid JSON input."));
+    assertThat(
+        widgetRepository.existingBoard(ShardedWidgetRepository.DEFAULT_BOARD).stream()
+            .mapToInt(board -> board.listWidgets(10, null).size())
+            .sum(),
+        equalTo(0));
+  }
+
+  @Test
+  @DisplayName("should return 400 if any line misses required field")
+  void shouldFailIfLineIsInvalid() {
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(
+                ndjson(
+                    "{\"x\":1,\"y\":1,\"width\":1,\"height\":1}\n"
+                        + "{\"x\":1,\"y\":1,\"width\":1}\n"))
+            .post("/widgets/import");
+
+    // then
+    response
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Field 'height' must be provided."));
+  }
+
+  @Test
+  @DisplayName("should return 400 if import is empty")
+  void shouldFailIfImportIsEmpty() {
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(ndjson("\n \n"))
+            .post("/widgets/import");
+
+    // then
+    response
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Import must contain from 1 to 1000000 widgets."));
+  }
+
+  @Test
+  @DisplayName("should return 400 if import has too many lines")
+  void shouldFailIfImportHasTooManyLines() {
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(ndjson("{\"x\":1,\"y\":1,\"width\":1,\"height\":1}\n".repeat(1_000_001)))
+            .post("/widgets/import");
+
+    // then
+    response
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Import must contain from 1 to 1000000 widgets."));
+  }
+
+  @Test
+  @DisplayName("should return 400 if any line is null")
+  void shouldFailIfLineIsNull() {
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(WidgetExport.MEDIA_TYPE_VALUE)
+            .body(ndjson("{\"x\":1,\"y\":1,\"width\":1,\"height\":1}\nnull\n"))
+            .post("/widgets/import");
+
+    // then
+    response
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Imported widgets must not be null."));
+  }
+}
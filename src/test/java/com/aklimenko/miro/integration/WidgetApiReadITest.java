@@ -14,12 +14,19 @@
 package com.aklimenko.miro.integration;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
+import com.aklimenko.miro.api.WidgetApi;
+import com.aklimenko.miro.model.pagination.Cursor;
+import com.aklimenko.miro.model.pagination.Pagination;
 import com.aklimenko.miro.model.widget.Widget;
-import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.restassured.RestAssured;
@@ -47,7 +54,7 @@ import org.springframework.http.MediaType;
 public class WidgetApiReadITest {
 
   @LocalServerPort private int serverPort;
-  @Autowired WidgetRepositoryImpl widgetRepository;
+  @Autowired ShardedWidgetRepository widgetRepository;
   @Autowired ObjectMapper objectMapper;
 
   @BeforeEach
@@ -60,14 +67,14 @@ public class WidgetApiReadITest {
     widgetRepository.cleanUp();
   }
 
-  private String linkHeader(final String uri, final int limit, final String afterId) {
+  private String linkHeader(final String uri, final int limit, final int z) {
     return "<http://localhost:"
         + serverPort
         + uri
         + "?limit="
         + limit
-        + "&afterId="
-        + afterId
+        + "&cursor="
+        + Cursor.of(z).encode()
         + ">; rel=\"next\"";
   }
 
@@ -124,7 +131,7 @@ public class WidgetApiReadITest {
       var createdWidgetResponse = HttpClientBuilder.create().build().execute(createWidgetRequest);
       var jsonFromResponse = EntityUtils.toString(createdWidgetResponse.getEntity());
       var widget = objectMapper.readValue(jsonFromResponse, new TypeReference<Widget>() {});
-      createdIds.add(widget.getId());
+      createdIds.add(widget.getId().toString());
     }
     System.out.println(createdIds);
 
@@ -136,7 +143,7 @@ public class WidgetApiReadITest {
         request
             .then()
             .statusCode(HttpStatus.OK.value())
-            .header("Link", equalTo(linkHeader("/widgets", 2, createdIds.get(1))))
+            .header("Link", equalTo(linkHeader("/widgets", 2, 2)))
             .extract()
             .body()
             .as(new TypeRef<List<Widget>>() {});
@@ -166,7 +173,7 @@ public class WidgetApiReadITest {
       var createdWidgetResponse = HttpClientBuilder.create().build().execute(createWidgetRequest);
       var jsonFromResponse = EntityUtils.toString(createdWidgetResponse.getEntity());
       var widget = objectMapper.readValue(jsonFromResponse, new TypeReference<Widget>() {});
-      createdIds.add(widget.getId());
+      createdIds.add(widget.getId().toString());
     }
     System.out.println(createdIds);
 
@@ -178,7 +185,7 @@ public class WidgetApiReadITest {
         request
             .then()
             .statusCode(HttpStatus.OK.value())
-            .header("Link", equalTo(linkHeader("/widgets", 2, createdIds.get(3))))
+            .header("Link", equalTo(linkHeader("/widgets", 2, 4)))
             .extract()
             .body()
             .as(new TypeRef<List<Widget>>() {});
@@ -195,6 +202,179 @@ public class WidgetApiReadITest {
     }
   }
 
+  @Test
+  @DisplayName("should read next widgets page by cursor after the last widget was deleted")
+  void shouldReadNextWidgetsPageByCursorAfterDeletion() throws IOException {
+    // given
+    var createdIds = new ArrayList<String>();
+    for (int i = 1; i <= 5; i++) {
+      var createWidgetRequest = new HttpPost("http://localhost:" + serverPort + "/widgets");
+      createWidgetRequest.setEntity(
+          new StringEntity("{\"x\":1,\"y\":1,\"z\":" + i + ",\"width\":1.0,\"height\":1.0}"));
+      createWidgetRequest.setHeader("Content-Type", MediaType.APPLICATION_JSON_VALUE);
+      var createdWidgetResponse = HttpClientBuilder.create().build().execute(createWidgetRequest);
+      var jsonFromResponse = EntityUtils.toString(createdWidgetResponse.getEntity());
+      var widget = objectMapper.readValue(jsonFromResponse, new TypeReference<Widget>() {});
+      createdIds.add(widget.getId().toString());
+    }
+    var cursor = Cursor.of(2).encode();
+    RestAssured.given().when().delete("/widgets/" + createdIds.get(1));
+
+    // when
+    var request =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .get("/widgets?limit=2&cursor=" + cursor);
+
+    // then
+    var response =
+        request
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .header("Link", equalTo(linkHeader("/widgets", 2, 4)))
+            .extract()
+            .body()
+            .as(new TypeRef<List<Widget>>() {});
+    assertThat(
+        response.stream().map(widget -> widget.getId().toString()).collect(Collectors.toList()),
+        equalTo(createdIds.subList(2, 4)));
+  }
+
+  @Test
+  @DisplayName("should reject malformed cursor")
+  void shouldRejectMalformedCursor() {
+    RestAssured.given()
+        .when()
+        .contentType(ContentType.JSON)
+        .get("/widgets?cursor=malformed")
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value());
+  }
+
+  @Test
+  @DisplayName("should reject listing after widget that no longer exists")
+  void shouldRejectListingAfterDeletedWidget() {
+    // given
+    var board = widgetRepository.board(ShardedWidgetRepository.DEFAULT_BOARD);
+    var deleted = board.createWidget(new WidgetCreateRequest(1, 1, 1, 1.0, 1.0));
+    board.createWidget(new WidgetCreateRequest(1, 1, 2, 1.0, 1.0));
+    board.deleteWidget(deleted.getId());
+
+    // when / then
+    RestAssured.given()
+        .when()
+        .contentType(ContentType.JSON)
+        .get("/widgets?limit=2&afterId=" + deleted.getId())
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body(
+            "error",
+            equalTo(
+                "Widget 'afterId' no longer exists, resume the listing by the 'cursor' of its"
+                    + " page."));
+  }
+
+  @Test
+  @DisplayName("should stream widgets beyond the page limit without link header")
+  void shouldStreamWidgets() {
+    // given
+    var board = widgetRepository.board(ShardedWidgetRepository.DEFAULT_BOARD);
+    var createdIds = new ArrayList<String>();
+    for (int i = 1; i <= Pagination.MAX_LIMIT + 100; i++) {
+      createdIds.add(
+          board.createWidget(new WidgetCreateRequest(1, 1, i, 1.0, 1.0)).getId().toString());
+    }
+
+    // when
+    var request =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .get(
+                "/widgets?stream=true&limit="
+                    + (Pagination.MAX_LIMIT + 50)
+                    + "&afterId="
+                    + createdIds.get(9));
+
+    // then
+    var response =
+        request
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .header("Link", nullValue())
+            .extract()
+            .body()
+            .as(new TypeRef<List<Widget>>() {});
+    assertThat(
+        response.stream().map(widget -> widget.getId().toString()).collect(Collectors.toList()),
+        equalTo(createdIds.subList(10, Pagination.MAX_LIMIT + 60)));
+  }
+
+  @Test
+  @DisplayName("should resume stream by z-index of the last streamed widget")
+  void shouldResumeStreamByZIndex() {
+    // given
+    var board = widgetRepository.board(ShardedWidgetRepository.DEFAULT_BOARD);
+    var createdIds = new ArrayList<String>();
+    for (int i = 1; i <= 20; i++) {
+      createdIds.add(
+          board.createWidget(new WidgetCreateRequest(1, 1, i * 2, 1.0, 1.0)).getId().toString());
+    }
+    var last = board.readWidget(WidgetId.tryParse(createdIds.get(9)).orElseThrow()).orElseThrow();
+    board.deleteWidget(last.getId());
+
+    // when
+    var response =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .get("/widgets?stream=true&limit=5&afterZ=" + last.getZ())
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .extract()
+            .body()
+            .as(new TypeRef<List<Widget>>() {});
+
+    // then
+    assertThat(
+        response.stream().map(widget -> widget.getId().toString()).collect(Collectors.toList()),
+        equalTo(createdIds.subList(10, 15)));
+  }
+
+  @Test
+  @DisplayName("should reject stream after widget that no longer exists")
+  void shouldRejectStreamAfterDeletedWidget() {
+    // given
+    var board = widgetRepository.board(ShardedWidgetRepository.DEFAULT_BOARD);
+    var deleted = board.createWidget(new WidgetCreateRequest(1, 1, 1, 1.0, 1.0));
+    board.createWidget(new WidgetCreateRequest(1, 1, 2, 1.0, 1.0));
+    board.deleteWidget(deleted.getId());
+
+    // when / then
+    RestAssured.given()
+        .when()
+        .contentType(ContentType.JSON)
+        .get("/widgets?stream=true&afterId=" + deleted.getId())
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body(
+            "error",
+            equalTo("Widget 'afterId' no longer exists, resume the stream by its 'afterZ'."));
+  }
+
+  @Test
+  @DisplayName("should reject bounding box when streaming widgets")
+  void shouldRejectBoundingBoxWhenStreaming() {
+    RestAssured.given()
+        .when()
+        .contentType(ContentType.JSON)
+        .get("/widgets?stream=true&bbox=0,0,100,100")
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("error", equalTo("Bounding box is not supported by streamed listing."));
+  }
+
   @Test
   @DisplayName("should read single widget by id")
   void shouldReadWidgetsById() throws IOException {
@@ -219,7 +399,7 @@ public class WidgetApiReadITest {
             .extract()
             .body()
             .as(new TypeRef<List<Widget>>() {});
-    var id = widgets.get(2).getId();
+    var id = widgets.get(2).getId().toString();
 
     // when
     var request = RestAssured.given().when().contentType(ContentType.JSON).get("/widgets/" + id);
@@ -251,4 +431,162 @@ public class WidgetApiReadITest {
         .body("status", equalTo(HttpStatus.NOT_FOUND.value()))
         .body("error", equalTo("Widget [id=123-456-789] not found."));
   }
+
+  @Test
+  @DisplayName("should read widgets of requested board only")
+  void shouldReadWidgetsOfRequestedBoard() {
+    // given
+    for (var board : List.of("first", "second")) {
+      RestAssured.given()
+          .when()
+          .contentType(ContentType.JSON)
+          .header(WidgetApi.BOARD_ID_HEADER, board)
+          .body("{\"x\":1,\"y\":1,\"z\":1,\"width\":1.0,\"height\":1.0}")
+          .post("/widgets")
+          .then()
+          .statusCode(HttpStatus.CREATED.value());
+    }
+
+    // when
+    var request =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .header(WidgetApi.BOARD_ID_HEADER, "first")
+            .get("/widgets");
+
+    // then
+    var response =
+        request
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .extract()
+            .body()
+            .as(new TypeRef<List<Widget>>() {});
+    assertThat(response.size(), equalTo(1));
+    assertThat(response.get(0).getZ(), equalTo(1));
+    RestAssured.given()
+        .when()
+        .contentType(ContentType.JSON)
+        .header(WidgetApi.BOARD_ID_HEADER, "second")
+        .get("/widgets/" + response.get(0).getId())
+        .then()
+        .statusCode(HttpStatus.NOT_FOUND.value());
+    RestAssured.given()
+        .when()
+        .contentType(ContentType.JSON)
+        .get("/widgets")
+        .then()
+        .statusCode(HttpStatus.OK.value())
+        .body("size()", equalTo(0));
+  }
+
+  @Test
+  @DisplayName("should read widgets intersecting requested area")
+  void shouldReadWidgetsInArea() {
+    // given
+    for (var position : List.of("50,50,1", "50,100,2", "100,100,3", "200,200,4")) {
+      var coordinates = position.split(",");
+      RestAssured.given()
+          .when()
+          .contentType(ContentType.JSON)
+          .body(
+              String.format(
+                  "{\"x\":%s,\"y\":%s,\"z\":%s,\"width\":100.0,\"height\":100.0}",
+                  coordinates[0], coordinates[1], coordinates[2]))
+          .post("/widgets")
+          .then()
+          .statusCode(HttpStatus.CREATED.value());
+    }
+
+    // when
+    var request =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .get("/widgets?limit=2&bbox=0,0,100,150");
+
+    // then
+    var response =
+        request
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .header("Link", containsString("bbox=0%2C0%2C100%2C150"))
+            .extract()
+            .body()
+            .as(new TypeRef<List<Widget>>() {});
+    assertThat(response.size(), equalTo(2));
+    assertThat(response.get(0).getY(), equalTo(50));
+    assertThat(response.get(1).getY(), equalTo(100));
+    assertThat(response.get(1).getZ(), equalTo(2));
+  }
+
+  @Test
+  @DisplayName("should return 400 if bounding box is malformed")
+  void shouldFailIfBoundingBoxMalformed() {
+    // when
+    var request =
+        RestAssured.given().when().contentType(ContentType.JSON).get("/widgets?bbox=0,0,100");
+
+    // then
+    request
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("status", equalTo(HttpStatus.BAD_REQUEST.value()))
+        .body("error", equalTo("Bounding box must be provided as 'minX,minY,maxX,maxY'."));
+  }
+
+  @Test
+  @DisplayName("should hit test topmost widgets covering the point")
+  void shouldHitTestWidgets() {
+    // given
+    for (var position : List.of("0,0,1", "5,5,2", "50,50,3")) {
+      var coordinates = position.split(",");
+      RestAssured.given()
+          .when()
+          .contentType(ContentType.JSON)
+          .body(
+              String.format(
+                  "{\"x\":%s,\"y\":%s,\"z\":%s,\"width\":10.0,\"height\":10.0}",
+                  coordinates[0], coordinates[1], coordinates[2]))
+          .post("/widgets")
+          .then()
+          .statusCode(HttpStatus.CREATED.value());
+    }
+
+    // when
+    var topmost =
+        RestAssured.given().when().contentType(ContentType.JSON).get("/widgets/hit?x=2&y=2.5");
+    var all =
+        RestAssured.given()
+            .when()
+            .contentType(ContentType.JSON)
+            .get("/widgets/hit?x=2&y=2.5&limit=5");
+
+    // then
+    topmost
+        .then()
+        .statusCode(HttpStatus.OK.value())
+        .body("size()", equalTo(1))
+        .body("[0].z", equalTo(2));
+    all.then()
+        .statusCode(HttpStatus.OK.value())
+        .body("size()", equalTo(2))
+        .body("[0].z", equalTo(2))
+        .body("[1].z", equalTo(1));
+  }
+
+  @Test
+  @DisplayName("should return 400 if hit test point is not provided")
+  void shouldFailIfHitTestPointMissing() {
+    // when
+    var request = RestAssured.given().when().contentType(ContentType.JSON).get("/widgets/hit?x=1");
+
+    // then
+    request
+        .then()
+        .statusCode(HttpStatus.BAD_REQUEST.value())
+        .body("status", equalTo(HttpStatus.BAD_REQUEST.value()))
+        .body("error", equalTo("Point coordinate 'y' must be provided."));
+  }
 }
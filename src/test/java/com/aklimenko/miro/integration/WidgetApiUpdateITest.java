@@ -18,7 +18,7 @@ import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
 
 import com.aklimenko.miro.model.widget.Widget;
-import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.restassured.RestAssured;
@@ -47,7 +47,7 @@ import org.springframework.http.MediaType;
 public class WidgetApiUpdateITest {
 
   @LocalServerPort private int serverPort;
-  @Autowired WidgetRepositoryImpl widgetRepository;
+  @Autowired ShardedWidgetRepository widgetRepository;
   @Autowired ObjectMapper objectMapper;
 
   @BeforeEach
@@ -84,7 +84,7 @@ public class WidgetApiUpdateITest {
     request
         .then()
         .statusCode(HttpStatus.OK.value())
-        .body("id", equalTo(widget.getId()))
+        .body("id", equalTo(widget.getId().toString()))
         .body("x", equalTo(2))
         .body("y", equalTo(2))
         .body("z", equalTo(2))
@@ -108,7 +108,7 @@ public class WidgetApiUpdateITest {
       var createdWidgetResponse = HttpClientBuilder.create().build().execute(createWidgetRequest);
       var jsonFromResponse = EntityUtils.toString(createdWidgetResponse.getEntity());
       var widget = objectMapper.readValue(jsonFromResponse, new TypeReference<Widget>() {});
-      ids.add(widget.getId());
+      ids.add(widget.getId().toString());
     }
     var id = ids.get(0);
 
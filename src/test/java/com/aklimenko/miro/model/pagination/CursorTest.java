@@ -0,0 +1,58 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.pagination;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.exception.RequestValidationException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class CursorTest {
+
+  @Test
+  @DisplayName("should encode cursor into url safe token and decode it back")
+  void shouldEncodeAndDecodeCursor() {
+    var lowest = Cursor.of(Integer.MIN_VALUE);
+    var highest = Cursor.of(Integer.MAX_VALUE);
+
+    assertThat(lowest.encode(), matchesPattern("[A-Za-z0-9_-]+"));
+    assertThat(Cursor.decode(lowest.encode()), equalTo(lowest));
+    assertThat(Cursor.decode(highest.encode()), equalTo(highest));
+  }
+
+  @Test
+  @DisplayName("should encode cursor with version and decode it back")
+  void shouldEncodeAndDecodeVersionedCursor() {
+    var cursor = Cursor.of(-5, Long.MAX_VALUE);
+    var unversioned = Cursor.of(-5);
+
+    assertThat(Cursor.decode(cursor.encode()), equalTo(cursor));
+    assertThat(Cursor.decode(cursor.encode()).getVersion(), equalTo(Long.MAX_VALUE));
+    assertThat(Cursor.decode(unversioned.encode()).getVersion(), nullValue());
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"", "not base64!", "YWJj", "NDIu", "LjE", "NDIuMTJh", "NDIuMS4y"})
+  @DisplayName("should throw when cursor token is malformed")
+  void shouldThrowWhenCursorMalformed(final String token) {
+    assertThrows(RequestValidationException.class, () -> Cursor.decode(token));
+  }
+}
@@ -17,6 +17,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
@@ -46,9 +47,9 @@ public class PageTest {
   @Test
   @DisplayName("should not throw when creating a page")
   void shouldNotThrowOnPageCreation() {
-    var widget = new Widget("id", 1, 1, 1, 1.0, 1.0, Instant.now());
-    var pagination = Pagination.of(10, null);
-    new Page<>(Collections.singletonList(widget), pagination, Widget::getId);
+    var widget = new Widget(WidgetId.ulid(0, 1), 1, 1, 1, 1.0, 1.0, Instant.now());
+    var pagination = Pagination.of(10, null, null);
+    new Page<>(Collections.singletonList(widget), pagination, w -> Cursor.of(w.getZ()));
   }
 
   @Test
@@ -56,38 +57,40 @@ public class PageTest {
   void shouldReturnLimitedAmountOfResponseEntities() {
     var widgets =
         IntStream.range(0, 10)
-            .mapToObj(i -> new Widget(String.valueOf(i), i, i, i, i, i, Instant.now()))
+            .mapToObj(i -> new Widget(WidgetId.ulid(0, i), i, i, i, i, i, Instant.now()))
             .collect(Collectors.toUnmodifiableList());
-    var pagination = Pagination.of(3, null);
-    var page = new Page<>(widgets, pagination, Widget::getId);
+    var pagination = Pagination.of(3, null, null);
+    var page = new Page<>(widgets, pagination, w -> Cursor.of(w.getZ()));
 
     assertThat(page.getResponseEntities().size(), equalTo(3));
   }
 
   @Test
-  @DisplayName("should return afterId when response.size() >= limit")
-  void shouldReturnAfterIdWhenResponseSizeNotLessThanLimit() {
+  @DisplayName("should return next cursor when response.size() >= limit")
+  void shouldReturnNextCursorWhenResponseSizeNotLessThanLimit() {
     var widgets =
         IntStream.range(0, 10)
-            .mapToObj(i -> new Widget(String.valueOf(i), i, i, i, i, i, Instant.now()))
+            .mapToObj(i -> new Widget(WidgetId.ulid(0, i), i, i, i, i, i, Instant.now()))
             .collect(Collectors.toUnmodifiableList());
-    var pagination = Pagination.of(3, null);
-    var page = new Page<>(widgets, pagination, Widget::getId);
+    var pagination = Pagination.of(3, null, null);
+    var page = new Page<>(widgets, pagination, w -> Cursor.of(w.getZ()));
 
-    assertThat(page.getAfterId().get(), equalTo(widgets.get(2).getId()));
+    assertThat(
+        Cursor.decode(page.getNextCursor().get()),
+        equalTo(Cursor.of(2)));
   }
 
   @Test
-  @DisplayName("should return empty afterId when response.size() < limit")
-  void shouldReturnEmptyAfterIdWhenResponseSizeLessThanLimit() {
+  @DisplayName("should return empty next cursor when response.size() < limit")
+  void shouldReturnEmptyNextCursorWhenResponseSizeLessThanLimit() {
     var widgets =
         IntStream.range(0, 3)
-            .mapToObj(i -> new Widget(String.valueOf(i), i, i, i, i, i, Instant.now()))
+            .mapToObj(i -> new Widget(WidgetId.ulid(0, i), i, i, i, i, i, Instant.now()))
             .collect(Collectors.toUnmodifiableList());
-    var pagination = Pagination.of(5, null);
-    var page = new Page<>(widgets, pagination, Widget::getId);
+    var pagination = Pagination.of(5, null, null);
+    var page = new Page<>(widgets, pagination, w -> Cursor.of(w.getZ()));
 
-    assertThat(page.getAfterId(), equalTo(Optional.empty()));
+    assertThat(page.getNextCursor(), equalTo(Optional.empty()));
   }
 
   @Test
@@ -96,15 +99,15 @@ public class PageTest {
     var timestamp = Instant.ofEpochMilli(1601200349538L);
     var widgets =
         IntStream.range(0, 3)
-            .mapToObj(i -> new Widget(String.valueOf(i), i, i, i, i, i, timestamp))
+            .mapToObj(i -> new Widget(WidgetId.ulid(0, i), i, i, i, i, i, timestamp))
             .collect(Collectors.toUnmodifiableList());
-    var pagination = Pagination.of(5, null);
-    var page = new Page<>(widgets, pagination, Widget::getId);
+    var pagination = Pagination.of(5, null, null);
+    var page = new Page<>(widgets, pagination, w -> Cursor.of(w.getZ()));
     var json = objectMapper.writeValueAsString(page);
 
     assertThat(
         json,
         equalTo(
-            "[{\"id\":\"0\",\"x\":0,\"y\":0,\"z\":0,\"width\":0.0,\"height\":0.0,\"lastModifiedAt\":1601200349538},{\"id\":\"1\",\"x\":1,\"y\":1,\"z\":1,\"width\":1.0,\"height\":1.0,\"lastModifiedAt\":1601200349538},{\"id\":\"2\",\"x\":2,\"y\":2,\"z\":2,\"width\":2.0,\"height\":2.0,\"lastModifiedAt\":1601200349538}]"));
+            "[{\"id\":\"00000000000000000000000000\",\"x\":0,\"y\":0,\"z\":0,\"width\":0.0,\"height\":0.0,\"lastModifiedAt\":1601200349538},{\"id\":\"00000000000000000000000001\",\"x\":1,\"y\":1,\"z\":1,\"width\":1.0,\"height\":1.0,\"lastModifiedAt\":1601200349538},{\"id\":\"00000000000000000000000002\",\"x\":2,\"y\":2,\"z\":2,\"width\":2.0,\"height\":2.0,\"lastModifiedAt\":1601200349538}]"));
   }
 }
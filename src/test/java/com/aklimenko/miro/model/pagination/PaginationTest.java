@@ -26,24 +26,43 @@ public class PaginationTest {
   @Test
   @DisplayName("should not throw when creating valid pagination")
   void shouldNotThrowWhenCreatingValidPagination() {
-    Pagination.of(100, "123-456");
-    Pagination.of(100, null);
-    Pagination.of(null, null);
+    Pagination.of(100, "123-456", null);
+    Pagination.of(100, null, Cursor.of(5).encode());
+    Pagination.of(100, null, null);
+    Pagination.of(null, null, null);
   }
 
   @Test
   @DisplayName("should set pagination parameters")
   void shouldSetPaginationParameters() {
-    var pagination = Pagination.of(100, "123-456");
+    var pagination = Pagination.of(100, "123-456", null);
 
     assertThat(pagination.getLimit(), equalTo(100));
     assertThat(pagination.getAfterId(), equalTo("123-456"));
   }
 
+  @Test
+  @DisplayName("should decode pagination cursor")
+  void shouldDecodePaginationCursor() {
+    var cursor = Cursor.of(5);
+    var pagination = Pagination.of(100, null, cursor.encode());
+
+    assertThat(pagination.getCursor(), equalTo(cursor));
+  }
+
+  @Test
+  @DisplayName("should throw when both cursor and afterId provided")
+  void shouldThrowWhenBothCursorAndAfterIdProvided() {
+    var cursor = Cursor.of(5).encode();
+
+    assertThrows(
+        RequestValidationException.class, () -> Pagination.of(10, "123-456", cursor));
+  }
+
   @Test
   @DisplayName("should set default pagination limit")
   void shouldSetDefaultPaginationLimit() {
-    var pagination = Pagination.of(null, null);
+    var pagination = Pagination.of(null, null, null);
 
     assertThat(pagination.getLimit(), equalTo(Pagination.DEFAULT_LIMIT));
   }
@@ -52,6 +71,29 @@ public class PaginationTest {
   @DisplayName("should throw when pagination limit exceeded")
   void shouldThrowWhenPaginationLimitExceeded() {
     assertThrows(
-        RequestValidationException.class, () -> Pagination.of(Pagination.MAX_LIMIT + 1, null));
+        RequestValidationException.class,
+        () -> Pagination.of(Pagination.MAX_LIMIT + 1, null, null));
+  }
+
+  @Test
+  @DisplayName("should allow larger limit for streamed pages")
+  void shouldAllowLargerLimitForStreamedPages() {
+    var pagination = Pagination.ofStream(Pagination.MAX_STREAM_LIMIT, null, null, null);
+
+    assertThat(pagination.getLimit(), equalTo(Pagination.MAX_STREAM_LIMIT));
+    assertThrows(
+        RequestValidationException.class,
+        () -> Pagination.ofStream(Pagination.MAX_STREAM_LIMIT + 1, null, null, null));
+  }
+
+  @Test
+  @DisplayName("should resume streamed page by z-index only")
+  void shouldResumeStreamedPageByZIndexOnly() {
+    var cursor = Cursor.of(5).encode();
+
+    assertThat(Pagination.ofStream(10, null, 5, null).getAfterZ(), equalTo(5));
+    assertThrows(
+        RequestValidationException.class, () -> Pagination.ofStream(10, "123-456", 5, null));
+    assertThrows(RequestValidationException.class, () -> Pagination.ofStream(10, null, 5, cursor));
   }
 }
@@ -0,0 +1,78 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.pagination;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class StreamedPageTest {
+
+  private static ObjectMapper objectMapper;
+
+  @BeforeAll
+  static void prepareMapper() {
+    objectMapper =
+        new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS)
+            .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  }
+
+  @Test
+  @DisplayName("should serialize limited amount of entities into JSON array")
+  void shouldSerializeLimitedAmountOfEntities() throws JsonProcessingException {
+    var widgets =
+        IntStream.range(0, 10)
+            .mapToObj(i -> new Widget(WidgetId.ulid(0, i), i, i, i, i, i, Instant.now()))
+            .collect(Collectors.toUnmodifiableList());
+    var iterator = widgets.iterator();
+    var page = new StreamedPage<>(iterator, Pagination.ofStream(3, null, null, null));
+
+    var json = objectMapper.writeValueAsString(page);
+
+    assertThat(
+        objectMapper.readValue(json, new TypeReference<List<Widget>>() {}).stream()
+            .map(Widget::getId)
+            .collect(Collectors.toList()),
+        equalTo(widgets.subList(0, 3).stream().map(Widget::getId).collect(Collectors.toList())));
+    assertThat(iterator.next(), equalTo(widgets.get(3)));
+  }
+
+  @Test
+  @DisplayName("should serialize empty iterator into empty JSON array")
+  void shouldSerializeEmptyIterator() throws JsonProcessingException {
+    var page =
+        new StreamedPage<>(
+            Collections.emptyIterator(), Pagination.ofStream(3, null, null, null));
+
+    assertThat(objectMapper.writeValueAsString(page), is("[]"));
+  }
+}
@@ -38,11 +38,11 @@ public class RateLimitRuleResponseTest {
   @Test
   @DisplayName("should serialize rate limit rule response into valid JSON")
   void shouldSerializeIntoValidJSON() throws JsonProcessingException {
-    var response = new RateLimitRuleResponse(50000, 1000, 100, 200, 300, 400, -1);
+    var response = new RateLimitRuleResponse(50000, 1000, 100, 200, 300, 400, -1, 10, 5, 3);
     var json = objectMapper.writeValueAsString(response);
     System.out.println(json);
     assertEquals(
-        "{\"windowSizeMS\":50000,\"limitGlobal\":1000,\"limitListWidgets\":100,\"limitReadWidget\":200,\"limitCreateWidget\":300,\"limitUpdateWidget\":400,\"limitDeleteWidget\":-1}",
+        "{\"windowSizeMS\":50000,\"limitGlobal\":1000,\"limitListWidgets\":100,\"limitReadWidget\":200,\"limitCreateWidget\":300,\"limitUpdateWidget\":400,\"limitDeleteWidget\":-1,\"limitBatchWidgets\":10,\"limitExportWidgets\":5,\"limitImportWidgets\":3}",
         json);
   }
 }
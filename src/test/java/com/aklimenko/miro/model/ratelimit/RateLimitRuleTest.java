@@ -15,12 +15,15 @@ package com.aklimenko.miro.model.ratelimit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.exception.RequestValidationException;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -56,7 +59,8 @@ public class RateLimitRuleTest {
   @Test
   @DisplayName("should be modified by nonnull params of rate limit rule update request")
   void shouldBeUpdatedByRateLimitRuleUpdateRequest() {
-    var update = new RateLimitRuleUpdateRequest(100000, 100, null, null, null, 20, null);
+    var update =
+        new RateLimitRuleUpdateRequest(100000, 100, null, null, null, 20, null, null, null, null);
     var rule = new RateLimitRule(config); // rule with default values
     rule.updateBy(update);
 
@@ -87,5 +91,49 @@ public class RateLimitRuleTest {
     assertThat(response.getLimitListWidgets(), equalTo(777));
     assertThat(response.getLimitReadWidget(), equalTo(-1));
     assertThat(response.getLimitUpdateWidget(), equalTo(-1));
+    assertThat(response.getLimitBatchWidgets(), equalTo(-1));
+    assertThat(response.getLimitExportWidgets(), equalTo(-1));
+    assertThat(response.getLimitImportWidgets(), equalTo(-1));
+  }
+
+  @Test
+  @DisplayName("should not publish invalid rate limit rule update")
+  void shouldRejectInvalidRateLimitRuleUpdate() {
+    var rule = new RateLimitRule(config);
+    var snapshot = rule.snapshot();
+
+    assertThrows(
+        RequestValidationException.class,
+        () ->
+            rule.updateBy(
+                new RateLimitRuleUpdateRequest(
+                    0, 100, null, null, null, null, null, null, null, null)));
+    assertThrows(
+        RequestValidationException.class,
+        () ->
+            rule.updateBy(
+                new RateLimitRuleUpdateRequest(
+                    null, 100, -2, null, null, null, null, null, null, null)));
+
+    assertThat(rule.snapshot(), sameInstance(snapshot));
+    assertThat(rule.getLimit(RateLimitTarget.GLOBAL), equalTo(-1));
+  }
+
+  @Test
+  @DisplayName("should publish new snapshot keeping previous one intact")
+  void shouldPublishNewSnapshot() {
+    var rule = new RateLimitRule(config);
+    var previous = rule.snapshot();
+
+    var published =
+        rule.updateBy(
+            new RateLimitRuleUpdateRequest(
+                1000, 100, null, null, null, null, null, null, null, null));
+
+    assertThat(rule.snapshot(), sameInstance(published));
+    assertThat(published.getWindowSizeMS(), equalTo(1000));
+    assertThat(published.getLimit(RateLimitTarget.GLOBAL), equalTo(100));
+    assertThat(previous.getWindowSizeMS(), equalTo(config.getRateLimit().getWindowSizeMS()));
+    assertThat(previous.getLimit(RateLimitTarget.GLOBAL), equalTo(-1));
   }
 }
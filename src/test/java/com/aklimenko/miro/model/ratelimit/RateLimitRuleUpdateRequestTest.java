@@ -41,6 +41,9 @@ public class RateLimitRuleUpdateRequestTest {
     assertThat(request.getLimitListWidgets(), nullValue());
     assertThat(request.getLimitReadWidget(), nullValue());
     assertThat(request.getLimitUpdateWidget(), nullValue());
+    assertThat(request.getLimitBatchWidgets(), nullValue());
+    assertThat(request.getLimitExportWidgets(), nullValue());
+    assertThat(request.getLimitImportWidgets(), nullValue());
   }
 
   @Test
@@ -57,6 +60,6 @@ public class RateLimitRuleUpdateRequestTest {
     assertThat(
         cause.getMessage(),
         equalTo(
-            "At least one of the fields 'windowSizeMS', 'limitGlobal', 'limitListWidgets', 'limitReadWidget', 'limitCreateWidget', 'limitUpdateWidget', 'limitDeleteWidget' must be provided."));
+            "At least one of the fields 'windowSizeMS', 'limitGlobal', 'limitListWidgets', 'limitReadWidget', 'limitCreateWidget', 'limitUpdateWidget', 'limitDeleteWidget', 'limitBatchWidgets', 'limitExportWidgets', 'limitImportWidgets' must be provided."));
   }
 }
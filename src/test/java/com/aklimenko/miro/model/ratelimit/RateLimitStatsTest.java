@@ -15,6 +15,7 @@ package com.aklimenko.miro.model.ratelimit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -40,4 +41,17 @@ public class RateLimitStatsTest {
     assertThat(stats.getAvailableRequests(), equalTo("unlimited"));
     assertThat(stats.getNextReset(), equalTo("1601200349538"));
   }
+
+  @Test
+  @DisplayName("should reuse formatted values of recent stats")
+  void shouldReuseFormattedValues() {
+    var first = RateLimitStats.of(Integer.MAX_VALUE, 4095, 1601200349538L);
+    var second = RateLimitStats.of(Integer.MAX_VALUE, 4095, 1601200349538L);
+    assertThat(first.getRateLimit(), equalTo("2147483647"));
+    assertThat(second.getRateLimit(), sameInstance(first.getRateLimit()));
+    assertThat(second.getAvailableRequests(), sameInstance(first.getAvailableRequests()));
+    assertThat(second.getNextReset(), sameInstance(first.getNextReset()));
+    assertThat(RateLimitStats.of(-1, -5, 4096).getAvailableRequests(), equalTo("-5"));
+    assertThat(RateLimitStats.of(-1, -5, 4096).getNextReset(), equalTo("4096"));
+  }
 }
@@ -19,6 +19,7 @@ import static org.hamcrest.Matchers.equalTo;
 import java.util.Optional;
 import java.util.stream.Stream;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
 public class RateLimitTargetTest {
@@ -60,7 +61,10 @@ public class RateLimitTargetTest {
         new RequestTarget(
             "DELETE",
             "/widgets/db2ab48b-e258-4045-ad84-5b0ad25b29cc",
-            RateLimitTarget.WIDGET_DELETE));
+            RateLimitTarget.WIDGET_DELETE),
+        new RequestTarget("POST", "/widgets/batch", RateLimitTarget.WIDGETS_BATCH),
+        new RequestTarget("GET", "/widgets/export", RateLimitTarget.WIDGETS_EXPORT),
+        new RequestTarget("POST", "/widgets/import", RateLimitTarget.WIDGETS_IMPORT));
   }
 
   static Stream<RequestTarget> invalidRequests() {
@@ -86,4 +90,39 @@ public class RateLimitTargetTest {
     var resolvedTarget = RateLimitTarget.of(target.method, target.uri);
     assertThat(resolvedTarget, equalTo(Optional.empty()));
   }
+
+  @ParameterizedTest
+  @CsvSource({
+    "GET, /widgets/",
+    "GET, /widgets/hit",
+    "GET, /widgets/abc/",
+    "GET, /widgets//",
+    "GET, //widgets",
+    "GET, /widgets/a/b",
+    "GET, /",
+    "GET, ''",
+    "GET, widgets",
+    "GET, /widgetsx",
+    "GET, /wid%67ets",
+    "GET, /widgets;v=1/abc",
+    "PATCH, /widgets/abc",
+    "HEAD, /widgets",
+    "POST, /widgets/",
+    "DELETE, /widgets/abc/",
+    "POST, /widgets/batch/",
+    "POST, /widgets/batch/abc",
+    "PUT, /widgets/batch",
+    "GET, /widgets/export",
+    "GET, /widgets/export/",
+    "GET, /widgets/export/abc",
+    "DELETE, /widgets/export",
+    "POST, /widgets/import",
+    "POST, /widgets/import/",
+    "PUT, /widgets/import"
+  })
+  void shouldResolveSameTargetAsPathPatterns(final String method, final String uri) {
+    assertThat(
+        RateLimitTarget.resolve(method, uri),
+        equalTo(RateLimitTarget.matchPatterns(method, uri)));
+  }
 }
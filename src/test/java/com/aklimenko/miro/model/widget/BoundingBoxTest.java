@@ -0,0 +1,73 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.exception.RequestValidationException;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class BoundingBoxTest {
+
+  private static Widget widget(final long id, final int x, final int y) {
+    return new Widget(WidgetId.ulid(0, id), x, y, (int) id, 100.0, 100.0, Instant.EPOCH);
+  }
+
+  @Test
+  @DisplayName("should parse bounding box")
+  void shouldParseBoundingBox() {
+    var box = BoundingBox.parse(" 0, -10.5,100 ,150");
+    assertThat(box, equalTo(BoundingBox.of(0, -10.5, 100, 150)));
+    assertThat(box.getMinX(), equalTo(0.0));
+    assertThat(box.getMinY(), equalTo(-10.5));
+    assertThat(box.getMaxX(), equalTo(100.0));
+    assertThat(box.getMaxY(), equalTo(150.0));
+  }
+
+  @Test
+  @DisplayName("should fail to parse malformed bounding box")
+  void shouldThrowWhenParsingMalformedBoundingBox() {
+    for (var text : List.of("", "0,0,100", "0,0,100,150,1", "a,0,100,150")) {
+      var ex = assertThrows(RequestValidationException.class, () -> BoundingBox.parse(text));
+      assertThat(
+          ex.getMessage(), equalTo("Bounding box must be provided as 'minX,minY,maxX,maxY'."));
+    }
+    var inverted =
+        assertThrows(RequestValidationException.class, () -> BoundingBox.parse("0,0,-1,1"));
+    assertThat(
+        inverted.getMessage(),
+        equalTo("Bounding box lower-left corner must not exceed its upper-right corner."));
+    var infinite =
+        assertThrows(RequestValidationException.class, () -> BoundingBox.parse("0,0,Infinity,1"));
+    assertThat(infinite.getMessage(), equalTo("Bounding box edges must be finite numbers."));
+  }
+
+  @Test
+  @DisplayName("should match widgets intersecting bounding box")
+  void shouldMatchIntersectingWidgets() {
+    var widgets =
+        List.of(widget(1, 50, 50), widget(2, 50, 100), widget(3, 100, 100), widget(4, 200, 200));
+    var box = BoundingBox.of(0, 0, 100, 150);
+    var matched =
+        widgets.stream().filter(box::intersects).map(Widget::getZ).collect(Collectors.toList());
+    assertThat(matched, equalTo(List.of(1, 2, 3)));
+    assertThat(BoundingBox.of(widget(5, 0, 0)), equalTo(BoundingBox.of(-50, -50, 50, 50)));
+  }
+}
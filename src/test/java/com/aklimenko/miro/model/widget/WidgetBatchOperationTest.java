@@ -0,0 +1,82 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.exception.RequestValidationException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidTypeIdException;
+import com.fasterxml.jackson.databind.exc.ValueInstantiationException;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class WidgetBatchOperationTest {
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  @DisplayName("should deserialize list of WidgetBatchOperation")
+  void shouldDeserializeWidgetBatchOperations() throws JsonProcessingException {
+    var json =
+        "[{\"op\":\"create\",\"widget\":{\"x\":1,\"y\":2,\"width\":3.0,\"height\":4.0}},"
+            + "{\"op\":\"update\",\"id\":\"abc\",\"widget\":{\"z\":5}},"
+            + "{\"op\":\"delete\",\"id\":\"01EQ2XMPH9M2QCSXRBM8Z6BNEK\"}]";
+    var operations =
+        objectMapper.readValue(json, new TypeReference<List<WidgetBatchOperation>>() {});
+
+    assertThat(operations.size(), equalTo(3));
+    assertThat(operations.get(0), instanceOf(WidgetBatchOperation.Create.class));
+    assertThat(operations.get(0).getType(), equalTo(WidgetBatchOperation.Type.CREATE));
+    assertThat(
+        ((WidgetBatchOperation.Create) operations.get(0)).getWidget(),
+        equalTo(new WidgetCreateRequest(1, 2, null, 3.0, 4.0)));
+    var update = (WidgetBatchOperation.Update) operations.get(1);
+    assertThat(update.getType(), equalTo(WidgetBatchOperation.Type.UPDATE));
+    assertThat(update.getId(), equalTo("abc"));
+    assertThat(update.getWidgetId().isPresent(), is(false));
+    assertThat(update.getWidget(), equalTo(new WidgetUpdateRequest(null, null, 5, null, null)));
+    var delete = (WidgetBatchOperation.Delete) operations.get(2);
+    assertThat(delete.getType(), equalTo(WidgetBatchOperation.Type.DELETE));
+    assertThat(
+        delete.getWidgetId().get(), equalTo(WidgetId.parse("01EQ2XMPH9M2QCSXRBM8Z6BNEK")));
+  }
+
+  @Test
+  @DisplayName("should fail to deserialize operation without ID")
+  void shouldThrowWhenDeserializingOperationWithoutId() {
+    var json = "{\"op\":\"delete\"}";
+    var ex =
+        assertThrows(
+            ValueInstantiationException.class,
+            () -> objectMapper.readValue(json, WidgetBatchOperation.class));
+    assertThat(ex.getCause().getClass(), equalTo(RequestValidationException.class));
+    assertThat(ex.getCause().getMessage(), equalTo("Field 'id' must be provided."));
+  }
+
+  @Test
+  @DisplayName("should fail to deserialize unknown operation")
+  void shouldThrowWhenDeserializingUnknownOperation() {
+    var json = "{\"op\":\"move\",\"id\":\"abc\"}";
+    assertThrows(
+        InvalidTypeIdException.class,
+        () -> objectMapper.readValue(json, WidgetBatchOperation.class));
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.time.Instant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class WidgetBatchResultTest {
+  private static final ObjectMapper objectMapper =
+      new ObjectMapper()
+          .registerModule(new JavaTimeModule())
+          .disable(SerializationFeature.WRITE_DATE_TIMESTAMPS_AS_NANOSECONDS)
+          .enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+  @Test
+  @DisplayName("should serialize results of batch operations into valid JSON")
+  void shouldSerializeIntoValidJSON() throws JsonProcessingException {
+    var widget = new Widget(WidgetId.ulid(0, 1), 1, 2, 3, 4.0, 5.0, Instant.ofEpochSecond(0));
+
+    assertEquals(
+        "{\"status\":201,\"widget\":{\"id\":\"" + widget.getId() + "\",\"x\":1,\"y\":2,\"z\":3,"
+            + "\"width\":4.0,\"height\":5.0,\"lastModifiedAt\":0}}",
+        objectMapper.writeValueAsString(WidgetBatchResult.created(widget)));
+    assertEquals("{\"status\":204}", objectMapper.writeValueAsString(WidgetBatchResult.deleted()));
+    assertEquals(
+        "{\"status\":404,\"error\":\"Widget [id=abc] not found.\"}",
+        objectMapper.writeValueAsString(WidgetBatchResult.notFound("abc")));
+  }
+}
@@ -71,7 +71,7 @@ public class WidgetCreateRequestTest {
   @DisplayName("should create new widget from WidgetCreateRequest")
   void shouldCreateNewWidget() {
     var widgetCreate = new WidgetCreateRequest(1, 2, null, 4.0, 5.0);
-    var widget = widgetCreate.toNewWidget(100);
+    var widget = widgetCreate.toNewWidget(WidgetId.ulid(0, 1), 100);
     assertThat(widget.getId(), notNullValue());
     assertThat(widget.getLastModifiedAt(), notNullValue());
     assertThat(widget.getX(), equalTo(1));
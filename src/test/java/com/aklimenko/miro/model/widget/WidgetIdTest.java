@@ -0,0 +1,84 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.model.widget;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class WidgetIdTest {
+
+  @Test
+  @DisplayName("should render and parse back ULID")
+  void shouldRoundTripUlid() {
+    var id = WidgetId.ulid(0x0123456789abcdefL, 0xfedcba9876543210L);
+    var text = id.toString();
+
+    assertThat(text.length(), equalTo(26));
+    assertThat(WidgetId.parse(text), equalTo(id));
+    assertThat(WidgetId.parse(text.toLowerCase()), equalTo(id));
+    assertThat(WidgetId.parse("7ZZZZZZZZZZZZZZZZZZZZZZZZZ"), equalTo(WidgetId.ulid(-1, -1)));
+  }
+
+  @Test
+  @DisplayName("should render UUID the same way java.util.UUID does")
+  void shouldRoundTripUuid() {
+    var uuid = UUID.randomUUID();
+    var id = WidgetId.parse(uuid.toString());
+
+    assertThat(id.isUuid(), is(true));
+    assertThat(id.getHigh(), equalTo(uuid.getMostSignificantBits()));
+    assertThat(id.getLow(), equalTo(uuid.getLeastSignificantBits()));
+    assertThat(id.toString(), equalTo(uuid.toString()));
+    assertThat(id, not(equalTo(WidgetId.ulid(id.getHigh(), id.getLow()))));
+  }
+
+  @ParameterizedTest
+  @DisplayName("should reject malformed IDs")
+  @ValueSource(
+      strings = {
+        "",
+        "123",
+        "8ZZZZZZZZZZZZZZZZZZZZZZZZZ",
+        "0000000000000000000000000U",
+        "123e4567-e89b-12d3-a456-42661417400g",
+        "123e4567e-89b-12d3-a456-426614174000"
+      })
+  void shouldRejectMalformedIds(String text) {
+    assertThrows(IllegalArgumentException.class, () -> WidgetId.parse(text));
+    assertThat(WidgetId.tryParse(text), equalTo(Optional.empty()));
+  }
+
+  @Test
+  @DisplayName("should order generated ULIDs by creation time")
+  void shouldOrderUlidsByTime() throws InterruptedException {
+    var generator = new UlidWidgetIdGenerator();
+    var first = generator.next();
+    Thread.sleep(2);
+    var second = generator.next();
+
+    assertThat(first.compareTo(second), lessThan(0));
+    assertThat(first.toString().compareTo(second.toString()), lessThan(0));
+  }
+}
@@ -33,6 +33,8 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 public class WidgetTest {
 
+  private static final WidgetId ID = WidgetId.parse("123e4567-e89b-12d3-a456-426614174000");
+
   private static ObjectMapper objectMapper;
 
   @BeforeAll
@@ -48,27 +50,27 @@ public class WidgetTest {
   @DisplayName("should not throw when creating widget")
   @ValueSource(ints = {Integer.MIN_VALUE, -1000, 0, 1000000, Integer.MAX_VALUE})
   void shouldNotThrowOnWidgetCreation(int value) {
-    new Widget("123", value, value, value, Double.MIN_VALUE, Double.MAX_VALUE, Instant.now());
+    new Widget(ID, value, value, value, Double.MIN_VALUE, Double.MAX_VALUE, Instant.now());
   }
 
   @Test
   @DisplayName("should serialize widget into valid JSON")
   void shouldSerializeIntoValidJSON() throws JsonProcessingException {
-    var widget = new Widget("123-456", 1, 2, 3, 4.0, 5.0, Instant.ofEpochMilli(1600811667066L));
+    var widget = new Widget(ID, 1, 2, 3, 4.0, 5.0, Instant.ofEpochMilli(1600811667066L));
     var json = objectMapper.writeValueAsString(widget);
     assertThat(
         json,
         equalTo(
-            "{\"id\":\"123-456\",\"x\":1,\"y\":2,\"z\":3,\"width\":4.0,\"height\":5.0,\"lastModifiedAt\":1600811667066}"));
+            "{\"id\":\"123e4567-e89b-12d3-a456-426614174000\",\"x\":1,\"y\":2,\"z\":3,\"width\":4.0,\"height\":5.0,\"lastModifiedAt\":1600811667066}"));
   }
 
   @Test
   @DisplayName("should not throw when shifting widget with non max z-index upwards")
   void shouldNotThrowWhenShiftingWidgetUpwards() {
-    var widget = new Widget("123-456", 1, 2, 10, 4.0, 5.0, Instant.ofEpochMilli(1600811667066L));
+    var widget = new Widget(ID, 1, 2, 10, 4.0, 5.0, Instant.ofEpochMilli(1600811667066L));
     var shifted = widget.shiftUpward();
     assertThat(shifted, not(equalTo(widget)));
-    assertThat(shifted.getId(), equalTo("123-456"));
+    assertThat(shifted.getId(), equalTo(ID));
     assertThat(shifted.getX(), equalTo(1));
     assertThat(shifted.getY(), equalTo(2));
     assertThat(shifted.getWidth(), equalTo(4.0));
@@ -77,17 +79,28 @@ public class WidgetTest {
     assertThat(shifted.getZ(), equalTo(11));
   }
 
+  @Test
+  @DisplayName("should shift widget upwards by several positions at once")
+  void shouldShiftWidgetUpwardsToZIndex() {
+    var widget = new Widget(ID, 1, 2, 10, 4.0, 5.0, Instant.ofEpochMilli(1600811667066L));
+    var shifted = widget.shiftUpwardTo(15);
+    assertThat(shifted.getId(), equalTo(ID));
+    assertThat(shifted.getX(), equalTo(1));
+    assertThat(shifted.getZ(), equalTo(15));
+    assertThat(shifted.getLastModifiedAt().toEpochMilli() > 1600811667066L, is(true));
+  }
+
   @Test
   @DisplayName("should throw when shifting widget with max z-index upwards")
   void shouldThrowWhenShiftingWidgetWithMaxZIndexUpwards() {
-    var widget = new Widget("123-456", 1, 2, Integer.MAX_VALUE, 4.0, 5.0, Instant.now());
+    var widget = new Widget(ID, 1, 2, Integer.MAX_VALUE, 4.0, 5.0, Instant.now());
     assertThrows(ZIndexLimitExceededException.class, widget::shiftUpward);
   }
 
   @Test
   @DisplayName("should create new widget with updated fields")
   void shouldPartiallyUpdateWidgetByWidgetUpdateRequest() {
-    var widget = new Widget("123-456", 1, 2, Integer.MAX_VALUE, 4.0, 5.0, Instant.now());
+    var widget = new Widget(ID, 1, 2, Integer.MAX_VALUE, 4.0, 5.0, Instant.now());
     var widgetUpdate = new WidgetUpdateRequest(100, null, 0, 200.0, null);
     var updated = widget.updateBy(widgetUpdate);
     assertThat(updated, not(equalTo(widget)));
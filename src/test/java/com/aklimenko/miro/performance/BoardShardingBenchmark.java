@@ -0,0 +1,76 @@
+package com.aklimenko.miro.performance;
+
+import com.aklimenko.miro.concurrent.StampedLockAccessLocker;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH Benchmark to measure write throughput of widget repository sharded by board depending on
+ * the amount of boards concurrent writers are spread over. Writers are assigned to boards in a
+ * round robin manner, so with a single board all of them contend on the same locker.
+ */
+public class BoardShardingBenchmark {
+
+  private static final int WRITERS = 8;
+
+  @State(Scope.Benchmark)
+  public static class SharedState {
+    public ShardedWidgetRepository repository;
+    public AtomicInteger writers;
+
+    @Param({"1", "2", "4", "8"})
+    public int boards;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      repository =
+          new ShardedWidgetRepository(
+              () -> new WidgetRepositoryImpl(new StampedLockAccessLocker()), boards);
+      writers = new AtomicInteger();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class WriterState {
+    public WidgetRepository board;
+    public WidgetCreateRequest widget;
+
+    @Setup(Level.Iteration)
+    public void setUp(final SharedState state) {
+      board = state.repository.board("board-" + state.writers.getAndIncrement() % state.boards);
+      // widgets are placed into the foreground so that no upward shifts are measured
+      widget = new WidgetCreateRequest(1, 1, null, 1.0, 1.0);
+    }
+  }
+
+  @Benchmark
+  @Threads(WRITERS)
+  public Object createWidget(final WriterState writer) {
+    return writer.board.createWidget(writer.widget);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt =
+        new OptionsBuilder()
+            .include(BoardShardingBenchmark.class.getSimpleName())
+            .forks(1)
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+    new Runner(opt).run();
+  }
+}
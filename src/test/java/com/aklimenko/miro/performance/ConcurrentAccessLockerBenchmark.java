@@ -2,6 +2,9 @@ package com.aklimenko.miro.performance;
 
 import com.aklimenko.miro.concurrent.ConcurrentAccessLocker;
 import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.persistence.SnapshotWidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepository;
 import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
 import java.time.Instant;
 import java.util.List;
@@ -22,21 +25,25 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 /**
  * JMH Benchmark to measure performance of widget repository with different concurrent access
- * mechanisms.
+ * mechanisms. Lock-free {@link SnapshotWidgetRepository} is measured as well for comparison.
  */
 public class ConcurrentAccessLockerBenchmark {
 
+  /** Lock class parameter value selecting lock-free {@link SnapshotWidgetRepository}. */
+  private static final String LOCK_FREE_SNAPSHOT = "lockFreeSnapshot";
+
   @State(Scope.Benchmark)
   public static class SharedState {
     public ConcurrentAccessLocker lock;
-    public WidgetRepositoryImpl repository;
+    public WidgetRepository repository;
     public List<Integer> consumeInts;
     public List<Integer> produceInts;
 
     @Param({
       "com.aklimenko.miro.concurrent.SynchronizedAccessLocker",
       "com.aklimenko.miro.concurrent.ReadWriteLockAccessLocker",
-      "com.aklimenko.miro.concurrent.StampedLockAccessLocker"
+      "com.aklimenko.miro.concurrent.StampedLockAccessLocker",
+      LOCK_FREE_SNAPSHOT
     })
     public String lockClass;
 
@@ -45,15 +52,19 @@ public class ConcurrentAccessLockerBenchmark {
 
     @Setup(Level.Iteration)
     public void setUp() throws Exception {
-      lock =
-          (ConcurrentAccessLocker) Class.forName(lockClass).getDeclaredConstructor().newInstance();
-      repository = new WidgetRepositoryImpl(lock);
+      if (LOCK_FREE_SNAPSHOT.equals(lockClass)) {
+        repository = new SnapshotWidgetRepository();
+      } else {
+        lock =
+            (ConcurrentAccessLocker)
+                Class.forName(lockClass).getDeclaredConstructor().newInstance();
+        repository = new WidgetRepositoryImpl(lock);
+      }
       var nums = consumeProduce.split(":");
       var consumeListSize = Integer.parseInt(nums[0]);
       var produceListSize = Integer.parseInt(nums[1]);
       consumeInts = new Random().ints().limit(consumeListSize).boxed().collect(Collectors.toList());
       produceInts = new Random().ints().limit(produceListSize).boxed().collect(Collectors.toList());
-      repository.cleanUp();
     }
   }
 
@@ -63,7 +74,7 @@ public class ConcurrentAccessLockerBenchmark {
   public void readWidget(final SharedState state, final Blackhole blackhole) {
     state.consumeInts.forEach(
         i -> {
-          var widget = state.repository.readWidget(String.valueOf(i));
+          var widget = state.repository.readWidget(WidgetId.ulid(0, i));
           blackhole.consume(widget);
         });
   }
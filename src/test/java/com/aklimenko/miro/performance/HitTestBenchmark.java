@@ -0,0 +1,134 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.performance;
+
+import com.aklimenko.miro.concurrent.StampedLockAccessLocker;
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.persistence.PrimitiveWidgetRepository;
+import com.aklimenko.miro.persistence.SnapshotWidgetRepository;
+import com.aklimenko.miro.persistence.SparseZOrderWidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH Benchmark measuring latency of hit testing widgets at random points of a board holding a
+ * large amount of randomly placed and sized widgets. Hit test backed by spatial index is compared
+ * with {@code scanWidgets} filtering all the widgets listed in z-order, which is what clients had
+ * to do before hit test was available. Run with larger {@code -Xmx} and {@code -p
+ * widgets=10000000} to reproduce the 10M widgets case.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HitTestBenchmark {
+
+  /** Widgets are placed at random on a square board with this side. */
+  private static final int BOARD_SIZE = 1_000_000;
+
+  /** Widgets have random width and height up to this size. */
+  private static final int MAX_WIDGET_SIZE = 2_000;
+
+  @State(Scope.Benchmark)
+  public static class RepositoryState {
+    public WidgetRepository repository;
+
+    @Param({"treeMap", "sparseZOrder", "primitive", "snapshot"})
+    public String implementation;
+
+    @Param({"1000000"})
+    public int widgets;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      switch (implementation) {
+        case "sparseZOrder":
+          repository = new SparseZOrderWidgetRepository(new StampedLockAccessLocker());
+          break;
+        case "primitive":
+          repository = new PrimitiveWidgetRepository(new StampedLockAccessLocker());
+          break;
+        case "snapshot":
+          repository = new SnapshotWidgetRepository();
+          break;
+        default:
+          repository = new WidgetRepositoryImpl(new StampedLockAccessLocker());
+      }
+
+      final Random random = new Random(42);
+      for (int i = 0; i < widgets; i++) {
+        repository.createWidget(
+            new WidgetCreateRequest(
+                random.nextInt(BOARD_SIZE),
+                random.nextInt(BOARD_SIZE),
+                null,
+                1.0 + random.nextInt(MAX_WIDGET_SIZE),
+                1.0 + random.nextInt(MAX_WIDGET_SIZE)));
+      }
+    }
+  }
+
+  private static int randomCoordinate() {
+    return ThreadLocalRandom.current().nextInt(BOARD_SIZE);
+  }
+
+  @Benchmark
+  public Object hitTopmost(final RepositoryState state) {
+    return state.repository.hitTest(randomCoordinate(), randomCoordinate(), 1);
+  }
+
+  @Benchmark
+  public Object hitTop10(final RepositoryState state) {
+    return state.repository.hitTest(randomCoordinate(), randomCoordinate(), 10);
+  }
+
+  @Benchmark
+  public Object scanWidgets(final RepositoryState state) {
+    final int x = randomCoordinate();
+    final int y = randomCoordinate();
+    final BoundingBox point = BoundingBox.of(x, y, x, y);
+    return state.repository.listWidgets(Integer.MAX_VALUE, null).stream()
+        .filter(point::intersects)
+        .max(Comparator.comparingInt(Widget::getZ));
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt =
+        new OptionsBuilder()
+            .include(HitTestBenchmark.class.getSimpleName())
+            .forks(1)
+            .jvmArgsAppend("-Xmx4g")
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+    new Runner(opt).run();
+  }
+}
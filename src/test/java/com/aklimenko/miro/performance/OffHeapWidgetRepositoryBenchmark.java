@@ -0,0 +1,155 @@
+package com.aklimenko.miro.performance;
+
+import com.aklimenko.miro.concurrent.StampedLockAccessLocker;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import com.aklimenko.miro.persistence.OffHeapWidgetRepository;
+import com.aklimenko.miro.persistence.PrimitiveWidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH Benchmark to compare on-heap {@link WidgetRepositoryImpl} with {@link
+ * OffHeapWidgetRepository} holding a large amount of widgets. Latency percentiles of reads and
+ * updates are reported by JMH, while heap occupied by the repository after it is filled and the
+ * amount and total duration of GC pauses during the measurement are printed by the benchmark
+ * itself once the trial is over. Run with larger {@code -Xmx} and {@code -p widgets=10000000} to
+ * reproduce the 10M widgets case.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OffHeapWidgetRepositoryBenchmark {
+
+  /** Amount of widget IDs kept on heap to look widgets up by. */
+  private static final int SAMPLE_SIZE = 1024;
+
+  @State(Scope.Benchmark)
+  public static class RepositoryState {
+    public WidgetRepository repository;
+    public WidgetId[] ids;
+    public WidgetUpdateRequest update;
+
+    @Param({"treeMap", "offHeap", "primitive"})
+    public String implementation;
+
+    @Param({"1000000"})
+    public int widgets;
+
+    private long heapBefore;
+    private long heapFilled;
+    private long gcCount;
+    private long gcTimeMS;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      heapBefore = usedHeap();
+      switch (implementation) {
+        case "offHeap":
+          repository = new OffHeapWidgetRepository(new StampedLockAccessLocker());
+          break;
+        case "primitive":
+          repository = new PrimitiveWidgetRepository(new StampedLockAccessLocker());
+          break;
+        default:
+          repository = new WidgetRepositoryImpl(new StampedLockAccessLocker());
+      }
+
+      ids = new WidgetId[SAMPLE_SIZE];
+      final var widget = new WidgetCreateRequest(1, 1, null, 1.0, 1.0);
+      for (int i = 0; i < widgets; i++) {
+        final WidgetId id = repository.createWidget(widget).getId();
+        if (i % (widgets / SAMPLE_SIZE) == 0 && i / (widgets / SAMPLE_SIZE) < SAMPLE_SIZE) {
+          ids[i / (widgets / SAMPLE_SIZE)] = id;
+        }
+      }
+      update = new WidgetUpdateRequest(2, 2, null, 2.0, 2.0);
+
+      heapFilled = usedHeap();
+      gcCount = gcCount();
+      gcTimeMS = gcTimeMS();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      System.out.printf(
+          "%n%s: heap used by %d widgets %d MB, %d GC pauses taking %d ms in total%n",
+          implementation,
+          widgets,
+          (heapFilled - heapBefore) / (1024 * 1024),
+          gcCount() - gcCount,
+          gcTimeMS() - gcTimeMS);
+    }
+
+    public WidgetId randomId() {
+      return ids[ThreadLocalRandom.current().nextInt(SAMPLE_SIZE)];
+    }
+
+    public int randomZ() {
+      return ThreadLocalRandom.current().nextInt(widgets);
+    }
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    final var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    return heap.getUsed();
+  }
+
+  private static long gcCount() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+        .sum();
+  }
+
+  private static long gcTimeMS() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+        .sum();
+  }
+
+  @Benchmark
+  public Object readWidget(final RepositoryState state) {
+    return state.repository.readWidget(state.randomId());
+  }
+
+  @Benchmark
+  public Object updateWidget(final RepositoryState state) {
+    return state.repository.updateWidget(state.randomId(), state.update);
+  }
+
+  @Benchmark
+  public Object listWidgets(final RepositoryState state) {
+    return state.repository.listWidgets(100, state.randomZ());
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt =
+        new OptionsBuilder()
+            .include(OffHeapWidgetRepositoryBenchmark.class.getSimpleName())
+            .forks(1)
+            .jvmArgsAppend("-Xmx4g")
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+    new Runner(opt).run();
+  }
+}
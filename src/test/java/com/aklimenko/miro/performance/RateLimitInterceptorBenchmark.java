@@ -0,0 +1,133 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.performance;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.api.incerceptor.RateLimitHeadersAdvice;
+import com.aklimenko.miro.api.incerceptor.RateLimitInterceptor;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import com.aklimenko.miro.service.ClientRateLimitRegistry;
+import com.aklimenko.miro.service.RateLimitService;
+import com.aklimenko.miro.service.RateLimitServiceImpl;
+import com.aklimenko.miro.service.counter.CounterStore;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+/**
+ * JMH Benchmark measuring rate limit overhead of a single request: resolving the target
+ * operation alone and the whole chain of {@link RateLimitInterceptor} and {@link
+ * RateLimitHeadersAdvice}. Resolving with precompiled router is compared with {@code
+ * matchPatterns} parsing the URI and trying path patterns of all the targets, which is how
+ * targets were resolved before the router, twice per request. Run with {@code -prof gc} to see
+ * allocations per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RateLimitInterceptorBenchmark {
+
+  private static final String URI = "/widgets/01EMZ4Q1Y5M5RHC2VP4JZ0WFM7";
+
+  @State(Scope.Benchmark)
+  public static class ChainState {
+    public RateLimitInterceptor interceptor;
+    public RateLimitHeadersAdvice advice = new RateLimitHeadersAdvice();
+    public MockHttpServletRequest request;
+    public MockHttpServletResponse response;
+    public ServletServerHttpRequest serverRequest;
+    public ServletServerHttpResponse serverResponse;
+    public Map<PathPattern, RateLimitTarget> patterns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      final MiroConfig config = new MiroConfig();
+      config.getRateLimit().setLimitReadWidget(Integer.MAX_VALUE);
+      final RateLimitRule rule = new RateLimitRule(config);
+      final DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+      beans.registerSingleton("rateLimitService", new RateLimitServiceImpl(rule));
+      interceptor =
+          new RateLimitInterceptor(
+              new ClientRateLimitRegistry(
+                  beans.getBeanProvider(RateLimitService.class),
+                  beans.getBeanProvider(CounterStore.class),
+                  rule,
+                  config));
+
+      request = new MockHttpServletRequest("GET", URI);
+      request.addHeader(RateLimitInterceptor.API_KEY_HEADER, "benchmark");
+      response = new MockHttpServletResponse();
+      serverRequest = new ServletServerHttpRequest(request);
+      serverResponse = new ServletServerHttpResponse(response);
+
+      final PathPatternParser parser = PathPatternParser.defaultInstance;
+      patterns =
+          Map.of(
+              parser.parse("/widgets"), RateLimitTarget.WIDGETS_LIST,
+              parser.parse("/widgets/{id}"), RateLimitTarget.WIDGET_READ);
+    }
+  }
+
+  @Benchmark
+  public Object resolveTarget() {
+    return RateLimitTarget.resolve("GET", URI);
+  }
+
+  @Benchmark
+  public Object matchPatterns(final ChainState state) {
+    final PathContainer path = PathContainer.parsePath(URI);
+    return state.patterns.entrySet().stream()
+        .filter(e -> e.getKey().matches(path))
+        .map(Map.Entry::getValue)
+        .findFirst()
+        .orElse(null);
+  }
+
+  @Benchmark
+  public Object interceptorChain(final ChainState state) throws Exception {
+    state.interceptor.preHandle(state.request, state.response, null);
+    return state.advice.beforeBodyWrite(
+        null, null, null, null, state.serverRequest, state.serverResponse);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt =
+        new OptionsBuilder()
+            .include(RateLimitInterceptorBenchmark.class.getSimpleName())
+            .forks(1)
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+    new Runner(opt).run();
+  }
+}
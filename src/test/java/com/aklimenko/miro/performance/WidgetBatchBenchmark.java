@@ -0,0 +1,114 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.performance;
+
+import com.aklimenko.miro.concurrent.StampedLockAccessLocker;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import com.aklimenko.miro.persistence.SparseZOrderWidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH Benchmark measuring latency of moving a number of random widgets to the bottom of a board,
+ * so that every move shifts all the widgets of the board upwards. {@code batch} applies the moves
+ * with a single {@code POST /widgets/batch} worth of operations, {@code standalone} applies the
+ * same moves one by one the way clients had to do before batches were available.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WidgetBatchBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class RepositoryState {
+    public WidgetRepository repository;
+    public List<WidgetId> ids = new ArrayList<>();
+
+    @Param({"treeMap", "sparseZOrder"})
+    public String implementation;
+
+    @Param({"10000"})
+    public int widgets;
+
+    @Param({"50"})
+    public int batchSize;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      repository =
+          "sparseZOrder".equals(implementation)
+              ? new SparseZOrderWidgetRepository(new StampedLockAccessLocker())
+              : new WidgetRepositoryImpl(new StampedLockAccessLocker());
+      for (int i = 0; i < widgets; i++) {
+        ids.add(repository.createWidget(new WidgetCreateRequest(i, i, null, 1.0, 1.0)).getId());
+      }
+    }
+
+    WidgetId randomId() {
+      return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+    }
+  }
+
+  private static final WidgetUpdateRequest MOVE_TO_BOTTOM =
+      new WidgetUpdateRequest(null, null, 0, null, null);
+
+  @Benchmark
+  public Object batch(final RepositoryState state) {
+    final List<WidgetBatchOperation> operations = new ArrayList<>(state.batchSize);
+    for (int i = 0; i < state.batchSize; i++) {
+      operations.add(
+          new WidgetBatchOperation.Update(state.randomId().toString(), MOVE_TO_BOTTOM));
+    }
+    return state.repository.applyBatch(operations);
+  }
+
+  @Benchmark
+  public Object standalone(final RepositoryState state) {
+    Object updated = null;
+    for (int i = 0; i < state.batchSize; i++) {
+      updated = state.repository.updateWidget(state.randomId(), MOVE_TO_BOTTOM);
+    }
+    return updated;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt =
+        new OptionsBuilder()
+            .include(WidgetBatchBenchmark.class.getSimpleName())
+            .forks(1)
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.performance;
+
+import com.aklimenko.miro.api.WidgetImportMessageConverter;
+import com.aklimenko.miro.concurrent.StampedLockAccessLocker;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetImportRequest;
+import com.aklimenko.miro.persistence.SnapshotWidgetRepository;
+import com.aklimenko.miro.persistence.SparseZOrderWidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mock.http.MockHttpInputMessage;
+
+/**
+ * JMH Benchmark measuring throughput of seeding an empty board in widgets per second. {@code
+ * parseAndImport} parses newline-delimited JSON the way {@code POST /widgets/import} does and
+ * imports all the widgets at once, {@code importParsed} imports already parsed widgets, and {@code
+ * createOneByOne} creates the same widgets one by one the way clients had to seed a board before
+ * import was available. {@code foreground} widgets have no z-index, {@code random} widgets request
+ * random z-indexes, so that created one by one they shift the widgets above them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WidgetImportBenchmark {
+
+  private static final int WIDGETS = 100_000;
+
+  @State(Scope.Benchmark)
+  public static class ImportState {
+    public WidgetRepository repository;
+    public List<WidgetCreateRequest> widgets;
+    public byte[] ndjson;
+    public WidgetImportMessageConverter converter;
+
+    @Param({"treeMap", "sparseZOrder", "snapshot"})
+    public String implementation;
+
+    @Param({"foreground", "random"})
+    public String zOrder;
+
+    @Setup(Level.Trial)
+    public void setUpWidgets() throws IOException {
+      final ObjectMapper objectMapper = new ObjectMapper();
+      final Random random = new Random(7);
+      final ByteArrayOutputStream body = new ByteArrayOutputStream();
+      widgets = new ArrayList<>(WIDGETS);
+      for (int i = 0; i < WIDGETS; i++) {
+        final Integer z = "random".equals(zOrder) ? random.nextInt(WIDGETS) : null;
+        final WidgetCreateRequest widget = new WidgetCreateRequest(i, i, z, 10.0, 10.0);
+        widgets.add(widget);
+        body.write(objectMapper.writeValueAsBytes(widget));
+        body.write('\n');
+      }
+      ndjson = body.toByteArray();
+      converter = new WidgetImportMessageConverter(objectMapper);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpRepository() {
+      if ("sparseZOrder".equals(implementation)) {
+        repository = new SparseZOrderWidgetRepository(new StampedLockAccessLocker());
+      } else if ("snapshot".equals(implementation)) {
+        repository = new SnapshotWidgetRepository();
+      } else {
+        repository = new WidgetRepositoryImpl(new StampedLockAccessLocker());
+      }
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(WIDGETS)
+  public Object parseAndImport(final ImportState state) throws IOException {
+    final WidgetImportRequest widgetImport =
+        state.converter.read(WidgetImportRequest.class, new MockHttpInputMessage(state.ndjson));
+    return state.repository.importWidgets(widgetImport.getWidgets());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(WIDGETS)
+  public Object importParsed(final ImportState state) {
+    return state.repository.importWidgets(state.widgets);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(WIDGETS)
+  public Object createOneByOne(final ImportState state) {
+    Object created = null;
+    for (final WidgetCreateRequest widget : state.widgets) {
+      created = state.repository.createWidget(widget);
+    }
+    return created;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt =
+        new OptionsBuilder()
+            .include(WidgetImportBenchmark.class.getSimpleName())
+            .forks(1)
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+    new Runner(opt).run();
+  }
+}
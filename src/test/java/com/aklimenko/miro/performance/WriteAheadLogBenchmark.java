@@ -0,0 +1,90 @@
+package com.aklimenko.miro.performance;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.concurrent.StampedLockAccessLocker;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.persistence.ShardedWidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepository;
+import com.aklimenko.miro.persistence.WidgetRepositoryImpl;
+import com.aklimenko.miro.persistence.wal.FsyncMode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH Benchmark to measure latency of widget creation depending on the write-ahead log fsync mode.
+ * Writers share a single board and a single log, so with {@code BATCH} mode concurrent writers
+ * are expected to share the cost of a single fsync.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WriteAheadLogBenchmark {
+
+  private static final int WRITERS = 4;
+
+  @State(Scope.Benchmark)
+  public static class SharedState {
+    public Path directory;
+    public ShardedWidgetRepository repository;
+    public WidgetRepository board;
+    public WidgetCreateRequest widget;
+
+    @Param({"OP", "BATCH", "INTERVAL"})
+    public FsyncMode fsyncMode;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+      directory = Files.createTempDirectory("wal-benchmark");
+      var walConfig = new MiroConfig.Wal();
+      walConfig.setEnabled(true);
+      walConfig.setPath(directory.resolve("widgets.wal").toString());
+      walConfig.setFsyncMode(fsyncMode);
+      repository =
+          new ShardedWidgetRepository(
+              () -> new WidgetRepositoryImpl(new StampedLockAccessLocker()), 1, walConfig);
+      board = repository.board("board");
+      // widgets are placed into the foreground so that no upward shifts are measured
+      widget = new WidgetCreateRequest(1, 1, null, 1.0, 1.0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+      repository.close();
+      Files.deleteIfExists(directory.resolve("widgets.wal"));
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  @Benchmark
+  @Threads(WRITERS)
+  public Object createWidget(final SharedState state) {
+    return state.board.createWidget(state.widget);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options opt =
+        new OptionsBuilder()
+            .include(WriteAheadLogBenchmark.class.getSimpleName())
+            .forks(1)
+            .warmupIterations(2)
+            .measurementIterations(5)
+            .build();
+
+    new Runner(opt).run();
+  }
+}
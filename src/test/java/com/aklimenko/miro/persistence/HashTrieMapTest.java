@@ -0,0 +1,80 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class HashTrieMapTest {
+
+  @Test
+  @DisplayName("should keep previous versions unchanged")
+  void shouldKeepPreviousVersions() {
+    var first = HashTrieMap.<String, Integer>empty().put("a", 1);
+    var second = first.put("a", 2).put("b", 3);
+
+    assertThat(first.get("a"), equalTo(1));
+    assertThat(first.get("b"), nullValue());
+    assertThat(first.size(), equalTo(1));
+    assertThat(second.get("a"), equalTo(2));
+    assertThat(second.size(), equalTo(2));
+  }
+
+  @Test
+  @DisplayName("should handle keys with colliding hash codes")
+  void shouldHandleCollisions() {
+    // "Aa" and "BB" have the same hash code
+    var map = HashTrieMap.<String, Integer>empty().put("Aa", 1).put("BB", 2).put("C#", 3);
+
+    assertThat(map.get("Aa"), equalTo(1));
+    assertThat(map.get("BB"), equalTo(2));
+    assertThat(map.get("C#"), equalTo(3));
+    assertThat(map.remove("Aa").get("BB"), equalTo(2));
+    assertThat(map.remove("Aa").get("Aa"), nullValue());
+    assertThat(map.remove("Aa").remove("BB").remove("C#").size(), equalTo(0));
+    assertThat(map.remove("unknown"), sameInstance(map));
+  }
+
+  @Test
+  @DisplayName("should match hash map on random operations")
+  void shouldMatchHashMap() {
+    var random = new Random(42);
+    var expected = new HashMap<String, Integer>();
+    var actual = HashTrieMap.<String, Integer>empty();
+
+    for (int i = 0; i < 20000; i++) {
+      var key = String.valueOf(random.nextInt(5000));
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        actual = actual.remove(key);
+      } else {
+        expected.put(key, i);
+        actual = actual.put(key, i);
+      }
+    }
+
+    assertThat(actual.size(), equalTo(expected.size()));
+    for (int i = 0; i < 5000; i++) {
+      var key = String.valueOf(i);
+      assertThat(actual.get(key), equalTo(expected.get(key)));
+    }
+  }
+}
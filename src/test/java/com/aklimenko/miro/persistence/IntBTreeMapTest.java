@@ -0,0 +1,99 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class IntBTreeMapTest {
+
+  private static List<Integer> values(final IntBTreeMap<Integer> map, final int fromKey) {
+    var values = new ArrayList<Integer>();
+    map.collect(fromKey, Integer.MAX_VALUE, values);
+    return values;
+  }
+
+  @Test
+  @DisplayName("should collect limited amount of values starting from provided key")
+  void shouldCollectValuesFromKey() {
+    var map = new IntBTreeMap<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i * 2, i);
+    }
+    var values = new ArrayList<Integer>();
+    map.collect(501, 3, values);
+
+    assertThat(values, equalTo(List.of(251, 252, 253)));
+    assertThat(map.lastKey(), equalTo(1998));
+    assertThat(map.lastValue(), equalTo(999));
+    assertThat(map.get(501), nullValue());
+  }
+
+  @Test
+  @DisplayName("should increment keys starting from provided one in place")
+  void shouldShiftKeysUpwards() {
+    var map = new IntBTreeMap<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    map.shiftUpwardsFrom(500, value -> -value);
+
+    assertThat(map.get(499), equalTo(499));
+    assertThat(map.get(500), nullValue());
+    assertThat(map.get(501), equalTo(-500));
+    assertThat(map.lastKey(), equalTo(1000));
+    assertThat(values(map, 500).size(), equalTo(500));
+  }
+
+  @Test
+  @DisplayName("should match tree map on random operations")
+  void shouldMatchTreeMap() {
+    var random = new Random(42);
+    var expected = new TreeMap<Integer, Integer>();
+    var actual = new IntBTreeMap<Integer>();
+
+    for (int i = 0; i < 200000; i++) {
+      var key = random.nextInt(20000) - 10000;
+      var operation = random.nextInt(100);
+      if (operation < 45) {
+        assertThat(actual.remove(key), equalTo(expected.remove(key)));
+      } else if (operation < 99) {
+        assertThat(actual.put(key, i), equalTo(expected.put(key, i)));
+      } else if (expected.isEmpty() || expected.lastKey() < Integer.MAX_VALUE) {
+        var shifted = new TreeMap<>(expected.headMap(key));
+        expected.tailMap(key).forEach((k, v) -> shifted.put(k + 1, v + 1));
+        expected = shifted;
+        actual.shiftUpwardsFrom(key, value -> value + 1);
+      }
+    }
+
+    assertThat(actual.size(), equalTo(expected.size()));
+    assertThat(values(actual, Integer.MIN_VALUE), equalTo(new ArrayList<>(expected.values())));
+    for (int key = -10010; key < 10010; key++) {
+      assertThat(actual.get(key), equalTo(expected.get(key)));
+      assertThat(
+          values(actual, key).stream().limit(5).collect(Collectors.toList()),
+          equalTo(expected.tailMap(key).values().stream().limit(5).collect(Collectors.toList())));
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import com.aklimenko.miro.concurrent.SynchronizedAccessLocker;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapWidgetRepositoryTest
+    extends WidgetRepositoryContractTest<OffHeapWidgetRepository> {
+
+  @Override
+  protected OffHeapWidgetRepository createRepository() {
+    return new OffHeapWidgetRepository(new SynchronizedAccessLocker(), 4);
+  }
+
+  @Test
+  @DisplayName("should keep widget fields and restored IDs as they are")
+  void shouldKeepWidgetFields() {
+    var ulid = new Widget(WidgetId.ulid(-1, 1), -3, 7, -11, 0.25, 1e9, Instant.ofEpochSecond(1, 9));
+    // the same bits rendered as UUID make a different ID
+    var uuid = new Widget(WidgetId.uuid(-1, 1), 1, 1, 1, 1.0, 1.0, Instant.ofEpochSecond(2, 0));
+
+    repository.restoreWidget(ulid);
+    repository.restoreWidget(uuid);
+
+    assertThat(repository.readWidget(ulid.getId()), equalTo(Optional.of(ulid)));
+    assertThat(repository.readWidget(uuid.getId()), equalTo(Optional.of(uuid)));
+    assertThat(repository.listWidgets(10, null), equalTo(List.of(ulid, uuid)));
+    assertThat(repository.deleteWidget(WidgetId.ulid(-1, 2)), is(false));
+  }
+}
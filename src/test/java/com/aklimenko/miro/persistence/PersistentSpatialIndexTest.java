@@ -0,0 +1,179 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class PersistentSpatialIndexTest {
+
+  private static Widget widget(
+      final long id, final int x, final int y, final int z, final int size) {
+    return new Widget(WidgetId.ulid(0, id), x, y, z, size, size, Instant.EPOCH);
+  }
+
+  private static List<Widget> bruteForceList(
+      final Map<WidgetId, Widget> widgets, final BoundingBox area, final int afterZ) {
+    return widgets.values().stream()
+        .filter(area::intersects)
+        .filter(widget -> widget.getZ() > afterZ)
+        .sorted(Comparator.comparingInt(Widget::getZ))
+        .limit(5)
+        .collect(Collectors.toList());
+  }
+
+  private static void assertMatchesBruteForce(
+      final PersistentSpatialIndex index,
+      final Map<WidgetId, Widget> widgets,
+      final Random random) {
+    assertThat(index.size(), equalTo(widgets.size()));
+    for (int i = 0; i < 300; i++) {
+      var x = random.nextInt(10000);
+      var y = random.nextInt(10000);
+      var area = BoundingBox.of(x, y, x + random.nextInt(1000), y + random.nextInt(1000));
+      var afterZ = random.nextInt(20000) - 1;
+      assertThat(
+          index.list(area, 5, afterZ, widgets::get),
+          equalTo(bruteForceList(widgets, area, afterZ)));
+
+      var point = BoundingBox.of(x, y, x, y);
+      var topmost =
+          widgets.values().stream()
+              .filter(point::intersects)
+              .sorted(Comparator.comparingInt(Widget::getZ).reversed())
+              .limit(3)
+              .collect(Collectors.toList());
+      assertThat(index.hitTest(x, y, 3, widgets::get), equalTo(topmost));
+    }
+  }
+
+  @Test
+  @DisplayName("should keep previous versions intact when modified")
+  void shouldKeepPreviousVersions() {
+    var first = widget(1, 0, 0, 1, 10);
+    var second = widget(2, 5, 5, 2, 10);
+    var moved = widget(2, 500, 500, 2, 10);
+    var widgets = Map.of(first.getId(), first, second.getId(), second);
+    var movedWidgets = Map.of(first.getId(), first, moved.getId(), moved);
+
+    var empty = PersistentSpatialIndex.empty();
+    var both = empty.insert(first).insert(second);
+    var afterMove = both.update(second, moved);
+    var afterRemove = afterMove.remove(first);
+
+    assertThat(empty.hitTest(5, 5, 10, widgets::get), equalTo(List.of()));
+    assertThat(both.hitTest(5, 5, 10, widgets::get), equalTo(List.of(second, first)));
+    assertThat(afterMove.hitTest(5, 5, 10, movedWidgets::get), equalTo(List.of(first)));
+    assertThat(afterMove.hitTest(505, 505, 10, movedWidgets::get), equalTo(List.of(moved)));
+    assertThat(afterRemove.size(), equalTo(1));
+    assertThat(afterRemove.hitTest(5, 5, 10, movedWidgets::get), equalTo(List.of()));
+    assertThat(afterRemove.remove(first), sameInstance(afterRemove));
+    assertThat(both.update(first, first), sameInstance(both));
+  }
+
+  @Test
+  @DisplayName("should match brute force search on random operations of every version")
+  void shouldMatchBruteForce() {
+    var random = new Random(42);
+    var index = PersistentSpatialIndex.empty();
+    var expected = new HashMap<WidgetId, Widget>();
+    var ids = new ArrayList<WidgetId>();
+    PersistentSpatialIndex checkpoint = null;
+    Map<WidgetId, Widget> checkpointWidgets = null;
+
+    for (int i = 0; i < 20000; i++) {
+      var operation = random.nextInt(10);
+      if (operation < 5 || ids.isEmpty()) {
+        var widget =
+            widget(i, random.nextInt(10000), random.nextInt(10000), i, 1 + random.nextInt(300));
+        index = index.insert(widget);
+        expected.put(widget.getId(), widget);
+        ids.add(widget.getId());
+      } else if (operation < 8) {
+        var previous = expected.get(ids.get(random.nextInt(ids.size())));
+        var moved =
+            new Widget(
+                previous.getId(),
+                previous.getX() + random.nextInt(200) - 100,
+                previous.getY(),
+                previous.getZ(),
+                previous.getWidth(),
+                1 + random.nextInt(300),
+                Instant.EPOCH);
+        index = index.update(previous, moved);
+        expected.put(moved.getId(), moved);
+      } else {
+        index = index.remove(expected.remove(ids.remove(random.nextInt(ids.size()))));
+      }
+
+      if (i == 10000) {
+        checkpoint = index;
+        checkpointWidgets = new HashMap<>(expected);
+      }
+    }
+
+    assertMatchesBruteForce(index, expected, random);
+    assertMatchesBruteForce(checkpoint, checkpointWidgets, random);
+  }
+
+  @Test
+  @DisplayName("should match brute force search after bulk inserts mixed with removals")
+  void shouldMatchBruteForceAfterBulkInserts() {
+    var random = new Random(7);
+    var index = PersistentSpatialIndex.empty();
+    var expected = new HashMap<WidgetId, Widget>();
+    var ids = new ArrayList<WidgetId>();
+    var sequence = 0;
+
+    for (int i = 0; i < 40; i++) {
+      // both bulk loads rebuilding the tree and smaller ones inserting widgets one by one
+      var bulk = new ArrayList<Widget>();
+      var size = random.nextInt(3) == 0 ? 1 + random.nextInt(3000) : 1 + random.nextInt(50);
+      for (int j = 0; j < size; j++) {
+        var widget =
+            widget(
+                sequence,
+                random.nextInt(10000),
+                random.nextInt(10000),
+                sequence++,
+                1 + random.nextInt(300));
+        bulk.add(widget);
+        expected.put(widget.getId(), widget);
+        ids.add(widget.getId());
+      }
+      index = index.insertAll(bulk);
+
+      for (int j = random.nextInt(Math.max(1, ids.size() / 4)); j > 0; j--) {
+        index = index.remove(expected.remove(ids.remove(random.nextInt(ids.size()))));
+      }
+    }
+
+    assertMatchesBruteForce(index, expected, random);
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import com.aklimenko.miro.concurrent.SynchronizedAccessLocker;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+public class PrimitiveWidgetRepositoryTest
+    extends WidgetRepositoryContractTest<PrimitiveWidgetRepository> {
+
+  @Override
+  protected PrimitiveWidgetRepository createRepository() {
+    return new PrimitiveWidgetRepository(new SynchronizedAccessLocker());
+  }
+
+  @Test
+  @DisplayName("should take less memory per widget than treeMap repository")
+  void shouldTakeLessMemoryThanTreeMap() {
+    var treeMap = new WidgetRepositoryImpl(new SynchronizedAccessLocker());
+    var widgets = new ArrayList<Widget>();
+    for (int i = 0; i < 10000; i++) {
+      widgets.add(repository.createWidget(new WidgetCreateRequest(i, i, i, 1.0, 1.0)));
+      treeMap.restoreWidget(widgets.get(i));
+    }
+
+    // widgets are shared by both repositories so only the footprint of the indexes is compared,
+    // spatial index is the same in both repositories and is excluded as well
+    var spatialIndex = new SpatialIndex();
+    widgets.forEach(spatialIndex::insert);
+    var spatialPerWidget = indexBytesPerWidget(spatialIndex, widgets);
+    var primitivePerWidget = indexBytesPerWidget(repository, widgets) - spatialPerWidget;
+    var treeMapPerWidget = indexBytesPerWidget(treeMap, widgets) - spatialPerWidget;
+
+    assertThat(
+        String.format(
+            "Index bytes per widget: primitive %.1f, treeMap %.1f, spatial %.1f",
+            primitivePerWidget, treeMapPerWidget, spatialPerWidget),
+        primitivePerWidget,
+        lessThan(treeMapPerWidget / 2));
+  }
+
+  /**
+   * Measures the footprint of the index without the widgets. Sizes are subtracted rather than
+   * layouts, since {@link GraphLayout#subtract(GraphLayout)} matches objects by address and misses
+   * the widgets moved by GC between the layouts are parsed.
+   */
+  private static double indexBytesPerWidget(final Object index, final List<Widget> widgets) {
+    final Object[] widgetArray = widgets.toArray();
+    final long indexWithWidgets = GraphLayout.parseInstance(index, widgetArray).totalSize();
+    final long widgetsOnly = GraphLayout.parseInstance(widgetArray).totalSize();
+    return (indexWithWidgets - widgetsOnly) / (double) widgets.size();
+  }
+}
@@ -0,0 +1,289 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.concurrent.StampedLockAccessLocker;
+import com.aklimenko.miro.exception.BoardLimitExceededException;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import com.aklimenko.miro.persistence.wal.FsyncMode;
+import com.aklimenko.miro.persistence.wal.SnapshotFile;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ShardedWidgetRepositoryTest {
+
+  @TempDir Path directory;
+
+  private ShardedWidgetRepository open() {
+    var walConfig = new MiroConfig.Wal();
+    walConfig.setEnabled(true);
+    walConfig.setPath(directory.resolve("widgets.wal").toString());
+    walConfig.setFsyncMode(FsyncMode.BATCH);
+    walConfig.setSnapshotPath(directory.resolve("widgets.snapshot").toString());
+    walConfig.setSnapshotIntervalMS(0);
+    return new ShardedWidgetRepository(
+        () -> new WidgetRepositoryImpl(new StampedLockAccessLocker()), 10, walConfig);
+  }
+
+  private static WidgetCreateRequest widgetAt(final Integer z) {
+    return new WidgetCreateRequest(1, 1, z, 1.0, 1.0);
+  }
+
+  @Test
+  @DisplayName("should keep boards isolated from each other")
+  void shouldIsolateBoards() {
+    var repository =
+        new ShardedWidgetRepository(
+            () -> new WidgetRepositoryImpl(new StampedLockAccessLocker()), 10);
+
+    var widget = repository.board("first").createWidget(widgetAt(null));
+    repository.board("second").createWidget(widgetAt(null));
+
+    assertThat(repository.board("second").readWidget(widget.getId()).isPresent(), is(false));
+    assertThat(repository.board("first").listWidgets(10, null).size(), equalTo(1));
+    assertThat(repository.existingBoard("third").isPresent(), is(false));
+  }
+
+  @Test
+  @DisplayName("should not create boards beyond the maximum amount")
+  void shouldLimitAmountOfBoards() {
+    var repository =
+        new ShardedWidgetRepository(
+            () -> new WidgetRepositoryImpl(new StampedLockAccessLocker()), 2);
+    repository.board("first");
+    repository.board("second");
+
+    assertThrows(BoardLimitExceededException.class, () -> repository.board("third"));
+    assertThat(repository.existingBoard("third").isPresent(), is(false));
+    assertThat(repository.board("first").createWidget(widgetAt(null)).getZ(), equalTo(0));
+  }
+
+  @Test
+  @DisplayName("should restore all the boards from write-ahead log on restart")
+  void shouldRestoreBoardsFromWriteAheadLog() throws IOException {
+    List<Widget> expectedBoard;
+    Widget expectedOther;
+    try (var repository = open()) {
+      var board = repository.board("board");
+      var moved = board.createWidget(widgetAt(1));
+      board.createWidget(widgetAt(2));
+      var deleted = board.createWidget(widgetAt(3));
+      var updated = repository.board("other").createWidget(widgetAt(null));
+
+      // shifts all the widgets on the board upwards
+      board.createWidget(widgetAt(1));
+      board.updateWidget(moved.getId(), new WidgetUpdateRequest(null, null, 3, null, null));
+      board.deleteWidget(deleted.getId());
+      repository
+          .board("other")
+          .updateWidget(updated.getId(), new WidgetUpdateRequest(5, 6, null, 7.0, 8.0));
+
+      expectedBoard = board.listWidgets(10, null);
+      expectedOther = repository.board("other").readWidget(updated.getId()).orElseThrow();
+    }
+
+    try (var restored = open()) {
+      var board = restored.board("board").listWidgets(10, null);
+
+      // shifted widgets get modification time of the replay, so only ids and z-order are compared
+      assertThat(
+          board.stream().map(Widget::getId).collect(Collectors.toList()),
+          equalTo(expectedBoard.stream().map(Widget::getId).collect(Collectors.toList())));
+      assertThat(
+          board.stream().map(Widget::getZ).collect(Collectors.toList()),
+          equalTo(List.of(1, 3, 4)));
+      assertThat(
+          restored.board("other").readWidget(expectedOther.getId()),
+          equalTo(Optional.of(expectedOther)));
+    }
+  }
+
+  @Test
+  @DisplayName("should restore batch from write-ahead log on restart")
+  void shouldRestoreBatchFromWriteAheadLog() throws IOException {
+    List<Widget> expected;
+    try (var repository = open()) {
+      var board = repository.board("board");
+      var moved = board.createWidget(widgetAt(1));
+      var deleted = board.createWidget(widgetAt(2));
+      board.createWidget(widgetAt(3));
+
+      board.applyBatch(
+          List.of(
+              new WidgetBatchOperation.Create(widgetAt(2)),
+              new WidgetBatchOperation.Update(
+                  moved.getId().toString(), new WidgetUpdateRequest(9, null, 3, null, null)),
+              new WidgetBatchOperation.Delete(deleted.getId().toString()),
+              new WidgetBatchOperation.Create(widgetAt(1))));
+      expected = board.listWidgets(10, null);
+    }
+
+    try (var restored = open()) {
+      var board = restored.board("board").listWidgets(10, null);
+
+      // shifted widgets get modification time of the replay, so only ids and z-order are compared
+      assertThat(
+          board.stream().map(Widget::getId).collect(Collectors.toList()),
+          equalTo(expected.stream().map(Widget::getId).collect(Collectors.toList())));
+      assertThat(
+          board.stream().map(Widget::getZ).collect(Collectors.toList()),
+          equalTo(expected.stream().map(Widget::getZ).collect(Collectors.toList())));
+      assertThat(board.get(2).getX(), equalTo(9));
+    }
+  }
+
+  @Test
+  @DisplayName("should restore import from write-ahead log on restart")
+  void shouldRestoreImportFromWriteAheadLog() throws IOException {
+    List<Widget> expected;
+    try (var repository = open()) {
+      var board = repository.board("board");
+      board.createWidget(widgetAt(1));
+      board.createWidget(widgetAt(2));
+      board.createWidget(widgetAt(5));
+
+      board.importWidgets(List.of(widgetAt(2), widgetAt(null), widgetAt(1), widgetAt(2)));
+      expected = board.listWidgets(10, null);
+    }
+
+    try (var restored = open()) {
+      // imported and shifted widgets are recorded as they are, so replay restores them exactly
+      assertThat(restored.board("board").listWidgets(10, null), equalTo(expected));
+      assertThat(
+          expected.stream().map(Widget::getZ).collect(Collectors.toList()),
+          equalTo(List.of(1, 2, 3, 4, 5, 6, 7)));
+    }
+  }
+
+  @Test
+  @DisplayName("should restore boards from snapshot and write-ahead log tail written after it")
+  void shouldRestoreBoardsFromSnapshotAndLogTail() throws IOException {
+    List<Widget> expectedBoard;
+    List<Widget> expectedOther;
+    try (var repository = open()) {
+      var board = repository.board("board");
+      var moved = board.createWidget(widgetAt(1));
+      board.createWidget(widgetAt(2));
+      repository.board("other").createWidget(widgetAt(null));
+
+      repository.snapshot();
+
+      // shifts both widgets captured by the snapshot upwards
+      board.createWidget(widgetAt(1));
+      board.updateWidget(moved.getId(), new WidgetUpdateRequest(null, null, 10, null, null));
+      repository.board("later").createWidget(widgetAt(null));
+
+      expectedBoard = board.listWidgets(10, null);
+      expectedOther = repository.board("other").listWidgets(10, null);
+    }
+
+    try (var restored = open()) {
+      var board = restored.board("board").listWidgets(10, null);
+
+      assertThat(
+          board.stream().map(Widget::getId).collect(Collectors.toList()),
+          equalTo(expectedBoard.stream().map(Widget::getId).collect(Collectors.toList())));
+      assertThat(
+          board.stream().map(Widget::getZ).collect(Collectors.toList()),
+          equalTo(List.of(1, 3, 10)));
+      assertThat(restored.board("other").listWidgets(10, null), equalTo(expectedOther));
+      assertThat(restored.board("later").listWidgets(10, null).size(), equalTo(1));
+
+      // restored boards keep being snapshotted and logged
+      restored.snapshot();
+      restored.board("board").deleteWidget(expectedBoard.get(0).getId());
+    }
+
+    try (var restored = open()) {
+      assertThat(restored.board("board").listWidgets(10, null).size(), equalTo(2));
+    }
+  }
+
+  @Test
+  @DisplayName("should keep writes made after restart from snapshot ahead of torn log")
+  void shouldKeepWritesAfterSnapshotAheadOfTornLog() throws IOException {
+    Widget captured;
+    try (var repository = open()) {
+      repository.board("board").createWidget(widgetAt(1));
+      repository.snapshot();
+      captured = repository.board("board").createWidget(widgetAt(2));
+
+      // record appended after the rotation is captured by the snapshot and torn by a crash
+      var board = ((LoggedWidgetRepository) repository.board("board")).snapshot();
+      SnapshotFile.write(directory.resolve("widgets.snapshot"), List.of(board));
+    }
+    try (var segments = Files.list(directory)) {
+      for (var segment : (Iterable<Path>) segments::iterator) {
+        if (segment.getFileName().toString().startsWith("widgets.wal.")) {
+          try (var channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+          }
+        }
+      }
+    }
+
+    Widget written;
+    try (var restarted = open()) {
+      assertThat(restarted.board("board").readWidget(captured.getId()).isPresent(), is(true));
+      written = restarted.board("board").createWidget(widgetAt(3));
+    }
+
+    try (var restored = open()) {
+      assertThat(
+          restored.board("board").readWidget(written.getId()), equalTo(Optional.of(written)));
+      assertThat(restored.board("board").listWidgets(10, null).size(), equalTo(3));
+    }
+  }
+
+  @Test
+  @DisplayName("should reject writes of all the boards once write-ahead log append failed")
+  void shouldRejectWritesAfterFailedAppend() throws IOException {
+    var repository = open();
+    var board = repository.board("board");
+    board.createWidget(widgetAt(1));
+    // closed channel fails the next append the same way a full disk does
+    repository.close();
+
+    assertThrows(UncheckedIOException.class, () -> board.createWidget(widgetAt(2)));
+    var applied = board.listWidgets(10, null);
+
+    assertThrows(UncheckedIOException.class, () -> board.createWidget(widgetAt(3)));
+    var update = new WidgetUpdateRequest(5, 6, 7, null, null);
+    assertThrows(
+        UncheckedIOException.class, () -> board.updateWidget(applied.get(0).getId(), update));
+    assertThrows(UncheckedIOException.class, () -> board.importWidgets(List.of(widgetAt(null))));
+    assertThrows(
+        UncheckedIOException.class, () -> repository.board("other").createWidget(widgetAt(null)));
+    assertThat(board.listWidgets(10, null), equalTo(applied));
+  }
+}
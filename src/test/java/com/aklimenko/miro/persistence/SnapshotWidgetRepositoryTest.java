@@ -0,0 +1,163 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.aklimenko.miro.model.widget.UlidWidgetIdGenerator;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotWidgetRepositoryTest
+    extends WidgetRepositoryContractTest<SnapshotWidgetRepository> {
+
+  @Override
+  protected SnapshotWidgetRepository createRepository() {
+    return new SnapshotWidgetRepository();
+  }
+
+  @Test
+  @DisplayName("should iterate widgets of the snapshot taken when iteration started")
+  void shouldIterateSnapshotWidgets() {
+    var first = create(1);
+    var second = create(2);
+
+    var iterator = repository.iterateWidgets(null);
+    create(1);
+    repository.deleteWidget(second.getId());
+
+    assertThat(iterator.next(), equalTo(first));
+    assertThat(iterator.next(), equalTo(second));
+    assertThat(iterator.hasNext(), is(false));
+  }
+
+  @Test
+  @DisplayName("should not lose widgets created by concurrent writers")
+  void shouldNotLoseConcurrentWrites() throws Exception {
+    var executor = Executors.newFixedThreadPool(4);
+    var tasks = new ArrayList<Callable<Widget>>();
+    for (int i = 0; i < 500; i++) {
+      tasks.add(() -> create(0));
+    }
+    executor.invokeAll(tasks);
+    executor.shutdown();
+
+    assertThat(zIndexes(), equalTo(IntStream.range(0, 500).boxed().collect(Collectors.toList())));
+  }
+
+  @Test
+  @DisplayName("should read following pages from the version pinned by the first page")
+  void shouldReadFollowingPagesFromPinnedVersion() {
+    var widgets = new ArrayList<Widget>();
+    for (int i = 0; i < 9; i++) {
+      widgets.add(create(i));
+    }
+
+    var first = repository.listWidgetsAt(null, 3, null, null);
+    for (int i = 0; i < 5; i++) {
+      create(0);
+    }
+    repository.deleteWidget(widgets.get(4).getId());
+    var second = repository.listWidgetsAt(first.getVersion(), 3, 2, null);
+    var third = repository.listWidgetsAt(second.getVersion(), 3, 5, null);
+
+    assertThat(first.getVersion(), notNullValue());
+    assertThat(second.getVersion(), equalTo(first.getVersion()));
+    assertThat(
+        ids(first.getWidgets(), second.getWidgets(), third.getWidgets()),
+        equalTo(ids(widgets)));
+    assertThat(third.getWidgets().get(2).getZ(), equalTo(8));
+    assertThat(repository.listWidgetsAt(null, 3, 5, null).getWidgets().get(0).getZ(), equalTo(6));
+  }
+
+  @Test
+  @DisplayName("should not pin version of the last page")
+  void shouldNotPinLastPage() {
+    create(0);
+    create(1);
+
+    assertThat(repository.listWidgetsAt(null, 3, null, null).getVersion(), nullValue());
+    assertThat(repository.listWidgetsAt(null, 2, 1, null).getVersion(), nullValue());
+  }
+
+  @Test
+  @DisplayName("should read the latest version when pinned version expired")
+  void shouldReadLatestVersionWhenPinnedVersionExpired() {
+    var nanos = new AtomicLong();
+    repository =
+        new SnapshotWidgetRepository(
+            new UlidWidgetIdGenerator(), new SnapshotVersions(100, 1000, nanos::get));
+    for (int i = 0; i < 4; i++) {
+      create(i);
+    }
+
+    var first = repository.listWidgetsAt(null, 2, null, null);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+    var second = repository.listWidgetsAt(first.getVersion(), 2, null, null);
+    var inserted = create(0);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+    var expired = repository.listWidgetsAt(first.getVersion(), 2, null, null);
+
+    assertThat(second.getVersion(), equalTo(first.getVersion()));
+    assertThat(expired.getVersion(), not(equalTo(first.getVersion())));
+    assertThat(expired.getWidgets().get(0).getId(), equalTo(inserted.getId()));
+  }
+
+  @Test
+  @DisplayName("should bound the amount of pinned versions")
+  void shouldBoundAmountOfPinnedVersions() {
+    var nanos = new AtomicLong();
+    var versions = new SnapshotVersions(2, 1000, nanos::get);
+    repository = new SnapshotWidgetRepository(new UlidWidgetIdGenerator(), versions);
+    create(0);
+
+    var pinned = new ArrayList<Long>();
+    for (int i = 0; i < 3; i++) {
+      create(null);
+      pinned.add(repository.listWidgetsAt(null, 1, null, null).getVersion());
+    }
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+    create(null);
+
+    assertThat(pinned.get(1), notNullValue());
+    assertThat(pinned.get(2), nullValue());
+    assertThat(versions.size(), equalTo(2));
+    assertThat(repository.listWidgetsAt(null, 1, null, null).getVersion(), notNullValue());
+    assertThat(versions.size(), equalTo(1));
+  }
+
+  @SafeVarargs
+  private static List<WidgetId> ids(final List<Widget>... pages) {
+    return Stream.of(pages)
+        .flatMap(List::stream)
+        .map(Widget::getId)
+        .collect(Collectors.toList());
+  }
+}
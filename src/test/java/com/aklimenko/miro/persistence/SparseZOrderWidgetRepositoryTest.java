@@ -0,0 +1,68 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import com.aklimenko.miro.concurrent.SynchronizedAccessLocker;
+import com.aklimenko.miro.model.widget.UlidWidgetIdGenerator;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SparseZOrderWidgetRepositoryTest
+    extends WidgetRepositoryContractTest<SparseZOrderWidgetRepository> {
+
+  @Override
+  protected SparseZOrderWidgetRepository createRepository() {
+    return new SparseZOrderWidgetRepository(new SynchronizedAccessLocker());
+  }
+
+  @Test
+  @DisplayName("should relabel only neighbourhood of widgets inserted at the same z-index")
+  void shouldRelabelNeighbourhoodOnSameZIndexInserts() {
+    var index = new SparseZOrderIndex();
+    var idGenerator = new UlidWidgetIdGenerator();
+    var widgets = new ArrayList<WidgetId>();
+    var size = 1 << 13;
+    for (int z = 0; z < size; z++) {
+      widgets.add(index.insert(widget(idGenerator.next(), z)).getId());
+    }
+
+    var relabelsBefore = index.relabels();
+    for (int i = 0; i < size; i++) {
+      widgets.add(size / 2, index.insert(widget(idGenerator.next(), size / 2)).getId());
+    }
+
+    // amortized O(log^2 n) relabels per insert, while relaying the index out whenever a gap is
+    // exhausted relabels all the widgets every few inserts
+    var log = Integer.numberOfTrailingZeros(size);
+    assertThat(index.relabels() - relabelsBefore, lessThan((long) size * log * log));
+    var listed = index.list(Integer.MAX_VALUE, null);
+    assertThat(listed.stream().map(Widget::getId).collect(Collectors.toList()), equalTo(widgets));
+    for (int z = 0; z < listed.size(); z++) {
+      assertThat(listed.get(z).getZ(), equalTo(z));
+    }
+  }
+
+  private static Widget widget(final WidgetId id, final int z) {
+    return new WidgetCreateRequest(0, 0, z, 1.0, 1.0).toNewWidget(id, z);
+  }
+}
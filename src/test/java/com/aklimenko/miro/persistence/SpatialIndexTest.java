@@ -0,0 +1,223 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SpatialIndexTest {
+
+  private static Widget widget(
+      final long id, final int x, final int y, final int z, final int size) {
+    return new Widget(WidgetId.ulid(0, id), x, y, z, size, size, Instant.EPOCH);
+  }
+
+  private static HashSet<WidgetId> search(final SpatialIndex index, final BoundingBox area) {
+    var found = new HashSet<WidgetId>();
+    index.search(area, found::add);
+    return found;
+  }
+
+  @Test
+  @DisplayName("should find widgets intersecting the area including touching ones")
+  void shouldFindIntersectingWidgets() {
+    var index = new SpatialIndex();
+    var first = widget(1, 50, 50, 1, 100);
+    var second = widget(2, 50, 100, 2, 100);
+    var third = widget(3, 250, 250, 3, 100);
+    List.of(first, second, third).forEach(index::insert);
+
+    var found = search(index, BoundingBox.of(0, 0, 100, 150));
+    var touching = search(index, BoundingBox.of(100, -100, 200, 0));
+
+    assertThat(found, equalTo(new HashSet<>(List.of(first.getId(), second.getId()))));
+    assertThat(touching, equalTo(new HashSet<>(List.of(first.getId()))));
+  }
+
+  @Test
+  @DisplayName("should list widgets intersecting the area ordered by z-index after provided one")
+  void shouldListIntersectingWidgetsByZIndex() {
+    var index = new SpatialIndex();
+    var widgets = new HashMap<WidgetId, Widget>();
+    for (int i = 0; i < 100; i++) {
+      var widget = widget(i, i * 10, 0, 100 - i, 5);
+      widgets.put(widget.getId(), widget);
+      index.insert(widget);
+    }
+
+    var page = index.list(BoundingBox.of(0, 0, 195, 0), 3, 85, widgets::get);
+
+    assertThat(
+        page.stream().map(Widget::getZ).collect(Collectors.toList()), equalTo(List.of(86, 87, 88)));
+  }
+
+  @Test
+  @DisplayName("should hit test topmost widgets covering the point including touching ones")
+  void shouldHitTestTopmostWidgets() {
+    var index = new SpatialIndex();
+    var widgets = new HashMap<WidgetId, Widget>();
+    for (var widget :
+        List.of(
+            widget(1, 0, 0, 3, 10),
+            widget(2, 5, 5, 7, 10),
+            widget(3, 10, 10, 5, 10),
+            widget(4, 20, 20, 9, 10))) {
+      widgets.put(widget.getId(), widget);
+      index.insert(widget);
+    }
+
+    var topmost = index.hitTest(5, 5, 1, widgets::get);
+    var all = index.hitTest(5, 5, 10, widgets::get);
+    var missed = index.hitTest(-10, 10, 10, widgets::get);
+
+    assertThat(
+        topmost.stream().map(Widget::getZ).collect(Collectors.toList()), equalTo(List.of(7)));
+    assertThat(
+        all.stream().map(Widget::getZ).collect(Collectors.toList()), equalTo(List.of(7, 5, 3)));
+    assertThat(missed, equalTo(List.of()));
+  }
+
+  @Test
+  @DisplayName("should match brute force search on random operations")
+  void shouldMatchBruteForce() {
+    var random = new Random(42);
+    var index = new SpatialIndex();
+    var expected = new HashMap<WidgetId, Widget>();
+    var ids = new ArrayList<WidgetId>();
+
+    for (int i = 0; i < 20000; i++) {
+      var operation = random.nextInt(10);
+      if (operation < 5 || ids.isEmpty()) {
+        var widget =
+            widget(i, random.nextInt(10000), random.nextInt(10000), i, 1 + random.nextInt(300));
+        index.insert(widget);
+        expected.put(widget.getId(), widget);
+        ids.add(widget.getId());
+      } else if (operation < 8) {
+        var previous = expected.get(ids.get(random.nextInt(ids.size())));
+        var moved =
+            new Widget(
+                previous.getId(),
+                previous.getX() + random.nextInt(200) - 100,
+                previous.getY(),
+                previous.getZ(),
+                previous.getWidth(),
+                1 + random.nextInt(300),
+                Instant.EPOCH);
+        index.update(previous, moved);
+        expected.put(moved.getId(), moved);
+      } else {
+        var removed = expected.remove(ids.remove(random.nextInt(ids.size())));
+        assertThat(index.remove(removed), is(true));
+      }
+    }
+
+    assertThat(index.size(), equalTo(expected.size()));
+    for (int i = 0; i < 500; i++) {
+      var x = random.nextInt(10000);
+      var y = random.nextInt(10000);
+      var area = BoundingBox.of(x, y, x + random.nextInt(1000), y + random.nextInt(1000));
+      var bruteForce =
+          expected.values().stream()
+              .filter(area::intersects)
+              .map(Widget::getId)
+              .collect(Collectors.toSet());
+      assertThat(search(index, area), equalTo(bruteForce));
+
+      var afterZ = random.nextInt(20000);
+      var page =
+          expected.values().stream()
+              .filter(area::intersects)
+              .filter(widget -> widget.getZ() > afterZ)
+              .sorted(Comparator.comparingInt(Widget::getZ))
+              .limit(5)
+              .collect(Collectors.toList());
+      assertThat(index.list(area, 5, afterZ, expected::get), equalTo(page));
+    }
+    for (int i = 0; i < 500; i++) {
+      var x = random.nextInt(10000);
+      var y = random.nextInt(10000);
+      var point = BoundingBox.of(x, y, x, y);
+      var bruteForce =
+          expected.values().stream()
+              .filter(point::intersects)
+              .sorted(Comparator.comparingInt(Widget::getZ).reversed())
+              .limit(3)
+              .collect(Collectors.toList());
+      assertThat(index.hitTest(x, y, 3, expected::get), equalTo(bruteForce));
+    }
+  }
+
+  @Test
+  @DisplayName("should match brute force search after bulk inserts mixed with removals")
+  void shouldMatchBruteForceAfterBulkInserts() {
+    var random = new Random(7);
+    var index = new SpatialIndex();
+    var expected = new HashMap<WidgetId, Widget>();
+    var ids = new ArrayList<WidgetId>();
+    var sequence = 0;
+
+    for (int i = 0; i < 40; i++) {
+      // both bulk loads rebuilding the tree and smaller ones inserting widgets one by one
+      var bulk = new ArrayList<Widget>();
+      var size = random.nextInt(3) == 0 ? 1 + random.nextInt(3000) : 1 + random.nextInt(50);
+      for (int j = 0; j < size; j++) {
+        var widget =
+            widget(
+                sequence,
+                random.nextInt(10000),
+                random.nextInt(10000),
+                sequence++,
+                1 + random.nextInt(300));
+        bulk.add(widget);
+        expected.put(widget.getId(), widget);
+        ids.add(widget.getId());
+      }
+      index.insertAll(bulk);
+
+      for (int j = random.nextInt(Math.max(1, ids.size() / 4)); j > 0; j--) {
+        var removed = expected.remove(ids.remove(random.nextInt(ids.size())));
+        assertThat(index.remove(removed), is(true));
+      }
+    }
+
+    assertThat(index.size(), equalTo(expected.size()));
+    for (int i = 0; i < 500; i++) {
+      var x = random.nextInt(10000);
+      var y = random.nextInt(10000);
+      var area = BoundingBox.of(x, y, x + random.nextInt(1000), y + random.nextInt(1000));
+      var bruteForce =
+          expected.values().stream()
+              .filter(area::intersects)
+              .map(Widget::getId)
+              .collect(Collectors.toSet());
+      assertThat(search(index, area), equalTo(bruteForce));
+    }
+  }
+}
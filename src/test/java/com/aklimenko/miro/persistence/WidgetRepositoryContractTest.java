@@ -0,0 +1,414 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.exception.BoardModifiedException;
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Behavior shared by all the {@link WidgetRepository} implementations. <br>
+ * Test of every implementation extends this class and adds only implementation-specific cases.
+ *
+ * @param <R> Type of the repository under test.
+ */
+abstract class WidgetRepositoryContractTest<R extends WidgetRepository> {
+
+  protected R repository;
+
+  protected abstract R createRepository();
+
+  @BeforeEach
+  void setUpRepository() {
+    repository = createRepository();
+  }
+
+  protected Widget create(final Integer z) {
+    return repository.createWidget(new WidgetCreateRequest(1, 1, z, 1.0, 1.0));
+  }
+
+  protected List<Integer> zIndexes() {
+    return repository.listWidgets(Integer.MAX_VALUE, null).stream()
+        .map(Widget::getZ)
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  @DisplayName("should place widgets without z-index into the foreground")
+  void shouldPlaceWidgetsIntoForeground() {
+    create(5);
+    var widget = create(null);
+
+    assertThat(widget.getZ(), equalTo(6));
+    assertThat(zIndexes(), equalTo(List.of(5, 6)));
+  }
+
+  @Test
+  @DisplayName("should shift widgets with the same and higher z-index upwards")
+  void shouldShiftWidgetsUpwards() {
+    var bottom = create(1);
+    var middle = create(2);
+    var top = create(10);
+    var inserted = create(2);
+
+    assertThat(repository.readWidget(bottom.getId()).get().getZ(), equalTo(1));
+    assertThat(repository.readWidget(inserted.getId()).get().getZ(), equalTo(2));
+    assertThat(repository.readWidget(middle.getId()).get().getZ(), equalTo(3));
+    var shiftedTop = repository.readWidget(top.getId()).get();
+    assertThat(shiftedTop.getZ(), equalTo(11));
+    assertThat(
+        shiftedTop.getLastModifiedAt().compareTo(top.getLastModifiedAt()),
+        greaterThanOrEqualTo(0));
+  }
+
+  @Test
+  @DisplayName("should list widgets above provided z-index")
+  void shouldListWidgetsAfterZIndex() {
+    var widgets = new ArrayList<Widget>();
+    for (int i = 0; i < 10; i++) {
+      widgets.add(create(0));
+    }
+
+    var page = repository.listWidgets(3, 4);
+
+    assertThat(page.size(), equalTo(3));
+    assertThat(page.get(0).getId(), equalTo(widgets.get(4).getId()));
+    assertThat(page.get(0).getZ(), equalTo(5));
+    assertThat(repository.listWidgets(3, Integer.MAX_VALUE), equalTo(List.of()));
+  }
+
+  @Test
+  @DisplayName("should iterate widgets above provided z-index")
+  void shouldIterateWidgetsAfterZIndex() {
+    var widgets = new ArrayList<Widget>();
+    for (int i = 0; i < 600; i++) {
+      widgets.add(create(i));
+    }
+    repository.deleteWidget(widgets.get(300).getId());
+
+    var iterated = new ArrayList<WidgetId>();
+    repository.iterateWidgets(10).forEachRemaining(widget -> iterated.add(widget.getId()));
+
+    var expected =
+        widgets.subList(11, 600).stream()
+            .map(Widget::getId)
+            .filter(id -> !id.equals(widgets.get(300).getId()))
+            .collect(Collectors.toList());
+    assertThat(iterated, equalTo(expected));
+    assertThat(repository.iterateWidgets(Integer.MAX_VALUE).hasNext(), is(false));
+  }
+
+  @Test
+  @DisplayName("should export consistent widgets or fail when board is modified during export")
+  void shouldNotExportInconsistentWidgets() {
+    var widgets = new ArrayList<WidgetId>();
+    for (int i = 0; i < 600; i++) {
+      widgets.add(create(i).getId());
+    }
+
+    var export = repository.exportWidgets();
+    var exported = new ArrayList<WidgetId>();
+    for (int i = 0; i < 256; i++) {
+      exported.add(export.next().getId());
+    }
+    create(0);
+
+    try {
+      export.forEachRemaining(widget -> exported.add(widget.getId()));
+    } catch (BoardModifiedException e) {
+      return;
+    }
+    assertThat(exported, equalTo(widgets));
+  }
+
+  @Test
+  @DisplayName("should export all widgets when writes during export change nothing")
+  void shouldExportWidgetsWhenWritesChangeNothing() {
+    var widgets = new ArrayList<WidgetId>();
+    for (int i = 0; i < 600; i++) {
+      widgets.add(create(i).getId());
+    }
+    var deleted = create(null).getId();
+    repository.deleteWidget(deleted);
+
+    var export = repository.exportWidgets();
+    var exported = new ArrayList<WidgetId>();
+    for (int i = 0; i < 256; i++) {
+      exported.add(export.next().getId());
+    }
+    repository.deleteWidget(deleted);
+    repository.updateWidget(widgets.get(300), new WidgetUpdateRequest(1, null, 300, null, null));
+    repository.updateWidget(widgets.get(500), new WidgetUpdateRequest(null, 1, null, 1.0, null));
+    export.forEachRemaining(widget -> exported.add(widget.getId()));
+
+    assertThat(exported, equalTo(widgets));
+  }
+
+  @Test
+  @DisplayName("should list widgets above z-index of deleted widget")
+  void shouldListWidgetsAfterDeletedWidget() {
+    var widgets = new ArrayList<Widget>();
+    for (int i = 0; i < 10; i++) {
+      widgets.add(create(i));
+    }
+    repository.deleteWidget(widgets.get(4).getId());
+    repository.deleteWidget(widgets.get(5).getId());
+
+    var page = repository.listWidgets(2, 4);
+
+    assertThat(
+        page.stream().map(Widget::getId).collect(Collectors.toList()),
+        equalTo(List.of(widgets.get(6).getId(), widgets.get(7).getId())));
+  }
+
+  @Test
+  @DisplayName("should keep widget in place when z-index limit exceeded on update")
+  void shouldKeepWidgetWhenZIndexLimitExceeded() {
+    var widget = create(1);
+    create(Integer.MAX_VALUE);
+    create(2);
+
+    var update = new WidgetUpdateRequest(null, null, 2, null, null);
+
+    assertThrows(
+        ZIndexLimitExceededException.class,
+        () -> repository.updateWidget(widget.getId(), update));
+    assertThat(repository.readWidget(widget.getId()).get().getZ(), equalTo(1));
+    assertThat(zIndexes(), equalTo(List.of(1, 2, Integer.MAX_VALUE)));
+  }
+
+  @Test
+  @DisplayName("should match naive z-index shifting on random operations")
+  void shouldMatchNaiveShifting() {
+    var random = new Random(42);
+    var expected = new HashMap<WidgetId, Integer>();
+    var ids = new ArrayList<WidgetId>();
+
+    for (int i = 0; i < 5000; i++) {
+      var operation = random.nextInt(10);
+      if (operation < 6 || ids.isEmpty()) {
+        var z = random.nextBoolean() ? null : random.nextInt(200);
+        var created = create(z);
+        insertNaive(expected, created.getId(), created.getZ());
+        ids.add(created.getId());
+      } else if (operation < 9) {
+        var id = ids.get(random.nextInt(ids.size()));
+        var z = random.nextInt(200);
+        repository.updateWidget(id, new WidgetUpdateRequest(null, null, z, null, null));
+        expected.remove(id);
+        insertNaive(expected, id, z);
+      } else {
+        var id = ids.remove(random.nextInt(ids.size()));
+        assertThat(repository.deleteWidget(id), is(true));
+        expected.remove(id);
+      }
+    }
+
+    var expectedOrder =
+        expected.entrySet().stream()
+            .sorted(Map.Entry.comparingByValue())
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    var actual = repository.listWidgets(Integer.MAX_VALUE, null);
+    assertThat(
+        actual.stream().map(Widget::getId).collect(Collectors.toList()), equalTo(expectedOrder));
+    actual.forEach(widget -> assertThat(widget.getZ(), equalTo(expected.get(widget.getId()))));
+  }
+
+  @Test
+  @DisplayName("should list widgets intersecting area ordered by z-index")
+  void shouldListWidgetsInArea() {
+    var inside = repository.createWidget(new WidgetCreateRequest(50, 50, 5, 100.0, 100.0));
+    var moved = repository.createWidget(new WidgetCreateRequest(500, 500, 6, 10.0, 10.0));
+    var deleted = repository.createWidget(new WidgetCreateRequest(60, 60, 7, 10.0, 10.0));
+    var shifted = repository.createWidget(new WidgetCreateRequest(50, 90, 8, 100.0, 100.0));
+    repository.createWidget(new WidgetCreateRequest(100, 100, 5, 10.0, 10.0));
+    repository.updateWidget(moved.getId(), new WidgetUpdateRequest(0, 0, 1, null, null));
+    repository.deleteWidget(deleted.getId());
+    var area = BoundingBox.of(0, 0, 40, 40);
+
+    var page = repository.listWidgets(2, null, area);
+    var nextPage = repository.listWidgets(2, page.get(1).getZ(), area);
+
+    assertThat(
+        page.stream().map(Widget::getId).collect(Collectors.toList()),
+        equalTo(List.of(moved.getId(), inside.getId())));
+    assertThat(page.get(1).getZ(), equalTo(6));
+    assertThat(nextPage.size(), equalTo(1));
+    assertThat(nextPage.get(0).getId(), equalTo(shifted.getId()));
+    assertThat(nextPage.get(0).getZ(), equalTo(9));
+  }
+
+  @Test
+  @DisplayName("should hit test topmost widgets covering the point")
+  void shouldHitTestTopmostWidgets() {
+    var bottom = repository.createWidget(new WidgetCreateRequest(0, 0, 1, 10.0, 10.0));
+    var moved = repository.createWidget(new WidgetCreateRequest(100, 100, 2, 10.0, 10.0));
+    var deleted = repository.createWidget(new WidgetCreateRequest(1, 1, 3, 10.0, 10.0));
+    repository.deleteWidget(deleted.getId());
+    var top = repository.createWidget(new WidgetCreateRequest(0, 0, null, 10.0, 10.0));
+    repository.createWidget(new WidgetCreateRequest(3, 3, 1, 10.0, 10.0));
+    repository.updateWidget(moved.getId(), new WidgetUpdateRequest(2, 2, null, null, null));
+
+    var hit = repository.hitTest(0, 0, 3);
+
+    assertThat(
+        hit.stream().map(Widget::getId).collect(Collectors.toList()),
+        equalTo(List.of(top.getId(), moved.getId(), bottom.getId())));
+    assertThat(
+        hit.stream().map(Widget::getZ).collect(Collectors.toList()), equalTo(List.of(4, 3, 2)));
+    assertThat(repository.hitTest(100, 100, 3), equalTo(List.of()));
+  }
+
+  @Test
+  @DisplayName("should apply batch operations in order with independent results")
+  void shouldApplyBatch() {
+    var bottom = create(1);
+    var top = create(2);
+
+    var results =
+        repository.applyBatch(
+            List.of(
+                new WidgetBatchOperation.Create(new WidgetCreateRequest(1, 1, 1, 1.0, 1.0)),
+                new WidgetBatchOperation.Update(
+                    top.getId().toString(), new WidgetUpdateRequest(null, null, 1, null, null)),
+                new WidgetBatchOperation.Delete("missing"),
+                new WidgetBatchOperation.Delete(bottom.getId().toString())));
+
+    assertThat(
+        results.stream().map(WidgetBatchResult::getStatus).collect(Collectors.toList()),
+        equalTo(List.of(201, 200, 404, 204)));
+    var created = results.get(0).getWidget();
+    assertThat(created.getZ(), equalTo(1));
+    assertThat(results.get(1).getWidget().getZ(), equalTo(1));
+    assertThat(zIndexes(), equalTo(List.of(1, 2)));
+    var shifted = repository.readWidget(created.getId()).get();
+    assertThat(shifted.getZ(), equalTo(2));
+    assertThat(
+        repository.listWidgets(1, results.get(1).getWidget().getZ()), equalTo(List.of(shifted)));
+    assertThat(repository.readWidget(bottom.getId()).isPresent(), is(false));
+  }
+
+  @Test
+  @DisplayName("should keep applying batch when z-index limit exceeded by an operation")
+  void shouldContinueBatchWhenZIndexLimitExceeded() {
+    var top = create(Integer.MAX_VALUE);
+
+    var results =
+        repository.applyBatch(
+            List.of(
+                new WidgetBatchOperation.Create(new WidgetCreateRequest(1, 1, null, 1.0, 1.0)),
+                new WidgetBatchOperation.Update(
+                    top.getId().toString(), new WidgetUpdateRequest(7, null, null, null, null)),
+                new WidgetBatchOperation.Create(
+                    new WidgetCreateRequest(1, 1, Integer.MAX_VALUE, 1.0, 1.0)),
+                new WidgetBatchOperation.Create(new WidgetCreateRequest(1, 1, 5, 1.0, 1.0))));
+
+    assertThat(
+        results.stream().map(WidgetBatchResult::getStatus).collect(Collectors.toList()),
+        equalTo(List.of(409, 200, 409, 201)));
+    assertThat(
+        results.get(0).getError(),
+        equalTo(new ZIndexLimitExceededException(top.getId().toString()).getMessage()));
+    assertThat(zIndexes(), equalTo(List.of(5, Integer.MAX_VALUE)));
+    assertThat(repository.readWidget(top.getId()).get().getX(), equalTo(7));
+  }
+
+  @Test
+  @DisplayName("should merge imported widgets into z-order shifting widgets only as needed")
+  void shouldImportWidgets() {
+    var a = create(1);
+    var b = create(2);
+    var c = create(3);
+    var d = create(10);
+
+    var imported =
+        repository.importWidgets(
+            List.of(
+                new WidgetCreateRequest(10, 1, 2, 1.0, 1.0),
+                new WidgetCreateRequest(11, 1, null, 1.0, 1.0),
+                new WidgetCreateRequest(12, 1, 1, 1.0, 1.0),
+                new WidgetCreateRequest(13, 1, 2, 1.0, 1.0)));
+
+    assertThat(
+        imported.getImported().stream().map(Widget::getX).collect(Collectors.toList()),
+        equalTo(List.of(10, 11, 12, 13)));
+    assertThat(
+        imported.getImported().stream().map(Widget::getZ).collect(Collectors.toList()),
+        equalTo(List.of(3, 11, 1, 4)));
+    assertThat(
+        imported.getChanged().stream().map(Widget::getZ).collect(Collectors.toList()),
+        equalTo(List.of(1, 2, 3, 4, 5, 6, 11)));
+    assertThat(zIndexes(), equalTo(List.of(1, 2, 3, 4, 5, 6, 10, 11)));
+    assertThat(repository.readWidget(a.getId()).get().getZ(), equalTo(2));
+    assertThat(repository.readWidget(b.getId()).get().getZ(), equalTo(5));
+    assertThat(repository.readWidget(c.getId()).get().getZ(), equalTo(6));
+    assertThat(repository.readWidget(d.getId()).get(), equalTo(d));
+    for (var widget : imported.getImported()) {
+      assertThat(repository.readWidget(widget.getId()).get(), equalTo(widget));
+    }
+  }
+
+  @Test
+  @DisplayName("should import nothing when z-index limit exceeded")
+  void shouldNotImportWidgetsWhenZIndexLimitExceeded() {
+    create(5);
+    create(Integer.MAX_VALUE);
+
+    assertThrows(
+        ZIndexLimitExceededException.class,
+        () ->
+            repository.importWidgets(
+                List.of(
+                    new WidgetCreateRequest(1, 1, 1, 1.0, 1.0),
+                    new WidgetCreateRequest(1, 1, Integer.MAX_VALUE, 1.0, 1.0))));
+    assertThrows(
+        ZIndexLimitExceededException.class,
+        () ->
+            repository.importWidgets(
+                List.of(
+                    new WidgetCreateRequest(1, 1, 1, 1.0, 1.0),
+                    new WidgetCreateRequest(1, 1, null, 1.0, 1.0))));
+    assertThat(zIndexes(), equalTo(List.of(5, Integer.MAX_VALUE)));
+  }
+
+  private static void insertNaive(
+      final Map<WidgetId, Integer> zById, final WidgetId id, final int z) {
+    if (zById.containsValue(z)) {
+      zById.replaceAll((key, value) -> value >= z ? value + 1 : value);
+    }
+    zById.put(id, z);
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.concurrent.SynchronizedAccessLocker;
+import com.aklimenko.miro.exception.ZIndexLimitExceededException;
+import com.aklimenko.miro.model.widget.BoundingBox;
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetBatchOperation;
+import com.aklimenko.miro.model.widget.WidgetBatchResult;
+import com.aklimenko.miro.model.widget.WidgetCreateRequest;
+import com.aklimenko.miro.model.widget.WidgetId;
+import com.aklimenko.miro.model.widget.WidgetIdGenerator;
+import com.aklimenko.miro.model.widget.WidgetUpdateRequest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class WidgetRepositoryImplTest extends WidgetRepositoryContractTest<WidgetRepositoryImpl> {
+
+  @Override
+  protected WidgetRepositoryImpl createRepository() {
+    return new WidgetRepositoryImpl(new SynchronizedAccessLocker());
+  }
+
+  @Test
+  @DisplayName("should apply random batches the same way as standalone operations")
+  void shouldMatchStandaloneOperationsOnRandomBatches() {
+    var random = new Random(7);
+    var standalone = new WidgetRepositoryImpl(new SynchronizedAccessLocker(), idSequence());
+    repository = new WidgetRepositoryImpl(new SynchronizedAccessLocker(), idSequence());
+    var ids = new ArrayList<String>();
+
+    for (int i = 0; i < 300; i++) {
+      var operations = new ArrayList<WidgetBatchOperation>();
+      var size = 1 + random.nextInt(20);
+      for (int j = 0; j < size; j++) {
+        operations.add(randomOperation(random, ids));
+      }
+
+      var results = repository.applyBatch(operations);
+      var expected =
+          operations.stream()
+              .map(operation -> applyStandalone(standalone, operation))
+              .collect(Collectors.toList());
+
+      assertThat(describe(results), equalTo(describe(expected)));
+      results.stream()
+          .filter(result -> result.getStatus() == 201)
+          .forEach(result -> ids.add(result.getWidget().getId().toString()));
+      assertThat(
+          describe(repository.listWidgets(Integer.MAX_VALUE, null)),
+          equalTo(describe(standalone.listWidgets(Integer.MAX_VALUE, null))));
+    }
+
+    var area = BoundingBox.of(0, 0, 20, 20);
+    assertThat(
+        describe(repository.listWidgets(Integer.MAX_VALUE, null, area)),
+        equalTo(describe(standalone.listWidgets(Integer.MAX_VALUE, null, area))));
+  }
+
+  @Test
+  @DisplayName("should import random widgets the same way in all the repositories")
+  void shouldMatchReferencePlacementOnRandomImports() {
+    var random = new Random(11);
+    var repositories =
+        List.of(
+            new WidgetRepositoryImpl(new SynchronizedAccessLocker()),
+            new SnapshotWidgetRepository(),
+            new TreapWidgetRepository(new SynchronizedAccessLocker()),
+            new SparseZOrderWidgetRepository(new SynchronizedAccessLocker()),
+            new PrimitiveWidgetRepository(new SynchronizedAccessLocker()),
+            new OffHeapWidgetRepository(new SynchronizedAccessLocker(), 4));
+    // widgets are labeled by x, so that placement is compared regardless of generated IDs
+    List<long[]> expected = List.of();
+    var label = 0;
+
+    for (int i = 0; i < 200; i++) {
+      var widgets = new ArrayList<WidgetCreateRequest>();
+      var size = 1 + random.nextInt(30);
+      for (int j = 0; j < size; j++) {
+        Integer z = random.nextInt(4) == 0 ? null : random.nextInt(60);
+        // top z-indexes are requested only by the last imports, since widgets placed on them fail
+        // most of the following imports
+        if (i >= 180 && random.nextInt(30) == 0) {
+          z = Integer.MAX_VALUE - random.nextInt(3);
+        }
+        widgets.add(new WidgetCreateRequest(label++, 1, z, 1.0, 1.0));
+      }
+
+      var placed = importNaive(expected, widgets);
+      if (placed != null) {
+        expected = placed;
+      }
+      for (var board : repositories) {
+        if (placed == null) {
+          assertThrows(ZIndexLimitExceededException.class, () -> board.importWidgets(widgets));
+        } else {
+          var imported = board.importWidgets(widgets).getImported();
+          var labels = widgets.stream().map(WidgetCreateRequest::getX).collect(Collectors.toList());
+          assertThat(
+              imported.stream().map(Widget::getX).collect(Collectors.toList()), equalTo(labels));
+        }
+        assertThat(
+            board.listWidgets(Integer.MAX_VALUE, null).stream()
+                .map(widget -> widget.getX() + ":" + widget.getZ())
+                .collect(Collectors.toList()),
+            equalTo(
+                expected.stream()
+                    .map(widget -> widget[0] + ":" + widget[1])
+                    .collect(Collectors.toList())));
+      }
+    }
+  }
+
+  /**
+   * Imports widgets labeled by x into z-ordered list of labels and z-indexes: all the widgets are
+   * sorted by z-index, imported before existing and then in the order of the import, and every
+   * widget takes its z-index or the one next to the previous widget, whichever is higher.
+   *
+   * @return Widgets after the import or {@code null} if z-index limit is exceeded.
+   */
+  private static List<long[]> importNaive(
+      final List<long[]> existing, final List<WidgetCreateRequest> widgets) {
+    // label, z-index, group and order
+    var merged = new ArrayList<long[]>();
+    for (int i = 0; i < existing.size(); i++) {
+      merged.add(new long[] {existing.get(i)[0], existing.get(i)[1], 1, i});
+    }
+    var foreground = new ArrayList<Long>();
+    for (int i = 0; i < widgets.size(); i++) {
+      var widget = widgets.get(i);
+      if (widget.getZ() == null) {
+        foreground.add((long) widget.getX());
+      } else {
+        merged.add(new long[] {widget.getX(), widget.getZ(), 0, i});
+      }
+    }
+    merged.sort(
+        Comparator.<long[]>comparingLong(widget -> widget[1])
+            .thenComparingLong(widget -> widget[2])
+            .thenComparingLong(widget -> widget[3]));
+
+    var placed = new ArrayList<long[]>();
+    var previous = Long.MIN_VALUE;
+    for (var widget : merged) {
+      previous = Math.max(widget[1], previous + 1);
+      placed.add(new long[] {widget[0], previous});
+    }
+    for (var widgetLabel : foreground) {
+      previous = previous == Long.MIN_VALUE ? 0 : previous + 1;
+      placed.add(new long[] {widgetLabel, previous});
+    }
+    return previous > Integer.MAX_VALUE ? null : placed;
+  }
+
+  private static WidgetIdGenerator idSequence() {
+    var sequence = new AtomicLong();
+    return () -> WidgetId.ulid(0, sequence.incrementAndGet());
+  }
+
+  private static WidgetBatchOperation randomOperation(
+      final Random random, final List<String> ids) {
+    var operation = random.nextInt(10);
+    var z = random.nextInt(100) == 0 ? Integer.MAX_VALUE : random.nextInt(50);
+    if (operation < 4 || ids.isEmpty()) {
+      return new WidgetBatchOperation.Create(
+          new WidgetCreateRequest(
+              random.nextInt(100), random.nextInt(100), random.nextBoolean() ? z : null, 5.0, 5.0));
+    }
+    var id = random.nextInt(20) == 0 ? "missing" : ids.get(random.nextInt(ids.size()));
+    if (operation < 8) {
+      return new WidgetBatchOperation.Update(
+          id,
+          new WidgetUpdateRequest(
+              random.nextInt(100), null, random.nextBoolean() ? z : null, null, null));
+    }
+    return new WidgetBatchOperation.Delete(id);
+  }
+
+  private static WidgetBatchResult applyStandalone(
+      final WidgetRepository repository, final WidgetBatchOperation operation) {
+    try {
+      switch (operation.getType()) {
+        case CREATE:
+          var create = (WidgetBatchOperation.Create) operation;
+          return WidgetBatchResult.created(repository.createWidget(create.getWidget()));
+        case UPDATE:
+          var update = (WidgetBatchOperation.Update) operation;
+          return update
+              .getWidgetId()
+              .flatMap(id -> repository.updateWidget(id, update.getWidget()))
+              .map(WidgetBatchResult::updated)
+              .orElseGet(() -> WidgetBatchResult.notFound(update.getId()));
+        default:
+          var delete = (WidgetBatchOperation.Delete) operation;
+          return delete.getWidgetId().map(repository::deleteWidget).orElse(false)
+              ? WidgetBatchResult.deleted()
+              : WidgetBatchResult.notFound(delete.getId());
+      }
+    } catch (ZIndexLimitExceededException e) {
+      return WidgetBatchResult.conflict(e.getMessage());
+    }
+  }
+
+  /** Describes results and widgets ignoring modification time, which differs between runs. */
+  private static List<String> describe(final List<?> resultsOrWidgets) {
+    return resultsOrWidgets.stream()
+        .map(
+            item -> {
+              if (item instanceof WidgetBatchResult) {
+                var result = (WidgetBatchResult) item;
+                var widget = result.getWidget();
+                return result.getStatus()
+                    + " "
+                    + (widget == null ? result.getError() : describe(widget));
+              }
+              return describe((Widget) item);
+            })
+        .collect(Collectors.toList());
+  }
+
+  private static String describe(final Widget widget) {
+    return widget.getId() + " " + widget.getX() + ":" + widget.getY() + ":" + widget.getZ();
+  }
+}
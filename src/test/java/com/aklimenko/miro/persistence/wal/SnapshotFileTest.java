@@ -0,0 +1,87 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence.wal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SnapshotFileTest {
+
+  @TempDir Path directory;
+
+  private static final WidgetId FIRST = WidgetId.ulid(0, 1);
+  private static final WidgetId SECOND = WidgetId.uuid(2, 2);
+
+  private static Widget widget(final WidgetId id, final int z) {
+    return new Widget(id, 1, 2, z, 3.5, 4.5, Instant.ofEpochSecond(1600000000, 123456789));
+  }
+
+  private static final List<BoardSnapshot> BOARDS =
+      List.of(
+          new BoardSnapshot("board", 42, List.of(widget(FIRST, -1), widget(SECOND, 5))),
+          new BoardSnapshot("empty", 7, List.of()));
+
+  @Test
+  @DisplayName("should read boards back as they were written")
+  void shouldReadWrittenSnapshot() throws IOException {
+    var path = directory.resolve("widgets.snapshot");
+    SnapshotFile.write(path, List.of(new BoardSnapshot("stale", 1, List.of())));
+    SnapshotFile.write(path, BOARDS);
+
+    var boards = SnapshotFile.read(path);
+
+    assertThat(boards.size(), equalTo(2));
+    assertThat(boards.get(0).getBoardId(), equalTo("board"));
+    assertThat(boards.get(0).getPosition(), equalTo(42L));
+    assertThat(boards.get(0).getWidgets(), equalTo(BOARDS.get(0).getWidgets()));
+    assertThat(boards.get(1).getBoardId(), equalTo("empty"));
+    assertThat(boards.get(1).getWidgets(), equalTo(List.of()));
+  }
+
+  @Test
+  @DisplayName("should read no boards if snapshot doesn't exist")
+  void shouldReadMissingSnapshot() throws IOException {
+    assertThat(SnapshotFile.read(directory.resolve("widgets.snapshot")), equalTo(List.of()));
+  }
+
+  @Test
+  @DisplayName("should refuse to read truncated or corrupted snapshot")
+  void shouldRefuseCorruptedSnapshot() throws IOException {
+    var path = directory.resolve("widgets.snapshot");
+    var size = SnapshotFile.write(path, BOARDS);
+    try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {0x7f}), size / 2);
+    }
+    assertThrows(IOException.class, () -> SnapshotFile.read(path));
+
+    try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.truncate(size - 1);
+    }
+    assertThrows(IOException.class, () -> SnapshotFile.read(path));
+  }
+}
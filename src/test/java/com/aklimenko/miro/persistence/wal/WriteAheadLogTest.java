@@ -0,0 +1,211 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.persistence.wal;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+public class WriteAheadLogTest {
+
+  @TempDir Path directory;
+
+  private static final WidgetId FIRST = WidgetId.ulid(0, 1);
+  private static final WidgetId SECOND = WidgetId.ulid(0, 2);
+  private static final WidgetId THIRD = WidgetId.ulid(0, 3);
+
+  private static Widget widget(final WidgetId id, final int z) {
+    return new Widget(id, 1, 2, z, 3.5, 4.5, Instant.ofEpochSecond(1600000000, 123456789));
+  }
+
+  private List<WalRecord> reopen(final Path path) throws IOException {
+    var replayed = new ArrayList<WalRecord>();
+    WriteAheadLog.open(path, FsyncMode.OP, 100, (record, position) -> replayed.add(record))
+        .close();
+    return replayed;
+  }
+
+  @ParameterizedTest
+  @DisplayName("should replay appended records in order")
+  @EnumSource(FsyncMode.class)
+  void shouldReplayRecords(FsyncMode fsyncMode) throws IOException {
+    var path = directory.resolve("widgets.wal");
+    try (var wal = WriteAheadLog.open(path, fsyncMode, 10, (record, position) -> {})) {
+      wal.awaitDurable(wal.append(WalRecord.put("board", widget(FIRST, 1))));
+      wal.awaitDurable(wal.append(WalRecord.delete("board", FIRST)));
+      wal.awaitDurable(wal.append(WalRecord.put("other", widget(SECOND, -7))));
+    }
+
+    var replayed = reopen(path);
+
+    assertThat(replayed.size(), equalTo(3));
+    assertThat(replayed.get(0).getType(), equalTo(WalRecord.Type.PUT));
+    assertThat(replayed.get(0).getBoardId(), equalTo("board"));
+    assertThat(replayed.get(0).getWidget(), equalTo(widget(FIRST, 1)));
+    assertThat(replayed.get(1).getType(), equalTo(WalRecord.Type.DELETE));
+    assertThat(replayed.get(1).getWidgetId(), equalTo(FIRST));
+    assertThat(replayed.get(1).getWidget(), nullValue());
+    assertThat(replayed.get(2).getBoardId(), equalTo("other"));
+    assertThat(replayed.get(2).getWidget(), equalTo(widget(SECOND, -7)));
+  }
+
+  @ParameterizedTest
+  @DisplayName("should replay records appended at once one by one")
+  @EnumSource(FsyncMode.class)
+  void shouldReplayRecordsAppendedAtOnce(FsyncMode fsyncMode) throws IOException {
+    var path = directory.resolve("widgets.wal");
+    var positions = new ArrayList<Long>();
+    long last;
+    try (var wal = WriteAheadLog.open(path, fsyncMode, 10, (record, position) -> {})) {
+      assertThat(wal.appendAll(List.of()), equalTo(-1L));
+      last =
+          wal.appendAll(
+              List.of(
+                  WalRecord.put("board", widget(FIRST, 1)),
+                  WalRecord.delete("board", SECOND),
+                  WalRecord.put("board", widget(THIRD, 2))));
+      wal.awaitDurable(last);
+    }
+
+    var replayed = new ArrayList<WalRecord>();
+    try (var wal =
+        WriteAheadLog.open(
+            path,
+            FsyncMode.OP,
+            10,
+            (record, position) -> {
+              replayed.add(record);
+              positions.add(position);
+            })) {
+      assertThat(wal.append(WalRecord.delete("board", FIRST)) > last, equalTo(true));
+    }
+
+    assertThat(replayed.size(), equalTo(3));
+    assertThat(replayed.get(0).getWidget(), equalTo(widget(FIRST, 1)));
+    assertThat(replayed.get(1).getWidgetId(), equalTo(SECOND));
+    assertThat(replayed.get(2).getWidget(), equalTo(widget(THIRD, 2)));
+    assertThat(positions.get(2), equalTo(last));
+  }
+
+  @Test
+  @DisplayName("should cut off torn tail and keep appending after the last valid record")
+  void shouldCutOffTornTail() throws IOException {
+    var path = directory.resolve("widgets.wal");
+    try (var wal = WriteAheadLog.open(path, FsyncMode.OP, 100, (record, position) -> {})) {
+      wal.append(WalRecord.put("board", widget(FIRST, 1)));
+      wal.append(WalRecord.put("board", widget(SECOND, 2)));
+    }
+    try (var channel = FileChannel.open(WriteAheadLog.segment(path, 0), StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    try (var wal = WriteAheadLog.open(path, FsyncMode.OP, 100, (record, position) -> {})) {
+      wal.append(WalRecord.put("board", widget(THIRD, 3)));
+    }
+    var replayed = reopen(path);
+
+    assertThat(replayed.size(), equalTo(2));
+    assertThat(replayed.get(0).getWidgetId(), equalTo(FIRST));
+    assertThat(replayed.get(1).getWidgetId(), equalTo(THIRD));
+  }
+
+  @Test
+  @DisplayName("should make records of concurrent writers durable with group commit")
+  void shouldGroupCommitConcurrentWriters() throws Exception {
+    var path = directory.resolve("widgets.wal");
+    var executor = Executors.newFixedThreadPool(8);
+    try (var wal = WriteAheadLog.open(path, FsyncMode.BATCH, 100, (record, position) -> {})) {
+      var tasks = new ArrayList<Callable<Object>>();
+      for (int i = 0; i < 400; i++) {
+        var id = WidgetId.ulid(0, i);
+        tasks.add(
+            () -> {
+              wal.awaitDurable(wal.append(WalRecord.put("board", widget(id, 0))));
+              return null;
+            });
+      }
+      for (var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(reopen(path).size(), equalTo(400));
+    assertThat(Files.size(WriteAheadLog.segment(path, 0)) > 0, equalTo(true));
+  }
+
+  @Test
+  @DisplayName("should replay records of all the segments with their log sequence numbers")
+  void shouldReplayRotatedSegments() throws IOException {
+    var path = directory.resolve("widgets.wal");
+    long first;
+    long rotatedAt;
+    long second;
+    try (var wal = WriteAheadLog.open(path, FsyncMode.OP, 100, (record, position) -> {})) {
+      first = wal.append(WalRecord.put("board", widget(FIRST, 1)));
+      rotatedAt = wal.rotate();
+      // rotating an empty segment keeps appending into it
+      assertThat(wal.rotate(), equalTo(rotatedAt));
+      second = wal.append(WalRecord.put("board", widget(SECOND, 2)));
+    }
+
+    var positions = new ArrayList<Long>();
+    WriteAheadLog.open(path, FsyncMode.OP, 100, (record, position) -> positions.add(position))
+        .close();
+
+    assertThat(rotatedAt, equalTo(first));
+    assertThat(positions, equalTo(List.of(first, second)));
+    assertThat(Files.exists(WriteAheadLog.segment(path, rotatedAt)), equalTo(true));
+  }
+
+  @Test
+  @DisplayName("should delete segments preceding the rotation and keep appending")
+  void shouldDeleteSegmentsBeforeRotation() throws IOException {
+    var path = directory.resolve("widgets.wal");
+    try (var wal = WriteAheadLog.open(path, FsyncMode.BATCH, 100, (record, position) -> {})) {
+      wal.awaitDurable(wal.append(WalRecord.put("board", widget(FIRST, 1))));
+      var rotatedAt = wal.rotate();
+      wal.awaitDurable(wal.append(WalRecord.put("board", widget(SECOND, 2))));
+
+      assertThat(wal.deleteSegmentsBefore(rotatedAt), equalTo(1));
+      wal.awaitDurable(wal.append(WalRecord.put("board", widget(THIRD, 3))));
+    }
+
+    var replayed = reopen(path);
+
+    assertThat(Files.exists(WriteAheadLog.segment(path, 0)), equalTo(false));
+    assertThat(replayed.size(), equalTo(2));
+    assertThat(replayed.get(0).getWidgetId(), equalTo(SECOND));
+    assertThat(replayed.get(1).getWidgetId(), equalTo(THIRD));
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ClientRateLimitRegistryTest {
+
+  private final AtomicLong nanos = new AtomicLong();
+
+  private ClientRateLimitRegistry registry(final int maxClients) {
+    return new ClientRateLimitRegistry(
+        key -> mock(RateLimitService.class),
+        mock(RateLimitService.class),
+        maxClients,
+        2,
+        1000,
+        nanos::get);
+  }
+
+  @Test
+  @DisplayName("should keep separate counters for every client")
+  void shouldKeepSeparateCountersForEveryClient() {
+    var registry = registry(100);
+
+    var first = registry.client("ip:10.0.0.1");
+    var second = registry.client("key:second");
+
+    assertThat(registry.client("ip:10.0.0.1"), sameInstance(first));
+    assertThat(second, not(sameInstance(first)));
+    assertThat(registry.size(), equalTo(2));
+  }
+
+  @Test
+  @DisplayName("should bound the amount of clients keeping active ones")
+  void shouldBoundAmountOfClients() {
+    var registry = registry(100);
+    var active = registry.client("key:active");
+
+    for (int i = 0; i < 100_000; i++) {
+      registry.client("ip:" + i);
+      assertThat(registry.client("key:active"), sameInstance(active));
+    }
+
+    assertThat(registry.size(), lessThanOrEqualTo(100));
+  }
+
+  @Test
+  @DisplayName("should evict idle clients")
+  void shouldEvictIdleClients() {
+    var registry = registry(100);
+    var idle = registry.client("key:idle");
+    var active = registry.client("key:active");
+
+    for (int i = 0; i < 3; i++) {
+      nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+      registry.client("ip:" + i);
+      assertThat(registry.client("key:active"), sameInstance(active));
+    }
+
+    assertThat(registry.client("key:idle"), not(sameInstance(idle)));
+  }
+
+  @Test
+  @DisplayName("should limit unknown keys as remote address once it introduced too many keys")
+  void shouldLimitUnknownKeysAsRemoteAddress() {
+    var registry = registry(100);
+    var first = registry.client("key:first", "10.0.0.1");
+    var second = registry.client("key:second", "10.0.0.1");
+
+    var rotated = registry.client("key:third", "10.0.0.1");
+
+    assertThat(rotated, sameInstance(registry.client(null, "10.0.0.1")));
+    assertThat(rotated, sameInstance(registry.client("key:fourth", "10.0.0.1")));
+    assertThat(registry.client("key:first", "10.0.0.1"), sameInstance(first));
+    assertThat(registry.client("key:second", "10.0.0.2"), sameInstance(second));
+    assertThat(registry.client("key:third", "10.0.0.2"), not(sameInstance(rotated)));
+  }
+
+  @Test
+  @DisplayName("should keep key counts of active addresses across generations")
+  void shouldKeepKeyCountsAcrossGenerations() {
+    var registry = registry(100);
+    registry.client("key:first", "10.0.0.1");
+    registry.client("key:second", "10.0.0.1");
+
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+    var rotated = registry.client("key:third", "10.0.0.1");
+
+    assertThat(rotated, sameInstance(registry.client(null, "10.0.0.1")));
+  }
+
+  @Test
+  @DisplayName("should bound the amount of clients introduced by rotating keys")
+  void shouldBoundClientsOfRotatingKeys() {
+    var registry = registry(100);
+    var active = registry.client("key:active", "10.0.0.2");
+
+    for (int i = 0; i < 100_000; i++) {
+      registry.client("key:" + i, "10.0.0.1");
+    }
+
+    assertThat(registry.client("key:active", "10.0.0.2"), sameInstance(active));
+    assertThat(registry.size(), equalTo(4));
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.exception.RateLimitExceededException;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.model.ratelimit.RateLimitStats;
+import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import com.aklimenko.miro.service.counter.CounterStore;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LeasingRateLimitServiceTest {
+
+  private final AtomicLong now = new AtomicLong(1_000_000);
+  private final AtomicInteger storeCalls = new AtomicInteger();
+  private final AtomicLong counter = new AtomicLong();
+  private RateLimitRule rule;
+
+  /** Store with a single counter ignoring its name, counting the calls. */
+  private final CounterStore store =
+      (name, window, amount, limit) -> {
+        storeCalls.incrementAndGet();
+        final long before =
+            counter.getAndUpdate(c -> c + CounterStore.granted(c, amount, limit));
+        return CompletableFuture.completedFuture(before);
+      };
+
+  @BeforeEach
+  void setUp() {
+    var config = new MiroConfig();
+    config.getRateLimit().setWindowSizeMS(1000);
+    config.getRateLimit().setLimitGlobal(5);
+    config.getRateLimit().setLimitListWidgets(100);
+    rule = new RateLimitRule(config);
+  }
+
+  private LeasingRateLimitService node(final CounterStore counterStore) {
+    return new LeasingRateLimitService("key:test", rule, counterStore, 10, 50, now::get);
+  }
+
+  private static boolean tryConsume(
+      final LeasingRateLimitService service, final RateLimitTarget target) {
+    try {
+      service.tryConsume(target);
+      return true;
+    } catch (RateLimitExceededException e) {
+      return false;
+    }
+  }
+
+  @Test
+  @DisplayName("should admit at most the limit across instances sharing the store")
+  void shouldShareLimitAcrossInstances() {
+    var first = node(store);
+    var second = node(store);
+
+    int admitted = 0;
+    for (int i = 0; i < 300; i++) {
+      if (tryConsume(i % 2 == 0 ? first : second, RateLimitTarget.WIDGETS_LIST)) {
+        admitted++;
+      }
+    }
+
+    // leases of both instances are consumed except the last prefetched one
+    assertThat(admitted <= 100 && admitted > 100 - 2 * 10, equalTo(true));
+    assertThat(storeCalls.get(), lessThan(300 / 5));
+  }
+
+  @Test
+  @DisplayName("should fall back to global limit for unlimited targets")
+  void shouldFallBackToGlobalLimit() {
+    var service = node(store);
+
+    int admitted = 0;
+    for (int i = 0; i < 10; i++) {
+      if (tryConsume(service, RateLimitTarget.WIDGET_READ)) {
+        admitted++;
+      }
+    }
+
+    assertThat(admitted, equalTo(5));
+    assertThat(
+        service.getStats(RateLimitTarget.WIDGET_READ),
+        equalTo(RateLimitStats.of(5, 0, 1_001_000)));
+  }
+
+  @Test
+  @DisplayName("should acquire new lease in the next window")
+  void shouldAcquireLeaseInNextWindow() {
+    var service = node(store);
+    for (int i = 0; i < 5; i++) {
+      service.tryConsume(RateLimitTarget.GLOBAL);
+    }
+    assertThat(tryConsume(service, RateLimitTarget.GLOBAL), equalTo(false));
+
+    now.set(1_001_000);
+    counter.set(0);
+    assertThat(tryConsume(service, RateLimitTarget.GLOBAL), equalTo(true));
+  }
+
+  @Test
+  @DisplayName("should admit requests when store is not available")
+  void shouldFailOpen() {
+    var service =
+        node(
+            (name, window, amount, limit) ->
+                CompletableFuture.failedFuture(new IllegalStateException("unavailable")));
+
+    for (int i = 0; i < 10; i++) {
+      service.tryConsume(RateLimitTarget.GLOBAL);
+    }
+  }
+}
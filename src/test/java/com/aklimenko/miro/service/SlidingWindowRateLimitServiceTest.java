@@ -0,0 +1,133 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.exception.RateLimitExceededException;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.model.ratelimit.RateLimitRuleUpdateRequest;
+import com.aklimenko.miro.model.ratelimit.RateLimitStats;
+import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SlidingWindowRateLimitServiceTest {
+
+  private final AtomicLong now = new AtomicLong(1_000_000);
+  private RateLimitRule rule;
+  private SlidingWindowRateLimitService service;
+
+  @BeforeEach
+  void setUp() {
+    var config = new MiroConfig();
+    config.getRateLimit().setWindowSizeMS(1000);
+    config.getRateLimit().setLimitGlobal(5);
+    config.getRateLimit().setLimitListWidgets(10);
+    rule = new RateLimitRule(config);
+    service = new SlidingWindowRateLimitService(rule, now::get);
+  }
+
+  private int consumeAll(final RateLimitTarget target) {
+    int consumed = 0;
+    try {
+      while (consumed < 1000) {
+        service.tryConsume(target);
+        consumed++;
+      }
+    } catch (RateLimitExceededException e) {
+      // limit reached
+    }
+    return consumed;
+  }
+
+  @Test
+  @DisplayName("should limit target requests and fall back to global limit for unlimited targets")
+  void shouldLimitRequests() {
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(10));
+    assertThat(consumeAll(RateLimitTarget.WIDGET_READ), equalTo(5));
+    assertThrows(
+        RateLimitExceededException.class, () -> service.tryConsume(RateLimitTarget.GLOBAL));
+    assertThat(
+        service.getStats(RateLimitTarget.WIDGET_READ),
+        equalTo(RateLimitStats.of(5, 0, 1_001_000)));
+  }
+
+  @Test
+  @DisplayName("should weight requests of previous window by its part in the sliding window")
+  void shouldWeightPreviousWindow() {
+    now.set(1_000_900);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(10));
+
+    // burst right after the window boundary is limited by the previous window requests
+    now.set(1_001_000);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(0));
+
+    // requests become available as the previous window slides out
+    now.set(1_001_300);
+    assertThat(
+        service.getStats(RateLimitTarget.WIDGETS_LIST),
+        equalTo(RateLimitStats.of(10, 3, 1_002_000)));
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(3));
+    now.set(1_001_800);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(5));
+
+    // windows older than the previous one are ignored
+    now.set(1_003_000);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(10));
+  }
+
+  @Test
+  @DisplayName("should not exceed the limit with concurrent requests")
+  void shouldNotExceedLimitConcurrently() throws Exception {
+    var executor = Executors.newFixedThreadPool(8);
+    try {
+      var tasks = new ArrayList<Callable<Integer>>();
+      for (int i = 0; i < 8; i++) {
+        tasks.add(() -> consumeAll(RateLimitTarget.WIDGETS_LIST));
+      }
+      int consumed = 0;
+      for (var result : executor.invokeAll(tasks)) {
+        consumed += result.get();
+      }
+      assertThat(consumed, equalTo(10));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  @DisplayName("should keep counted requests when window size changes")
+  void shouldMigrateRequestsOnWindowResize() {
+    now.set(1_000_500);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(10));
+
+    rule.updateBy(
+        new RateLimitRuleUpdateRequest(2000, null, null, null, null, null, null, null, null, null));
+    now.set(1_000_600);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(0));
+
+    // migrated requests slide out with the windows of the new size
+    now.set(1_003_000);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(5));
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.aklimenko.miro.MiroConfig;
+import com.aklimenko.miro.exception.RateLimitExceededException;
+import com.aklimenko.miro.model.ratelimit.RateLimitRule;
+import com.aklimenko.miro.model.ratelimit.RateLimitStats;
+import com.aklimenko.miro.model.ratelimit.RateLimitTarget;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketRateLimitServiceTest {
+
+  private static final long WALL_CLOCK = 1_000_000;
+
+  private final AtomicLong nanos = new AtomicLong(-123_456_789);
+  private TokenBucketRateLimitService service;
+
+  @BeforeEach
+  void setUp() {
+    var config = new MiroConfig();
+    config.getRateLimit().setWindowSizeMS(1000);
+    config.getRateLimit().setLimitGlobal(5);
+    config.getRateLimit().setLimitListWidgets(10);
+    var rule = new RateLimitRule(config);
+    service = new TokenBucketRateLimitService(rule, 50, nanos::get, () -> WALL_CLOCK);
+  }
+
+  private void advanceMS(final long millis) {
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  private int consumeAll(final RateLimitTarget target) {
+    int consumed = 0;
+    try {
+      while (consumed < 1000) {
+        service.tryConsume(target);
+        consumed++;
+      }
+    } catch (RateLimitExceededException e) {
+      // bucket is empty
+    }
+    return consumed;
+  }
+
+  @Test
+  @DisplayName("should allow burst up to capacity and fall back to global bucket")
+  void shouldAllowBurstUpToCapacity() {
+    assertThat(
+        service.getStats(RateLimitTarget.WIDGETS_LIST),
+        equalTo(RateLimitStats.of(5, 5, WALL_CLOCK)));
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(5));
+    assertThat(consumeAll(RateLimitTarget.WIDGET_READ), equalTo(2));
+    assertThrows(
+        RateLimitExceededException.class, () -> service.tryConsume(RateLimitTarget.GLOBAL));
+    assertThat(
+        service.getStats(RateLimitTarget.WIDGETS_LIST),
+        equalTo(RateLimitStats.of(5, 0, WALL_CLOCK + 500)));
+  }
+
+  @Test
+  @DisplayName("should refill tokens lazily at the rate of the limit per window")
+  void shouldRefillTokens() {
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(5));
+
+    advanceMS(99);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(0));
+    advanceMS(1);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(1));
+    advanceMS(250);
+    assertThat(
+        service.getStats(RateLimitTarget.WIDGETS_LIST),
+        equalTo(RateLimitStats.of(5, 2, WALL_CLOCK + 250)));
+
+    // tokens above capacity are not accumulated while idle
+    advanceMS(60_000);
+    assertThat(consumeAll(RateLimitTarget.WIDGETS_LIST), equalTo(5));
+  }
+
+  @Test
+  @DisplayName("should not consume more tokens than available with concurrent requests")
+  void shouldNotExceedCapacityConcurrently() throws Exception {
+    var executor = Executors.newFixedThreadPool(8);
+    try {
+      var tasks = new ArrayList<Callable<Integer>>();
+      for (int i = 0; i < 8; i++) {
+        tasks.add(() -> consumeAll(RateLimitTarget.WIDGETS_LIST));
+      }
+      int consumed = 0;
+      for (var result : executor.invokeAll(tasks)) {
+        consumed += result.get();
+      }
+      assertThat(consumed, equalTo(5));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service.counter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryCounterStoreTest {
+
+  private final InMemoryCounterStore store = new InMemoryCounterStore();
+
+  @Test
+  @DisplayName("should grant requested amount up to the limit")
+  void shouldGrantUpToLimit() {
+    assertThat(store.acquireNow("a", 1, 10, 25), equalTo(0L));
+    assertThat(store.acquireNow("a", 1, 10, 25), equalTo(10L));
+    assertThat(store.acquireNow("a", 1, 10, 25), equalTo(20L));
+    assertThat(store.acquireNow("a", 1, 10, 25), equalTo(25L));
+    assertThat(CounterStore.granted(20, 10, 25), equalTo(5L));
+    assertThat(CounterStore.granted(25, 10, 25), equalTo(0L));
+
+    // other counters and windows are independent
+    assertThat(store.acquireNow("b", 1, 10, 25), equalTo(0L));
+    assertThat(store.acquireNow("a", 2, 10, 25), equalTo(0L));
+  }
+
+  @Test
+  @DisplayName("should discard counters of old windows")
+  void shouldDiscardOldWindows() {
+    store.acquireNow("a", 1, 10, 25);
+    store.acquireNow("a", 3, 10, 25);
+
+    assertThat(store.acquireNow("a", 1, 10, 25), equalTo(0L));
+  }
+
+  @Test
+  @DisplayName("should not grant more than the limit to concurrent callers")
+  void shouldNotExceedLimitConcurrently() throws Exception {
+    var executor = Executors.newFixedThreadPool(8);
+    try {
+      var tasks = new ArrayList<Callable<Long>>();
+      for (int i = 0; i < 1000; i++) {
+        tasks.add(() -> CounterStore.granted(store.acquireNow("a", 1, 3, 500), 3, 500));
+      }
+      long granted = 0;
+      for (var result : executor.invokeAll(tasks)) {
+        granted += result.get();
+      }
+      assertThat(granted, equalTo(500L));
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ Copyright 2020 Anton Klimenko
+
+ <p>Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ except in compliance with the License. You may obtain a copy of the License at
+
+ <p>http://www.apache.org/licenses/LICENSE-2.0
+
+ <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ express or implied. See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+package com.aklimenko.miro.service.counter;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class RemoteCounterStoreTest {
+
+  private CounterStoreServer server;
+  private RemoteCounterStore first;
+  private RemoteCounterStore second;
+
+  @BeforeEach
+  void setUp() {
+    server = new CounterStoreServer(0);
+    var address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    first = new RemoteCounterStore(address, 1000);
+    second = new RemoteCounterStore(address, 1000);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    first.close();
+    second.close();
+    server.close();
+  }
+
+  @Test
+  @DisplayName("should share counters between clients of the server")
+  void shouldShareCounters() throws Exception {
+    var results = new ArrayList<CompletableFuture<Long>>();
+    for (int i = 0; i < 200; i++) {
+      results.add((i % 2 == 0 ? first : second).acquire("key:a/GLOBAL", 7, 3, 300));
+    }
+
+    long granted = 0;
+    for (var result : results) {
+      granted += CounterStore.granted(result.get(5, TimeUnit.SECONDS), 3, 300);
+    }
+    assertThat(granted, equalTo(300L));
+  }
+
+  @Test
+  @DisplayName("should fail requests when server is not available")
+  void shouldFailWhenServerIsDown() throws Exception {
+    // the port is held by a socket which isn't listening, so connections to it are refused
+    try (var unavailable = new Socket()) {
+      unavailable.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      var store =
+          new RemoteCounterStore((InetSocketAddress) unavailable.getLocalSocketAddress(), 1000);
+
+      var result = store.acquire("key:a/GLOBAL", 7, 3, 300);
+
+      assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+      store.close();
+    }
+  }
+
+  @Test
+  @DisplayName("should fail requests at once until the next connection attempt")
+  void shouldFailAtOnceUntilReconnect() throws Exception {
+    var nanos = new AtomicLong();
+    try (var unavailable = new Socket()) {
+      unavailable.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      var address = (InetSocketAddress) unavailable.getLocalSocketAddress();
+      var store = new RemoteCounterStore(address, 1000, nanos::get);
+      var attempt = store.acquire("key:a/GLOBAL", 7, 3, 300);
+      assertThrows(ExecutionException.class, () -> attempt.get(5, TimeUnit.SECONDS));
+
+      var delayed = store.acquire("key:a/GLOBAL", 7, 3, 300);
+      nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(RemoteCounterStore.MIN_RECONNECT_DELAY_MS));
+      var retried = store.acquire("key:a/GLOBAL", 7, 3, 300);
+
+      assertThat(delayed.isCompletedExceptionally(), is(true));
+      assertThrows(ExecutionException.class, () -> retried.get(5, TimeUnit.SECONDS));
+      assertThat(store.acquire("key:a/GLOBAL", 7, 3, 300).isCompletedExceptionally(), is(true));
+      store.close();
+    }
+  }
+
+  @Test
+  @DisplayName("should fail requests once closed")
+  void shouldFailWhenClosed() {
+    first.close();
+
+    var result = first.acquire("key:a/GLOBAL", 7, 3, 300);
+
+    assertThat(result.isCompletedExceptionally(), is(true));
+  }
+}
@@ -20,6 +20,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import com.aklimenko.miro.exception.RequestValidationException;
 import com.aklimenko.miro.exception.ZIndexLimitExceededException;
 import com.aklimenko.miro.model.widget.Widget;
+import com.aklimenko.miro.model.widget.WidgetId;
 import java.time.Instant;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -28,6 +29,8 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 public class ValidationHelperTest {
 
+  private static final WidgetId ID = WidgetId.parse("01EKDT6Q4RXJ8WQG5V6B3M2N7Z");
+
   @Test
   @DisplayName("should not throw if non null argument passed into requireNonNull()")
   void nonnullArgumentShouldNotThrow() {
@@ -51,20 +54,35 @@ public class ValidationHelperTest {
       "should not throw if widget with non max z-index passed into ensureSafeToPlaceOnTopOf()")
   @ValueSource(ints = {Integer.MIN_VALUE, 0, Integer.MAX_VALUE - 1})
   void nonMaxZIndexShouldNotThrow(int z) {
-    var widget = new Widget("id", 1, 1, z, 1, 1, Instant.now());
+    var widget = new Widget(WidgetId.ulid(0, 1), 1, 1, z, 1, 1, Instant.now());
     ValidationHelper.ensureSafeToPlaceOnTopOf(widget);
   }
 
   @Test
   @DisplayName("should throw if widget with max z-index passed into ensureSafeToPlaceOnTopOf()")
   void maxZIndexShouldThrow() {
-    var widget = new Widget("123", 1, 1, Integer.MAX_VALUE, 1, 1, Instant.now());
+    var widget = new Widget(ID, 1, 1, Integer.MAX_VALUE, 1, 1, Instant.now());
     var ex =
         assertThrows(
             ZIndexLimitExceededException.class,
             () -> ValidationHelper.ensureSafeToPlaceOnTopOf(widget));
     assertThat(
         ex.getMessage(),
-        equalTo("Z-index limit exceeded. Can not place widget on top of widget [id=123]."));
+        equalTo("Z-index limit exceeded. Can not place widget on top of widget [id=01EKDT6Q4RXJ8WQG5V6B3M2N7Z]."));
+  }
+
+  @ParameterizedTest
+  @DisplayName("should throw if blank or too long board ID passed into requireValidBoardId()")
+  @ValueSource(
+      strings = {"", "  ", "00000000001111111111222222222233333333334444444444555555555566666"})
+  void invalidBoardIdShouldThrow(String boardId) {
+    assertThrows(
+        RequestValidationException.class, () -> ValidationHelper.requireValidBoardId(boardId));
+  }
+
+  @Test
+  @DisplayName("should not throw if valid board ID passed into requireValidBoardId()")
+  void validBoardIdShouldNotThrow() {
+    assertThat(ValidationHelper.requireValidBoardId("board-1"), equalTo("board-1"));
   }
 }